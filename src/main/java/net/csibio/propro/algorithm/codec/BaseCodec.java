@@ -0,0 +1,23 @@
+package net.csibio.propro.algorithm.codec;
+
+import net.csibio.propro.constants.enums.DataCodec;
+import net.csibio.propro.domain.db.DataDO;
+
+/**
+ * DataDO谱图数组的编解码器,只负责rtArray,ms1Ints,selfInts,ionsLow,ionsHigh以及intMap与对应压缩字段之间的转换
+ * 特征字符串的转换以及原始/压缩字段的清理由DataUtil统一处理
+ */
+public abstract class BaseCodec {
+
+    public abstract DataCodec getType();
+
+    /**
+     * 将原始数组编码后写入DataDO的压缩字段
+     */
+    public abstract void encode(DataDO data);
+
+    /**
+     * 将DataDO的压缩字段解码为原始数组
+     */
+    public abstract void decode(DataDO data);
+}
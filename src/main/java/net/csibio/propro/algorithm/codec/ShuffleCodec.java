@@ -0,0 +1,189 @@
+package net.csibio.propro.algorithm.codec;
+
+import net.csibio.propro.constants.enums.DataCodec;
+import net.csibio.propro.domain.db.DataDO;
+import net.csibio.propro.utils.CompressUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 所有谱图数组打包在一个缓冲区中,只进行一次压缩,结果存放在xicBytes中
+ * <p>
+ * 打包格式: 碎片数目k,5+k个数组的长度(为空的数组记为-1),k个碎片的cutInfo,随后为所有数组的4字节数值
+ * 数组的顺序为rtArray,ms1Ints,selfInts,ionsLow,ionsHigh以及各个碎片的强度.rt单调递增,存储的是相邻两个rt的浮点位差值,
+ * 强度按原始的浮点位存储.所有数值按字节重排(先存放所有数值的最高位字节,再存放次高位字节,以此类推),
+ * 指数与高位相近的字节聚集在一起,最后由CompressUtil.fastCompress进行一次快速压缩
+ */
+public class ShuffleCodec extends BaseCodec {
+
+    //rtArray,ms1Ints,selfInts,ionsLow,ionsHigh
+    static final int FIXED_SLOTS = 5;
+
+    @Override
+    public DataCodec getType() {
+        return DataCodec.SHUFFLE;
+    }
+
+    @Override
+    public void encode(DataDO data) {
+        List<String> cutInfos = data.getIntMap() == null ? new ArrayList<>() : new ArrayList<>(data.getIntMap().keySet());
+        int slots = FIXED_SLOTS + cutInfos.size();
+        int[] lengths = new int[slots];
+        lengths[0] = length(data.getRtArray());
+        lengths[1] = length(data.getMs1Ints());
+        lengths[2] = length(data.getSelfInts());
+        lengths[3] = length(data.getIonsLow());
+        lengths[4] = length(data.getIonsHigh());
+        byte[][] keys = new byte[cutInfos.size()][];
+        int headerSize = Integer.BYTES * (1 + slots);
+        for (int i = 0; i < cutInfos.size(); i++) {
+            lengths[FIXED_SLOTS + i] = length(data.getIntMap().get(cutInfos.get(i)));
+            keys[i] = cutInfos.get(i).getBytes(StandardCharsets.UTF_8);
+            headerSize += Short.BYTES + keys[i].length;
+        }
+        int words = 0;
+        for (int length : lengths) {
+            words += Math.max(length, 0);
+        }
+
+        byte[] raw = new byte[headerSize + words * Integer.BYTES];
+        ByteBuffer header = ByteBuffer.wrap(raw);
+        header.putInt(cutInfos.size());
+        for (int length : lengths) {
+            header.putInt(length);
+        }
+        for (byte[] key : keys) {
+            header.putShort((short) key.length);
+            header.put(key);
+        }
+
+        int[] values = new int[words];
+        int pos = 0;
+        float[] rtArray = data.getRtArray();
+        if (rtArray != null) {
+            int last = 0;
+            for (float rt : rtArray) {
+                int bits = Float.floatToRawIntBits(rt);
+                values[pos++] = bits - last;
+                last = bits;
+            }
+        }
+        pos = fill(data.getMs1Ints(), values, pos);
+        pos = fill(data.getSelfInts(), values, pos);
+        pos = fill(data.getIonsLow(), values, pos);
+        pos = fill(data.getIonsHigh(), values, pos);
+        for (String cutInfo : cutInfos) {
+            pos = fill(data.getIntMap().get(cutInfo), values, pos);
+        }
+        CompressUtil.shuffle(values, raw, headerSize);
+        data.setXicBytes(CompressUtil.fastCompress(raw));
+    }
+
+    @Override
+    public void decode(DataDO data) {
+        if (data.getXicBytes() == null) {
+            return;
+        }
+        byte[] raw = CompressUtil.fastDecompress(data.getXicBytes());
+        ByteBuffer header = ByteBuffer.wrap(raw);
+        int fragments = header.getInt();
+        int slots = FIXED_SLOTS + fragments;
+        int[] lengths = new int[slots];
+        int words = 0;
+        for (int i = 0; i < slots; i++) {
+            lengths[i] = header.getInt();
+            words += Math.max(lengths[i], 0);
+        }
+        String[] cutInfos = new String[fragments];
+        for (int i = 0; i < fragments; i++) {
+            int keyLength = header.getShort() & 0xFFFF;
+            cutInfos[i] = new String(raw, header.position(), keyLength, StandardCharsets.UTF_8);
+            header.position(header.position() + keyLength);
+        }
+        int[] values = CompressUtil.unshuffle(raw, header.position(), words);
+
+        int pos = 0;
+        if (lengths[0] >= 0) {
+            float[] rtArray = new float[lengths[0]];
+            int bits = 0;
+            for (int i = 0; i < rtArray.length; i++) {
+                bits += values[pos++];
+                rtArray[i] = Float.intBitsToFloat(bits);
+            }
+            data.setRtArray(rtArray);
+        }
+        if (lengths[1] >= 0) {
+            data.setMs1Ints(floats(values, pos, lengths[1]));
+            pos += lengths[1];
+        }
+        if (lengths[2] >= 0) {
+            data.setSelfInts(floats(values, pos, lengths[2]));
+            pos += lengths[2];
+        }
+        if (lengths[3] >= 0) {
+            data.setIonsLow(ints(values, pos, lengths[3]));
+            pos += lengths[3];
+        }
+        if (lengths[4] >= 0) {
+            data.setIonsHigh(ints(values, pos, lengths[4]));
+            pos += lengths[4];
+        }
+        if (fragments > 0) {
+            Map<String, float[]> intMap = new HashMap<>();
+            for (int i = 0; i < fragments; i++) {
+                int length = lengths[FIXED_SLOTS + i];
+                if (length >= 0) {
+                    intMap.put(cutInfos[i], floats(values, pos, length));
+                    pos += length;
+                } else {
+                    intMap.put(cutInfos[i], null);
+                }
+            }
+            data.setIntMap(intMap);
+        }
+    }
+
+    private static int length(float[] array) {
+        return array == null ? -1 : array.length;
+    }
+
+    private static int length(int[] array) {
+        return array == null ? -1 : array.length;
+    }
+
+    private static int fill(float[] array, int[] values, int pos) {
+        if (array != null) {
+            for (float value : array) {
+                values[pos++] = Float.floatToRawIntBits(value);
+            }
+        }
+        return pos;
+    }
+
+    private static int fill(int[] array, int[] values, int pos) {
+        if (array != null) {
+            System.arraycopy(array, 0, values, pos, array.length);
+            pos += array.length;
+        }
+        return pos;
+    }
+
+    private static float[] floats(int[] values, int from, int length) {
+        float[] array = new float[length];
+        for (int i = 0; i < length; i++) {
+            array[i] = Float.intBitsToFloat(values[from + i]);
+        }
+        return array;
+    }
+
+    private static int[] ints(int[] values, int from, int length) {
+        int[] array = new int[length];
+        System.arraycopy(values, from, array, 0, length);
+        return array;
+    }
+}
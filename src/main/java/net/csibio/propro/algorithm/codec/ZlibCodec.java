@@ -0,0 +1,78 @@
+package net.csibio.propro.algorithm.codec;
+
+import net.csibio.propro.constants.enums.DataCodec;
+import net.csibio.propro.domain.db.DataDO;
+import net.csibio.propro.utils.CompressUtil;
+
+import java.util.HashMap;
+
+/**
+ * 旧版本的编码格式,每一个数组单独进行zlib压缩,分别存放在rtBytes,ms1IntsBytes,selfIntsBytes,ionsLowBytes,ionsHighBytes以及intMapBytes中
+ */
+public class ZlibCodec extends BaseCodec {
+
+    @Override
+    public DataCodec getType() {
+        return DataCodec.ZLIB;
+    }
+
+    @Override
+    public void encode(DataDO data) {
+        if (data.getRtArray() != null) {
+            data.setRtBytes(CompressUtil.compressedToBytes(data.getRtArray()));
+        }
+        if (data.getMs1Ints() != null) {
+            data.setMs1IntsBytes(CompressUtil.compressedToBytes(data.getMs1Ints()));
+        }
+        if (data.getSelfInts() != null) {
+            data.setSelfIntsBytes(CompressUtil.compressedToBytes(data.getSelfInts()));
+        }
+        if (data.getIonsLow() != null) {
+            data.setIonsLowBytes(CompressUtil.compressedToBytes(data.getIonsLow()));
+        }
+        if (data.getIonsHigh() != null) {
+            data.setIonsHighBytes(CompressUtil.compressedToBytes(data.getIonsHigh()));
+        }
+        if (data.getIntMap() != null && data.getIntMap().size() > 0) {
+            HashMap<String, byte[]> intMap = new HashMap<>();
+            data.getIntMap().forEach((key, value) -> {
+                if (value != null) {
+                    intMap.put(key, CompressUtil.compressedToBytes(value));
+                } else {
+                    intMap.put(key, null);
+                }
+            });
+            data.setIntMapBytes(intMap);
+        }
+    }
+
+    @Override
+    public void decode(DataDO data) {
+        if (data.getRtBytes() != null) {
+            data.setRtArray(CompressUtil.transTofloat(data.getRtBytes()));
+        }
+        if (data.getMs1IntsBytes() != null) {
+            data.setMs1Ints(CompressUtil.transTofloat(data.getMs1IntsBytes()));
+        }
+        if (data.getSelfIntsBytes() != null) {
+            data.setSelfInts(CompressUtil.transTofloat(data.getSelfIntsBytes()));
+        }
+        if (data.getIonsLowBytes() != null) {
+            data.setIonsLow(CompressUtil.transToInt(data.getIonsLowBytes()));
+        }
+        if (data.getIonsHighBytes() != null) {
+            data.setIonsHigh(CompressUtil.transToInt(data.getIonsHighBytes()));
+        }
+        if (data.getIntMapBytes() != null && data.getIntMapBytes().size() > 0) {
+            HashMap<String, float[]> intensityMap = new HashMap<>();
+            data.getIntMapBytes().forEach((key, value) -> {
+                if (value != null) {
+                    intensityMap.put(key, CompressUtil.transTofloat(value));
+                } else {
+                    intensityMap.put(key, null);
+                }
+            });
+            data.setIntMap(intensityMap);
+        }
+    }
+}
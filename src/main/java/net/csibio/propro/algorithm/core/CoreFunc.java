@@ -2,7 +2,6 @@ package net.csibio.propro.algorithm.core;
 
 import com.google.common.util.concurrent.AtomicDouble;
 import lombok.extern.slf4j.Slf4j;
-import net.csibio.aird.bean.MzIntensityPairs;
 import net.csibio.propro.algorithm.extract.Extractor;
 import net.csibio.propro.algorithm.extract.IonStat;
 import net.csibio.propro.algorithm.formula.FragmentFactory;
@@ -11,8 +10,12 @@ import net.csibio.propro.algorithm.peak.GaussFilter;
 import net.csibio.propro.algorithm.peak.PeakFitter;
 import net.csibio.propro.algorithm.score.features.DIAScorer;
 import net.csibio.propro.algorithm.score.scorer.Scorer;
+import net.csibio.propro.config.ScoringPool;
+import net.csibio.propro.constants.constant.Constants;
 import net.csibio.propro.constants.enums.IdentifyStatus;
 import net.csibio.propro.domain.bean.common.AnyPair;
+import net.csibio.propro.domain.bean.data.SpectrumBlock;
+import net.csibio.propro.domain.bean.data.XicBatch;
 import net.csibio.propro.domain.bean.peptide.FragmentInfo;
 import net.csibio.propro.domain.bean.peptide.PeptideCoord;
 import net.csibio.propro.domain.bean.score.PeakGroup;
@@ -64,6 +67,8 @@ public class CoreFunc {
     Extractor extractor;
     @Autowired
     PeakFitter peakFitter;
+    @Autowired
+    ScoringPool scoringPool;
 
     /**
      * EIC Predict Peptide
@@ -72,11 +77,11 @@ public class CoreFunc {
      * <p>
      *
      * @param coord
-     * @param ms2Map
+     * @param ms2Block
      * @param params
      * @return
      */
-    public AnyPair<DataDO, DataSumDO> predictOneDelete(PeptideCoord coord, TreeMap<Float, MzIntensityPairs> ms1Map, TreeMap<Float, MzIntensityPairs> ms2Map, RunDO run, OverviewDO overview, AnalyzeParams params) {
+    public AnyPair<DataDO, DataSumDO> predictOneDelete(PeptideCoord coord, SpectrumBlock ms1Block, SpectrumBlock ms2Block, RunDO run, OverviewDO overview, AnalyzeParams params) {
 
         List<FragmentInfo> libFrags = new ArrayList<>(coord.getFragments());
 
@@ -91,13 +96,13 @@ public class CoreFunc {
             List<FragmentInfo> newLibFrags = new ArrayList<>(libFrags);
             newLibFrags.remove(i);
             coord.setFragments(newLibFrags);
-            data = extractor.extract(coord, ms1Map, ms2Map, params, true, null);
+            data = extractor.extract(coord, ms1Block, ms2Block, params, true, null);
             if (data == null) {
                 continue;
             }
 
             try {
-                data = scorer.score(run, data, coord, ms1Map, ms2Map, params);
+                data = scorer.score(run, data, coord, ms1Block, ms2Block, params);
             } catch (Exception e) {
                 e.printStackTrace();
                 log.error("Peptide打分异常:" + coord.getPeptideRef());
@@ -146,8 +151,8 @@ public class CoreFunc {
         return bestPair;
     }
 
-    public AnyPair<DataDO, DataSumDO> predictOneNiubi(PeptideCoord coord, TreeMap<Float, MzIntensityPairs> ms1Map, TreeMap<Float, MzIntensityPairs> ms2Map, RunDO run, OverviewDO overview, AnalyzeParams params) {
-        DataDO data = extractor.extract(coord, ms1Map, ms2Map, params, true, null);
+    public AnyPair<DataDO, DataSumDO> predictOneNiubi(PeptideCoord coord, SpectrumBlock ms1Block, SpectrumBlock ms2Block, RunDO run, OverviewDO overview, AnalyzeParams params) {
+        DataDO data = extractor.extract(coord, ms1Block, ms2Block, params, true, null);
         //EIC结果如果为空则没有继续的必要了
         if (data == null) {
             log.info(coord.getPeptideRef() + ":EIC结果为空");
@@ -158,7 +163,7 @@ public class CoreFunc {
             return null;
         }
 
-        data = scorer.score(run, data, coord, ms1Map, ms2Map, params);
+        data = scorer.score(run, data, coord, ms1Block, ms2Block, params);
 
         if (data.getPeakGroupList() != null && data.getPeakGroupList().size() > 0) {
             lda.scoreForPeakGroups(data.getPeakGroupList(), overview.getWeights(), overview.fetchScoreTypes());
@@ -176,11 +181,11 @@ public class CoreFunc {
      * <p>
      *
      * @param coord
-     * @param ms2Map
+     * @param ms2Block
      * @param params
      * @return
      */
-    public AnyPair<DataDO, DataSumDO> predictOneReplace(PeptideCoord coord, TreeMap<Float, MzIntensityPairs> ms1Map, TreeMap<Float, MzIntensityPairs> ms2Map, RunDO run, OverviewDO overview, AnalyzeParams params) {
+    public AnyPair<DataDO, DataSumDO> predictOneReplace(PeptideCoord coord, SpectrumBlock ms1Block, SpectrumBlock ms2Block, RunDO run, OverviewDO overview, AnalyzeParams params) {
         //Step1.对库中的碎片进行排序,按照强度从大到小排列
         Map<String, FragmentInfo> libFragMap = coord.getFragments().stream().collect(Collectors.toMap(FragmentInfo::getCutInfo, Function.identity()));
         List<String> libIons = coord.getFragments().stream().map(FragmentInfo::getCutInfo).toList();
@@ -195,7 +200,7 @@ public class CoreFunc {
         });
         //Step3.对所有碎片进行EIC计算
         coord.setFragments(new ArrayList<>(proproFiList));
-        DataDO data = extractor.extract(coord, ms1Map, ms2Map, params, true, null);
+        DataDO data = extractor.extract(coord, ms1Block, ms2Block, params, true, null);
         Map<String, float[]> intMap = data.getIntMap();
 
         //Step4.获取所有碎片的统计分,并按照CV值进行排序,记录前15的碎片
@@ -232,7 +237,7 @@ public class CoreFunc {
             }
             coord.setFragments(selectFragments);
             try {
-                buildData = scorer.score(run, buildData, coord, ms1Map, ms2Map, params);
+                buildData = scorer.score(run, buildData, coord, ms1Block, ms2Block, params);
             } catch (Exception e) {
                 log.error("Peptide打分异常:" + coord.getPeptideRef());
             }
@@ -274,11 +279,11 @@ public class CoreFunc {
      * 最终的提取XIC结果需要落盘数据库,一般用于正式XIC提取的计算
      *
      * @param coordinates
-     * @param ms2Map
+     * @param ms2Block
      * @param params
      * @return
      */
-    public List<DataDO> epps(RunDO run, List<PeptideCoord> coordinates, TreeMap<Float, MzIntensityPairs> ms1Map, TreeMap<Float, MzIntensityPairs> ms2Map, AnalyzeParams params) {
+    public List<DataDO> epps(RunDO run, List<PeptideCoord> coordinates, SpectrumBlock ms1Block, SpectrumBlock ms2Block, AnalyzeParams params) {
         List<DataDO> dataList = Collections.synchronizedList(new ArrayList<>());
         long start = System.currentTimeMillis();
         if (coordinates == null || coordinates.size() == 0) {
@@ -287,41 +292,48 @@ public class CoreFunc {
         }
 
         //传入的coordinates是没有经过排序的,需要排序先处理真实肽段,再处理伪肽段.如果先处理的真肽段没有被提取到任何信息,或者提取后的峰太差被忽略掉,都会同时删掉对应的伪肽段的XIC
-        coordinates.parallelStream().forEach(coord -> {
-            //Step1. 常规提取XIC,XIC结果不进行压缩处理,如果没有提取到任何结果,那么加入忽略列表
-            DataDO dataDO = extractor.extract(coord, ms1Map, ms2Map, params, true, null);
-            //如果EIC结果中所有的碎片均为空,那么也不需要再做Reselect操作,直接跳过
-            if (dataDO == null) {
+        //按批次进行XIC的批量提取,每一个批次内的肽段共享一次光谱扫描
+        for (int from = 0; from < coordinates.size(); from += Constants.XIC_BATCH_SIZE) {
+            List<PeptideCoord> batchCoords = coordinates.subList(from, Math.min(from + Constants.XIC_BATCH_SIZE, coordinates.size()));
+            //伪肽段只在真肽段选出峰组以后才提取,批量提取时不包含伪肽段碎片
+            XicBatch batch = extractor.extractBatch(batchCoords, ms2Block, params, false);
+            scoringPool.forEach(batchCoords.size(), index -> {
+                PeptideCoord coord = batchCoords.get(index);
+                //Step1. 常规提取XIC,XIC结果不进行压缩处理,如果没有提取到任何结果,那么加入忽略列表
+                DataDO dataDO = extractor.extract(coord, batch, index, ms1Block, ms2Block, params, true, null);
+                //如果EIC结果中所有的碎片均为空,那么也不需要再做Reselect操作,直接跳过
+                if (dataDO == null) {
 //                log.info(coord.getPeptideRef() + ":EIC结果为空");
-                return;
-            }
+                    return;
+                }
 
-            //Step2. 常规选峰及打分,未满足条件的直接忽略
-            dataDO = scorer.score(run, dataDO, coord, ms1Map, ms2Map, params);
-            dataList.add(dataDO);
+                //Step2. 常规选峰及打分,未满足条件的直接忽略
+                dataDO = scorer.score(run, dataDO, coord, ms1Block, ms2Block, params);
+                dataList.add(dataDO);
 
-            //Step3. 忽略过程数据,将数据提取结果加入最终的列表
-            DataUtil.compress(dataDO);
+                //Step3. 忽略过程数据,将数据提取结果加入最终的列表
+                DataUtil.compress(dataDO);
 
-            //如果没有打分数据,那么对应的decoy也不再计算,以保持target与decoy 1:1的混合比例,这里需要注意的是,即便是scoreList是空,也需要将DataDO存储到数据库中,以便后续的重新统计和分析
-            if (dataDO.getPeakGroupList() == null) {
-                return;
-            }
+                //如果没有打分数据,那么对应的decoy也不再计算,以保持target与decoy 1:1的混合比例,这里需要注意的是,即便是scoreList是空,也需要将DataDO存储到数据库中,以便后续的重新统计和分析
+                if (dataDO.getPeakGroupList() == null) {
+                    return;
+                }
 
-            //Step4. 如果第一,二步均符合条件,那么开始对对应的伪肽段进行数据提取和打分
-            coord.setDecoy(true);
-            DataDO decoyData = extractor.extract(coord, ms1Map, ms2Map, params, true, null);
-            if (decoyData == null) {
-                return;
-            }
+                //Step4. 如果第一,二步均符合条件,那么开始对对应的伪肽段进行数据提取和打分
+                coord.setDecoy(true);
+                DataDO decoyData = extractor.extract(coord, ms1Block, ms2Block, params, true, null);
+                if (decoyData == null) {
+                    return;
+                }
 
-            //Step5. 对Decoy进行打分
-            decoyData = scorer.score(run, decoyData, coord, ms1Map, ms2Map, params);
-            dataList.add(decoyData);
+                //Step5. 对Decoy进行打分
+                decoyData = scorer.score(run, decoyData, coord, ms1Block, ms2Block, params);
+                dataList.add(decoyData);
 
-            //Step6. 忽略过程数据,将数据提取结果加入最终的列表
-            DataUtil.compress(decoyData);
-        });
+                //Step6. 忽略过程数据,将数据提取结果加入最终的列表
+                DataUtil.compress(decoyData);
+            });
+        }
 
         LogUtil.log("XIC+选峰+打分耗时", start);
         log.info("总计构建Data数目" + dataList.size() + "/" + (coordinates.size() * 2) + "个");
@@ -331,7 +343,7 @@ public class CoreFunc {
         return dataList;
     }
 
-    public List<DataDO> reselect(RunDO run, List<PeptideCoord> coordinates, TreeMap<Float, MzIntensityPairs> ms1Map, TreeMap<Float, MzIntensityPairs> ms2Map, AnalyzeParams params) {
+    public List<DataDO> reselect(RunDO run, List<PeptideCoord> coordinates, SpectrumBlock ms1Block, SpectrumBlock ms2Block, AnalyzeParams params) {
         List<DataDO> dataList = Collections.synchronizedList(new ArrayList<>());
         long start = System.currentTimeMillis();
         if (coordinates == null || coordinates.size() == 0) {
@@ -340,20 +352,20 @@ public class CoreFunc {
         }
         AtomicLong newIonsGroup = new AtomicLong(0);
         //传入的coordinates是没有经过排序的,需要排序先处理真实肽段,再处理伪肽段.如果先处理的真肽段没有被提取到任何信息,或者提取后的峰太差被忽略掉,都会同时删掉对应的伪肽段的XIC
-        coordinates.parallelStream().forEach(coord -> {
-            DataDO dataDO = extractor.extract(coord, ms1Map, ms2Map, params, true, null);
+        scoringPool.forEach(coordinates, coord -> {
+            DataDO dataDO = extractor.extract(coord, ms1Block, ms2Block, params, true, null);
             //如果EIC结果中所有的碎片均为空,那么也不需要再做Reselect操作,直接跳过
             if (dataDO == null) {
                 return;
             }
             //Step2. 常规选峰及打分,未满足条件的直接忽略
-            dataDO = scorer.score(run, dataDO, coord, ms1Map, ms2Map, params);
+            dataDO = scorer.score(run, dataDO, coord, ms1Block, ms2Block, params);
             lda.scoreForPeakGroups(dataDO.getPeakGroupList(), params.getBaseOverview().getWeights(), params.getBaseOverview().getParams().getMethod().getScore().getScoreTypes());
             DataSumDO tempSum = scorer.calcBestTotalScore(dataDO, params.getBaseOverview());
             if (tempSum == null || tempSum.getStatus() != IdentifyStatus.SUCCESS.getCode()) {
                 DataSumDO dataSum = scorer.calcBestTotalScore(dataDO, params.getBaseOverview());
                 if (dataSum == null || dataSum.getStatus() != IdentifyStatus.SUCCESS.getCode()) {
-                    AnyPair<DataDO, DataSumDO> pair = predictOneDelete(coord, ms1Map, ms2Map, run, params.getBaseOverview(), params);
+                    AnyPair<DataDO, DataSumDO> pair = predictOneDelete(coord, ms1Block, ms2Block, run, params.getBaseOverview(), params);
                     if (pair != null && pair.getLeft() != null) {
                         newIonsGroup.getAndIncrement();
                         dataDO = pair.getLeft();
@@ -372,13 +384,13 @@ public class CoreFunc {
 
             //Step4. 如果第一,二步均符合条件,那么开始对对应的伪肽段进行数据提取和打分
             coord.setDecoy(true);
-            DataDO decoyData = extractor.extract(coord, ms1Map, ms2Map, params, true, null);
+            DataDO decoyData = extractor.extract(coord, ms1Block, ms2Block, params, true, null);
             if (decoyData == null) {
                 return;
             }
 
             //Step5. 对Decoy进行打分
-            decoyData = scorer.score(run, decoyData, coord, ms1Map, ms2Map, params);
+            decoyData = scorer.score(run, decoyData, coord, ms1Block, ms2Block, params);
             dataList.add(decoyData);
 
             //Step6. 忽略过程数据,将数据提取结果加入最终的列表
@@ -394,7 +406,7 @@ public class CoreFunc {
         return dataList;
     }
 
-    public List<DataDO> csi(RunDO run, List<PeptideCoord> coordinates, TreeMap<Float, MzIntensityPairs> ms1Map, TreeMap<Float, MzIntensityPairs> ms2Map, AnalyzeParams params) {
+    public List<DataDO> csi(RunDO run, List<PeptideCoord> coordinates, SpectrumBlock ms1Block, SpectrumBlock ms2Block, AnalyzeParams params) {
         List<DataDO> dataList = Collections.synchronizedList(new ArrayList<>());
         if (coordinates == null || coordinates.size() == 0) {
             log.error("肽段坐标为空");
@@ -402,42 +414,51 @@ public class CoreFunc {
         }
         int maxIons = params.getMethod().getEic().getMaxIons();
         //传入的coordinates是没有经过排序的,需要排序先处理真实肽段,再处理伪肽段.如果先处理的真肽段没有被提取到任何信息,或者提取后的峰太差被忽略掉,都会同时删掉对应的伪肽段的XIC
-        coordinates.parallelStream().forEach(coord -> {
+        coordinates.forEach(coord -> {
             if (coord.getFragments().size() > maxIons) {
                 coord.setFragments(coord.getFragments().subList(0, maxIons));
             }
             if (coord.getDecoyFragments().size() > maxIons) {
                 coord.setDecoyFragments(coord.getDecoyFragments().subList(0, maxIons));
             }
-            DataDO dataDO = extractor.extract(coord, ms1Map, ms2Map, params, true, null);
-            if (dataDO == null) {
-                return;
-            }
+        });
+        //按批次进行XIC的批量提取,每一个批次内的肽段共享一次光谱扫描
+        for (int from = 0; from < coordinates.size(); from += Constants.XIC_BATCH_SIZE) {
+            List<PeptideCoord> batchCoords = coordinates.subList(from, Math.min(from + Constants.XIC_BATCH_SIZE, coordinates.size()));
+            //每一个真肽段都会提取对应的伪肽段,伪肽段碎片一并批量提取
+            XicBatch batch = extractor.extractBatch(batchCoords, ms2Block, params, true);
+            scoringPool.forEach(batchCoords.size(), index -> {
+                PeptideCoord coord = batchCoords.get(index);
+                DataDO dataDO = extractor.extract(coord, batch, index, ms1Block, ms2Block, params, true, null);
+                if (dataDO == null) {
+                    return;
+                }
 
-            dataDO = scorer.score(run, dataDO, coord, ms1Map, ms2Map, params);
+                dataDO = scorer.score(run, dataDO, coord, ms1Block, ms2Block, params);
 //            sumList.add(judge(dataDO));
-            dataList.add(dataDO);
-            //Step3. 忽略过程数据,将数据提取结果加入最终的列表
-            DataUtil.compress(dataDO);
+                dataList.add(dataDO);
+                //Step3. 忽略过程数据,将数据提取结果加入最终的列表
+                DataUtil.compress(dataDO);
 
-            //如果没有打分数据,那么对应的decoy也不再计算,以保持target与decoy 1:1的混合比例,这里需要注意的是,即便是scoreList是空,也需要将DataDO存储到数据库中,以便后续的重新统计和分析
+                //如果没有打分数据,那么对应的decoy也不再计算,以保持target与decoy 1:1的混合比例,这里需要注意的是,即便是scoreList是空,也需要将DataDO存储到数据库中,以便后续的重新统计和分析
 //            if (dataDO.getPeakGroupList() == null) {
 //                return;
 //            }
 
-            coord.setDecoy(true);
-            DataDO decoyData = extractor.extract(coord, ms1Map, ms2Map, params, true, null);
-            if (decoyData == null) {
-                return;
-            }
+                coord.setDecoy(true);
+                DataDO decoyData = extractor.extract(coord, batch, index, ms1Block, ms2Block, params, true, null);
+                if (decoyData == null) {
+                    return;
+                }
 
-            //Step5. 对Decoy进行打分
-            decoyData = scorer.score(run, decoyData, coord, ms1Map, ms2Map, params);
-            dataList.add(decoyData);
+                //Step5. 对Decoy进行打分
+                decoyData = scorer.score(run, decoyData, coord, ms1Block, ms2Block, params);
+                dataList.add(decoyData);
 
-            //Step6. 忽略过程数据,将数据提取结果加入最终的列表
-            DataUtil.compress(decoyData);
-        });
+                //Step6. 忽略过程数据,将数据提取结果加入最终的列表
+                DataUtil.compress(decoyData);
+            });
+        }
 
 //        LogUtil.log("XIC+选峰+打分耗时", start);
 //        log.info("新增组合碎片数目为:" + newIonsGroup.get());
@@ -4,6 +4,7 @@ import net.csibio.propro.algorithm.formula.FormulaCalculator;
 import net.csibio.propro.algorithm.formula.FragmentFactory;
 import net.csibio.propro.algorithm.parser.model.traml.Modification;
 import net.csibio.propro.algorithm.parser.model.traml.Peptide;
+import net.csibio.propro.config.ScoringPool;
 import net.csibio.propro.domain.db.PeptideDO;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -11,6 +12,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Created by James Lu MiaoShan
@@ -26,14 +28,34 @@ public abstract class BaseGenerator {
     @Autowired
     public FragmentFactory fragmentFactory;
 
+    @Autowired
+    public ScoringPool scoringPool;
+
+    /**
+     * 生成器不保存任何与单个肽段相关的状态,实现类必须保证本函数可以被多个线程同时调用
+     */
     protected abstract void generate(PeptideDO peptide);
 
-    public void generate(List<PeptideDO> list) {
-        for (PeptideDO target : list) {
+    /**
+     * 在打分线程池中并行生成伪肽段,单个肽段生成失败时清空该肽段的伪肽段信息并继续处理其他肽段
+     *
+     * @param list
+     * @return 生成失败的肽段数目
+     */
+    public int generate(List<PeptideDO> list) {
+        AtomicInteger failed = new AtomicInteger(0);
+        scoringPool.forEach(list, target -> {
             target.clearDecoy();
-            generate(target);
-        }
+            try {
+                generate(target);
+            } catch (Exception e) {
+                failed.incrementAndGet();
+                logger.error("伪肽段生成失败:" + target.getPeptideRef() + "," + e.getMessage());
+                target.clearDecoy();
+            }
+        });
         logger.info("伪肽段生成完毕,总计:" + list.size() + "个");
+        return failed.get();
     }
 
     /**
@@ -17,6 +17,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * 一种常规的伪肽段生成算法,控制每一个肽段的最后一位不变,前面的氨基酸进行随机打乱,循环10次,选取其中重复度最低的一次作为最后的生成结果
@@ -66,7 +67,8 @@ public class ShuffleGenerator extends BaseGenerator {
         //生成十个随机打乱的数组,比对重复度
         for (int i = 0; i < Constants.DECOY_GENERATOR_TRY_TIMES; i++) {
 
-            Collections.shuffle(aminoAcids);
+            //多个线程同时生成时避免争用同一个全局随机数生成器
+            Collections.shuffle(aminoAcids, ThreadLocalRandom.current());
 
             String newSequence = TransitionUtil.toSequence(aminoAcids, false);
             double tempAsi = aaSequenceIdentify(sequence, newSequence);
@@ -0,0 +1,71 @@
+package net.csibio.propro.algorithm.extract;
+
+import lombok.extern.slf4j.Slf4j;
+import net.csibio.propro.config.VMProperties;
+import net.csibio.propro.dao.BlockIndexDAO;
+import net.csibio.propro.domain.bean.data.RunBlockIndex;
+import net.csibio.propro.domain.db.BlockIndexDO;
+import net.csibio.propro.domain.query.BlockIndexQuery;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 进程内共享的光谱块索引注册表,每一个run的全部BlockIndexDO只从数据库中读取一次,构建为RunBlockIndex
+ * BlockIndexService的所有查询(MS1索引,前体mz所在的MS2窗口,ScanningSwath的相邻窗口等)都从快照中获取,不再重复查询数据库
+ * <p>
+ * 每一个run维护一个版本号,run被删除或者重新解析时调用invalidate使版本号递增,构建期间版本号发生变化的快照只返回给本次调用方,
+ * 不会进入缓存.缓存按照run的数目进行LRU淘汰,上限为block.index.max.版本号,LRU淘汰与构建锁由VersionedCache实现
+ */
+@Slf4j
+@Component("blockIndexRegistry")
+public class BlockIndexRegistry {
+
+    @Autowired
+    VMProperties vmProperties;
+    @Autowired
+    BlockIndexDAO blockIndexDAO;
+
+    private final VersionedCache<RunBlockIndex> indexes = new VersionedCache<>("runIds", () -> vmProperties.getBlockIndexMax(),
+            RunBlockIndex::getVersion, RunBlockIndex::getBytes);
+
+    /**
+     * 获取run的光谱块索引快照,缓存中不存在或者已经过期时从数据库重新读取
+     *
+     * @param runId
+     * @return 所有调用方共享的快照,调用方只能读取
+     */
+    public RunBlockIndex get(String runId) {
+        return indexes.get(runId, this::load);
+    }
+
+    /**
+     * run被删除或者重新解析时调用,已经读取的快照立即失效
+     *
+     * @param runId
+     */
+    public void invalidate(String runId) {
+        if (runId == null) {
+            return;
+        }
+        indexes.invalidate(runId);
+    }
+
+    public void clear() {
+        indexes.clear();
+    }
+
+    public Map<String, Object> stat() {
+        return indexes.stat();
+    }
+
+    private RunBlockIndex load(String runId, long version) {
+        long start = System.currentTimeMillis();
+        List<BlockIndexDO> blocks = blockIndexDAO.getAll(new BlockIndexQuery().setRunId(runId));
+        RunBlockIndex index = RunBlockIndex.build(runId, version, blocks);
+        log.info("读取光谱块索引:" + runId + ",版本:" + version + ",光谱块数目:" + blocks.size() + ",耗时:" + (System.currentTimeMillis() - start) + "毫秒");
+        return index;
+    }
+}
@@ -0,0 +1,10 @@
+package net.csibio.propro.algorithm.extract;
+
+/**
+ * 光谱缓存的key,同一个run中的一个光谱块由其在aird文件中的开始位置唯一确定
+ *
+ * @param runId    run的id
+ * @param startPtr 光谱块在aird文件中的开始位置
+ */
+public record BlockKey(String runId, Long startPtr) {
+}
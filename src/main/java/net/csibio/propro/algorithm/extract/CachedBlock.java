@@ -0,0 +1,12 @@
+package net.csibio.propro.algorithm.extract;
+
+import net.csibio.propro.domain.bean.data.SpectrumBlock;
+
+/**
+ * 光谱缓存中的一个已解码光谱块
+ *
+ * @param spectra 解码后以列式存储的光谱
+ * @param bytes   估算的内存占用
+ */
+public record CachedBlock(SpectrumBlock spectra, long bytes) {
+}
@@ -0,0 +1,182 @@
+package net.csibio.propro.algorithm.extract;
+
+import lombok.extern.slf4j.Slf4j;
+import net.csibio.propro.constants.enums.ResultCode;
+import net.csibio.propro.domain.Result;
+import net.csibio.propro.domain.db.DataDO;
+import net.csibio.propro.exceptions.XException;
+import net.csibio.propro.service.DataService;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * XIC流水线的入库阶段,每一个Run的分析过程使用一个独立的实例
+ * 打分完成的窗口结果放入有界队列,由一个后台线程按chunkSize切分后以UNORDERED模式批量写入.队列满时write函数阻塞,从而限制打分线程领先入库的窗口数目
+ * 重复键视为已经写入,因此一个批次失败后可以整批重试而不会产生重复数据
+ */
+@Slf4j
+public class DataWriter {
+
+    private final DataService dataService;
+    private final String projectId;
+    private final int chunkSize;
+    private final int retries;
+
+    /**
+     * 等待入库的窗口结果,空列表为结束标记
+     */
+    private final BlockingQueue<List<DataDO>> queue;
+    private final CompletableFuture<Void> worker;
+    private volatile XException error;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    AtomicLong docs = new AtomicLong(0);
+    AtomicLong inserted = new AtomicLong(0);
+    AtomicLong bytes = new AtomicLong(0);
+    AtomicLong chunks = new AtomicLong(0);
+    AtomicLong retried = new AtomicLong(0);
+    AtomicLong writeMillis = new AtomicLong(0);
+
+    public DataWriter(DataService dataService, String projectId, int chunkSize, int queueSize, int retries, Executor executor) {
+        this.dataService = dataService;
+        this.projectId = projectId;
+        this.chunkSize = Math.max(chunkSize, 1);
+        this.retries = Math.max(retries, 0);
+        this.queue = new ArrayBlockingQueue<>(Math.max(queueSize, 1));
+        this.worker = CompletableFuture.runAsync(this::consume, executor);
+    }
+
+    /**
+     * 提交一个窗口的结果,队列满时阻塞直到入库线程取走一批数据
+     * 之前提交的批次在重试之后仍然失败时直接抛出异常,调用方应当停止后续窗口的提取
+     *
+     * @param dataList
+     * @throws InterruptedException
+     * @throws XException           之前提交的某一个批次入库失败
+     */
+    public void write(List<DataDO> dataList) throws InterruptedException, XException {
+        if (error != null) {
+            throw error;
+        }
+        if (dataList == null || dataList.isEmpty()) {
+            return;
+        }
+        queue.put(dataList);
+    }
+
+    /**
+     * 等待所有已提交的数据写入完成,重复调用时直接等待第一次调用的结果
+     *
+     * @throws XException 任意一个批次在重试之后仍然失败
+     */
+    public void close() throws XException {
+        shutdown();
+        worker.join();
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * 通知入库线程在写完已提交的数据以后退出,不等待写入完成.用于异常退出时结束入库线程
+     */
+    public void shutdown() {
+        if (closed.compareAndSet(false, true)) {
+            try {
+                queue.put(new ArrayList<>());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public Map<String, Object> stat() {
+        Map<String, Object> stat = new LinkedHashMap<>();
+        long millis = Math.max(writeMillis.get(), 1);
+        stat.put("docs", docs.get());
+        stat.put("inserted", inserted.get());
+        stat.put("bytes", bytes.get());
+        stat.put("chunks", chunks.get());
+        stat.put("retries", retried.get());
+        stat.put("writeMillis", writeMillis.get());
+        stat.put("docsPerSecond", docs.get() * 1000 / millis);
+        stat.put("bytesPerSecond", bytes.get() * 1000 / millis);
+        return stat;
+    }
+
+    private void consume() {
+        while (true) {
+            List<DataDO> dataList;
+            try {
+                dataList = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                error = new XException(ResultCode.INSERT_ERROR);
+                return;
+            }
+            if (dataList.isEmpty()) {
+                return;
+            }
+            //已经失败的情况下继续消费队列,避免阻塞打分线程,剩余的数据直接丢弃
+            if (error != null) {
+                continue;
+            }
+            for (int from = 0; from < dataList.size() && error == null; from += chunkSize) {
+                writeChunk(dataList.subList(from, Math.min(from + chunkSize, dataList.size())));
+            }
+        }
+    }
+
+    private void writeChunk(List<DataDO> chunk) {
+        long start = System.currentTimeMillis();
+        Result<Integer> result = null;
+        //dataService.bulkInsert内部已经捕获了所有异常,失败时返回Error
+        for (int attempt = 0; attempt <= retries; attempt++) {
+            if (attempt > 0) {
+                retried.incrementAndGet();
+                log.warn("Bulk Insert Failed,Retry:" + attempt + "/" + retries + "," + result.getErrorMessage());
+            }
+            result = dataService.bulkInsert(chunk, projectId);
+            if (result.isSuccess()) {
+                break;
+            }
+        }
+        writeMillis.addAndGet(System.currentTimeMillis() - start);
+        chunks.incrementAndGet();
+        if (result.isFailed()) {
+            log.error("Bulk Insert Failed After " + retries + " Retries," + result.getErrorMessage());
+            error = new XException(ResultCode.INSERT_ERROR);
+            return;
+        }
+        docs.addAndGet(chunk.size());
+        inserted.addAndGet(result.getData());
+        bytes.addAndGet(chunk.stream().mapToLong(DataWriter::estimate).sum());
+    }
+
+    /**
+     * 估算一个DataDO写入数据库的数据量,只统计压缩后的谱图字段,这部分占据了文档的绝大部分空间
+     */
+    private static long estimate(DataDO data) {
+        long size = length(data.getRtBytes()) + length(data.getMs1IntsBytes()) + length(data.getSelfIntsBytes())
+                + length(data.getIonsLowBytes()) + length(data.getIonsHighBytes()) + length(data.getXicBytes());
+        if (data.getIntMapBytes() != null) {
+            for (Map.Entry<String, byte[]> entry : data.getIntMapBytes().entrySet()) {
+                size += entry.getKey().length() + length(entry.getValue());
+            }
+        }
+        return size;
+    }
+
+    private static long length(byte[] array) {
+        return array == null ? 0 : array.length;
+    }
+}
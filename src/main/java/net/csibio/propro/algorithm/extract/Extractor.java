@@ -1,7 +1,6 @@
 package net.csibio.propro.algorithm.extract;
 
 import lombok.extern.slf4j.Slf4j;
-import net.csibio.aird.bean.Compressor;
 import net.csibio.aird.bean.MzIntensityPairs;
 import net.csibio.aird.bean.WindowRange;
 import net.csibio.aird.bean.common.Eic;
@@ -11,17 +10,21 @@ import net.csibio.propro.algorithm.learner.classifier.Lda;
 import net.csibio.propro.algorithm.score.features.DIAScorer;
 import net.csibio.propro.algorithm.score.scorer.Scorer;
 import net.csibio.propro.algorithm.stat.StatConst;
+import net.csibio.propro.config.ScoringPool;
+import net.csibio.propro.config.VMProperties;
 import net.csibio.propro.constants.constant.Constants;
 import net.csibio.propro.constants.enums.ResultCode;
 import net.csibio.propro.constants.enums.TaskStatus;
 import net.csibio.propro.domain.Result;
 import net.csibio.propro.domain.bean.common.AnyPair;
 import net.csibio.propro.domain.bean.common.IntegerPair;
+import net.csibio.propro.domain.bean.data.MS1Partition;
+import net.csibio.propro.domain.bean.data.SpectrumBlock;
+import net.csibio.propro.domain.bean.data.XicBatch;
 import net.csibio.propro.domain.bean.peptide.FragmentInfo;
 import net.csibio.propro.domain.bean.peptide.PeptideCoord;
 import net.csibio.propro.domain.db.*;
 import net.csibio.propro.domain.options.AnalyzeParams;
-import net.csibio.propro.domain.query.BlockIndexQuery;
 import net.csibio.propro.domain.vo.RunDataVO;
 import net.csibio.propro.exceptions.XException;
 import net.csibio.propro.service.*;
@@ -29,9 +32,13 @@ import net.csibio.propro.utils.ArrayUtil;
 import net.csibio.propro.utils.ConvolutionUtil;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Slf4j
 @Component("extractor")
@@ -59,6 +66,18 @@ public class Extractor {
     Lda lda;
     @Autowired
     DIAScorer diaScorer;
+    @Autowired
+    VMProperties vmProperties;
+    @Autowired
+    ScoringPool scoringPool;
+    @Autowired
+    SpectrumCache spectrumCache;
+    @Autowired
+    @Qualifier("prefetchExecutor")
+    Executor prefetchExecutor;
+    @Autowired
+    @Qualifier("persistExecutor")
+    Executor persistExecutor;
 
     /**
      * 提取XIC的核心函数,最终返回提取到XIC的Peptide数目
@@ -81,39 +100,37 @@ public class Extractor {
         return overview;
     }
 
-    public Eic extractMS1(PeptideCoord coord, TreeMap<Float, MzIntensityPairs> ms1Map, AnalyzeParams params) {
-        float mzStart = 0;
-        float mzEnd = -1;
+    public Eic extractMS1(PeptideCoord coord, SpectrumBlock ms1Block, AnalyzeParams params) {
         //所有的碎片共享同一个RT数组
-        ArrayList<Float> rtList = new ArrayList<>();
-        for (Float rt : ms1Map.keySet()) {
-            if (params.getMethod().getEic().getRtWindow() != -1 && rt > coord.getRtEnd()) {
-                break;
-            }
-            if (params.getMethod().getEic().getRtWindow() == -1 || (rt >= coord.getRtStart() && rt <= coord.getRtEnd())) {
-                rtList.add(rt);
-            }
-        }
-
-        float[] rtArray = new float[rtList.size()];
-        for (int i = 0; i < rtList.size(); i++) {
-            rtArray[i] = rtList.get(i);
+        int from = 0;
+        int to = ms1Block.size();
+        if (params.getMethod().getEic().getRtWindow() != -1) {
+            from = ms1Block.firstIndexNotBelow(coord.getRtStart());
+            to = Math.max(from, ms1Block.firstIndexAbove(coord.getRtEnd()));
         }
+        float[] rtArray = Arrays.copyOfRange(ms1Block.getRts(), from, to);
 
         float ppmWindow = params.getMethod().getEic().getMzWindow().floatValue();
         float mz = coord.getMz().floatValue();
         float window = mz * ppmWindow * Constants.PPM_F;
-        mzStart = mz - window;
-        mzEnd = mz + window;
+        float mzStart = mz - window;
+        float mzEnd = mz + window;
         float[] intArray = new float[rtArray.length];
         //本函数极其注重性能,为整个流程最关键的耗时步骤,每提升10毫秒都可以带来巨大的性能提升  --陆妙善
         for (int i = 0; i < rtArray.length; i++) {
-            float acc = ConvolutionUtil.accumulation(ms1Map.get(rtArray[i]), mzStart, mzEnd);
-            intArray[i] = acc;
+            intArray[i] = ConvolutionUtil.accumulation(ms1Block, from + i, mzStart, mzEnd);
         }
         return new Eic(rtArray, intArray);
     }
 
+    /**
+     * 兼容TreeMap形式光谱的入口,尚未迁移到SpectrumBlock的调用方使用,每次调用都会进行一次格式转换
+     */
+    public DataDO extract(PeptideCoord coord, TreeMap<Float, MzIntensityPairs> ms1Map, TreeMap<Float, MzIntensityPairs> ms2Map, AnalyzeParams params, boolean withIonCount, Float ionsHighLimit) {
+        SpectrumBlock ms1Block = ms1Map == null ? null : SpectrumBlock.of(ms1Map, false);
+        return extract(coord, ms1Block, SpectrumBlock.of(ms2Map, false), params, withIonCount, ionsHighLimit);
+    }
+
     /**
      * EIC Core Function
      * 核心EIC函数
@@ -121,27 +138,233 @@ public class Extractor {
      * 本函数为整个分析过程中最耗时的步骤
      *
      * @param coord
-     * @param ms2Map
+     * @param ms1Block
+     * @param ms2Block
      * @param params
      * @return
      */
-    public DataDO extract(PeptideCoord coord, TreeMap<Float, MzIntensityPairs> ms1Map, TreeMap<Float, MzIntensityPairs> ms2Map, AnalyzeParams params, boolean withIonCount, Float ionsHighLimit) {
-        //所有的碎片共享同一个RT数组
-        ArrayList<Float> rtList = new ArrayList<>();
-        for (Float rt : ms2Map.keySet()) {
-            if (params.getMethod().getEic().getRtWindow() != -1 && rt > coord.getRtEnd()) {
-                break;
+    public DataDO extract(PeptideCoord coord, SpectrumBlock ms1Block, SpectrumBlock ms2Block, AnalyzeParams params, boolean withIonCount, Float ionsHighLimit) {
+        //所有的碎片共享同一个RT数组,直接按照光谱编号访问,不需要再按rt查询光谱
+        int from = 0;
+        int to = ms2Block.size();
+        if (params.getMethod().getEic().getRtWindow() != -1) {
+            from = ms2Block.firstIndexNotBelow(coord.getRtStart());
+            to = Math.max(from, ms2Block.firstIndexAbove(coord.getRtEnd()));
+        }
+        float[] rtArray = Arrays.copyOfRange(ms2Block.getRts(), from, to);
+
+        float ppmWindow = params.getMethod().getEic().getMzWindow().floatValue();
+        List<float[]> fragmentInts = new ArrayList<>(coord.getFragments().size());
+        for (FragmentInfo fi : coord.getFragments()) {
+            fragmentInts.add(acc(fi.getMz().floatValue(), ppmWindow, from, to, ms2Block, false));
+        }
+        //提取self mz
+        float[] selfIntArray = acc(coord.getMz().floatValue(), ppmWindow, from, to, ms2Block, true);
+        return buildData(coord, rtArray, fragmentInts, selfIntArray, ms1Block, ms2Block, params, withIonCount, ionsHighLimit);
+    }
+
+    /**
+     * 从批量提取的结果中构建单个肽段的DataDO,结果与extract(coord, ms1Block, ms2Block, params, withIonCount, ionsHighLimit)完全一致
+     * 如果坐标在批量提取之后被修改过(例如打分时扩大了RT范围),则退回到逐个提取的方式
+     *
+     * @param coord      肽段坐标
+     * @param batch      extractBatch的结果
+     * @param coordIndex 坐标在批次中的索引
+     * @return
+     */
+    public DataDO extract(PeptideCoord coord, XicBatch batch, int coordIndex, SpectrumBlock ms1Block, SpectrumBlock ms2Block, AnalyzeParams params, boolean withIonCount, Float ionsHighLimit) {
+        int fragmentSize = coord.isDecoy() ? batch.getDecoySize()[coordIndex] : batch.getTargetSize()[coordIndex];
+        if (coord.getRtStart() != batch.getCoordRtStart()[coordIndex] || coord.getRtEnd() != batch.getCoordRtEnd()[coordIndex] || coord.getFragments().size() != fragmentSize) {
+            return extract(coord, ms1Block, ms2Block, params, withIonCount, ionsHighLimit);
+        }
+
+        float[] rtArray = Arrays.copyOfRange(batch.getRts(), batch.getRtFrom()[coordIndex], batch.getRtTo()[coordIndex]);
+        List<float[]> fragmentInts = new ArrayList<>(fragmentSize);
+        for (int i = 0; i < fragmentSize; i++) {
+            float[] intArray = batch.getFragmentInts(coordIndex, i, coord.isDecoy());
+            fragmentInts.add(isAllZero(intArray) ? null : intArray);
+        }
+        return buildData(coord, rtArray, fragmentInts, batch.getSelfInts(coordIndex), ms1Block, ms2Block, params, withIonCount, ionsHighLimit);
+    }
+
+    /**
+     * 批量提取XIC
+     * 对于窗口内的每一张光谱,将批次中所有坐标(包含真伪肽段碎片及前体自身)的mz窗口排好序以后,在mz数组上做一次归并式扫描完成累加,
+     * 替代了每一个碎片在每一帧上都要进行一次二分查找及TreeMap查询的逐个提取方式
+     *
+     * @param coords    同一个窗口内的肽段坐标,必须为非伪肽段状态
+     * @param ms2Block  窗口内的所有光谱
+     * @param params    分析参数
+     * @param withDecoy 是否同时提取伪肽段碎片.只有当每一个真肽段都会提取对应的伪肽段时才需要开启,否则伪肽段在真肽段选出峰组以后再逐个提取
+     * @return [coord][fragment][rt]形式的提取结果
+     */
+    public XicBatch extractBatch(List<PeptideCoord> coords, SpectrumBlock ms2Block, AnalyzeParams params, boolean withDecoy) {
+        int spectraSize = ms2Block.size();
+        float[] rts = ms2Block.getRts();
+
+        XicBatch batch = new XicBatch(rts, ms2Block, coords.size());
+        boolean fullRt = params.getMethod().getEic().getRtWindow() == -1;
+        //不提取伪肽段碎片时不生成对应的mz窗口,此时伪肽段的提取会退回到逐个提取的方式
+        float ppmWindow = params.getMethod().getEic().getMzWindow().floatValue();
+
+        //Step1.计算每一个坐标的RT范围并分配缓冲区
+        int windowSize = 0;
+        for (int c = 0; c < coords.size(); c++) {
+            PeptideCoord coord = coords.get(c);
+            batch.getCoordRtStart()[c] = coord.getRtStart();
+            batch.getCoordRtEnd()[c] = coord.getRtEnd();
+            if (fullRt) {
+                batch.getRtFrom()[c] = 0;
+                batch.getRtTo()[c] = spectraSize;
+            } else {
+                int from = ms2Block.firstIndexNotBelow(coord.getRtStart());
+                int to = ms2Block.firstIndexAbove(coord.getRtEnd());
+                batch.getRtFrom()[c] = from;
+                batch.getRtTo()[c] = Math.max(from, to);
             }
-            if (params.getMethod().getEic().getRtWindow() == -1 || (rt >= coord.getRtStart() && rt <= coord.getRtEnd())) {
-                rtList.add(rt);
+            int targetSize = coord.getFragments().size();
+            int decoySize = !withDecoy || coord.getDecoyFragments() == null ? 0 : coord.getDecoyFragments().size();
+            batch.getTargetSize()[c] = targetSize;
+            batch.getDecoySize()[c] = decoySize;
+            int rtLength = batch.getRtTo()[c] - batch.getRtFrom()[c];
+            float[][] coordInts = new float[targetSize + decoySize + 1][];
+            for (int f = 0; f < coordInts.length; f++) {
+                coordInts[f] = new float[rtLength];
+            }
+            batch.getInts()[c] = coordInts;
+            windowSize += coordInts.length;
+        }
+
+        //Step2.生成所有的mz窗口,计算方式与acc函数保持一致
+        float[] mzStarts = new float[windowSize];
+        float[] mzEnds = new float[windowSize];
+        int[] originCoord = new int[windowSize];
+        int[] originFrag = new int[windowSize];
+        long[] sortKeys = new long[windowSize];
+        int w = 0;
+        for (int c = 0; c < coords.size(); c++) {
+            PeptideCoord coord = coords.get(c);
+            int targetSize = batch.getTargetSize()[c];
+            int decoySize = batch.getDecoySize()[c];
+            for (int f = 0; f <= targetSize + decoySize; f++) {
+                float mz;
+                if (f < targetSize) {
+                    mz = coord.getFragments().get(f).getMz().floatValue();
+                } else if (f < targetSize + decoySize) {
+                    mz = coord.getDecoyFragments().get(f - targetSize).getMz().floatValue();
+                } else {
+                    mz = coord.getMz().floatValue();
+                }
+                float window = mz * ppmWindow * Constants.PPM_F;
+                mzStarts[w] = mz - window;
+                mzEnds[w] = mz + window;
+                originCoord[w] = c;
+                originFrag[w] = f;
+                //非负float的bit位与数值大小的顺序一致,高32位存放mzStart,低32位存放窗口索引,直接对long数组排序即可
+                sortKeys[w] = ((long) Float.floatToIntBits(Math.max(mzStarts[w], 0f)) << 32) | w;
+                w++;
             }
         }
+        Arrays.sort(sortKeys);
+        //按mzStart排序后重新编号,编号的大小顺序即为窗口的mz顺序.同一个坐标的窗口编号在coordWindows中从小到大排列
+        float[] sortedStarts = new float[windowSize];
+        float[] sortedEnds = new float[windowSize];
+        int[] windowCoord = new int[windowSize];
+        int[] windowFrag = new int[windowSize];
+        int[][] coordWindows = new int[coords.size()][];
+        for (int c = 0; c < coords.size(); c++) {
+            coordWindows[c] = new int[batch.getInts()[c].length];
+        }
+        int[] filled = new int[coords.size()];
+        for (int k = 0; k < windowSize; k++) {
+            int origin = (int) sortKeys[k];
+            int c = originCoord[origin];
+            sortedStarts[k] = mzStarts[origin];
+            sortedEnds[k] = mzEnds[origin];
+            windowCoord[k] = c;
+            windowFrag[k] = originFrag[origin];
+            coordWindows[c][filled[c]++] = k;
+        }
 
-        float[] rtArray = new float[rtList.size()];
-        for (int i = 0; i < rtList.size(); i++) {
-            rtArray[i] = rtList.get(i);
+        //坐标按照rt范围的开始位置与结束位置分别排序,扫描光谱时用两个指针维护当前有效的坐标
+        Integer[] byFrom = new Integer[coords.size()];
+        Integer[] byTo = new Integer[coords.size()];
+        for (int c = 0; c < coords.size(); c++) {
+            byFrom[c] = c;
+            byTo[c] = c;
         }
+        Arrays.sort(byFrom, Comparator.comparingInt(c -> batch.getRtFrom()[c]));
+        Arrays.sort(byTo, Comparator.comparingInt(c -> batch.getRtTo()[c]));
+
+        //Step3.按光谱分段并行扫描,每一个线程只分配一次临时数组
+        int parts = Math.max(1, Math.min(spectraSize, vmProperties.getScoringThreads() * 4));
+        int totalWindows = windowSize;
+        scoringPool.forEach(parts, part -> {
+            int[] activeWindows = new int[totalWindows];
+            int[] merged = new int[totalWindows];
+            int[] added = new int[totalWindows];
+            boolean[] active = new boolean[coords.size()];
+            float[] results = new float[totalWindows];
+            int size = 0;
+            int fromPointer = 0;
+            int toPointer = 0;
+            int end = (int) ((long) spectraSize * (part + 1) / parts);
+            for (int s = (int) ((long) spectraSize * part / parts); s < end; s++) {
+                //移除rt范围已经结束的坐标
+                boolean removed = false;
+                while (toPointer < byTo.length && batch.getRtTo()[byTo[toPointer]] <= s) {
+                    int c = byTo[toPointer++];
+                    if (active[c]) {
+                        active[c] = false;
+                        removed = true;
+                    }
+                }
+                if (removed) {
+                    int kept = 0;
+                    for (int k = 0; k < size; k++) {
+                        if (active[windowCoord[activeWindows[k]]]) {
+                            activeWindows[kept++] = activeWindows[k];
+                        }
+                    }
+                    size = kept;
+                }
+                //加入rt范围已经开始的坐标,新窗口排序后与当前窗口归并,保持mz顺序
+                int addedSize = 0;
+                while (fromPointer < byFrom.length && batch.getRtFrom()[byFrom[fromPointer]] <= s) {
+                    int c = byFrom[fromPointer++];
+                    if (batch.getRtTo()[c] > s) {
+                        active[c] = true;
+                        System.arraycopy(coordWindows[c], 0, added, addedSize, coordWindows[c].length);
+                        addedSize += coordWindows[c].length;
+                    }
+                }
+                if (addedSize > 0) {
+                    Arrays.sort(added, 0, addedSize);
+                    int i = 0, j = 0, m = 0;
+                    while (i < size || j < addedSize) {
+                        if (j == addedSize || (i < size && activeWindows[i] < added[j])) {
+                            merged[m++] = activeWindows[i++];
+                        } else {
+                            merged[m++] = added[j++];
+                        }
+                    }
+                    System.arraycopy(merged, 0, activeWindows, 0, m);
+                    size = m;
+                }
+                if (size == 0) {
+                    continue;
+                }
+                ConvolutionUtil.accumulation(ms2Block, s, sortedStarts, sortedEnds, activeWindows, size, results);
+                for (int k = 0; k < size; k++) {
+                    int coordIndex = windowCoord[activeWindows[k]];
+                    batch.getInts()[coordIndex][windowFrag[activeWindows[k]]][s - batch.getRtFrom()[coordIndex]] = results[k];
+                }
+            }
+        });
+        return batch;
+    }
 
+    private DataDO buildData(PeptideCoord coord, float[] rtArray, List<float[]> fragmentInts, float[] selfIntArray, SpectrumBlock ms1Block, SpectrumBlock ms2Block, AnalyzeParams params, boolean withIonCount, Float ionsHighLimit) {
         DataDO data = new DataDO(coord);
         data.setRtArray(rtArray);
         if (StringUtils.isNotEmpty(params.getOverviewId())) {
@@ -150,19 +373,17 @@ public class Extractor {
         }
 
         boolean isHit = false;
-        float ppmWindow = params.getMethod().getEic().getMzWindow().floatValue();
-        for (FragmentInfo fi : coord.getFragments()) {
-            float[] intArray = acc(fi.getMz().floatValue(), ppmWindow, rtArray, ms2Map, false);
+        List<FragmentInfo> fragments = coord.getFragments();
+        for (int i = 0; i < fragments.size(); i++) {
+            float[] intArray = fragmentInts.get(i);
             if (intArray == null) {//如果该cutInfo没有XIC到任何数据,则不存入IntMap中,这里专门写这个if逻辑是为了帮助后续阅读代码的时候更加容易理解.我们在这边是特地没有将未检测到的碎片放入map的
                 continue;
             } else {
                 isHit = true;
-                data.getIntMap().put(fi.getCutInfo(), intArray); //记录每一个碎片的光谱图
+                data.getIntMap().put(fragments.get(i).getCutInfo(), intArray); //记录每一个碎片的光谱图
             }
         }
 
-        //提取self mz
-        float[] selfIntArray = acc(coord.getMz().floatValue(), ppmWindow, rtArray, ms2Map, true);
         data.setSelfInts(selfIntArray);
 
         //如果所有的片段均没有提取到XIC的结果,则直接返回null
@@ -172,11 +393,11 @@ public class Extractor {
 
         //计算每一帧的离子碎片总数
         if (withIonCount) {
-            calcIonsCount(data, coord, ms2Map, params.getMethod().getEic().getIonsLow(), ionsHighLimit == null ? params.getMethod().getEic().getIonsHigh() : ionsHighLimit);
+            calcIonsCount(data, coord, ms2Block, params.getMethod().getEic().getIonsLow(), ionsHighLimit == null ? params.getMethod().getEic().getIonsHigh() : ionsHighLimit);
         }
         //ms1数据不为空的时候需要增加ms1谱图
-        if (ms1Map != null) {
-            Eic eic = extractMS1(coord, ms1Map, params);
+        if (ms1Block != null) {
+            Eic eic = extractMS1(coord, ms1Block, params);
             if (data.getRtArray().length > eic.rts().length) {
                 data.setMs1Ints(ArrayUtil.add(eic.ints(), 0));
             } else if (data.getRtArray().length < eic.rts().length) {
@@ -189,69 +410,67 @@ public class Extractor {
     }
 
     /**
-     * 根据coord肽段坐标读取run对应的aird文件中涉及的相关光谱图
+     * 按照MS2窗口的前体mz范围切分run的MS1光谱
+     * MS1按rt分批解码,每一批解码后立即按每一个分区的mz范围裁剪,完整的MS1光谱不会同时驻留在内存中,也不进入共享的光谱缓存
      *
      * @param run
+     * @param blocks 所有MS2窗口,分区编号与窗口在列表中的位置一致
+     * @param params
      * @return
      */
-    public TreeMap<Float, MzIntensityPairs> getMS1Map(RunDO run) throws XException {
+    public MS1Partition partitionMS1(RunDO run, List<BlockIndexDO> blocks, AnalyzeParams params) throws XException {
         ConvolutionUtil.checkRun(run);
 
-        Compressor mzCompressor = run.fetchCompressor(Compressor.TARGET_MZ);
-        Compressor intCompressor = run.fetchCompressor(Compressor.TARGET_INTENSITY);
-
         //Step1.获取窗口信息
-        TreeMap<Float, MzIntensityPairs> ms1Map;
         BlockIndexDO index = blockIndexService.getMS1(run.getId());
         if (index == null) {
             throw new XException(ResultCode.BLOCK_INDEX_NOT_EXISTED);
         }
-        DIAParser parser = null;
+        //窗口两侧各扩展extractMS1使用的mz窗口的两倍
+        double ppm = params.getMethod().getEic().getMzWindow() * Constants.PPM * 2;
+        double[] starts = new double[blocks.size()];
+        double[] ends = new double[blocks.size()];
+        for (int i = 0; i < blocks.size(); i++) {
+            WindowRange range = blocks.get(i).getRange();
+            starts[i] = range.getStart() - range.getStart() * ppm;
+            ends[i] = range.getEnd() + range.getEnd() * ppm;
+        }
+        MS1Partition partition = MS1Partition.plan(starts, ends);
+
+        //Step2.分批解码并裁剪,完整的MS1只在切分期间按批存在,不进入光谱块缓存
+        List<List<SpectrumBlock>> parts = new ArrayList<>();
+        for (int p = 0; p < partition.size(); p++) {
+            parts.add(new ArrayList<>());
+        }
         try {
-            parser = new DIAParser(run.getAirdPath(), mzCompressor, intCompressor, mzCompressor.getPrecision());
-            ms1Map = parser.getSpectrums(index.getStartPtr(), index.getEndPtr(), index.getRts(), index.getMzs(), index.getInts());
-        } catch (Exception e) {
-            log.error(e.getMessage());
+            spectrumCache.scan(run, index, Constants.MS1_CHUNK_SPECTRA, spectra -> partition.split(spectra, parts));
+        } catch (XException e) {
             throw new XException(ResultCode.PARSE_MS1_SPECTRUM_FAILED);
-        } finally {
-            if (parser != null) {
-                parser.close();
-            }
         }
-        return ms1Map;
+        partition.build(parts);
+        return partition;
     }
 
     /**
      * 根据coord肽段坐标读取run对应的aird文件中涉及的相关光谱图
+     * 只读取coord的rt范围内的光谱,并且只保留前体mz附近的数据点,用于单个肽段的实时提取
      *
      * @param run
      * @param coord
+     * @param params
      * @return
      */
-    public TreeMap<Float, MzIntensityPairs> getMS1Map(RunDO run, PeptideCoord coord) throws XException {
+    public SpectrumBlock getMS1Block(RunDO run, PeptideCoord coord, AnalyzeParams params) throws XException {
         ConvolutionUtil.checkRun(run);
-        Compressor mzCompressor = run.fetchCompressor(Compressor.TARGET_MZ);
-        Compressor intCompressor = run.fetchCompressor(Compressor.TARGET_INTENSITY);
 
         //Step1.获取窗口信息
-        TreeMap<Float, MzIntensityPairs> ms1Map;
         BlockIndexDO index = blockIndexService.getMS1(run.getId());
         if (index == null) {
             throw new XException(ResultCode.BLOCK_INDEX_NOT_EXISTED);
         }
-        DIAParser parser = null;
-        try {
-            parser = new DIAParser(run.getAirdPath(), mzCompressor, intCompressor, mzCompressor.getPrecision());
-            ms1Map = parser.getSpectrumsByRtRange(index.getStartPtr(), index.getRts(), index.getMzs(), index.getInts(), (float) coord.getRtStart(), (float) coord.getRtEnd());
-        } catch (Exception e) {
-            log.error(e.getMessage());
-            throw new XException(ResultCode.PARSE_ERROR);
-        } finally {
-            if (parser != null) {
-                parser.close();
-            }
-        }
-        return ms1Map;
+        //保留的mz范围为extractMS1使用的窗口的两倍
+        double window = coord.getMz() * params.getMethod().getEic().getMzWindow() * Constants.PPM * 2;
+        return runService.getSpectra(run, index, coord.getRtStart(), coord.getRtEnd(), coord.getMz() - window, coord.getMz() + window);
     }
 
     /**
@@ -261,30 +480,16 @@ public class Extractor {
      * @param coord
      * @return
      */
-    public TreeMap<Float, MzIntensityPairs> getMS2Map(RunDO run, PeptideCoord coord) throws XException {
+    public SpectrumBlock getMS2Block(RunDO run, PeptideCoord coord) throws XException {
         ConvolutionUtil.checkRun(run);
-        Compressor mzCompressor = run.fetchCompressor(Compressor.TARGET_MZ);
-        Compressor intCompressor = run.fetchCompressor(Compressor.TARGET_INTENSITY);
 
         //Step1.获取窗口信息
-        TreeMap<Float, MzIntensityPairs> ms2Map;
         BlockIndexDO index = blockIndexService.getMS2(run.getId(), coord.getMz());
         if (index == null) {
             throw new XException(ResultCode.BLOCK_INDEX_NOT_EXISTED);
         }
-        DIAParser parser = null;
-        try {
-            parser = new DIAParser(run.getAirdPath(), mzCompressor, intCompressor, mzCompressor.getPrecision());
-            ms2Map = parser.getSpectrumsByRtRange(index.getStartPtr(), index.getRts(), index.getMzs(), index.getInts(), (float) coord.getRtStart(), (float) coord.getRtEnd());
-        } catch (Exception e) {
-            log.error(e.getMessage());
-            throw new XException(ResultCode.PARSE_ERROR);
-        } finally {
-            if (parser != null) {
-                parser.close();
-            }
-        }
-        return ms2Map;
+        //光谱块在共享缓存中时直接截取,否则只解码coord的rt范围内的光谱
+        return runService.getSpectra(run, index, coord.getRtStart(), coord.getRtEnd(), null, null);
     }
 
     /**
@@ -304,9 +509,9 @@ public class Extractor {
             double targetRt = run.getIrt().getSi().realRt(rt);
             coord.setRtRange(targetRt - 300, targetRt + 300);
         }
-        TreeMap<Float, MzIntensityPairs> ms1Map = getMS1Map(run, coord);
-        TreeMap<Float, MzIntensityPairs> ms2Map = getMS2Map(run, coord);
-        AnyPair<DataDO, DataSumDO> dataPair = coreFunc.predictOneNiubi(coord, ms1Map, ms2Map, run, overview, params);
+        SpectrumBlock ms1Block = getMS1Block(run, coord, params);
+        SpectrumBlock ms2Block = getMS2Block(run, coord);
+        AnyPair<DataDO, DataSumDO> dataPair = coreFunc.predictOneNiubi(coord, ms1Block, ms2Block, run, overview, params);
 //        AnyPair<DataDO, DataSumDO> dataPair = coreFunc.predictOneDelete(coord, ms2Result.getData(), run, overview, params);
         if (dataPair == null) {
             return Result.Error(ResultCode.ANALYSE_DATA_ARE_ALL_ZERO);
@@ -326,12 +531,12 @@ public class Extractor {
      *
      * @param finalList
      * @param coordinates
-     * @param ms2Map
+     * @param ms2Block
      * @param params
      */
-    public void extract4Irt(List<DataDO> finalList, List<PeptideCoord> coordinates, TreeMap<Float, MzIntensityPairs> ms2Map, AnalyzeParams params) {
+    public void extract4Irt(List<DataDO> finalList, List<PeptideCoord> coordinates, SpectrumBlock ms2Block, AnalyzeParams params) {
         for (PeptideCoord coord : coordinates) {
-            DataDO data = extract(coord, null, ms2Map, params, true, null);
+            DataDO data = extract(coord, null, ms2Block, params, true, null);
             if (data != null) {
                 finalList.add(data);
             }
@@ -350,29 +555,38 @@ public class Extractor {
         TaskDO task = params.getTaskDO();
         //Step1.获取窗口信息
         List<WindowRange> ranges = run.getWindowRanges();
-        BlockIndexQuery query = new BlockIndexQuery(run.getId(), 2);
 
-        //获取所有MS2的窗口
-        List<BlockIndexDO> blockIndexList = blockIndexService.getAll(query);
-        blockIndexList = blockIndexList.stream().sorted(Comparator.comparing(blockIndexDO -> blockIndexDO.getRange().getStart())).toList();
+        //获取所有MS2的窗口,已经按照窗口的开始mz排序
+        List<BlockIndexDO> blockIndexList = blockIndexService.getAllMS2ByRunId(run.getId());
         task.addLog("Total Windows:" + ranges.size() + ",Start XIC processing");
         taskService.update(task);
         //按窗口开始扫描.如果一共有N个窗口,则一共分N个批次进行XIC提取
+        //三段式流水线:预读线程负责构建坐标并解码下一个窗口,当前线程负责选峰打分,入库操作异步执行.解码后的窗口数目受内存预算控制
+        Semaphore budget = new Semaphore(vmProperties.getPrefetch());
+        BlockingQueue<WindowBlock> queue = new LinkedBlockingQueue<>();
+        AtomicBoolean stopped = new AtomicBoolean(false);
+        AtomicReference<Exception> prefetchError = new AtomicReference<>();
+        List<BlockIndexDO> blocks = blockIndexList;
+        DataWriter writer = new DataWriter(dataService, overviewDO.getProjectId(), vmProperties.getPersistChunk(), vmProperties.getPersistQueue(), vmProperties.getPersistRetries(), persistExecutor);
         int count = 1;
-        DIAParser parser = null;
         try {
-            parser = new DIAParser(run.getAirdIndexPath());
             long peakCount = 0L;
             int dataCount = 0;
-            TreeMap<Float, MzIntensityPairs> ms1Map = getMS1Map(run);
-
-            for (BlockIndexDO index : blockIndexList) {
-
+            //MS1只在当前线程中按窗口取用,每一个分区在最后一个使用它的窗口取走以后即可回收
+            MS1Partition ms1Partition = partitionMS1(run, blocks, params);
+            task.addLog("MS1 Partitioned,Partitions:" + ms1Partition.size() + ",Bytes:" + ms1Partition.getBytes());
+            CompletableFuture.runAsync(() -> prefetch(run, params, blocks, budget, queue, stopped, prefetchError), prefetchExecutor);
+
+            for (int i = 0; i < blocks.size(); i++) {
+                WindowBlock block = queue.take();
+                if (block.index() == null) {
+                    break;
+                }
+                SpectrumBlock ms1Block = ms1Partition.take(i);
+                BlockIndexDO index = block.index();
                 long start = System.currentTimeMillis();
-                task.addLog("Processing:" + index.getRange().getStart() + "-" + index.getRange().getEnd() + ",Current:" + count + "/" + blockIndexList.size());
-                //构建坐标
-                List<PeptideCoord> coords = peptideService.buildCoord(params.getAnaLibId(), index.getRange(), params.getMethod().getEic().getRtWindow(), run.getIrt().getSi());
-                if (coords.isEmpty()) {
+                task.addLog("Processing:" + index.getRange().getStart() + "-" + index.getRange().getEnd() + ",Current:" + count + "/" + blocks.size());
+                if (block.coords().isEmpty()) {
                     task.addLog("No Coordinates Found,Rang:" + index.getRange().getStart() + ":" + index.getRange().getEnd());
                     taskService.update(task);
                     continue;
@@ -380,11 +594,15 @@ public class Extractor {
 
                 //Step3.提取指定原始谱图
                 List<DataDO> dataList = null;
-                TreeMap<Float, MzIntensityPairs> ms2Map = parser.getSpectrums(index.getStartPtr(), index.getEndPtr(), index.getRts(), index.getMzs(), index.getInts());
-                if (params.getReselect()) {
-                    dataList = coreFunc.reselect(run, coords, ms1Map, ms2Map, params);
-                } else {
-                    dataList = coreFunc.csi(run, coords, ms1Map, ms2Map, params);
+                try {
+                    if (params.getReselect()) {
+                        dataList = coreFunc.reselect(run, block.coords(), ms1Block, block.ms2Block(), params);
+                    } else {
+                        dataList = coreFunc.csi(run, block.coords(), ms1Block, block.ms2Block(), params);
+                    }
+                } finally {
+                    //打分完成后该窗口的光谱即可释放,预读线程可以开始解码新的窗口
+                    budget.release();
                 }
 
                 if (dataList != null) {
@@ -393,33 +611,94 @@ public class Extractor {
                 } else {
                     task.addLog("Analysis Data is empty");
                 }
-                dataService.insert(dataList, overviewDO.getProjectId());
+                //入库操作由写入线程批量执行,等待入库的窗口超过persist.queue时在此阻塞,之前的窗口入库失败时抛出异常并停止提取
+                writer.write(dataList);
                 task.addLog("(" + count + "-[" + index.getRange().getStart() + "," + index.getRange().getEnd() + "])XIC Finished,Effective Peptides:" + (dataList == null ? 0 : dataList.size()) + ",Time Cost:" + (System.currentTimeMillis() - start) / 1000 + "s");
                 taskService.update(task);
                 count++;
             }
+            writer.close();
+            if (prefetchError.get() != null) {
+                throw prefetchError.get();
+            }
+            Map<String, Object> persistStat = writer.stat();
+            task.addLog("Persist Finished,Docs:" + persistStat.get("docs") + ",Docs/s:" + persistStat.get("docsPerSecond") + ",Bytes/s:" + persistStat.get("bytesPerSecond") + ",Retries:" + persistStat.get("retries"));
+            overviewDO.getStatistic().put(StatConst.PERSIST_DOCS_PER_SECOND, persistStat.get("docsPerSecond"));
+            overviewDO.getStatistic().put(StatConst.PERSIST_BYTES_PER_SECOND, persistStat.get("bytesPerSecond"));
 
             task.addLog("Total Peptide Count:" + dataCount + ",Total Peak Count:" + peakCount);
             overviewDO.getStatistic().put(StatConst.TOTAL_PEPTIDE_COUNT, dataCount);
             overviewDO.getStatistic().put(StatConst.TOTAL_PEAK_COUNT, peakCount);
             overviewService.update(overviewDO);
         } catch (XException xe) {
-            xe.printStackTrace();
+            log.error("XIC Failed,Overview:" + overviewDO.getId(), xe);
             task.finish(TaskStatus.FAILED.getName(), xe.getErrorMsg());
             taskService.update(task);
+        } catch (InterruptedException ie) {
+            //任务被取消,恢复中断标记交由调用方处理
+            Thread.currentThread().interrupt();
+            log.error("XIC Interrupted,Overview:" + overviewDO.getId(), ie);
+            task.finish(TaskStatus.FAILED.getName(), "Interrupted");
+            taskService.update(task);
+        } catch (Exception e) {
+            log.error("XIC Failed,Overview:" + overviewDO.getId(), e);
+            task.finish(TaskStatus.FAILED.getName(), e.getMessage());
+            taskService.update(task);
+        } finally {
+            //通知预读线程停止,并释放可能阻塞预读线程的内存预算
+            stopped.set(true);
+            budget.release(blocks.size());
+            //异常退出时也需要结束写入线程,已提交的数据仍会完成入库.正常结束时writer已经关闭,此处不再重复等待
+            writer.shutdown();
+        }
+    }
+
+    /**
+     * XIC流水线的预读阶段:按顺序构建每一个窗口的肽段坐标并解码光谱,放入队列中等待打分
+     * 解码前需要先获取内存预算,队列的最后一个元素为index为null的结束标记
+     */
+    private void prefetch(RunDO run, AnalyzeParams params, List<BlockIndexDO> blocks, Semaphore budget, BlockingQueue<WindowBlock> queue, AtomicBoolean stopped, AtomicReference<Exception> prefetchError) {
+        DIAParser parser = null;
+        try {
+            parser = new DIAParser(run.getAirdIndexPath());
+            for (BlockIndexDO index : blocks) {
+                if (stopped.get()) {
+                    break;
+                }
+                //构建坐标
+                List<PeptideCoord> coords = peptideService.buildCoord(params.getAnaLibId(), index.getRange(), params.getMethod().getEic().getRtWindow(), run.getIrt().getSi());
+                if (coords.isEmpty()) {
+                    queue.put(new WindowBlock(index, coords, null));
+                    continue;
+                }
+                budget.acquire();
+                if (stopped.get()) {
+                    break;
+                }
+                queue.put(new WindowBlock(index, coords, spectrumCache.get(run, index, parser)));
+            }
+        } catch (Exception e) {
+            prefetchError.set(e);
         } finally {
             if (parser != null) {
                 parser.close();
             }
+            queue.add(new WindowBlock(null, null, null));
         }
     }
 
-    public void calcIonsCount(DataDO dataDO, PeptideCoord coord, TreeMap<Float, MzIntensityPairs> rtMap, Float ionsLowLimit, Float ionsHighLimit) {
+    public void calcIonsCount(DataDO dataDO, PeptideCoord coord, SpectrumBlock ms2Block, Float ionsLowLimit, Float ionsHighLimit) {
         String maxIon = coord.getFragments().get(0).getCutInfo();
+        //理论离子序列只与肽段本身有关,真伪肽段以及打分时的重新提取都复用同一份缓存
+        double[] ladder = coord.getByLadder();
+        if (ladder == null) {
+            ladder = diaScorer.buildBYLadder(coord.getUnimodMap(), coord.getSequence(), coord.getCharge());
+            coord.setByLadder(ladder);
+        }
         int[] ionsLow = new int[dataDO.getRtArray().length];
         int[] ionsHigh = new int[dataDO.getRtArray().length];
         for (int i = 0; i < dataDO.getRtArray().length; i++) {
-            MzIntensityPairs pairs = rtMap.get(dataDO.getRtArray()[i]);
+            int spectrumIndex = ms2Block.indexOf(dataDO.getRtArray()[i]);
             float[] maxIntensities = dataDO.getIntMap().get(maxIon); //获取该spectrum中maxIon的强度列表
             float maxIonIntensityInThisSpectrum = 0;
             if (maxIntensities == null || maxIntensities.length == 0) {
@@ -428,10 +707,9 @@ public class Extractor {
                 maxIonIntensityInThisSpectrum = maxIntensities[i];
             }
 
-            IntegerPair pair = diaScorer.calcTotalIons(pairs,
-                    coord.getUnimodMap(),
-                    coord.getSequence(),
-                    coord.getCharge(),
+            IntegerPair pair = diaScorer.calcTotalIons(ms2Block,
+                    spectrumIndex,
+                    ladder,
                     ionsLowLimit,
                     ionsHighLimit,
                     maxIonIntensityInThisSpectrum);
@@ -449,19 +727,20 @@ public class Extractor {
      *
      * @param mz
      * @param ppm
-     * @param rtArray
-     * @param msMap
+     * @param from    开始的光谱编号
+     * @param to      结束的光谱编号(不包含)
+     * @param msBlock
      * @return
      */
-    private float[] acc(float mz, float ppm, float[] rtArray, TreeMap<Float, MzIntensityPairs> msMap, boolean withZero) {
+    private float[] acc(float mz, float ppm, int from, int to, SpectrumBlock msBlock, boolean withZero) {
         float window = mz * ppm * Constants.PPM_F;
         float mzStart = mz - window;
         float mzEnd = mz + window;
-        float[] intArray = new float[rtArray.length];
+        float[] intArray = new float[to - from];
         boolean isAllZero = true;
-        for (int i = 0; i < rtArray.length; i++) {
-            float acc = ConvolutionUtil.accumulation(msMap.get(rtArray[i]), mzStart, mzEnd);
-            intArray[i] = acc;
+        for (int i = from; i < to; i++) {
+            float acc = ConvolutionUtil.accumulation(msBlock, i, mzStart, mzEnd);
+            intArray[i - from] = acc;
             if (acc != 0) {
                 isAllZero = false;
             }
@@ -472,4 +751,13 @@ public class Extractor {
             return intArray;
         }
     }
+
+    private boolean isAllZero(float[] intArray) {
+        for (float intensity : intArray) {
+            if (intensity != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
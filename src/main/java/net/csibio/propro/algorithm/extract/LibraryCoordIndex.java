@@ -0,0 +1,172 @@
+package net.csibio.propro.algorithm.extract;
+
+import lombok.extern.slf4j.Slf4j;
+import net.csibio.propro.config.VMProperties;
+import net.csibio.propro.dao.LibraryDAO;
+import net.csibio.propro.dao.PeptideDAO;
+import net.csibio.propro.domain.bean.peptide.LibraryCoordSnapshot;
+import net.csibio.propro.domain.db.PeptideDO;
+import net.csibio.propro.domain.query.PeptideQuery;
+import net.csibio.propro.utils.RepositoryUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 进程内共享的标准库坐标索引,每一个标准库只从数据库中完整读取一次,构建为按前体mz排序的LibraryCoordSnapshot
+ * 所有run的XIC提取,iRT计算以及相似肽段的筛选都从快照中按mz窗口二分切片,不再为每一个窗口单独查询数据库
+ * <p>
+ * 每一个标准库维护一个版本号,PeptideService与LibraryService在修改标准库时调用invalidate使版本号递增,
+ * 构建期间版本号发生变化的快照只返回给本次调用方,不会进入缓存.缓存按照标准库数目进行LRU淘汰,上限为library.index.max.
+ * 版本号,LRU淘汰与构建锁由VersionedCache实现
+ * <p>
+ * library.index.disk开启时,从数据库构建的快照同时保存为标准库目录下的二进制文件,缓存未命中时优先映射读取该文件.
+ * 文件头中记录了开始构建时标准库的最后修改时间,invalidate在数据库写入完成以后更新该时间并删除对应的文件,文件不存在时不访问数据库,
+ * 因此即使写入发生在快照构建期间或者进程重启以前,过期的文件也会因为修改时间或者肽段数目与数据库不一致而被删除并重新构建
+ */
+@Slf4j
+@Component("libraryCoordIndex")
+public class LibraryCoordIndex {
+
+    @Autowired
+    VMProperties vmProperties;
+    @Autowired
+    PeptideDAO peptideDAO;
+    @Autowired
+    LibraryDAO libraryDAO;
+
+    private final VersionedCache<LibraryCoordSnapshot> snapshots = new VersionedCache<>("libraryIds", () -> vmProperties.getLibraryIndexMax(),
+            LibraryCoordSnapshot::getVersion, LibraryCoordSnapshot::bytes);
+
+    AtomicLong diskLoads = new AtomicLong(0);
+    AtomicLong diskSaves = new AtomicLong(0);
+
+    /**
+     * 获取标准库的坐标快照,缓存中不存在或者已经过期时从数据库重新构建
+     *
+     * @param libraryId
+     * @return 所有调用方共享的快照,调用方只能读取
+     */
+    public LibraryCoordSnapshot get(String libraryId) {
+        return snapshots.get(libraryId, this::load);
+    }
+
+    /**
+     * 标准库中的肽段被修改,数据库写入完成以后调用,已经构建的快照立即失效
+     * 快照文件存在时同时更新标准库的最后修改时间并删除该文件,文件不存在时只递增版本号,
+     * 逐个肽段写入的循环中只有第一次调用会访问数据库
+     *
+     * @param libraryId
+     */
+    public void invalidate(String libraryId) {
+        if (libraryId == null) {
+            return;
+        }
+        snapshots.invalidate(libraryId);
+        //与构建同一个标准库的线程互斥,版本号已经递增,持有锁以后不会再有旧的快照被写入文件
+        synchronized (snapshots.lock(libraryId)) {
+            File file = new File(RepositoryUtil.getLibraryCoordPath(libraryId));
+            if (!file.exists()) {
+                return;
+            }
+            libraryDAO.updateLastModifiedDate(libraryId);
+            delete(file);
+        }
+    }
+
+    public void clear() {
+        snapshots.clear();
+    }
+
+    public Map<String, Object> stat() {
+        Map<String, Object> stat = snapshots.stat();
+        stat.put("diskLoads", diskLoads.get());
+        stat.put("diskSaves", diskSaves.get());
+        return stat;
+    }
+
+    /**
+     * 持有标准库的构建锁时调用,优先读取快照文件,文件不可用时从数据库构建
+     */
+    private LibraryCoordSnapshot load(String libraryId, long version) {
+        long start = System.currentTimeMillis();
+        //必须在读取肽段以前读取修改时间,读取期间发生的写入会使数据库中的修改时间晚于快照中记录的时间
+        long modified = modified(libraryId);
+        LibraryCoordSnapshot snapshot = loadFromDisk(libraryId, version, modified);
+        if (snapshot == null) {
+            List<PeptideDO> peptides = new ArrayList<>();
+            peptideDAO.stream(new PeptideQuery(libraryId), PeptideDO.class, peptides::add, PeptideDAO.COORD_FIELDS);
+            snapshot = LibraryCoordSnapshot.build(libraryId, version, peptides);
+            snapshot.setModified(modified);
+            saveToDisk(snapshot);
+        }
+        log.info("构建标准库坐标索引:" + libraryId + ",版本:" + version + ",肽段数目:" + snapshot.getSize() + ",耗时:" + (System.currentTimeMillis() - start) + "毫秒");
+        return snapshot;
+    }
+
+    private long modified(String libraryId) {
+        Date lastModifiedDate = libraryDAO.getLastModifiedDate(libraryId);
+        return lastModifiedDate == null ? 0L : lastModifiedDate.getTime();
+    }
+
+    /**
+     * @param modified 数据库中标准库当前的最后修改时间
+     * @return 文件不存在,格式不匹配或者已经过期时返回null,过期或者无法读取的文件会被删除
+     */
+    private LibraryCoordSnapshot loadFromDisk(String libraryId, long version, long modified) {
+        if (!vmProperties.isLibraryIndexDisk()) {
+            return null;
+        }
+        File file = new File(RepositoryUtil.getLibraryCoordPath(libraryId));
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            LibraryCoordSnapshot snapshot = LibraryCoordSnapshot.load(file, version);
+            if (!libraryId.equals(snapshot.getLibraryId()) || snapshot.getModified() != modified) {
+                log.info("标准库坐标快照文件已过期:" + file.getPath() + ",文件修改时间:" + snapshot.getModified() + ",数据库修改时间:" + modified);
+                delete(file);
+                return null;
+            }
+            long count = peptideDAO.count(new PeptideQuery(libraryId));
+            if (snapshot.getSize() != count) {
+                log.info("标准库坐标快照文件已过期:" + file.getPath() + ",文件肽段数目:" + snapshot.getSize() + ",数据库肽段数目:" + count);
+                delete(file);
+                return null;
+            }
+            diskLoads.incrementAndGet();
+            return snapshot;
+        } catch (IOException e) {
+            log.warn("读取标准库坐标快照文件失败:" + file.getPath() + "," + e.getMessage());
+            delete(file);
+            return null;
+        }
+    }
+
+    private void saveToDisk(LibraryCoordSnapshot snapshot) {
+        if (!vmProperties.isLibraryIndexDisk() || snapshot.getVersion() != snapshots.version(snapshot.getLibraryId())) {
+            return;
+        }
+        File file = new File(RepositoryUtil.getLibraryCoordPath(snapshot.getLibraryId()));
+        try {
+            file.getParentFile().mkdirs();
+            snapshot.save(file);
+            diskSaves.incrementAndGet();
+        } catch (IOException e) {
+            log.warn("保存标准库坐标快照文件失败:" + file.getPath() + "," + e.getMessage());
+        }
+    }
+
+    private void delete(File file) {
+        if (file.exists() && !file.delete()) {
+            log.warn("删除标准库坐标快照文件失败:" + file.getPath());
+        }
+    }
+}
@@ -0,0 +1,405 @@
+package net.csibio.propro.algorithm.extract;
+
+import lombok.extern.slf4j.Slf4j;
+import net.csibio.aird.bean.Compressor;
+import net.csibio.aird.bean.MzIntensityPairs;
+import net.csibio.aird.parser.DIAParser;
+import net.csibio.propro.config.VMProperties;
+import net.csibio.propro.constants.enums.ResultCode;
+import net.csibio.propro.domain.bean.data.SpectrumBlock;
+import net.csibio.propro.domain.db.BlockIndexDO;
+import net.csibio.propro.domain.db.RunDO;
+import net.csibio.propro.exceptions.XException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 按run共享的已解码光谱块缓存,key为(runId, 光谱块开始位置)
+ * iRT计算,XIC提取以及页面上的实时查询都通过本缓存读取光谱,同一个光谱块只需要解码一次
+ * 缓存按照估算的内存占用进行LRU淘汰,单个超过容量上限的光谱块不会进入缓存.单个肽段的实时提取只需要一段rt范围内的光谱,
+ * 光谱块不在缓存中时只解码该范围内的光谱,不进入缓存
+ * <p>
+ * 光谱通过Reader按文件位置读取并解码,默认实现为DIAParser,子类可以通过覆盖open替换为其他实现
+ * <p>
+ * 解码后的光谱以SpectrumBlock列式存储,spectrum.offheap为true时存放在堆外内存中.缓存中的光谱块是所有调用方共享的,调用方只能读取
+ */
+@Slf4j
+@Component("spectrumCache")
+public class SpectrumCache {
+
+    @Autowired
+    VMProperties vmProperties;
+
+    /**
+     * 按访问顺序排列,最久未被访问的光谱块排在最前面,所有访问都需要对本对象加锁
+     */
+    private final LinkedHashMap<BlockKey, CachedBlock> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * 正在解码中的光谱块,用于合并多个线程对同一个光谱块的并发请求
+     */
+    private final ConcurrentHashMap<BlockKey, CompletableFuture<SpectrumBlock>> loading = new ConcurrentHashMap<>();
+
+    private long bytes = 0L;
+
+    AtomicLong hits = new AtomicLong(0);
+    AtomicLong misses = new AtomicLong(0);
+    AtomicLong evictions = new AtomicLong(0);
+    AtomicLong rejects = new AtomicLong(0);
+    AtomicLong loadMillis = new AtomicLong(0);
+    AtomicLong partialLoads = new AtomicLong(0);
+    AtomicLong partialMillis = new AtomicLong(0);
+
+    /**
+     * 按文件位置读取并解码一段连续的光谱
+     */
+    public interface Reader extends AutoCloseable {
+
+        /**
+         * @param startPtr 第一张光谱在文件中的开始位置
+         * @param endPtr   最后一张光谱在文件中的结束位置
+         * @param rts      每一张光谱的rt
+         * @param mzs      每一张光谱mz压缩后的大小
+         * @param ints     每一张光谱intensity压缩后的大小
+         * @return key为rt的光谱
+         * @throws Exception
+         */
+        TreeMap<Float, MzIntensityPairs> read(long startPtr, long endPtr, List<Float> rts, List<Long> mzs, List<Long> ints) throws Exception;
+
+        @Override
+        void close();
+    }
+
+    /**
+     * 获取光谱块,缓存中不存在时新建parser进行解码
+     *
+     * @param run
+     * @param index
+     * @return
+     * @throws XException
+     */
+    public SpectrumBlock get(RunDO run, BlockIndexDO index) throws XException {
+        return get(run, index, null);
+    }
+
+    /**
+     * 获取光谱块,缓存中不存在时使用调用方的parser进行解码,parser由调用方负责关闭
+     *
+     * @param run
+     * @param index
+     * @param parser 为null时新建parser
+     * @return
+     * @throws XException
+     */
+    public SpectrumBlock get(RunDO run, BlockIndexDO index, DIAParser parser) throws XException {
+        BlockKey key = new BlockKey(run.getId(), index.getStartPtr());
+        SpectrumBlock spectra = getIfPresent(key);
+        if (spectra != null) {
+            return spectra;
+        }
+
+        CompletableFuture<SpectrumBlock> future = new CompletableFuture<>();
+        CompletableFuture<SpectrumBlock> existing = loading.putIfAbsent(key, future);
+        if (existing != null) {
+            //其他线程正在解码同一个光谱块,直接等待其结果
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof XException xe) {
+                    throw xe;
+                }
+                throw new XException(ResultCode.PARSE_ERROR);
+            }
+        }
+
+        try {
+            //在getIfPresent与putIfAbsent之间,上一个解码线程可能已经完成写入缓存并移除了loading中的记录,需要再检查一次
+            spectra = peek(key);
+            if (spectra == null) {
+                long start = System.currentTimeMillis();
+                spectra = decode(run, index, parser);
+                loadMillis.addAndGet(System.currentTimeMillis() - start);
+                put(key, spectra);
+            }
+            future.complete(spectra);
+            return spectra;
+        } catch (Throwable e) {
+            //包括堆外内存分配失败等Error在内,任何异常都需要通知等待中的线程,否则这些线程会一直阻塞
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key);
+        }
+    }
+
+    /**
+     * 获取光谱块中rt位于[rtStart, rtEnd]的光谱,结果与get(run, index).slice(rtStart, rtEnd)一致
+     * 整个光谱块已经在缓存中,或者rt范围覆盖了整个光谱块时从缓存中截取;否则根据索引中每一张光谱压缩后的大小
+     * 计算范围内光谱在文件中的位置,只读取并解码这一部分光谱,解码结果不进入缓存.适用于单个肽段的实时提取
+     *
+     * @param run
+     * @param index
+     * @param rtStart
+     * @param rtEnd
+     * @return
+     * @throws XException
+     */
+    public SpectrumBlock get(RunDO run, BlockIndexDO index, double rtStart, double rtEnd) throws XException {
+        List<Float> rts = index.getRts();
+        int from = firstIndexNotBelow(rts, rtStart);
+        int to = Math.max(from, firstIndexAbove(rts, rtEnd));
+        if (from == 0 && to == rts.size()) {
+            return get(run, index).slice(rtStart, rtEnd);
+        }
+        SpectrumBlock spectra = getIfPresent(new BlockKey(run.getId(), index.getStartPtr()));
+        if (spectra != null) {
+            return spectra.slice(rtStart, rtEnd);
+        }
+        long start = System.currentTimeMillis();
+        Reader reader = open(run, index);
+        try {
+            spectra = decode(reader, run, index, from, to);
+        } finally {
+            reader.close();
+        }
+        partialLoads.incrementAndGet();
+        partialMillis.addAndGet(System.currentTimeMillis() - start);
+        return spectra;
+    }
+
+    /**
+     * 按rt顺序分批读取整个光谱块,每一批最多包含chunk张光谱,依次交给consumer处理,处理完成后即可释放
+     * 光谱块已经在缓存中时从缓存中截取;否则所有批次共用同一个Reader逐批解码,解码结果不进入缓存,也不会挤出缓存中的其他光谱块.
+     * 适用于只需要顺序读取一次的大光谱块,例如按SWATH窗口切分MS1
+     *
+     * @param run
+     * @param index
+     * @param chunk    每一批的光谱数目
+     * @param consumer
+     * @throws XException
+     */
+    public void scan(RunDO run, BlockIndexDO index, int chunk, Consumer<SpectrumBlock> consumer) throws XException {
+        List<Float> rts = index.getRts();
+        SpectrumBlock cached = peek(new BlockKey(run.getId(), index.getStartPtr()));
+        if (cached != null) {
+            for (int from = 0; from < rts.size(); from += chunk) {
+                int to = Math.min(from + chunk, rts.size());
+                consumer.accept(cached.slice(rts.get(from), rts.get(to - 1)));
+            }
+            return;
+        }
+        Reader reader = open(run, index);
+        try {
+            for (int from = 0; from < rts.size(); from += chunk) {
+                int to = Math.min(from + chunk, rts.size());
+                long start = System.currentTimeMillis();
+                SpectrumBlock spectra = decode(reader, run, index, from, to);
+                partialLoads.incrementAndGet();
+                partialMillis.addAndGet(System.currentTimeMillis() - start);
+                consumer.accept(spectra);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * 仅从缓存中获取光谱块,不存在时返回null
+     *
+     * @param run
+     * @param index
+     * @return
+     */
+    public SpectrumBlock getIfPresent(RunDO run, BlockIndexDO index) {
+        return getIfPresent(new BlockKey(run.getId(), index.getStartPtr()));
+    }
+
+    /**
+     * 清除某一个run的所有缓存,在run被删除或者重新解析时调用
+     *
+     * @param runId
+     */
+    public synchronized void invalidate(String runId) {
+        Iterator<Map.Entry<BlockKey, CachedBlock>> iterator = cache.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<BlockKey, CachedBlock> entry = iterator.next();
+            if (entry.getKey().runId().equals(runId)) {
+                bytes -= entry.getValue().bytes();
+                iterator.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        cache.clear();
+        bytes = 0L;
+    }
+
+    public synchronized Map<String, Object> stat() {
+        Map<String, Object> stat = new LinkedHashMap<>();
+        long hit = hits.get();
+        long miss = misses.get();
+        stat.put("maxBytes", vmProperties.getSpectrumCacheBytes());
+        stat.put("bytes", bytes);
+        stat.put("blocks", cache.size());
+        stat.put("hits", hit);
+        stat.put("misses", miss);
+        stat.put("hitRate", hit + miss == 0 ? 0d : hit * 1d / (hit + miss));
+        stat.put("evictions", evictions.get());
+        stat.put("rejects", rejects.get());
+        stat.put("loadMillis", loadMillis.get());
+        stat.put("partialLoads", partialLoads.get());
+        stat.put("partialMillis", partialMillis.get());
+        return stat;
+    }
+
+    private synchronized SpectrumBlock getIfPresent(BlockKey key) {
+        CachedBlock block = cache.get(key);
+        if (block == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return block.spectra();
+    }
+
+    /**
+     * 与getIfPresent相同,但是不计入命中与未命中次数
+     */
+    private synchronized SpectrumBlock peek(BlockKey key) {
+        CachedBlock block = cache.get(key);
+        return block == null ? null : block.spectra();
+    }
+
+    private synchronized void put(BlockKey key, SpectrumBlock spectra) {
+        long maxBytes = vmProperties.getSpectrumCacheBytes();
+        long size = spectra.bytes();
+        if (size > maxBytes) {
+            rejects.incrementAndGet();
+            return;
+        }
+        CachedBlock old = cache.put(key, new CachedBlock(spectra, size));
+        if (old != null) {
+            bytes -= old.bytes();
+        }
+        bytes += size;
+        Iterator<Map.Entry<BlockKey, CachedBlock>> iterator = cache.entrySet().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<BlockKey, CachedBlock> eldest = iterator.next();
+            bytes -= eldest.getValue().bytes();
+            iterator.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private SpectrumBlock decode(RunDO run, BlockIndexDO index, DIAParser parser) throws XException {
+        Reader reader = parser == null ? open(run, index) : reader(parser, false);
+        try {
+            //解析器输出的TreeMap只作为中间结果,转换为列式存储后即可释放
+            return SpectrumBlock.of(reader.read(index.getStartPtr(), index.getEndPtr(), index.getRts(), index.getMzs(), index.getInts()), vmProperties.isSpectrumOffHeap());
+        } catch (Exception e) {
+            log.error("Parse Block Failed,Run:" + run.getId() + ",StartPtr:" + index.getStartPtr() + "," + e.getMessage());
+            throw new XException(ResultCode.PARSE_ERROR);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * 只解码光谱块中编号位于[from, to)的光谱,每一张光谱在文件中的位置由索引预先计算,不需要从头累加
+     */
+    private SpectrumBlock decode(Reader reader, RunDO run, BlockIndexDO index, int from, int to) throws XException {
+        if (from == to) {
+            return SpectrumBlock.of(new TreeMap<>(), false);
+        }
+        long[] pointers = index.fetchPointers();
+        try {
+            return SpectrumBlock.of(reader.read(pointers[from], pointers[to], index.getRts().subList(from, to), index.getMzs().subList(from, to), index.getInts().subList(from, to)), false);
+        } catch (Exception e) {
+            log.error("Parse Partial Block Failed,Run:" + run.getId() + ",StartPtr:" + index.getStartPtr() + ",Spectra:[" + from + "," + to + ")," + e.getMessage());
+            throw new XException(ResultCode.PARSE_ERROR);
+        }
+    }
+
+    /**
+     * 为一次读取创建Reader,使用完毕后由调用方关闭
+     *
+     * @param run
+     * @return
+     * @throws Exception
+     */
+    protected Reader open(RunDO run) throws Exception {
+        Compressor mzCompressor = run.fetchCompressor(Compressor.TARGET_MZ);
+        Compressor intCompressor = run.fetchCompressor(Compressor.TARGET_INTENSITY);
+        return reader(new DIAParser(run.getAirdPath(), mzCompressor, intCompressor, mzCompressor.getPrecision()), true);
+    }
+
+    private Reader open(RunDO run, BlockIndexDO index) throws XException {
+        try {
+            return open(run);
+        } catch (Exception e) {
+            log.error("Open Run Failed,Run:" + run.getId() + ",StartPtr:" + index.getStartPtr() + "," + e.getMessage());
+            throw new XException(ResultCode.PARSE_ERROR);
+        }
+    }
+
+    /**
+     * @param parser
+     * @param own    为true时关闭Reader会同时关闭parser,调用方传入的parser由调用方负责关闭
+     * @return
+     */
+    private static Reader reader(DIAParser parser, boolean own) {
+        return new Reader() {
+            @Override
+            public TreeMap<Float, MzIntensityPairs> read(long startPtr, long endPtr, List<Float> rts, List<Long> mzs, List<Long> ints) throws Exception {
+                return parser.getSpectrums(startPtr, endPtr, rts, mzs, ints);
+            }
+
+            @Override
+            public void close() {
+                if (own) {
+                    parser.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * 第一个rt大于等于target的光谱编号
+     */
+    private static int firstIndexNotBelow(List<Float> rts, double target) {
+        int low = 0, high = rts.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (rts.get(mid) >= target) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 第一个rt大于target的光谱编号
+     */
+    private static int firstIndexAbove(List<Float> rts, double target) {
+        int low = 0, high = rts.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (rts.get(mid) > target) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,185 @@
+package net.csibio.propro.algorithm.extract;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * 按key维护版本号的LRU缓存,LibraryCoordIndex与BlockIndexRegistry共用
+ * <p>
+ * 每一个key维护一个版本号,invalidate使版本号递增,缓存中版本号落后的值视为过期.构建期间版本号发生变化的值只返回给本次调用方,
+ * 不会进入缓存.缓存按照key的数目进行LRU淘汰,上限在每一次写入时读取,修改配置后立即生效
+ * <p>
+ * 同一个key同一时刻只允许一个线程进行构建.构建锁按照key的哈希分段,锁的数目固定,不会随着key的数目增长
+ *
+ * @param <V> 缓存的快照类型,快照本身记录构建时的版本号
+ */
+public class VersionedCache<V> {
+
+    private static final int LOCK_STRIPES = 64;
+
+    @FunctionalInterface
+    public interface Loader<V> {
+        /**
+         * @param key
+         * @param version 开始构建时key的版本号,需要记录在返回的快照中
+         * @return
+         */
+        V load(String key, long version);
+    }
+
+    /**
+     * 统计信息中key列表的名称,例如libraryIds,runIds
+     */
+    private final String keysName;
+    private final IntSupplier maxSize;
+    private final ToLongFunction<V> versionOf;
+    private final ToLongFunction<V> bytesOf;
+
+    /**
+     * 按访问顺序排列,最久未被访问的快照排在最前面,所有访问都需要对本对象加锁
+     */
+    private final LinkedHashMap<String, V> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final ConcurrentHashMap<String, AtomicLong> versions = new ConcurrentHashMap<>();
+
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    AtomicLong hits = new AtomicLong(0);
+    AtomicLong misses = new AtomicLong(0);
+    AtomicLong evictions = new AtomicLong(0);
+    AtomicLong invalidations = new AtomicLong(0);
+    AtomicLong loadMillis = new AtomicLong(0);
+
+    /**
+     * @param keysName  统计信息中key列表的名称
+     * @param maxSize   缓存的key数目上限,小于等于0时不缓存
+     * @param versionOf 快照构建时的版本号
+     * @param bytesOf   快照的估算内存占用
+     */
+    public VersionedCache(String keysName, IntSupplier maxSize, ToLongFunction<V> versionOf, ToLongFunction<V> bytesOf) {
+        this.keysName = keysName;
+        this.maxSize = maxSize;
+        this.versionOf = versionOf;
+        this.bytesOf = bytesOf;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * 获取key对应的快照,缓存中不存在或者已经过期时持有构建锁调用loader构建
+     *
+     * @param key
+     * @param loader
+     * @return 所有调用方共享的快照
+     */
+    public V get(String key, Loader<V> loader) {
+        V value = getIfPresent(key);
+        if (value != null) {
+            hits.incrementAndGet();
+            return value;
+        }
+
+        synchronized (lock(key)) {
+            value = getIfPresent(key);
+            if (value != null) {
+                hits.incrementAndGet();
+                return value;
+            }
+            misses.incrementAndGet();
+            long start = System.currentTimeMillis();
+            value = loader.load(key, version(key));
+            loadMillis.addAndGet(System.currentTimeMillis() - start);
+            put(key, value);
+            return value;
+        }
+    }
+
+    /**
+     * key对应的数据被修改时调用,已经构建的快照立即失效
+     *
+     * @param key
+     */
+    public void invalidate(String key) {
+        versions.computeIfAbsent(key, k -> new AtomicLong(0)).incrementAndGet();
+        invalidations.incrementAndGet();
+        synchronized (this) {
+            cache.remove(key);
+        }
+    }
+
+    public void clear() {
+        versions.values().forEach(AtomicLong::incrementAndGet);
+        synchronized (this) {
+            cache.clear();
+        }
+    }
+
+    public long version(String key) {
+        return versions.computeIfAbsent(key, k -> new AtomicLong(0)).get();
+    }
+
+    /**
+     * key对应的构建锁,持有该锁时同一个key不会有其他线程在构建
+     *
+     * @param key
+     * @return
+     */
+    public Object lock(String key) {
+        return locks[(key.hashCode() & Integer.MAX_VALUE) % LOCK_STRIPES];
+    }
+
+    public Map<String, Object> stat() {
+        Map<String, Object> stat = new LinkedHashMap<>();
+        long hit = hits.get();
+        long miss = misses.get();
+        long bytes = 0L;
+        List<String> keys;
+        synchronized (this) {
+            keys = new ArrayList<>(cache.keySet());
+            for (V value : cache.values()) {
+                bytes += bytesOf.applyAsLong(value);
+            }
+        }
+        stat.put("maxSize", maxSize.getAsInt());
+        stat.put("size", keys.size());
+        stat.put(keysName, keys);
+        stat.put("bytes", bytes);
+        stat.put("hits", hit);
+        stat.put("misses", miss);
+        stat.put("hitRate", hit + miss == 0 ? 0d : hit * 1d / (hit + miss));
+        stat.put("evictions", evictions.get());
+        stat.put("invalidations", invalidations.get());
+        stat.put("loadMillis", loadMillis.get());
+        return stat;
+    }
+
+    private synchronized V getIfPresent(String key) {
+        V value = cache.get(key);
+        if (value == null) {
+            return null;
+        }
+        if (versionOf.applyAsLong(value) != version(key)) {
+            cache.remove(key);
+            return null;
+        }
+        return value;
+    }
+
+    private synchronized void put(String key, V value) {
+        int max = maxSize.getAsInt();
+        if (max <= 0 || versionOf.applyAsLong(value) != version(key)) {
+            return;
+        }
+        cache.put(key, value);
+        Iterator<Map.Entry<String, V>> iterator = cache.entrySet().iterator();
+        while (cache.size() > max && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            evictions.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package net.csibio.propro.algorithm.extract;
+
+import net.csibio.propro.domain.bean.data.SpectrumBlock;
+import net.csibio.propro.domain.bean.peptide.PeptideCoord;
+import net.csibio.propro.domain.db.BlockIndexDO;
+
+import java.util.List;
+
+/**
+ * 流水线中预读完成的一个MS2窗口,coords为空时ms2Block为null
+ */
+public record WindowBlock(BlockIndexDO index, List<PeptideCoord> coords, SpectrumBlock ms2Block) {
+}
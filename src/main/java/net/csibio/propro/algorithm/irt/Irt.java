@@ -2,6 +2,7 @@ package net.csibio.propro.algorithm.irt;
 
 import lombok.extern.slf4j.Slf4j;
 import net.csibio.propro.algorithm.extract.Extractor;
+import net.csibio.propro.algorithm.extract.SpectrumCache;
 import net.csibio.propro.algorithm.fitter.LinearFitter;
 import net.csibio.propro.algorithm.peak.PeakPicker;
 import net.csibio.propro.algorithm.score.scorer.IrtScorer;
@@ -45,6 +46,8 @@ public abstract class Irt {
     LinearFitter linearFitter;
     @Autowired
     RunService runService;
+    @Autowired
+    SpectrumCache spectrumCache;
 
     public abstract List<DataDO> extract(RunDO run, AnalyzeParams params) throws XException;
 
@@ -2,8 +2,8 @@ package net.csibio.propro.algorithm.irt;
 
 import lombok.extern.slf4j.Slf4j;
 import net.csibio.aird.bean.Compressor;
-import net.csibio.aird.bean.MzIntensityPairs;
 import net.csibio.aird.parser.DIAParser;
+import net.csibio.propro.domain.bean.data.SpectrumBlock;
 import net.csibio.propro.domain.bean.peptide.PeptideCoord;
 import net.csibio.propro.domain.db.BlockIndexDO;
 import net.csibio.propro.domain.db.DataDO;
@@ -16,7 +16,6 @@ import org.springframework.stereotype.Component;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
-import java.util.TreeMap;
 import java.util.stream.Collectors;
 
 @Component("irtByInsLib")
@@ -55,8 +54,8 @@ public class IrtByInsLib extends Irt {
 
                 //Step3&4.提取指定原始谱图,提取数据并且存储数据,如果传入的库是标准库,那么使用采样的方式进行数据提取
                 try {
-                    TreeMap<Float, MzIntensityPairs> ms2Map = parser.getSpectrums(blockIndex.getStartPtr(), blockIndex.getEndPtr(), blockIndex.getRts(), blockIndex.getMzs(), blockIndex.getInts());
-                    extractor.extract4Irt(finalDataList, coords, ms2Map, params);
+                    SpectrumBlock ms2Block = spectrumCache.get(run, blockIndex, parser);
+                    extractor.extract4Irt(finalDataList, coords, ms2Block, params);
                 } catch (Exception e) {
                     log.error("Parsing Error!!Precursor m/z start:" + blockIndex.getRange().getStart());
                     throw e;
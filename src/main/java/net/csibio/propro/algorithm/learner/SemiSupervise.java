@@ -8,17 +8,17 @@ import net.csibio.propro.algorithm.peak.PeakFitter;
 import net.csibio.propro.algorithm.peak.SimilarPeakOptimizer;
 import net.csibio.propro.algorithm.score.scorer.Scorer;
 import net.csibio.propro.algorithm.stat.StatConst;
-import net.csibio.propro.constants.enums.IdentifyStatus;
 import net.csibio.propro.constants.enums.ResultCode;
 import net.csibio.propro.domain.Result;
 import net.csibio.propro.domain.bean.data.DataScore;
 import net.csibio.propro.domain.bean.learner.ErrorStat;
 import net.csibio.propro.domain.bean.learner.FinalResult;
 import net.csibio.propro.domain.bean.learner.LearningParams;
+import net.csibio.propro.domain.bean.learner.ScoreMatrix;
+import net.csibio.propro.domain.bean.learner.XGBLearnData;
 import net.csibio.propro.domain.bean.score.SelectedPeakGroup;
 import net.csibio.propro.domain.db.OverviewDO;
 import net.csibio.propro.domain.db.RunDO;
-import net.csibio.propro.domain.query.DataQuery;
 import net.csibio.propro.service.DataService;
 import net.csibio.propro.service.DataSumService;
 import net.csibio.propro.service.OverviewService;
@@ -72,29 +72,34 @@ public class SemiSupervise {
             return finalResult;
         }
         params.setType(overview.getType());
-        //Step2. 从数据库读取全部含打分结果的数据
+        //Step2. 从数据库以游标方式读取全部含打分结果的数据,逐条压缩进打分矩阵
         log.info("开始获取打分数据");
         long temp = System.currentTimeMillis();
-        List<DataScore> dataList = dataService.getAll(new DataQuery().setOverviewId(overviewId).setStatus(IdentifyStatus.WAIT.getCode()), DataScore.class, overview.getProjectId());
-        log.info("获取打分数据耗时:" + (System.currentTimeMillis() - temp));
-        if (dataList == null || dataList.size() == 0) {
+        ScoreMatrix matrix = dataService.getScoreMatrix(overviewId, params.getScoreTypes(), overview.getProjectId());
+        log.info("获取打分数据耗时:" + (System.currentTimeMillis() - temp) + ",峰组数目:" + matrix.getRows() + ",矩阵内存:" + matrix.bytes() / 1024 / 1024 + "MB");
+        if (matrix.getGroups() == 0) {
             log.info("没有合适的数据");
             return finalResult;
         }
-        log.info("总计有待鉴定态肽段" + dataList.size() + "个");
+        log.info("总计有待鉴定态肽段" + matrix.getGroups() + "个");
         //Step3. 开始训练数据集
         HashMap<String, Double> weightsMap = new HashMap<>();
         switch (params.getClassifier()) {
             case "LDA" -> {
-                weightsMap = lda.classifier(dataList, params);
+                weightsMap = lda.classifier(matrix, params);
                 if (weightsMap == null) {
                     return finalResult;
                 }
-                lda.score(dataList, weightsMap, params.getScoreTypes()); //补全所有PeakGroup的TotalScore字段
+                lda.score(matrix, weightsMap, params.getScoreTypes()); //补全所有PeakGroup的TotalScore字段
                 finalResult.setWeightsMap(weightsMap);
             }
             case "XGBoost" -> {
-                xgboost.classifier(dataList, params);
+                XGBLearnData learnData = xgboost.classifier(matrix, params);
+                if (learnData == null) {
+                    return finalResult;
+                }
+                overview.getStatistic().put(StatConst.XGB_COST, learnData.getCost());
+                overview.getStatistic().put(StatConst.XGB_ROUNDS, learnData.getTotalRounds());
             }
             default -> {
             }
@@ -102,7 +107,7 @@ public class SemiSupervise {
 
         //进行第一轮严格意义的初筛
         log.info("开始第一轮严格意义上的初筛");
-        List<SelectedPeakGroup> selectedPeakGroupListV1 = scorer.findBestPeakGroup(dataList);
+        List<SelectedPeakGroup> selectedPeakGroupListV1 = scorer.findBestPeakGroup(matrix);
         statistics.errorStatistics(selectedPeakGroupListV1, params);
         giveDecoyFdr(selectedPeakGroupListV1);
 
@@ -121,9 +126,9 @@ public class SemiSupervise {
         List<WindowRange> ranges = run.getWindowRanges();
 
         //策略1. 相似重叠峰校准策略
-        similarPeakOptimizer.optimizer(overview.getRunId(), dataList, selectedDataMap, ranges, overview.getAnaLibId(), minTotalScore); //后置优化算法1->选择了相同rt的近似肽段做一个区分
+        similarPeakOptimizer.optimizer(overview.getRunId(), matrix, selectedDataMap, ranges, overview.getAnaLibId(), minTotalScore); //后置优化算法1->选择了相同rt的近似肽段做一个区分
         //策略2. 基于IonsCount的组内切换策略
-        List<SelectedPeakGroup> selectedPeakGroupListV2 = scorer.findBestPeakGroup(dataList);
+        List<SelectedPeakGroup> selectedPeakGroupListV2 = scorer.findBestPeakGroup(matrix);
 
         //重新统计
         ErrorStat errorStat = statistics.errorStatistics(selectedPeakGroupListV2, params);
@@ -5,12 +5,10 @@ import net.csibio.propro.domain.Result;
 import net.csibio.propro.domain.bean.learner.ErrorStat;
 import net.csibio.propro.domain.bean.learner.LearningParams;
 import net.csibio.propro.domain.bean.learner.Pi0Est;
+import net.csibio.propro.domain.bean.learner.ScoreMatrix;
 import net.csibio.propro.domain.bean.learner.StatMetrics;
 import net.csibio.propro.domain.bean.score.SelectedPeakGroup;
-import net.csibio.propro.utils.ArrayUtil;
 import net.csibio.propro.utils.MathUtil;
-import net.csibio.propro.utils.ProProUtil;
-import net.csibio.propro.utils.SortUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
@@ -22,65 +20,91 @@ import java.util.List;
 /**
  * Created by Nico Wang Ruimin
  * Time: 2018-06-13 16:55
+ * <p>
+ * 所有的统计都在原始类型数组上完成:真伪肽段的总分各自只排序一次,之后的p值,pi0,q值以及各项指标都是线性扫描
+ * 真肽段的数组按照总分从小到大排列(即p值从大到小),与原先基于List<SelectedPeakGroup>的实现保持相同的顺序与结果,
+ * 总分相同的真肽段保持输入时的相对顺序
  */
 @Component("statistics")
 public class Statistics {
 
     public static final Logger logger = LoggerFactory.getLogger(Statistics.class);
 
-    public void pNormalizer(List<SelectedPeakGroup> targetScores, List<SelectedPeakGroup> decoyScores) {
-        Double[] decoyScoresArray = ProProUtil.buildMainScoreArray(decoyScores, false);
-        double mean = MathUtil.mean(decoyScoresArray);
-        double std = MathUtil.std(decoyScoresArray, mean);
-        double args;
-        for (SelectedPeakGroup sfs : targetScores) {
-            args = (sfs.getTotalScore() - mean) / std;
-            sfs.setPValue(1 - (0.5 * (1.0 + MathUtil.erf(args / Math.sqrt(2.0)))));
+    /**
+     * 假设伪肽段的总分服从正态分布,计算真肽段的p值
+     *
+     * @param targets 从小到大排列的真肽段总分
+     * @param decoys  从小到大排列的伪肽段总分
+     * @param pValues 输出的p值,与targets一一对应
+     */
+    public void pNormalizer(double[] targets, double[] decoys, double[] pValues) {
+        int n = decoys.length;
+        double sum = 0;
+        for (double decoy : decoys) {
+            if (Double.isNaN(decoy)) {
+                n--;
+            } else {
+                sum += decoy;
+            }
+        }
+        double mean = sum / n;
+        double var = 0;
+        for (double decoy : decoys) {
+            if (!Double.isNaN(decoy)) {
+                var += Math.pow(decoy - mean, 2);
+            }
+        }
+        double std = Math.sqrt(var / n);
+        for (int i = 0; i < targets.length; i++) {
+            double args = (targets[i] - mean) / std;
+            pValues[i] = 1 - (0.5 * (1.0 + MathUtil.erf(args / Math.sqrt(2.0))));
         }
     }
 
-    public void pEmpirical(List<SelectedPeakGroup> targetScores, List<SelectedPeakGroup> decoyScores) {
-        List<SelectedPeakGroup> totalScores = new ArrayList<>();
-        totalScores.addAll(targetScores);
-        totalScores.addAll(decoyScores);
-
-        totalScores = SortUtil.sortByMainScore(totalScores, true);
-        int decoyCount = 0;
-        int decoyTotal = decoyScores.size();
+    /**
+     * 经验p值:总分严格高于该真肽段的伪肽段比例,最小为1/伪肽段数目
+     *
+     * @param targets 从小到大排列的真肽段总分
+     * @param decoys  从小到大排列的伪肽段总分
+     * @param pValues 输出的p值,与targets一一对应
+     */
+    public void pEmpirical(double[] targets, double[] decoys, double[] pValues) {
+        int decoyTotal = decoys.length;
         double fix = 1.0 / decoyTotal;
-        for (SelectedPeakGroup sfs : totalScores) {
-            if (sfs.getDecoy()) {
-                decoyCount++;
-            } else {
-                double pValue = (double) decoyCount / decoyTotal;
-                if (pValue < fix) {
-                    sfs.setPValue(fix);
-                } else {
-                    sfs.setPValue(pValue);
-                }
+        int notGreater = 0;
+        for (int i = 0; i < targets.length; i++) {
+            while (notGreater < decoyTotal && Double.compare(decoys[notGreater], targets[i]) <= 0) {
+                notGreater++;
             }
+            double pValue = (double) (decoyTotal - notGreater) / decoyTotal;
+            pValues[i] = pValue < fix ? fix : pValue;
         }
     }
 
     /**
      * Calculate qvalues.
-     * targets的qvalue需要从大到小排序
+     * pValues需要从大到小排序,此时每一个p值的排名即为数组中小于等于自己的数目,一次线性扫描即可得到
+     * 参数化p值在极端总分处可能不严格单调,此时按照排序后的相同p值分组依次赋予排名,与ArrayUtil.rank一致
+     *
+     * @param pValues
+     * @param pi0
+     * @param pfdr
+     * @param qValues 输出的q值
      */
-    public void qvalue(List<SelectedPeakGroup> targets, double pi0, boolean pfdr) {
-        Double[] pValues = ProProUtil.buildPValueArray(targets, false);
-        int pValueLength = targets.size();
-        double[] v = ArrayUtil.rank(pValues);
-        for (int i = 0; i < pValueLength; i++) {
+    public void qvalue(double[] pValues, double pi0, boolean pfdr, double[] qValues) {
+        int n = pValues.length;
+        int[] ranks = ranks(pValues);
+        for (int i = 0; i < n; i++) {
             if (pfdr) {
-                targets.get(i).setQValue((pi0 * pValueLength * targets.get(i).getPValue()) / (v[i] * (1 - Math.pow((1 - targets.get(i).getPValue()), pValueLength))));
+                qValues[i] = (pi0 * n * pValues[i]) / (ranks[i] * (1 - Math.pow((1 - pValues[i]), n)));
             } else {
-                targets.get(i).setQValue((pi0 * pValueLength * targets.get(i).getPValue()) / v[i]);
+                qValues[i] = (pi0 * n * pValues[i]) / ranks[i];
             }
         }
-        targets.get(0).setQValue(Math.min(targets.get(0).getQValue(), 1));
+        qValues[0] = Math.min(qValues[0], 1);
 
-        for (int i = 1; i < pValueLength - 1; i++) {
-            targets.get(i).setQValue(Math.min(targets.get(i).getQValue(), targets.get(i - 1).getQValue()));
+        for (int i = 1; i < n - 1; i++) {
+            qValues[i] = Math.min(qValues[i], qValues[i - 1]);
         }
     }
 
@@ -103,42 +127,114 @@ public class Statistics {
         return errorStatistics(targets, decoys, learningParams);
     }
 
+    /**
+     * 直接在打分矩阵上统计,每一个肽段只取总分最高的峰组参与统计
+     * 不生成SelectedPeakGroup对象,返回的ErrorStat中bestFeatureScoresList为null
+     */
+    public ErrorStat errorStatistics(ScoreMatrix matrix, LearningParams learningParams) {
+        int targetCount = 0, decoyCount = 0;
+        int[] bestRows = new int[matrix.getGroups()];
+        for (int group = 0; group < matrix.getGroups(); group++) {
+            bestRows[group] = matrix.bestRow(group);
+            if (bestRows[group] != -1) {
+                if (matrix.isDecoy(group)) {
+                    decoyCount++;
+                } else {
+                    targetCount++;
+                }
+            }
+        }
+        double[] targets = new double[targetCount];
+        double[] decoys = new double[decoyCount];
+        targetCount = 0;
+        decoyCount = 0;
+        for (int group = 0; group < matrix.getGroups(); group++) {
+            if (bestRows[group] == -1) {
+                continue;
+            }
+            if (matrix.isDecoy(group)) {
+                decoys[decoyCount++] = matrix.getTotalScores()[bestRows[group]];
+            } else {
+                targets[targetCount++] = matrix.getTotalScores()[bestRows[group]];
+            }
+        }
+        Arrays.sort(targets);
+        Arrays.sort(decoys);
+        return errorStatistics(targets, decoys, learningParams, new double[targets.length], new double[targets.length]);
+    }
+
     /**
      * Estimate final results.
+     * 统计完成后每一个真肽段的p值,q值与fdr会写回到对应的SelectedPeakGroup中
      * TODO 没有实现 pep(lfdr);
      */
     public ErrorStat errorStatistics(List<SelectedPeakGroup> targets, List<SelectedPeakGroup> decoys, LearningParams learningParams) {
+        int[] order = sortIndex(totalScores(targets));
+        double[] sortedTargets = new double[order.length];
+        for (int i = 0; i < order.length; i++) {
+            sortedTargets[i] = unbox(targets.get(order[i]).getTotalScore());
+        }
+        double[] sortedDecoys = totalScores(decoys);
+        Arrays.sort(sortedDecoys);
 
-        ErrorStat errorStat = new ErrorStat();
-        List<SelectedPeakGroup> sortedTargets = SortUtil.sortByMainScore(targets, false);
-        List<SelectedPeakGroup> sortedDecoys = SortUtil.sortByMainScore(decoys, false);
+        double[] pValues = new double[order.length];
+        double[] qValues = new double[order.length];
+        ErrorStat errorStat = errorStatistics(sortedTargets, sortedDecoys, learningParams, pValues, qValues);
+        if (errorStat == null) {
+            return null;
+        }
+        double[] fdr = errorStat.getStatMetrics().getFdr();
+        for (int i = 0; i < order.length; i++) {
+            SelectedPeakGroup target = targets.get(order[i]);
+            target.setPValue(pValues[i]);
+            target.setQValue(qValues[i]);
+            target.setFdr(fdr[i]);
+        }
+        errorStat.setBestFeatureScoresList(targets);
+        return errorStat;
+    }
+
+    /**
+     * 在已经排好序的总分上完成全部统计
+     *
+     * @param targets        从小到大排列的真肽段总分
+     * @param decoys         从小到大排列的伪肽段总分
+     * @param learningParams
+     * @param pValues        输出的p值,与targets一一对应
+     * @param qValues        输出的q值,与targets一一对应
+     * @return 统计结果, 其中StatMetrics的各项指标与targets一一对应
+     */
+    public ErrorStat errorStatistics(double[] targets, double[] decoys, LearningParams learningParams, double[] pValues, double[] qValues) {
+        if (targets.length == 0 || decoys.length == 0) {
+            logger.error("ErrorStatistics Error, targets:" + targets.length + ",decoys:" + decoys.length);
+            return null;
+        }
 
         //compute p-values using decoy scores;
         if (learningParams.isParametric()) {
-            pNormalizer(sortedTargets, sortedDecoys);
+            pNormalizer(targets, decoys, pValues);
         } else {
-            pEmpirical(sortedTargets, sortedDecoys);
+            pEmpirical(targets, decoys, pValues);
         }
         Pi0Est pi0Est = new Pi0Est();
-        if (sortedTargets.get(0).getTotalScore() > sortedDecoys.get(sortedDecoys.size() - 1).getTotalScore()) {
+        if (targets[0] > decoys[decoys.length - 1]) {
             pi0Est.setPi0(1d / Constants.PRECISION);
         } else {
             //estimate pi0;
-            pi0Est = pi0Est(sortedTargets, learningParams.getPi0Lambda(), learningParams.getPi0Method(), learningParams.isPi0SmoothLogPi0());
+            pi0Est = pi0Est(pValues, learningParams.getPi0Lambda(), learningParams.getPi0Method(), learningParams.isPi0SmoothLogPi0());
             if (pi0Est == null) {
                 return null;
             }
         }
 
         //compute q-value;
-        qvalue(sortedTargets, pi0Est.getPi0(), learningParams.isPFdr());
+        qvalue(pValues, pi0Est.getPi0(), learningParams.isPFdr(), qValues);
         //compute other metrics;
-        StatMetrics statMetrics = statMetrics(sortedTargets, pi0Est.getPi0(), learningParams.isPFdr());
+        StatMetrics statMetrics = statMetrics(pValues, pi0Est.getPi0(), learningParams.isPFdr());
 
-        errorStat.setBestFeatureScoresList(targets);
+        ErrorStat errorStat = new ErrorStat();
         errorStat.setStatMetrics(statMetrics);
         errorStat.setPi0Est(pi0Est);
-
         return errorStat;
     }
 
@@ -159,16 +255,16 @@ public class Statistics {
 
     /**
      * Calculate P relative scores.
+     * pValues从大到小排列,每一个lambda下p值不小于lambda的数目通过二分查找得到
      */
-    private Pi0Est pi0Est(List<SelectedPeakGroup> targets, Double[] lambda, String pi0Method, boolean smoothLogPi0) {
+    private Pi0Est pi0Est(double[] pValues, Double[] lambda, String pi0Method, boolean smoothLogPi0) {
 
         Pi0Est pi0EstResults = new Pi0Est();
-        int numOfPvalue = targets.size();
+        int numOfPvalue = pValues.length;
         int numOfLambda = 1;
         if (lambda != null) {
             numOfLambda = lambda.length;
         }
-        Double[] meanPL = new Double[numOfPvalue];
         Double[] pi0Lambda = new Double[numOfLambda];
         Double pi0;
         Double[] pi0Smooth = new Double[numOfLambda];
@@ -177,15 +273,10 @@ public class Statistics {
             logger.error("Pi0Est lambda Error, numOfLambda < 4");
             return null;
         }
+        int[] overLambda = new int[numOfLambda];
         for (int i = 0; i < numOfLambda; i++) {
-            for (int j = 0; j < numOfPvalue; j++) {
-                if (targets.get(j).getPValue() < lambda[i]) {
-                    meanPL[j] = 0d;
-                } else {
-                    meanPL[j] = 1d;
-                }
-            }
-            pi0Lambda[i] = MathUtil.mean(meanPL) / (1 - lambda[i]);
+            overLambda[i] = countNotLess(pValues, lambda[i]);
+            pi0Lambda[i] = (double) overLambda[i] / numOfPvalue / (1 - lambda[i]);
         }
         if (pi0Method.equals("smoother")) {
             if (smoothLogPi0) {
@@ -207,13 +298,15 @@ public class Statistics {
             }
             pi0 = Math.min(pi0Smooth[numOfLambda - 1], (double) 1);
         } else if (pi0Method.equals("bootstrap")) {
-            Double[] sortedPi0Lambda = pi0Lambda.clone();
-            Arrays.sort(sortedPi0Lambda);
+            double minPi0Lambda = Double.MAX_VALUE;
+            for (Double value : pi0Lambda) {
+                minPi0Lambda = Math.min(minPi0Lambda, value);
+            }
             int w;
             double[] mse = new double[numOfLambda];
             for (int i = 0; i < numOfLambda; i++) {
-                w = ProProUtil.countOverThreshold(targets, lambda[i]);
-                mse[i] = (w / (Math.pow(numOfPvalue, 2) * Math.pow((1 - lambda[i]), 2))) * (1 - (double) w / numOfPvalue) + Math.pow((pi0Lambda[i] - sortedPi0Lambda[0]), 2);
+                w = overLambda[i];
+                mse[i] = (w / (Math.pow(numOfPvalue, 2) * Math.pow((1 - lambda[i]), 2))) * (1 - (double) w / numOfPvalue) + Math.pow((pi0Lambda[i] - minPi0Lambda), 2);
             }
             double min = Double.MAX_VALUE;
             int index = 0;
@@ -240,13 +333,20 @@ public class Statistics {
         return pi0EstResults;
     }
 
-    private StatMetrics statMetrics(List<SelectedPeakGroup> scores, Double pi0, boolean pfdr) {
+    /**
+     * @param pValues 从大到小排列的p值
+     */
+    private StatMetrics statMetrics(double[] pValues, Double pi0, boolean pfdr) {
         StatMetrics results = new StatMetrics();
-        int numOfPvalue = scores.size();
-        int[] numPositives = ProProUtil.countPValueNumPositives(scores);
-        int[] numNegatives = new int[numOfPvalue];
+        int numOfPvalue = pValues.length;
+        //与ProProUtil.countPValueNumPositives一致,相邻的相同p值为一组,组内的数目均为 总数-组的起始位置
+        int[] numPositives = new int[numOfPvalue];
+        int blockStart = 0;
         for (int i = 0; i < numOfPvalue; i++) {
-            numNegatives[i] = numOfPvalue - numPositives[i];
+            if (i > 0 && pValues[i] != pValues[i - 1]) {
+                blockStart = i;
+            }
+            numPositives[i] = numOfPvalue - blockStart;
         }
         double numNull = pi0 * numOfPvalue;
         double[] tp = new double[numOfPvalue];
@@ -257,27 +357,28 @@ public class Statistics {
         double[] fdr = new double[numOfPvalue];
         double[] fnr = new double[numOfPvalue];
         double[] sens = new double[numOfPvalue];
-        double[] svalues;
+        double[] svalues = new double[numOfPvalue];
         for (int i = 0; i < numOfPvalue; i++) {
-            tp[i] = (double) numPositives[i] - numNull * scores.get(i).getPValue();
-            fp[i] = numNull * scores.get(i).getPValue();
-            tn[i] = numNull * (1.0 - scores.get(i).getPValue());
-            fn[i] = (double) numNegatives[i] - numNull * (1.0 - scores.get(i).getPValue());
+            int numNegatives = numOfPvalue - numPositives[i];
+            tp[i] = (double) numPositives[i] - numNull * pValues[i];
+            fp[i] = numNull * pValues[i];
+            tn[i] = numNull * (1.0 - pValues[i]);
+            fn[i] = (double) numNegatives - numNull * (1.0 - pValues[i]);
             fpr[i] = fp[i] / numNull;
             if (numPositives[i] == 0) {
                 fdr[i] = 0.0;
             } else {
                 fdr[i] = fp[i] / (double) numPositives[i];
             }
-            if (numNegatives[i] == 0) {
+            if (numNegatives == 0) {
                 fnr[i] = 0.0;
             } else {
-                fnr[i] = fn[i] / (double) numNegatives[i];
+                fnr[i] = fn[i] / (double) numNegatives;
             }
             if (pfdr) {
-                fdr[i] /= (1.0 - (1.0 - Math.pow(scores.get(i).getPValue(), numOfPvalue)));
-                fnr[i] /= 1.0 - Math.pow(scores.get(i).getPValue(), numOfPvalue);
-                if (scores.get(i).getPValue() == 0) {
+                fdr[i] /= (1.0 - (1.0 - Math.pow(pValues[i], numOfPvalue)));
+                fnr[i] /= 1.0 - Math.pow(pValues[i], numOfPvalue);
+                if (pValues[i] == 0) {
                     fdr[i] = 1.0 / numOfPvalue;
                     fnr[i] = 1.0 / numOfPvalue;
                 }
@@ -301,10 +402,16 @@ public class Statistics {
             if (fnr[i] > 1.0) {
                 fnr[i] = 1.0;
             }
-            scores.get(i).setFdr(fdr[i]);
         }
 
-        svalues = ArrayUtil.reverse(MathUtil.cumMax(ArrayUtil.reverse(sens)));
+        //svalue为sens从后向前的累计最大值,与MathUtil.cumMax一致,NaN不参与比较
+        double max = numOfPvalue == 0 ? 0 : sens[numOfPvalue - 1];
+        for (int i = numOfPvalue - 1; i >= 0; i--) {
+            if (sens[i] > max) {
+                max = sens[i];
+            }
+            svalues[i] = max;
+        }
         results.setTp(tp);
         results.setFp(fp);
         results.setTn(tn);
@@ -315,4 +422,104 @@ public class Statistics {
         results.setSvalue(svalues);
         return results;
     }
+
+    /**
+     * @param pValues 从大到小排列的p值
+     * @return 每一个位置上的排名
+     */
+    private static int[] ranks(double[] pValues) {
+        int n = pValues.length;
+        int[] ranks = new int[n];
+        boolean sorted = true;
+        for (int i = 1; i < n && sorted; i++) {
+            sorted = pValues[i] <= pValues[i - 1];
+        }
+        if (sorted) {
+            int blockStart = 0;
+            for (int i = 0; i < n; i++) {
+                if (i > 0 && pValues[i] != pValues[i - 1]) {
+                    blockStart = i;
+                }
+                ranks[i] = n - blockStart;
+            }
+            return ranks;
+        }
+
+        double[] sortedValues = pValues.clone();
+        Arrays.sort(sortedValues);
+        int pos = 0;
+        int count = 0;
+        int end = n;
+        while (end > 0) {
+            int start = end - 1;
+            while (start > 0 && sortedValues[start - 1] == sortedValues[end - 1]) {
+                start--;
+            }
+            int size = end - start;
+            for (int i = 0; i < size; i++) {
+                ranks[pos++] = n - count;
+            }
+            count += size;
+            end = start;
+        }
+        return ranks;
+    }
+
+    /**
+     * @param pValues 从大到小排列的p值
+     * @param lambda
+     * @return p值不小于lambda的数目
+     */
+    private static int countNotLess(double[] pValues, double lambda) {
+        int low = 0, high = pValues.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (pValues[mid] < lambda) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    private static double[] totalScores(List<SelectedPeakGroup> scores) {
+        double[] totalScores = new double[scores.size()];
+        for (int i = 0; i < totalScores.length; i++) {
+            totalScores[i] = unbox(scores.get(i).getTotalScore());
+        }
+        return totalScores;
+    }
+
+    private static double unbox(Double value) {
+        return value == null ? Double.NaN : value;
+    }
+
+    /**
+     * 稳定的下标排序,按照Double.compare从小到大排列,相同的值保持原有的先后顺序
+     * 先对总分做原始类型排序,再按原有顺序逐个二分定位,相同总分依次占用同一组内的下一个位置
+     *
+     * @param keys
+     * @return 排序后第i位的元素在keys中的下标
+     */
+    private static int[] sortIndex(double[] keys) {
+        int n = keys.length;
+        double[] sorted = keys.clone();
+        Arrays.sort(sorted);
+        int[] used = new int[n];
+        int[] index = new int[n];
+        for (int i = 0; i < n; i++) {
+            int low = 0, high = n;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (Double.compare(sorted[mid], keys[i]) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            index[low + used[low]++] = i;
+        }
+        return index;
+    }
 }
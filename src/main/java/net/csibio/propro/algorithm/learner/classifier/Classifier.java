@@ -4,8 +4,10 @@ import lombok.extern.slf4j.Slf4j;
 import net.csibio.propro.algorithm.learner.Statistics;
 import net.csibio.propro.algorithm.score.ScoreType;
 import net.csibio.propro.algorithm.score.scorer.Scorer;
+import net.csibio.propro.config.ScoringPool;
 import net.csibio.propro.domain.bean.data.DataScore;
 import net.csibio.propro.domain.bean.learner.LearningParams;
+import net.csibio.propro.domain.bean.learner.ScoreMatrix;
 import net.csibio.propro.domain.bean.learner.TrainData;
 import net.csibio.propro.domain.bean.learner.TrainPeaks;
 import net.csibio.propro.domain.bean.score.PeakGroup;
@@ -29,15 +31,45 @@ public abstract class Classifier {
     @Autowired
     Scorer scorer;
 
+    @Autowired
+    ScoringPool scoringPool;
+
     /**
      * Get clfScore with given confidence(params).
      * 根据weightsMap计算子分数的(加权总分-平均加权总分)
      */
     public void score(TrainData data, HashMap<String, Double> weightsMap, List<String> scoreTypes) {
+        if (data.getMatrix() != null) {
+            score(data.getMatrix(), data.getTargetGroups(), weightsMap, scoreTypes);
+            score(data.getMatrix(), data.getDecoyGroups(), weightsMap, scoreTypes);
+            return;
+        }
         score(data.getTargets(), weightsMap, scoreTypes);
         score(data.getDecoys(), weightsMap, scoreTypes);
     }
 
+    /**
+     * 计算打分矩阵中所有峰组的加权总分
+     */
+    public void score(ScoreMatrix matrix, HashMap<String, Double> weightsMap, List<String> scoreTypes) {
+        double[] weights = buildWeights(weightsMap, scoreTypes);
+        for (int row = 0; row < matrix.getRows(); row++) {
+            scoreRow(matrix, row, weights);
+        }
+    }
+
+    /**
+     * 计算打分矩阵中指定肽段的所有峰组的加权总分
+     */
+    public void score(ScoreMatrix matrix, int[] groups, HashMap<String, Double> weightsMap, List<String> scoreTypes) {
+        double[] weights = buildWeights(weightsMap, scoreTypes);
+        for (int group : groups) {
+            for (int row = matrix.from(group); row < matrix.to(group); row++) {
+                scoreRow(matrix, row, weights);
+            }
+        }
+    }
+
     public void score(List<DataScore> scores, HashMap<String, Double> weightsMap, List<String> scoreTypes) {
         Set<Map.Entry<String, Double>> entries = weightsMap.entrySet();
         for (DataScore score : scores) {
@@ -68,6 +100,30 @@ public abstract class Classifier {
         }
     }
 
+    /**
+     * 将weightsMap按照scoreTypes的顺序展开为数组,不在scoreTypes中的子分数权重为0
+     */
+    private double[] buildWeights(HashMap<String, Double> weightsMap, List<String> scoreTypes) {
+        double[] weights = new double[scoreTypes.size()];
+        for (Map.Entry<String, Double> entry : weightsMap.entrySet()) {
+            int index = scoreTypes.indexOf(entry.getKey());
+            if (index != -1) {
+                weights[index] = entry.getValue();
+            }
+        }
+        return weights;
+    }
+
+    private void scoreRow(ScoreMatrix matrix, int row, double[] weights) {
+        double[] scores = matrix.getScores();
+        int base = row * matrix.getCols();
+        double addedScore = 0;
+        for (int col = 0; col < weights.length; col++) {
+            addedScore += scores[base + col] * weights[col];
+        }
+        matrix.getTotalScores()[row] = addedScore;
+    }
+
     /**
      * 选择第一批初始数据集
      *
@@ -78,26 +134,30 @@ public abstract class Classifier {
     public TrainPeaks selectFirstTrainPeaks(TrainData trainData, LearningParams learningParams) {
         List<SelectedPeakGroup> decoyPeaks = new ArrayList<>();
         List<String> scoreTypes = learningParams.getScoreTypes();
-        for (DataScore dataScore : trainData.getDecoys()) {
-            PeakGroup topDecoy = null;
-            double maxMainScore = -Double.MAX_VALUE;
-            for (PeakGroup peakGroupScore : dataScore.getPeakGroupList()) {
-                double mainScore = peakGroupScore.get(ScoreType.Dotprod.getName(), scoreTypes);
-                if (mainScore > maxMainScore) {
-                    maxMainScore = mainScore;
-                    topDecoy = peakGroupScore;
+        if (trainData.getMatrix() != null) {
+            decoyPeaks = selectFirstDecoyPeaks(trainData.getMatrix(), trainData.getDecoyGroups(), scoreTypes);
+        } else {
+            for (DataScore dataScore : trainData.getDecoys()) {
+                PeakGroup topDecoy = null;
+                double maxMainScore = -Double.MAX_VALUE;
+                for (PeakGroup peakGroupScore : dataScore.getPeakGroupList()) {
+                    double mainScore = peakGroupScore.get(ScoreType.Dotprod.getName(), scoreTypes);
+                    if (mainScore > maxMainScore) {
+                        maxMainScore = mainScore;
+                        topDecoy = peakGroupScore;
+                    }
                 }
-            }
 
-            if (topDecoy == null || topDecoy.getScores() == null) {
+                if (topDecoy == null || topDecoy.getScores() == null) {
 //                log.error("Scores为空");
-                continue;
-            }
+                    continue;
+                }
 
-            SelectedPeakGroup selectedPeakGroup = new SelectedPeakGroup();
-            selectedPeakGroup.setDecoy(dataScore.getDecoy());
-            selectedPeakGroup.setScores(topDecoy.getScores());
-            decoyPeaks.add(selectedPeakGroup);
+                SelectedPeakGroup selectedPeakGroup = new SelectedPeakGroup();
+                selectedPeakGroup.setDecoy(dataScore.getDecoy());
+                selectedPeakGroup.setScores(topDecoy.getScores());
+                decoyPeaks.add(selectedPeakGroup);
+            }
         }
         TrainPeaks trainPeaks = new TrainPeaks();
         trainPeaks.setTopDecoys(decoyPeaks);
@@ -136,10 +196,45 @@ public abstract class Classifier {
         return trainPeaks;
     }
 
+    /**
+     * 在打分矩阵上为每一个伪肽段挑选Dotprod最高的峰组
+     */
+    private List<SelectedPeakGroup> selectFirstDecoyPeaks(ScoreMatrix matrix, int[] decoyGroups, List<String> scoreTypes) {
+        List<SelectedPeakGroup> decoyPeaks = new ArrayList<>();
+        int mainCol = scoreTypes.indexOf(ScoreType.Dotprod.getName());
+        for (int group : decoyGroups) {
+            int topDecoy = -1;
+            double maxMainScore = -Double.MAX_VALUE;
+            for (int row = matrix.from(group); row < matrix.to(group); row++) {
+                double mainScore = mainCol == -1 ? 0d : matrix.get(row, mainCol);
+                if (mainScore > maxMainScore) {
+                    maxMainScore = mainScore;
+                    topDecoy = row;
+                }
+            }
+            if (topDecoy == -1) {
+                continue;
+            }
+
+            SelectedPeakGroup selectedPeakGroup = new SelectedPeakGroup();
+            selectedPeakGroup.setDecoy(true);
+            selectedPeakGroup.setScores(matrix.boxScores(topDecoy));
+            decoyPeaks.add(selectedPeakGroup);
+        }
+        return decoyPeaks;
+    }
+
     public TrainPeaks selectTrainPeaks(TrainData trainData, LearningParams learningParams, Double cutoff) {
 
-        List<SelectedPeakGroup> topTargetPeaks = scorer.findBestPeakGroup(trainData.getTargets());
-        List<SelectedPeakGroup> topDecoyPeaks = scorer.findBestPeakGroup(trainData.getDecoys());
+        List<SelectedPeakGroup> topTargetPeaks;
+        List<SelectedPeakGroup> topDecoyPeaks;
+        if (trainData.getMatrix() != null) {
+            topTargetPeaks = scorer.findBestPeakGroup(trainData.getMatrix(), trainData.getTargetGroups());
+            topDecoyPeaks = scorer.findBestPeakGroup(trainData.getMatrix(), trainData.getDecoyGroups());
+        } else {
+            topTargetPeaks = scorer.findBestPeakGroup(trainData.getTargets());
+            topDecoyPeaks = scorer.findBestPeakGroup(trainData.getDecoys());
+        }
 
         Double cutoffNew;
         if (topTargetPeaks.size() < 100) {
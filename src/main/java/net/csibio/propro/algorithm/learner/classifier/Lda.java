@@ -17,6 +17,8 @@ import java.util.*;
 @Component("lda")
 public class Lda extends Classifier {
 
+    private static final List<String> SKIP_TYPES = Arrays.asList(ScoreType.CorrShape.getName(), ScoreType.CorrShapeW.getName());
+
     /**
      * @param peptideList
      * @param learningParams
@@ -47,10 +49,59 @@ public class Lda extends Classifier {
         return ldaLearnData.getWeightsMap();
     }
 
+    /**
+     * 直接在打分矩阵上训练,结束后矩阵中所有峰组的总分为本轮训练结果的打分
+     * 训练集按照ldaEnsemble个不同的种子随机划分,各个成员在打分线程池中并行训练,每个成员使用独立的总分数组,
+     * 最终权重为所有成功成员的平均值.成员的种子与编号一一对应,合并顺序固定,因此结果与线程数无关
+     *
+     * @param matrix
+     * @param learningParams
+     * @return
+     */
+    public HashMap<String, Double> classifier(ScoreMatrix matrix, LearningParams learningParams) {
+        log.info("开始训练学习数据权重");
+        if (matrix.getGroups() < 500) {
+            learningParams.setXevalNumIter(10);
+            learningParams.setSsIterationFdr(0.02);
+            learningParams.setProgressiveRate(0.8);
+        }
+
+        int members = learningParams.getTrainTestRatio() >= 1 ? 1 : Math.max(1, learningParams.getLdaEnsemble());
+        LDALearnData[] learnDataArray = new LDALearnData[members];
+        scoringPool.forEach(members, i -> {
+            ScoreMatrix memberMatrix = members == 1 ? matrix : matrix.fork();
+            Random random = new Random(learningParams.getSeed() + i);
+            learnDataArray[i] = learnRandomized(ProProUtil.split(memberMatrix, learningParams.getTrainTestRatio(), random), learningParams);
+        });
+        List<HashMap<String, Double>> weightsMapList = new ArrayList<>();
+        for (LDALearnData learnData : learnDataArray) {
+            if (learnData != null && learnData.getWeightsMap() != null) {
+                weightsMapList.add(learnData.getWeightsMap());
+            }
+        }
+        if (weightsMapList.isEmpty()) {
+            log.info("本轮训练失败");
+            return null;
+        }
+        HashMap<String, Double> weightsMap = ProProUtil.averagedWeights(weightsMapList);
+        log.info("训练成功的成员数目:" + weightsMapList.size() + "/" + members);
+        score(matrix, weightsMap, learningParams.getScoreTypes());
+        ErrorStat errorStat = statistics.errorStatistics(matrix, learningParams);
+        int count = ProProUtil.checkFdr(errorStat.getStatMetrics().getFdr(), learningParams.getFdr());
+        if (count > 0) {
+            log.info("本轮尝试有效果:检测结果:" + count + "个");
+        }
+
+        return weightsMap;
+    }
+
     public LDALearnData learnRandomized(List<DataScore> scores, LearningParams learningParams) {
+        return learnRandomized(ProProUtil.split(scores, learningParams.getTrainTestRatio()), learningParams);
+    }
+
+    public LDALearnData learnRandomized(TrainData trainData, LearningParams learningParams) {
         LDALearnData ldaLearnData = new LDALearnData();
         try {
-            TrainData trainData = ProProUtil.split(scores, learningParams.getTrainTestRatio());
             TrainPeaks trainPeaks = selectFirstTrainPeaks(trainData, learningParams);
 
             HashMap<String, Double> weightsMap = learn(trainPeaks, learningParams.getScoreTypes());
@@ -89,6 +140,8 @@ public class Lda extends Classifier {
 
     /**
      * 使用apache的svd库进行计算
+     * 不再构建 样本数*子分数数 的矩阵,而是逐个样本累加散布矩阵X'X与X'y,对 子分数数*子分数数 的散布矩阵做SVD求解,
+     * 得到与直接对X做最小二乘相同的最小范数解
      *
      * @param trainPeaks
      * @return key为子分数的名称, value是该子分数的权重值
@@ -98,19 +151,33 @@ public class Lda extends Classifier {
         int row = trainPeaks.getBestTargets().size() + trainPeaks.getTopDecoys().size();
         if (row == 0) {
             log.error("训练数据集为空");
+            return null;
         }
         int column = scoreTypes.size();
+        boolean[] skips = new boolean[column];
+        for (String skipType : SKIP_TYPES) {
+            int index = scoreTypes.indexOf(skipType);
+            if (index != -1) {
+                skips[index] = true;
+            }
+        }
 
-        //先将需要进入学习的打分转化为二维矩阵
-        RealMatrix scoresMatrix = MatrixUtils.createRealMatrix(row, column);
-        RealVector labelVector = new ArrayRealVector(row);
-        List<SelectedPeakGroup> totalPeakGroups = new ArrayList<>();
-        totalPeakGroups.addAll(trainPeaks.getBestTargets());
-        totalPeakGroups.addAll(trainPeaks.getTopDecoys());
-        assignment(scoresMatrix, labelVector, totalPeakGroups, scoreTypes);
+        double[] scatter = new double[column * column];
+        double[] xy = new double[column];
+        double[] x = new double[column];
+        accumulate(trainPeaks.getBestTargets(), 1d, skips, x, scatter, xy);
+        accumulate(trainPeaks.getTopDecoys(), 0d, skips, x, scatter, xy);
+
+        RealMatrix scatterMatrix = MatrixUtils.createRealMatrix(column, column);
+        for (int i = 0; i < column; i++) {
+            for (int j = i; j < column; j++) {
+                scatterMatrix.setEntry(i, j, scatter[i * column + j]);
+                scatterMatrix.setEntry(j, i, scatter[i * column + j]);
+            }
+        }
         //计算SVD的解
-        SingularValueDecomposition solver = new SingularValueDecomposition(scoresMatrix);
-        RealVector realVector = solver.getSolver().solve(labelVector);
+        SingularValueDecomposition solver = new SingularValueDecomposition(scatterMatrix);
+        RealVector realVector = solver.getSolver().solve(new ArrayRealVector(xy, false));
 
         //输出最终的权重值
         HashMap<String, Double> weightsMap = new HashMap<>();
@@ -129,26 +196,27 @@ public class Lda extends Classifier {
         return weightsMap;
     }
 
-    private void assignment(RealMatrix xMatrix, RealVector yVector, List<SelectedPeakGroup> peakGroupList, List<String> scoreTypes) {
-        Set<String> skipTypes = new HashSet<>();
-        skipTypes.add(ScoreType.CorrShape.getName());
-        skipTypes.add(ScoreType.CorrShapeW.getName());
-        for (int i = 0; i < peakGroupList.size(); i++) {
-            yVector.setEntry(i, peakGroupList.get(i).getDecoy() ? 0 : 1);
-            try {
-                for (int j = 0; j < scoreTypes.size(); j++) {
-                    if (skipTypes.contains(scoreTypes.get(j))) {
-                        xMatrix.setEntry(i, j, 0);
-                    } else {
-                        xMatrix.setEntry(i, j, peakGroupList.get(i).get(scoreTypes.get(j), scoreTypes));
-                    }
+    /**
+     * 将样本累加进散布矩阵的上三角以及X'y,为空的子分数与需要跳过的子分数记为0
+     */
+    private void accumulate(List<SelectedPeakGroup> peakGroupList, double label, boolean[] skips, double[] x, double[] scatter, double[] xy) {
+        int column = x.length;
+        for (SelectedPeakGroup peakGroup : peakGroupList) {
+            Double[] scores = peakGroup.getScores();
+            for (int j = 0; j < column; j++) {
+                Double score = scores == null || j >= scores.length ? null : scores[j];
+                x[j] = skips[j] || score == null ? 0d : score;
+            }
+            for (int i = 0; i < column; i++) {
+                if (x[i] == 0d) {
+                    continue;
+                }
+                xy[i] += x[i] * label;
+                int base = i * column;
+                for (int j = i; j < column; j++) {
+                    scatter[base + j] += x[i] * x[j];
                 }
-            } catch (Exception e) {
-                log.error(e.getMessage());
             }
-
         }
-
-
     }
 }
@@ -7,20 +7,18 @@ import ml.dmlc.xgboost4j.java.XGBoostError;
 import net.csibio.propro.domain.bean.data.DataScore;
 import net.csibio.propro.domain.bean.learner.ErrorStat;
 import net.csibio.propro.domain.bean.learner.LearningParams;
+import net.csibio.propro.domain.bean.learner.ScoreMatrix;
 import net.csibio.propro.domain.bean.learner.TrainData;
 import net.csibio.propro.domain.bean.learner.TrainPeaks;
+import net.csibio.propro.domain.bean.learner.XGBLearnData;
 import net.csibio.propro.domain.bean.score.PeakGroup;
 import net.csibio.propro.domain.bean.score.SelectedPeakGroup;
-import net.csibio.propro.utils.ArrayUtil;
 import net.csibio.propro.utils.ProProUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 
 /**
  * Created by Nico Wang
@@ -60,14 +58,20 @@ public class Xgboost extends Classifier {
         }
     };
 
-    public void classifier(List<DataScore> scores, LearningParams learningParams) {
+    public XGBLearnData classifier(List<DataScore> scores, LearningParams learningParams) {
         logger.info("开始训练Booster");
-        Booster booster = learnRandomized(scores, learningParams);
+        XGBLearnData learnData = learnRandomized(scores, learningParams);
+        if (learnData == null) {
+            return null;
+        }
         try {
             logger.info("开始最终打分");
-            predictAll(booster, scores, learningParams.getScoreTypes());
+            predictAll(learnData, scores, learningParams.getScoreTypes());
         } catch (Exception e) {
             e.printStackTrace();
+        } finally {
+            //最终打分以后不再需要Booster,及时释放native内存
+            learnData.getBooster().dispose();
         }
         List<SelectedPeakGroup> featureScoresList = scorer.findBestPeakGroup(scores);
         ErrorStat errorStat = statistics.errorStatistics(featureScoresList, learningParams);
@@ -75,106 +79,374 @@ public class Xgboost extends Classifier {
         if (count > 0) {
             logger.info("XGBooster:检测结果:" + count + "个.");
         }
+        return learnData;
     }
 
-    public Booster learnRandomized(List<DataScore> scores, LearningParams params) {
+    /**
+     * 直接在打分矩阵上训练,结束后矩阵中所有峰组的总分为Booster的预测值
+     *
+     * @param matrix
+     * @param learningParams
+     * @return 训练结果, 训练失败时返回null.返回时Booster已经释放,只保留训练的统计信息
+     */
+    public XGBLearnData classifier(ScoreMatrix matrix, LearningParams learningParams) {
+        logger.info("开始训练Booster");
+        XGBLearnData learnData = learnRandomized(matrix, learningParams);
+        if (learnData == null) {
+            return null;
+        }
         try {
-            //Get part of scores as train input.
-            TrainData trainData = ProProUtil.split(scores, params.getTrainTestRatio());
-            //第一次训练数据集使用MainScore进行训练
-            long startTime = System.currentTimeMillis();
-            TrainPeaks trainPeaks = selectFirstTrainPeaks(trainData, params);
-            logger.info("高可信Target个数：" + trainPeaks.getBestTargets().size());
-            Booster booster = train(trainPeaks, params.getScoreTypes());
-            predict(booster, trainData, params.getScoreTypes());
-            for (int times = 0; times < params.getXevalNumIter(); times++) {
-                logger.info("开始第" + times + "轮训练");
-                long start = System.currentTimeMillis();
-                TrainPeaks trainPeaksTemp = selectTrainPeaks(trainData, params, params.getXgbIterationFdr());
-                logger.info("高可信Target个数：" + trainPeaksTemp.getBestTargets().size());
-                booster = train(trainPeaksTemp, params.getScoreTypes());
-                logger.info("训练耗时:" + (System.currentTimeMillis() - start));
-                start = System.currentTimeMillis();
-                predict(booster, trainData, params.getScoreTypes());
-                System.out.println("predict耗时:" + (System.currentTimeMillis() - start));
-            }
+            logger.info("开始最终打分");
+            predictAll(learnData, matrix, null);
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            //最终打分以后不再需要Booster,及时释放native内存
+            learnData.getBooster().dispose();
+        }
+        ErrorStat errorStat = statistics.errorStatistics(matrix, learningParams);
+        int count = ProProUtil.checkFdr(errorStat.getStatMetrics().getFdr(), learningParams.getFdr());
+        if (count > 0) {
+            logger.info("XGBooster:检测结果:" + count + "个.");
+        }
+        return learnData;
+    }
 
-            logger.info("总时间：" + (System.currentTimeMillis() - startTime));
+    public XGBLearnData learnRandomized(List<DataScore> scores, LearningParams params) {
+        XGBLearnData learnData = null;
+        try {
+            //Get part of scores as train input.
+            learnData = learnRandomized(ProProUtil.split(scores, params.getTrainTestRatio()), params);
             List<SelectedPeakGroup> featureScoresList = scorer.findBestPeakGroup(scores);
             ErrorStat errorStat = statistics.errorStatistics(featureScoresList, params);
             int count = ProProUtil.checkFdr(errorStat.getStatMetrics().getFdr(), params.getFdr());
             logger.info("Train count:" + count);
-            return booster;
+            return learnData;
         } catch (Exception e) {
             logger.error("learnRandomizedXGB Fail.\n");
             e.printStackTrace();
+            if (learnData != null) {
+                learnData.getBooster().dispose();
+            }
             return null;
         }
     }
 
-    public Booster train(TrainPeaks trainPeaks, List<String> scoreTypes) throws XGBoostError {
-        DMatrix trainMat = trainPeaksToDMatrix(trainPeaks, scoreTypes);
-        Map<String, DMatrix> watches = new HashMap<>();
-        watches.put("train", trainMat);
-//        String[] metrics = null;
-//        String[] evalHist = XGBoost.crossValidation(trainMat, params, 5, 5, metrics, null, null);
-        Booster booster = XGBoost.train(trainMat, this.params, 480, watches, null, null);
-        return booster;
+    public XGBLearnData learnRandomized(ScoreMatrix matrix, LearningParams params) {
+        XGBLearnData learnData = null;
+        try {
+            learnData = learnRandomized(ProProUtil.split(matrix, params.getTrainTestRatio()), params);
+            ErrorStat errorStat = statistics.errorStatistics(matrix, params);
+            int count = ProProUtil.checkFdr(errorStat.getStatMetrics().getFdr(), params.getFdr());
+            logger.info("Train count:" + count);
+            return learnData;
+        } catch (Exception e) {
+            logger.error("learnRandomizedXGB Fail.\n");
+            e.printStackTrace();
+            if (learnData != null) {
+                learnData.getBooster().dispose();
+            }
+            return null;
+        }
+    }
+
+    public XGBLearnData learnRandomized(TrainData trainData, LearningParams params) throws XGBoostError {
+        //第一次训练数据集使用MainScore进行训练
+        long startTime = System.currentTimeMillis();
+        TrainPeaks trainPeaks = selectFirstTrainPeaks(trainData, params);
+        logger.info("高可信Target个数：" + trainPeaks.getBestTargets().size());
+        XGBLearnData learnData = train(trainPeaks, params);
+        boolean success = false;
+        try {
+            int totalRounds = learnData.getRounds();
+            predict(learnData, trainData, params.getScoreTypes());
+            for (int times = 0; times < params.getXevalNumIter(); times++) {
+                logger.info("开始第" + times + "轮训练");
+                long start = System.currentTimeMillis();
+                TrainPeaks trainPeaksTemp = selectTrainPeaks(trainData, params, params.getXgbIterationFdr());
+                logger.info("高可信Target个数：" + trainPeaksTemp.getBestTargets().size());
+                //上一轮的Booster无论本轮训练是否成功都需要释放
+                XGBLearnData last = learnData;
+                learnData = null;
+                try {
+                    learnData = train(trainPeaksTemp, params);
+                } finally {
+                    last.getBooster().dispose();
+                }
+                totalRounds += learnData.getRounds();
+                logger.info("训练耗时:" + (System.currentTimeMillis() - start) + ",训练轮数:" + learnData.getRounds() + ",验证集指标:" + learnData.getValidMetric());
+                start = System.currentTimeMillis();
+                predict(learnData, trainData, params.getScoreTypes());
+                logger.info("predict耗时:" + (System.currentTimeMillis() - start));
+            }
+
+            learnData.setTotalRounds(totalRounds);
+            learnData.setCost(System.currentTimeMillis() - startTime);
+            logger.info("总时间：" + learnData.getCost() + ",累计训练轮数:" + totalRounds);
+            success = true;
+            return learnData;
+        } finally {
+            //训练或预测失败时调用方拿不到Booster,在此释放
+            if (!success && learnData != null) {
+                learnData.getBooster().dispose();
+            }
+        }
+    }
+
+    /**
+     * 训练一个Booster
+     * 启用早停时从训练样本中留出xgbValidRatio比例的样本作为验证集,每一轮训练后计算验证集在FDR阈值下鉴定出的真肽段比例,
+     * 连续xgbEarlyStoppingRounds轮没有提升时停止训练,预测时只使用指标最好的前treeLimit轮的树
+     * 验证集中缺少真肽段或者伪肽段时(例如第一轮只有一个理想真肽段)不启用早停,训练全部轮数
+     *
+     * @param trainPeaks
+     * @param params
+     * @return
+     * @throws XGBoostError
+     */
+    public XGBLearnData train(TrainPeaks trainPeaks, LearningParams params) throws XGBoostError {
+        List<String> scoreTypes = params.getScoreTypes();
+        TrainPeaks train = trainPeaks;
+        TrainPeaks valid = null;
+        if (params.getXgbEarlyStoppingRounds() > 0 && params.getXgbValidRatio() > 0) {
+            TrainPeaks[] split = ProProUtil.split(trainPeaks, params.getXgbValidRatio());
+            if (!split[0].getBestTargets().isEmpty() && !split[0].getTopDecoys().isEmpty()
+                    && !split[1].getBestTargets().isEmpty() && !split[1].getTopDecoys().isEmpty()) {
+                train = split[0];
+                valid = split[1];
+            }
+        }
+
+        //DMatrix持有原生内存,训练结束后无论成功与否都需要释放;训练失败时Booster也一并释放
+        DMatrix trainMat = null;
+        DMatrix validMat = null;
+        Booster booster = null;
+        try {
+            trainMat = trainPeaksToDMatrix(train, scoreTypes);
+            Map<String, DMatrix> watches = new LinkedHashMap<>();
+            watches.put("train", trainMat);
+            if (valid != null) {
+                validMat = trainPeaksToDMatrix(valid, scoreTypes);
+                watches.put("valid", validMat);
+            }
+            //只创建Booster,逐轮训练由下面的循环控制
+            booster = XGBoost.train(trainMat, buildParams(params), 0, watches, null, null);
+
+            int rounds = 0;
+            int bestRounds = 0;
+            double bestMetric = -1;
+            for (int iter = 0; iter < params.getXgbRounds(); iter++) {
+                booster.update(trainMat, iter);
+                rounds++;
+                if (validMat == null) {
+                    continue;
+                }
+                double metric = identifiedRatio(booster.predict(validMat, true), valid.getBestTargets().size(), params.getFdr());
+                if (metric > bestMetric) {
+                    bestMetric = metric;
+                    bestRounds = rounds;
+                } else if (rounds - bestRounds >= params.getXgbEarlyStoppingRounds()) {
+                    break;
+                }
+            }
+
+            XGBLearnData learnData = new XGBLearnData();
+            learnData.setBooster(booster);
+            learnData.setRounds(rounds);
+            if (validMat != null) {
+                learnData.setTreeLimit(bestRounds);
+                learnData.setValidMetric(bestMetric);
+            }
+            booster = null;
+            return learnData;
+        } finally {
+            if (booster != null) {
+                booster.dispose();
+            }
+            if (validMat != null) {
+                validMat.dispose();
+            }
+            if (trainMat != null) {
+                trainMat.dispose();
+            }
+        }
     }
 
-    public void predict(Booster booster, TrainData trainData, List<String> scoreTypes) throws XGBoostError {
+    public void predict(XGBLearnData learnData, TrainData trainData, List<String> scoreTypes) throws XGBoostError {
+        if (trainData.getMatrix() != null) {
+            int[] groups = new int[trainData.getDecoyGroups().length + trainData.getTargetGroups().length];
+            System.arraycopy(trainData.getDecoyGroups(), 0, groups, 0, trainData.getDecoyGroups().length);
+            System.arraycopy(trainData.getTargetGroups(), 0, groups, trainData.getDecoyGroups().length, trainData.getTargetGroups().length);
+            predictAll(learnData, trainData.getMatrix(), groups);
+            return;
+        }
         List<DataScore> totalGroupScore = new ArrayList<>(trainData.getDecoys());
         totalGroupScore.addAll(trainData.getTargets());
-        predictAll(booster, totalGroupScore, scoreTypes);
+        predictAll(learnData, totalGroupScore, scoreTypes);
     }
 
-    public void predictAll(Booster booster, List<DataScore> scores, List<String> scoreTypes) throws XGBoostError {
-        int scoreTypesCount = scoreTypes.size();
+    public void predictAll(XGBLearnData learnData, List<DataScore> scores, List<String> scoreTypes) throws XGBoostError {
+        int cols = scoreTypes.size();
         List<PeakGroup> peakGroupList = new ArrayList<>();
         for (DataScore dataScore : scores) {
             peakGroupList.addAll(dataScore.getPeakGroupList());
         }
+        if (peakGroupList.isEmpty()) {
+            return;
+        }
 
-        float[] totalScoreArray = new float[peakGroupList.size() * scoreTypesCount];
-        int desPos = 0;
+        float[] features = new float[peakGroupList.size() * cols];
         for (int i = 0; i < peakGroupList.size(); i++) {
-            float[] peakGroupX = ArrayUtil.doubleTofloat(peakGroupList.get(i).getScores());
-            System.arraycopy(peakGroupX, 0, totalScoreArray, desPos, peakGroupX.length);
-            desPos += peakGroupX.length;
+            fill(peakGroupList.get(i).getScores(), features, i * cols, cols);
+        }
+        DMatrix dMatrix = new DMatrix(features, peakGroupList.size(), cols, 0f);
+        float[][] predicts;
+        try {
+            predicts = learnData.getBooster().predict(dMatrix, true, learnData.getTreeLimit());
+        } finally {
+            dMatrix.dispose();
         }
-        DMatrix dMatrix = new DMatrix(totalScoreArray, peakGroupList.size(), scoreTypes.size(), 0f);
-        float[][] predicts = booster.predict(dMatrix, true);
         for (int i = 0; i < peakGroupList.size(); i++) {
             peakGroupList.get(i).setTotalScore((double) predicts[i][0]);
         }
     }
 
-    public DMatrix trainPeaksToDMatrix(TrainPeaks trainPeaks, List<String> scoreTypes) throws XGBoostError {
-        int totalLength = trainPeaks.getBestTargets().size() + trainPeaks.getTopDecoys().size();
-        int scoreTypesCount = scoreTypes.size();
-
-        float[] trainData = new float[totalLength * scoreTypesCount];
-        float[] trainLabel = new float[totalLength];
-        int dataIndex = 0, labelIndex = 0;
-        for (SelectedPeakGroup sample : trainPeaks.getBestTargets()) {
-            for (String scoreName : scoreTypes) {
-                trainData[dataIndex] = sample.get(scoreName, scoreTypes).floatValue();
-                trainLabel[labelIndex] = 1;
-                dataIndex++;
+    /**
+     * 在打分矩阵上进行预测,预测值写回矩阵的总分
+     *
+     * @param learnData
+     * @param matrix
+     * @param groups    需要预测的肽段编号,为null时预测全部峰组
+     * @throws XGBoostError
+     */
+    public void predictAll(XGBLearnData learnData, ScoreMatrix matrix, int[] groups) throws XGBoostError {
+        int cols = matrix.getCols();
+        double[] scores = matrix.getScores();
+        int[] rows;
+        if (groups == null) {
+            rows = new int[matrix.getRows()];
+            for (int row = 0; row < rows.length; row++) {
+                rows[row] = row;
+            }
+        } else {
+            int count = 0;
+            for (int group : groups) {
+                count += matrix.to(group) - matrix.from(group);
+            }
+            rows = new int[count];
+            int pos = 0;
+            for (int group : groups) {
+                for (int row = matrix.from(group); row < matrix.to(group); row++) {
+                    rows[pos++] = row;
+                }
             }
-            labelIndex++;
         }
-        for (SelectedPeakGroup sample : trainPeaks.getTopDecoys()) {
-            for (String scoreName : scoreTypes) {
-                trainData[dataIndex] = sample.get(scoreName, scoreTypes).floatValue();
-                trainLabel[labelIndex] = 0;
-                dataIndex++;
+        if (rows.length == 0) {
+            return;
+        }
+
+        float[] features = new float[rows.length * cols];
+        int desPos = 0;
+        for (int row : rows) {
+            int base = row * cols;
+            for (int col = 0; col < cols; col++) {
+                features[desPos++] = (float) scores[base + col];
             }
-            labelIndex++;
         }
+        DMatrix dMatrix = new DMatrix(features, rows.length, cols, 0f);
+        float[][] predicts;
+        try {
+            predicts = learnData.getBooster().predict(dMatrix, true, learnData.getTreeLimit());
+        } finally {
+            dMatrix.dispose();
+        }
+        for (int i = 0; i < rows.length; i++) {
+            matrix.getTotalScores()[rows[i]] = predicts[i][0];
+        }
+    }
+
+    /**
+     * 训练样本按照真肽段在前,伪肽段在后的顺序写入同一个特征数组,子分数的顺序即为scoreTypes的顺序
+     */
+    public DMatrix trainPeaksToDMatrix(TrainPeaks trainPeaks, List<String> scoreTypes) throws XGBoostError {
+        int targets = trainPeaks.getBestTargets().size();
+        int totalLength = targets + trainPeaks.getTopDecoys().size();
+        int cols = scoreTypes.size();
 
-        DMatrix trainMat = new DMatrix(trainData, totalLength, scoreTypesCount, 0f);
-        trainMat.setLabel(trainLabel);
+        float[] features = new float[totalLength * cols];
+        float[] labels = new float[totalLength];
+        for (int i = 0; i < targets; i++) {
+            fill(trainPeaks.getBestTargets().get(i).getScores(), features, i * cols, cols);
+            labels[i] = 1;
+        }
+        for (int i = 0; i < trainPeaks.getTopDecoys().size(); i++) {
+            fill(trainPeaks.getTopDecoys().get(i).getScores(), features, (targets + i) * cols, cols);
+        }
+
+        DMatrix trainMat = new DMatrix(features, totalLength, cols, 0f);
+        try {
+            trainMat.setLabel(labels);
+        } catch (XGBoostError e) {
+            trainMat.dispose();
+            throw e;
+        }
         return trainMat;
     }
+
+    /**
+     * 本次训练使用的Booster参数,线程数与打分线程池保持一致
+     */
+    private Map<String, Object> buildParams(LearningParams learningParams) {
+        Map<String, Object> boosterParams = new HashMap<>(params);
+        boosterParams.put("nthread", learningParams.getXgbThreads() > 0 ? learningParams.getXgbThreads() : scoringPool.getParallelism());
+        return boosterParams;
+    }
+
+    /**
+     * 与BaseScores.get的规则一致,缺失的子分数按0处理
+     */
+    private static void fill(Double[] scores, float[] features, int pos, int cols) {
+        if (scores == null) {
+            return;
+        }
+        for (int col = 0; col < cols && col < scores.length; col++) {
+            Double score = scores[col];
+            features[pos + col] = score == null ? 0f : score.floatValue();
+        }
+    }
+
+    /**
+     * 验证集上的早停指标:按预测值从高到低排列,在伪肽段数/真肽段数不超过fdr的前提下最多能够保留的真肽段比例
+     * 验证集的样本顺序与trainPeaksToDMatrix一致,前targets个为真肽段,预测值相同的样本作为一个整体计入
+     *
+     * @param predicts 验证集的预测值
+     * @param targets  验证集中真肽段的数目
+     * @param fdr
+     * @return
+     */
+    private static double identifiedRatio(float[][] predicts, int targets, double fdr) {
+        int size = predicts.length;
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            //高位为预测值的有序编码,低位为样本编号,排序后按预测值从小到大排列
+            int bits = Float.floatToIntBits(predicts[i][0]);
+            bits ^= (bits >> 31) & 0x7fffffff;
+            keys[i] = ((long) bits << 32) | i;
+        }
+        Arrays.sort(keys);
+
+        int targetCount = 0, decoyCount = 0, best = 0;
+        for (int i = size - 1; i >= 0; i--) {
+            if ((int) keys[i] < targets) {
+                targetCount++;
+            } else {
+                decoyCount++;
+            }
+            boolean tieEnd = i == 0 || (keys[i - 1] >> 32) != (keys[i] >> 32);
+            if (tieEnd && decoyCount <= fdr * targetCount) {
+                best = targetCount;
+            }
+        }
+        return targets == 0 ? 0d : best * 1d / targets;
+    }
 }
@@ -2,10 +2,15 @@ package net.csibio.propro.algorithm.peak;
 
 import net.csibio.propro.constants.constant.Constants;
 import net.csibio.propro.domain.options.SigmaSpacing;
+import net.csibio.propro.utils.ArrayUtil;
 import net.csibio.propro.utils.MathUtil;
+import org.apache.commons.lang3.ArrayUtils;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 
 /**
  * Created by Nico Wang Ruimin
@@ -14,6 +19,11 @@ import java.util.HashMap;
 @Component("gaussFilter")
 public class GaussFilter {
 
+    /**
+     * 多碎片平滑时每一个rt点上的累加缓冲区,每个线程复用一份
+     */
+    private static final ThreadLocal<double[]> SCRATCH = ThreadLocal.withInitial(() -> new double[16]);
+
     public Double[] filter(Float[] rtArray, String cutInfo, Float[] intArray, SigmaSpacing ss) {
         Double[] rts = new Double[rtArray.length];
         Double[] ints = new Double[intArray.length];
@@ -48,284 +58,213 @@ public class GaussFilter {
      * @return
      */
     public HashMap<String, float[]> filter(float[] rtArray, HashMap<String, float[]> intensitiesMap, SigmaSpacing sigmaSpacing) {
-        Double[] rts = new Double[rtArray.length];
-        for (int i = 0; i < rts.length; i++) {
-            rts[i] = Double.valueOf(rtArray[i]);
+        double[] rts = ArrayUtil.toDoubles(rtArray);
+        List<String> cutInfos = new ArrayList<>(intensitiesMap.keySet());
+        double[][] intensities = new double[cutInfos.size()][];
+        for (int k = 0; k < cutInfos.size(); k++) {
+            intensities[k] = ArrayUtil.toDoubles(intensitiesMap.get(cutInfos.get(k)));
         }
 
-        HashMap<String, Double[]> doubleMap = new HashMap<>();
-        for (HashMap.Entry<String, float[]> entry : intensitiesMap.entrySet()) {
-            float[] intensity = entry.getValue();
-            Double[] doubleInt = new Double[intensity.length];
-            for (int i = 0; i < intensity.length; i++) {
-                doubleInt[i] = Double.valueOf(intensity[i]);
-            }
-            doubleMap.put(entry.getKey(), doubleInt);
-        }
-
-        HashMap<String, Double[]> smoothMap = filter(rts, doubleMap, sigmaSpacing);
+        double[][] smooths = filter(rts, intensities, sigmaSpacing);
         HashMap<String, float[]> floatMap = new HashMap<>();
-        for (HashMap.Entry<String, Double[]> entry : smoothMap.entrySet()) {
-            Double[] intensity = entry.getValue();
+        for (int k = 0; k < cutInfos.size(); k++) {
+            double[] intensity = smooths[k];
             float[] floatInt = new float[intensity.length];
             for (int i = 0; i < intensity.length; i++) {
-                floatInt[i] = Float.parseFloat(intensity[i].toString());
+                floatInt[i] = Float.parseFloat(Double.toString(intensity[i]));
             }
-            floatMap.put(entry.getKey(), floatInt);
+            floatMap.put(cutInfos.get(k), floatInt);
         }
         return floatMap;
     }
 
     /**
+     * 装箱版本的适配入口,内部调用原始类型版本
+     *
      * @param rtArray
      * @param intensitiesMap
      * @param sigmaSpacing
      * @return
      */
     public HashMap<String, Double[]> filter(Double[] rtArray, HashMap<String, Double[]> intensitiesMap, SigmaSpacing sigmaSpacing) {
+        double[] rts = ArrayUtils.toPrimitive(rtArray);
+        List<String> cutInfos = new ArrayList<>(intensitiesMap.keySet());
+        double[][] intensities = new double[cutInfos.size()][];
+        for (int k = 0; k < cutInfos.size(); k++) {
+            intensities[k] = ArrayUtils.toPrimitive(intensitiesMap.get(cutInfos.get(k)));
+        }
+
+        double[][] smooths = filter(rts, intensities, sigmaSpacing);
+        HashMap<String, Double[]> newIntensitiesMap = new HashMap<>();
+        for (int k = 0; k < cutInfos.size(); k++) {
+            newIntensitiesMap.put(cutInfos.get(k), ArrayUtils.toObject(smooths[k]));
+        }
+        return newIntensitiesMap;
+    }
 
-        Double spacing = sigmaSpacing.getSpacingDouble();
+    /**
+     * 装箱版本的适配入口,内部调用原始类型版本
+     *
+     * @param rtArray
+     * @param intensityArray
+     * @param sigmaSpacing
+     * @return
+     */
+    public Double[] filter(Double[] rtArray, Double[] intensityArray, SigmaSpacing sigmaSpacing) {
+        return ArrayUtils.toObject(filter(ArrayUtils.toPrimitive(rtArray), ArrayUtils.toPrimitive(intensityArray), sigmaSpacing));
+    }
+
+    /**
+     * 同时对多个碎片的XIC进行高斯平滑,所有碎片共享同一套权重系数的计算
+     * 每一个rt点上的累加值存放在线程独享的缓冲区中,不再为每一个点创建HashMap
+     *
+     * @param rtArray        rt数组
+     * @param intensities    [碎片][rt]形式的强度
+     * @param sigmaSpacing
+     * @return [碎片][rt]形式的平滑结果
+     */
+    public double[][] filter(double[] rtArray, double[][] intensities, SigmaSpacing sigmaSpacing) {
+        int ionSize = intensities.length;
+        int rtLength = rtArray.length;
+        double[][] newIntensities = new double[ionSize][rtLength];
+        double[] v = SCRATCH.get();
+        if (v.length < ionSize) {
+            v = new double[ionSize];
+            SCRATCH.set(v);
+        }
+
+        double spacing = sigmaSpacing.getSpacingDouble();
         //coeffs: 以0为中心，sigma为标准差的正态分布参数
         double[] coeffs = sigmaSpacing.getCoeffs();
         int middle = sigmaSpacing.getRightNum();
         double middleSpacing = sigmaSpacing.getRightNumSpacing();
 
-        int rtLength = rtArray.length;
-        double startPosition, endPosition;
         double minRt = rtArray[0];
         double maxRt = rtArray[rtLength - 1];
-
-        //begin integrate
-        HashMap<String, Double[]> newIntensitiesMap = new HashMap<String, Double[]>();
-        for (String cutInfo : intensitiesMap.keySet()) {
-            newIntensitiesMap.put(cutInfo, new Double[rtArray.length]);
-        }
-
-        Double distanceInGaussian;
-        int leftPosition;
-        int rightPosition;
-        double residualPercent;
-        double coeffRight;
-        double coeffLeft;
-        double norm = 0;
-
         for (int i = 0; i < rtLength; i++) {
-            HashMap<String, Double> vMap = new HashMap<>();
-            for (String cutInfo : intensitiesMap.keySet()) {
-                vMap.put(cutInfo, 0d);
-            }
-            norm = 0;
-            //startPosition
-            if ((rtArray[i] - middleSpacing) > minRt) {
-                startPosition = MathUtil.keepLength(rtArray[i] - middleSpacing, Constants.PRECISION);
-            } else {
-                startPosition = minRt;
-            }
-
-            //endPostion
-            if ((rtArray[i] + middleSpacing) < maxRt) {
-                endPosition = MathUtil.keepLength(rtArray[i] + middleSpacing, Constants.PRECISION);
-            } else {
-                endPosition = maxRt;
-            }
-
-            //help index
-            int j = i;
+            Arrays.fill(v, 0, ionSize, 0d);
+            double norm = 0;
+            double startPosition = startPosition(rtArray[i], middleSpacing, minRt);
+            double endPosition = endPosition(rtArray[i], middleSpacing, maxRt);
 
             // left side of i
+            int j = i;
             while (j > 0 && rtArray[j - 1] > startPosition) {
-                distanceInGaussian = MathUtil.keepLength(rtArray[i] - rtArray[j], Constants.PRECISION);
-                leftPosition = (int) MathUtil.keepLength(distanceInGaussian / spacing, Constants.PRECISION);
-                rightPosition = leftPosition + 1;
-                residualPercent = (Math.abs(leftPosition * spacing) - distanceInGaussian) / spacing;
-                if (rightPosition < middle) {
-                    coeffRight = (1 - residualPercent) * coeffs[leftPosition] + residualPercent * coeffs[rightPosition];
-                } else {
-                    coeffRight = coeffs[leftPosition];
-                }
-
-                distanceInGaussian = MathUtil.keepLength(rtArray[i] - rtArray[j - 1], Constants.PRECISION);
-                leftPosition = (int) MathUtil.keepLength((distanceInGaussian / spacing), Constants.PRECISION);
-                rightPosition = leftPosition + 1;
-                residualPercent = (Math.abs(leftPosition * spacing - distanceInGaussian)) / spacing;
-                if (rightPosition < middle) {
-                    coeffLeft = (1 - residualPercent) * coeffs[leftPosition] + residualPercent * coeffs[rightPosition];
-                } else {
-                    coeffLeft = coeffs[leftPosition];
-                }
-
-                norm += Math.abs(rtArray[j - 1] - rtArray[j]) * (coeffRight + coeffLeft) / 2.0;
-
-                for (String cutInfo : vMap.keySet()) {
-                    double t = vMap.get(cutInfo);
-                    t += Math.abs(rtArray[j - 1] - rtArray[j]) * (intensitiesMap.get(cutInfo)[j - 1] * coeffLeft + intensitiesMap.get(cutInfo)[j] * coeffRight) / 2.0;
-                    vMap.put(cutInfo, t);
+                double coeffRight = coeff(rtArray[i] - rtArray[j], spacing, coeffs, middle, false);
+                double coeffLeft = coeff(rtArray[i] - rtArray[j - 1], spacing, coeffs, middle, true);
+                double width = Math.abs(rtArray[j - 1] - rtArray[j]);
+                norm += width * (coeffRight + coeffLeft) / 2.0;
+                for (int k = 0; k < ionSize; k++) {
+                    v[k] += width * (intensities[k][j - 1] * coeffLeft + intensities[k][j] * coeffRight) / 2.0;
                 }
-
                 j--;
-
             }
 
-            j = i;
             // right side of i
+            j = i;
             while (j < rtLength - 1 && rtArray[j + 1] < endPosition) {
-                distanceInGaussian = MathUtil.keepLength(rtArray[j] - rtArray[i], Constants.PRECISION);
-                leftPosition = (int) MathUtil.keepLength(distanceInGaussian / spacing, Constants.PRECISION);
-                rightPosition = leftPosition + 1;
-                residualPercent = (Math.abs(leftPosition * spacing) - distanceInGaussian) / spacing;
-                if (rightPosition < middle) {
-                    coeffLeft = (1 - residualPercent) * coeffs[leftPosition] + residualPercent * coeffs[rightPosition];
-                } else {
-                    coeffLeft = coeffs[leftPosition];
-                }
-
-                distanceInGaussian = MathUtil.keepLength(rtArray[j + 1] - rtArray[i], Constants.PRECISION);
-                leftPosition = (int) MathUtil.keepLength(distanceInGaussian / spacing, Constants.PRECISION);
-                rightPosition = leftPosition + 1;
-
-                residualPercent = (Math.abs(leftPosition * spacing - distanceInGaussian)) / spacing;
-                if (rightPosition < middle) {
-                    coeffRight = (1 - residualPercent) * coeffs[leftPosition] + residualPercent * coeffs[rightPosition];
-                } else {
-                    coeffRight = coeffs[leftPosition];
-                }
-
-                norm += Math.abs(rtArray[j + 1] - rtArray[j]) * (coeffLeft + coeffRight) / 2.0;
-                for (String cutInfo : vMap.keySet()) {
-                    double t = vMap.get(cutInfo);
-                    t += Math.abs(rtArray[j + 1] - rtArray[j]) * (intensitiesMap.get(cutInfo)[j] * coeffLeft + intensitiesMap.get(cutInfo)[j + 1] * coeffRight) / 2.0;
-                    vMap.put(cutInfo, t);
+                double coeffLeft = coeff(rtArray[j] - rtArray[i], spacing, coeffs, middle, false);
+                double coeffRight = coeff(rtArray[j + 1] - rtArray[i], spacing, coeffs, middle, true);
+                double width = Math.abs(rtArray[j + 1] - rtArray[j]);
+                norm += width * (coeffLeft + coeffRight) / 2.0;
+                for (int k = 0; k < ionSize; k++) {
+                    v[k] += width * (intensities[k][j] * coeffLeft + intensities[k][j + 1] * coeffRight) / 2.0;
                 }
                 j++;
-
             }
 
-            for (String cutInfo : vMap.keySet()) {
-                if (vMap.get(cutInfo) > 0) {
-                    newIntensitiesMap.get(cutInfo)[i] = vMap.get(cutInfo) / norm;
-                } else {
-                    newIntensitiesMap.get(cutInfo)[i] = 0d;
-                }
+            for (int k = 0; k < ionSize; k++) {
+                newIntensities[k][i] = v[k] > 0 ? v[k] / norm : 0d;
             }
-
         }
-        return newIntensitiesMap;
+        return newIntensities;
     }
 
     /**
+     * 单条曲线的高斯平滑,累加值使用float保存,与历史版本的计算结果保持一致
+     *
      * @param rtArray
      * @param intensityArray
      * @param sigmaSpacing
      * @return
      */
-    public Double[] filter(Double[] rtArray, Double[] intensityArray, SigmaSpacing sigmaSpacing) {
-
-        Double spacing = sigmaSpacing.getSpacingDouble();
+    public double[] filter(double[] rtArray, double[] intensityArray, SigmaSpacing sigmaSpacing) {
+        double spacing = sigmaSpacing.getSpacingDouble();
         //coeffs: 以0为中心，sigma为标准差的正态分布参数
         double[] coeffs = sigmaSpacing.getCoeffs();
         int middle = sigmaSpacing.getRightNum();
         double middleSpacing = sigmaSpacing.getRightNumSpacing();
 
         int rtLength = rtArray.length;
-        double startPosition, endPosition;
         double minRt = rtArray[0];
         double maxRt = rtArray[rtLength - 1];
-
-        Double distanceInGaussian;
-        int leftPosition;
-        int rightPosition;
-        double residualPercent;
-        double coeffRight;
-        double coeffLeft;
-        double norm = 0;
-
-        Double[] newIntensityArray = new Double[rtLength];
+        double[] newIntensityArray = new double[rtLength];
 
         for (int i = 0; i < rtLength; i++) {
             float t = 0f;
-            norm = 0;
-            //startPosition
-            if ((rtArray[i] - middleSpacing) > minRt) {
-                startPosition = MathUtil.keepLength(rtArray[i] - middleSpacing, Constants.PRECISION);
-            } else {
-                startPosition = minRt;
-            }
-
-            //endPostion
-            if ((rtArray[i] + middleSpacing) < maxRt) {
-                endPosition = MathUtil.keepLength(rtArray[i] + middleSpacing, Constants.PRECISION);
-            } else {
-                endPosition = maxRt;
-            }
-
-            //help index
-            int j = i;
+            double norm = 0;
+            double startPosition = startPosition(rtArray[i], middleSpacing, minRt);
+            double endPosition = endPosition(rtArray[i], middleSpacing, maxRt);
 
             // left side of i
+            int j = i;
             while (j > 0 && rtArray[j - 1] > startPosition) {
-                distanceInGaussian = MathUtil.keepLength(rtArray[i] - rtArray[j], Constants.PRECISION);
-                leftPosition = (int) MathUtil.keepLength(distanceInGaussian / spacing, Constants.PRECISION);
-                rightPosition = leftPosition + 1;
-                residualPercent = (Math.abs(leftPosition * spacing) - distanceInGaussian) / spacing;
-                if (rightPosition < middle) {
-                    coeffRight = (1 - residualPercent) * coeffs[leftPosition] + residualPercent * coeffs[rightPosition];
-                } else {
-                    coeffRight = coeffs[leftPosition];
-                }
-
-                distanceInGaussian = MathUtil.keepLength(rtArray[i] - rtArray[j - 1], Constants.PRECISION);
-                leftPosition = (int) MathUtil.keepLength((distanceInGaussian / spacing), Constants.PRECISION);
-                rightPosition = leftPosition + 1;
-                residualPercent = (Math.abs(leftPosition * spacing - distanceInGaussian)) / spacing;
-                if (rightPosition < middle) {
-                    coeffLeft = (1 - residualPercent) * coeffs[leftPosition] + residualPercent * coeffs[rightPosition];
-                } else {
-                    coeffLeft = coeffs[leftPosition];
-                }
-
+                double coeffRight = coeff(rtArray[i] - rtArray[j], spacing, coeffs, middle, false);
+                double coeffLeft = coeff(rtArray[i] - rtArray[j - 1], spacing, coeffs, middle, true);
                 norm += Math.abs(rtArray[j - 1] - rtArray[j]) * (coeffRight + coeffLeft) / 2.0;
                 t += Math.abs(rtArray[j - 1] - rtArray[j]) * (intensityArray[j - 1] * coeffLeft + intensityArray[j] * coeffRight) / 2.0;
                 j--;
-
             }
 
-            j = i;
             // right side of i
+            j = i;
             while (j < rtLength - 1 && rtArray[j + 1] < endPosition) {
-                distanceInGaussian = MathUtil.keepLength(rtArray[j] - rtArray[i], Constants.PRECISION);
-                leftPosition = (int) MathUtil.keepLength(distanceInGaussian / spacing, Constants.PRECISION);
-                rightPosition = leftPosition + 1;
-                residualPercent = (Math.abs(leftPosition * spacing) - distanceInGaussian) / spacing;
-                if (rightPosition < middle) {
-                    coeffLeft = (1 - residualPercent) * coeffs[leftPosition] + residualPercent * coeffs[rightPosition];
-                } else {
-                    coeffLeft = coeffs[leftPosition];
-                }
-
-                distanceInGaussian = MathUtil.keepLength(rtArray[j + 1] - rtArray[i], Constants.PRECISION);
-                leftPosition = (int) MathUtil.keepLength(distanceInGaussian / spacing, Constants.PRECISION);
-                rightPosition = leftPosition + 1;
-
-                residualPercent = (Math.abs(leftPosition * spacing - distanceInGaussian)) / spacing;
-                if (rightPosition < middle) {
-                    coeffRight = (1 - residualPercent) * coeffs[leftPosition] + residualPercent * coeffs[rightPosition];
-                } else {
-                    coeffRight = coeffs[leftPosition];
-                }
-
+                double coeffLeft = coeff(rtArray[j] - rtArray[i], spacing, coeffs, middle, false);
+                double coeffRight = coeff(rtArray[j + 1] - rtArray[i], spacing, coeffs, middle, true);
                 norm += Math.abs(rtArray[j + 1] - rtArray[j]) * (coeffLeft + coeffRight) / 2.0;
                 t += Math.abs(rtArray[j + 1] - rtArray[j]) * (intensityArray[j] * coeffLeft + intensityArray[j + 1] * coeffRight) / 2.0;
                 j++;
-
-            }
-
-            if (t > 0) {
-                newIntensityArray[i] = t / norm;
-            } else {
-                newIntensityArray[i] = 0d;
             }
 
+            newIntensityArray[i] = t > 0 ? t / norm : 0d;
         }
         return newIntensityArray;
     }
+
+    private double startPosition(double rt, double middleSpacing, double minRt) {
+        if ((rt - middleSpacing) > minRt) {
+            return MathUtil.keepLength(rt - middleSpacing, Constants.PRECISION);
+        } else {
+            return minRt;
+        }
+    }
+
+    private double endPosition(double rt, double middleSpacing, double maxRt) {
+        if ((rt + middleSpacing) < maxRt) {
+            return MathUtil.keepLength(rt + middleSpacing, Constants.PRECISION);
+        } else {
+            return maxRt;
+        }
+    }
+
+    /**
+     * 根据与中心点的距离在高斯系数表中做线性插值
+     * 靠近中心的一侧与远离中心的一侧在历史实现中残差的计算方式略有不同(取绝对值的位置不同),这里通过outer参数保持一致
+     */
+    private double coeff(double distance, double spacing, double[] coeffs, int middle, boolean outer) {
+        double distanceInGaussian = MathUtil.keepLength(distance, Constants.PRECISION);
+        int leftPosition = (int) MathUtil.keepLength(distanceInGaussian / spacing, Constants.PRECISION);
+        int rightPosition = leftPosition + 1;
+        double residualPercent;
+        if (outer) {
+            residualPercent = (Math.abs(leftPosition * spacing - distanceInGaussian)) / spacing;
+        } else {
+            residualPercent = (Math.abs(leftPosition * spacing) - distanceInGaussian) / spacing;
+        }
+        if (rightPosition < middle) {
+            return (1 - residualPercent) * coeffs[leftPosition] + residualPercent * coeffs[rightPosition];
+        } else {
+            return coeffs[leftPosition];
+        }
+    }
 }
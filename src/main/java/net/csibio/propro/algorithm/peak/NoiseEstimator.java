@@ -2,9 +2,12 @@ package net.csibio.propro.algorithm.peak;
 
 import lombok.extern.slf4j.Slf4j;
 import net.csibio.propro.constants.constant.Constants;
+import net.csibio.propro.utils.ArrayUtil;
 import net.csibio.propro.utils.MathUtil;
+import org.apache.commons.lang3.ArrayUtils;
 import org.springframework.stereotype.Component;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -12,6 +15,11 @@ import java.util.Map;
 @Component("noiseEstimator")
 public class NoiseEstimator {
 
+    /**
+     * 计算信噪比时使用的直方图,每个线程复用一份
+     */
+    private static final ThreadLocal<int[]> HISTOGRAM = ThreadLocal.withInitial(() -> new int[30]);
+
     public Map<String, float[]> denoise(float[] rt, Map<String, float[]> intMap) {
         HashMap<String, float[]> denoiseIntMap = new HashMap<>();
 
@@ -27,8 +35,7 @@ public class NoiseEstimator {
     }
 
     /**
-     * 计算信噪比
-     * 按位取窗口，窗口由小到大排序取中位数
+     * 计算信噪比,装箱版本的适配入口
      *
      * @param rtIntensity
      * @param windowLength
@@ -36,85 +43,7 @@ public class NoiseEstimator {
      * @return
      */
     public double[] computeSTN(Double[] rtArray, Double[] rtIntensity, double windowLength, int binCount) {
-
-        //final result
-        double[] stnResults = new double[rtArray.length];
-
-        //get mean and variance
-        double[] meanVariance = MathUtil.getMeanVariance(rtIntensity);
-
-        //get max intensity
-        double maxIntensity = meanVariance[0] + Math.sqrt(meanVariance[1]) * Constants.AUTO_MAX_STDEV_FACTOR;
-
-        //bin params
-        double windowHalfSize = windowLength / 2.0d;
-        double binSize = Math.max(1.0d, maxIntensity / binCount);
-        double[] binValue = new double[binCount];
-        for (int bin = 0; bin < binCount; bin++) {
-            binValue[bin] = (bin + 0.5d) * binSize;
-        }
-
-        //params
-        int[] histogram = new int[binCount];
-        int toBin;// bin in which a datapoint would fall
-        int medianBin;// index of bin where the median is located
-        int elementIncCount;// additive number of elements from left to x in histogram
-        int elementsInWindow = 0;// tracks elements in current window, which may vary because of unevenly spaced data
-        int elementsInWindowHalf;// number of elements where we find the median
-        double noise;// noise value of a data point
-        int windowsOverall = rtArray.length;// determine how many elements we need to estimate (for progress estimation)
-//        float sparseWindowPercent = 0, histogramOobPercent = 0;
-
-        //Main loop
-        int left = 0;
-        int right = 0;
-        for (int positionCenter = 0; positionCenter < windowsOverall; positionCenter++) {
-//            elementsInWindow = 0;
-            //get left/right borders
-            while (rtArray[left] < rtArray[positionCenter] - windowHalfSize) {
-                toBin = Math.min((int) (rtIntensity[left] / binSize), binCount - 1);
-                histogram[toBin]--;
-                elementsInWindow--;
-                left++;
-            }
-            while (right < windowsOverall && rtArray[right] <= rtArray[positionCenter] + windowHalfSize) {
-                toBin = Math.min((int) (rtIntensity[right] / binSize), binCount - 1);
-                histogram[toBin]++;
-                elementsInWindow++;
-                right++;
-            }
-
-            //noise
-            if (elementsInWindow < Constants.MIN_REQUIRED_ELEMENTS) {
-                noise = Constants.NOISE_FOR_EMPTY_WINDOW;
-//                sparseWindowPercent++;
-            } else {
-                medianBin = -1;
-                elementIncCount = 0;
-                elementsInWindowHalf = (elementsInWindow + 1) / 2;
-                while (medianBin < binCount - 1 && elementIncCount < elementsInWindowHalf) {
-                    ++medianBin;
-                    elementIncCount += histogram[medianBin];
-                }
-//                if (medianBin == binCount - 1) {
-//                    histogramOobPercent++;
-//                }
-                noise = Math.max(1.0d, binValue[medianBin]);
-            }
-            stnResults[positionCenter] = rtIntensity[positionCenter] / noise;
-        }
-//
-//        sparseWindowPercent = sparseWindowPercent * 100 / windowsOverall;
-//        histogramOobPercent = histogramOobPercent * 100 / windowsOverall;
-//        if (sparseWindowPercent > 20) {
-//            logger.warn("Warning in SignalToNoiseEstimator: " + sparseWindowPercent + "% of windows were sparse.\nIncreasing windowLength or decreasing minRequiredElements");
-//        }
-//        if (histogramOobPercent != 0) {
-//            logger.warn("WARNING in SignalToNoiseEstimatorMedian: " + histogramOobPercent + "% of all Signal-to-Noise estimates are too high, because the median was found in the rightmost histogram-bin. " +
-//                    "You should consider increasing 'max_intensity' (and maybe 'bin_count' with it, to keep bin width reasonable)");
-//        }
-
-        return stnResults;
+        return computeSTN(ArrayUtils.toPrimitive(rtArray), ArrayUtils.toPrimitive(rtIntensity), windowLength, binCount);
     }
 
     /**
@@ -127,13 +56,21 @@ public class NoiseEstimator {
      * @return
      */
     public double[] computeSTN(float[] rts, float[] intensity, double windowLength, int binCount) {
+        return computeSTN(ArrayUtil.toDoubles(rts), ArrayUtil.toDoubles(intensity), windowLength, binCount);
+    }
 
-        Double[] rtArray = new Double[rts.length];
-        Double[] rtIntensity = new Double[intensity.length];
-        for (int i = 0; i < rts.length; i++) {
-            rtArray[i] = (double) rts[i];
-            rtIntensity[i] = (double) intensity[i];
-        }
+    /**
+     * 计算信噪比
+     * 按位取窗口，窗口由小到大排序取中位数
+     * 直方图使用线程独享的缓冲区
+     *
+     * @param rtArray
+     * @param rtIntensity
+     * @param windowLength
+     * @param binCount
+     * @return
+     */
+    public double[] computeSTN(double[] rtArray, double[] rtIntensity, double windowLength, int binCount) {
 
         //final result
         double[] stnResults = new double[rtArray.length];
@@ -147,13 +84,14 @@ public class NoiseEstimator {
         //bin params
         double windowHalfSize = windowLength / 2.0d;
         double binSize = Math.max(1.0d, maxIntensity / binCount);
-        double[] binValue = new double[binCount];
-        for (int bin = 0; bin < binCount; bin++) {
-            binValue[bin] = (bin + 0.5d) * binSize;
-        }
 
         //params
-        int[] histogram = new int[binCount];
+        int[] histogram = HISTOGRAM.get();
+        if (histogram.length < binCount) {
+            histogram = new int[binCount];
+            HISTOGRAM.set(histogram);
+        }
+        Arrays.fill(histogram, 0, binCount, 0);
         int toBin;// bin in which a datapoint would fall
         int medianBin;// index of bin where the median is located
         int elementIncCount;// additive number of elements from left to x in histogram
@@ -161,13 +99,11 @@ public class NoiseEstimator {
         int elementsInWindowHalf;// number of elements where we find the median
         double noise;// noise value of a data point
         int windowsOverall = rtArray.length;// determine how many elements we need to estimate (for progress estimation)
-//        float sparseWindowPercent = 0, histogramOobPercent = 0;
 
         //Main loop
         int left = 0;
         int right = 0;
         for (int positionCenter = 0; positionCenter < windowsOverall; positionCenter++) {
-//            elementsInWindow = 0;
             //get left/right borders
             while (rtArray[left] < rtArray[positionCenter] - windowHalfSize) {
                 toBin = Math.min((int) (rtIntensity[left] / binSize), binCount - 1);
@@ -185,7 +121,6 @@ public class NoiseEstimator {
             //noise
             if (elementsInWindow < Constants.MIN_REQUIRED_ELEMENTS) {
                 noise = Constants.NOISE_FOR_EMPTY_WINDOW;
-//                sparseWindowPercent++;
             } else {
                 medianBin = -1;
                 elementIncCount = 0;
@@ -194,23 +129,10 @@ public class NoiseEstimator {
                     ++medianBin;
                     elementIncCount += histogram[medianBin];
                 }
-//                if (medianBin == binCount - 1) {
-//                    histogramOobPercent++;
-//                }
-                noise = Math.max(1.0d, binValue[medianBin]);
+                noise = Math.max(1.0d, (medianBin + 0.5d) * binSize);
             }
             stnResults[positionCenter] = rtIntensity[positionCenter] / noise;
         }
-//
-//        sparseWindowPercent = sparseWindowPercent * 100 / windowsOverall;
-//        histogramOobPercent = histogramOobPercent * 100 / windowsOverall;
-//        if (sparseWindowPercent > 20) {
-//            logger.warn("Warning in SignalToNoiseEstimator: " + sparseWindowPercent + "% of windows were sparse.\nIncreasing windowLength or decreasing minRequiredElements");
-//        }
-//        if (histogramOobPercent != 0) {
-//            logger.warn("WARNING in SignalToNoiseEstimatorMedian: " + histogramOobPercent + "% of all Signal-to-Noise estimates are too high, because the median was found in the rightmost histogram-bin. " +
-//                    "You should consider increasing 'max_intensity' (and maybe 'bin_count' with it, to keep bin width reasonable)");
-//        }
 
         return stnResults;
     }
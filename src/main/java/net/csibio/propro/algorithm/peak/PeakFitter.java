@@ -1,43 +1,41 @@
 package net.csibio.propro.algorithm.peak;
 
-import com.google.common.util.concurrent.AtomicDouble;
-import net.csibio.propro.domain.bean.peptide.FragmentInfo;
+import net.csibio.propro.domain.bean.peptide.FragmentTable;
 import net.csibio.propro.domain.bean.peptide.PeptideCoord;
 import net.csibio.propro.domain.bean.score.PeakGroup;
 import org.springframework.stereotype.Component;
 
-import java.util.Map;
-import java.util.stream.Collectors;
-
 @Component("peakFitter")
 public class PeakFitter {
 
     public void fit(PeakGroup peakGroup, PeptideCoord coord) {
 
+        FragmentTable table = coord.getFragmentTable();
 //        String bestIon = coord.getFragments().get(0).getCutInfo();
 
         String bestIon = peakGroup.getBestIon();
         if (bestIon == null) {
-            bestIon = coord.getFragments().get(0).getCutInfo();
+            bestIon = table.getCutInfo(0);
         }
-        Double bestIonIntensity = peakGroup.getIonIntensity().get(bestIon);
+        Double bestIonIntensity = peakGroup.getIonInt(bestIon);
         if (bestIonIntensity == null || bestIonIntensity.isNaN()) {
             return;
         }
 
-        Map<String, Double> libIntMap = coord.getFragments().stream().collect(Collectors.toMap(FragmentInfo::getCutInfo, FragmentInfo::getIntensity));
-        double bestLibIonsIntensity = libIntMap.get(bestIon);
-        AtomicDouble fitSum = new AtomicDouble(0d);
+        int bestIndex = table.indexOf(bestIon);
+        double[] libInts = table.getLibInts();
+        double bestLibIonsIntensity = libInts[bestIndex];
+        double fitSum = 0d;
 
-        for (Map.Entry<String, Double> entry : libIntMap.entrySet()) {
-            if (entry.getKey().equals(bestIon)) {
-                fitSum.getAndAdd(bestIonIntensity);
+        for (int i = 0; i < libInts.length; i++) {
+            if (i == bestIndex) {
+                fitSum += bestIonIntensity;
             } else {
-                double libRatio = libIntMap.get(entry.getKey()) / bestLibIonsIntensity;
-                fitSum.getAndAdd(bestIonIntensity * libRatio); //直接按照库中比例进行拟合
+                double libRatio = libInts[i] / bestLibIonsIntensity;
+                fitSum += bestIonIntensity * libRatio; //直接按照库中比例进行拟合
             }
         }
 
-        peakGroup.setFitIntSum(fitSum.get());
+        peakGroup.setFitIntSum(fitSum);
     }
 }
@@ -17,6 +17,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -50,7 +51,7 @@ public class PeakGroupPicker {
         double totalXic = 0.0d;
 
         for (String cutInfo : unSearchPeakGroup.getIntensitiesMap().keySet()) {
-            Double[] intensityTmp = unSearchPeakGroup.getIntensitiesMap().get(cutInfo);
+            double[] intensityTmp = unSearchPeakGroup.getIntensitiesMap().get(cutInfo);
             for (double intensity : intensityTmp) {
                 totalXic += intensity;
             }
@@ -58,7 +59,7 @@ public class PeakGroupPicker {
 
         //new function
         List<PeakGroup> peakGroupList = new ArrayList<>();
-        Double[] peakDensity = new Double[unSearchPeakGroup.getRtArray().length];
+        double[] peakDensity = new double[unSearchPeakGroup.getRtArray().length];
         List<HashMap<String, IonPeak>> ionPeakPositionList = new ArrayList<>();
         for (int i = 0; i < unSearchPeakGroup.getRtArray().length; i++) {
             ionPeakPositionList.add(new HashMap<>());
@@ -103,37 +104,32 @@ public class PeakGroupPicker {
                     topIndex.set(j, 0);
                 }
             }
-            Double[] rtArray = unSearchPeakGroup.getRtArray();
+            double[] rtArray = unSearchPeakGroup.getRtArray();
 
             //取得[bestLeft,bestRight]对应范围的Rt
-            Double[] rasteredRt = new Double[rightIndex - leftIndex + 1];
-            System.arraycopy(rtArray, leftIndex, rasteredRt, 0, rightIndex - leftIndex + 1);
-            Double[] ms1Ints = new Double[rightIndex - leftIndex + 1];
-            Double[] selfInts = new Double[rightIndex - leftIndex + 1];
-            if (ms1Ints != null) {
-                System.arraycopy(unSearchPeakGroup.getMs1Ints(), leftIndex, ms1Ints, 0, rightIndex - leftIndex + 1);
-            }
-            if (selfInts != null) {
-                System.arraycopy(unSearchPeakGroup.getSelfInts(), leftIndex, selfInts, 0, rightIndex - leftIndex + 1);
-            }
+            Double[] rasteredRt = ArrayUtil.toBoxed(rtArray, leftIndex, rightIndex - leftIndex + 1);
+            Double[] ms1Ints = unSearchPeakGroup.getMs1Ints() != null ? ArrayUtil.toBoxed(unSearchPeakGroup.getMs1Ints(), leftIndex, rightIndex - leftIndex + 1) : new Double[rightIndex - leftIndex + 1];
+            Double[] selfInts = unSearchPeakGroup.getSelfInts() != null ? ArrayUtil.toBoxed(unSearchPeakGroup.getSelfInts(), leftIndex, rightIndex - leftIndex + 1) : new Double[rightIndex - leftIndex + 1];
             int selectedRtIndex = PeakUtil.findNearestIndex(rasteredRt, apexRt);
             int maxSpectrumIndex = selectedRtIndex + leftIndex;
-            //取得[bestLeft,bestRight]对应范围的Intensity
-            HashMap<String, Double[]> ionHullInt = new HashMap<>();
-            HashMap<String, Double> ionIntensity = new HashMap<>();
-            HashMap<String, Double> apexIonIntensity = new HashMap<>();
+            //取得[bestLeft,bestRight]对应范围的Intensity,各数组与碎片编号ions一一对应
+            int[] ions = unSearchPeakGroup.getIons();
+            double[][] ionHullInts = new double[ions.length][];
+            double[] ionInts = new double[ions.length];
+            double[] apexIonInts = new double[ions.length];
             Double peakGroupInt = 0D;
             double signalToNoiseSum = 0d;
-            for (String cutInfo : unSearchPeakGroup.getPeaks4Ions().keySet()) {
+            for (int k = 0; k < ions.length; k++) {
+                String cutInfo = unSearchPeakGroup.getFragmentTable().getCutInfo(ions[k]);
                 //离子峰
-                Double[] intArray = unSearchPeakGroup.getIntensitiesMap().get(cutInfo);
-                Double[] rasteredInt = filteredCopy(intArray, leftIndex, rightIndex, Double.MAX_VALUE);
-                ionHullInt.put(cutInfo, rasteredInt);
+                double[] intArray = unSearchPeakGroup.getIntensitiesMap().get(cutInfo);
+                double[] rasteredInt = filteredCopy(intArray, leftIndex, rightIndex, Double.MAX_VALUE);
+                ionHullInts[k] = rasteredInt;
                 //离子峰强度
-                Double ionIntTemp = MathUtil.sum(rasteredInt);
+                double ionIntTemp = MathUtil.sum(rasteredInt);
                 peakGroupInt += ionIntTemp;
-                ionIntensity.put(cutInfo, ionIntTemp);
-                apexIonIntensity.put(cutInfo, intArray[maxSpectrumIndex]);
+                ionInts[k] = ionIntTemp;
+                apexIonInts[k] = intArray[maxSpectrumIndex];
                 //信噪比
                 signalToNoiseSum += unSearchPeakGroup.getNoise1000Map().get(cutInfo)[maxSpectrumIndex];
             }
@@ -150,7 +146,7 @@ public class PeakGroupPicker {
             if (unSearchPeakGroup.getMs1Ints() != null && unSearchPeakGroup.getMs1Ints()[maxSpectrumIndex] < maxIonIntensityInApex) { //排除最高强度Ion小于ms1前体强度的峰
                 continue;
             }
-            if (unSearchPeakGroup.getMs1Ints() != null && unSearchPeakGroup.getSelfInts() != null && unSearchPeakGroup.getSelfInts()[maxSpectrumIndex] != null && unSearchPeakGroup.getMs1Ints()[maxSpectrumIndex] < unSearchPeakGroup.getSelfInts()[maxSpectrumIndex]) { //排除self大于ms1前体强度的峰
+            if (unSearchPeakGroup.getMs1Ints() != null && unSearchPeakGroup.getSelfInts() != null && unSearchPeakGroup.getMs1Ints()[maxSpectrumIndex] < unSearchPeakGroup.getSelfInts()[maxSpectrumIndex]) { //排除self大于ms1前体强度的峰
                 continue;
             }
             if (peakGroupInt == 0d) {
@@ -160,7 +156,9 @@ public class PeakGroupPicker {
             peakGroup.setIonsLow(ionsLow[maxSpectrumIndex]);
             peakGroup.setSelectedRt(unSearchPeakGroup.getRtArray()[maxSpectrumIndex]);
             peakGroup.setIonHullRt(rasteredRt);
-            peakGroup.setIonHullInt(ionHullInt);
+            peakGroup.setFragmentTable(unSearchPeakGroup.getFragmentTable());
+            peakGroup.setIons(ions);
+            peakGroup.setIonHullInts(ionHullInts);
             peakGroup.setIntensitySum(peakGroupInt);
             peakGroup.setTic(totalXic);
             peakGroup.setMs1Ints(ms1Ints);
@@ -170,9 +168,9 @@ public class PeakGroupPicker {
             } else {
                 peakGroup.setMs1Sum(0d);
             }
-            peakGroup.setIonIntensity(ionIntensity);
+            peakGroup.setIonInts(ionInts);
             peakGroup.setApexRt(apexRt);
-            peakGroup.setApexIonsIntensity(apexIonIntensity);
+            peakGroup.setApexIonInts(apexIonInts);
             peakGroup.setSignalToNoiseSum(signalToNoiseSum);
             peakGroupList.add(peakGroup);
         }
@@ -185,7 +183,7 @@ public class PeakGroupPicker {
 
         int[] ionsHigh = unSearchPeakGroup.getIonsHigh();
         int[] ionsLow = unSearchPeakGroup.getIonsLow();
-        Double[] rtArray = unSearchPeakGroup.getRtArray();
+        double[] rtArray = unSearchPeakGroup.getRtArray();
         List<PeakGroup> peakGroupList = new ArrayList<>();
 
         List<DoublePair> pairs = unSearchPeakGroup.getMaxPeaks4IonsHigh(); //所有的峰顶
@@ -255,41 +253,35 @@ public class PeakGroupPicker {
             peakGroup.setSelectedRt(rtArray[apexRtIndex]);
             //totalXIC
             double totalXic = 0.0d;
-            for (Double[] intensityTmp : unSearchPeakGroup.getIntensitiesMap().values()) {
+            for (double[] intensityTmp : unSearchPeakGroup.getIntensitiesMap().values()) {
                 for (double intensity : intensityTmp) {
                     totalXic += intensity;
                 }
             }
             int peakLength = rightIndex - leftIndex + 1;
             //取得[bestLeft,bestRight]对应范围的Rt
-            Double[] rasteredRt = new Double[peakLength];
-            System.arraycopy(rtArray, leftIndex, rasteredRt, 0, peakLength);
-            Double[] ms1Ints = new Double[peakLength];
-            Double[] selfInts = new Double[peakLength];
-            if (unSearchPeakGroup.getMs1Ints() != null) {
-                System.arraycopy(unSearchPeakGroup.getMs1Ints(), leftIndex, ms1Ints, 0, peakLength);
-            }
-            if (unSearchPeakGroup.getSelfInts() != null) {
-                System.arraycopy(unSearchPeakGroup.getSelfInts(), leftIndex, selfInts, 0, peakLength);
-            }
-            //取得[bestLeft,bestRight]对应范围的Intensity
-            HashMap<String, Double[]> ionHullInt = new HashMap<>();
-            HashMap<String, Double> ionIntensity = new HashMap<>();
-            HashMap<String, Double> apexIonIntensity = new HashMap<>();
+            Double[] rasteredRt = ArrayUtil.toBoxed(rtArray, leftIndex, peakLength);
+            Double[] ms1Ints = unSearchPeakGroup.getMs1Ints() != null ? ArrayUtil.toBoxed(unSearchPeakGroup.getMs1Ints(), leftIndex, peakLength) : new Double[peakLength];
+            Double[] selfInts = unSearchPeakGroup.getSelfInts() != null ? ArrayUtil.toBoxed(unSearchPeakGroup.getSelfInts(), leftIndex, peakLength) : new Double[peakLength];
+            //取得[bestLeft,bestRight]对应范围的Intensity,各数组与碎片编号ions一一对应
+            int[] ions = unSearchPeakGroup.getIons();
+            double[][] ionHullInts = new double[ions.length][];
+            double[] ionInts = new double[ions.length];
+            double[] apexIonInts = new double[ions.length];
             Double peakGroupInt = 0D;
             double signalToNoiseSum = 0d;
-            for (String cutInfo : unSearchPeakGroup.getIntensitiesMap().keySet()) {
-                Double[] intArray = unSearchPeakGroup.getIntensitiesMap().get(cutInfo);
+            for (int k = 0; k < ions.length; k++) {
+                String cutInfo = unSearchPeakGroup.getFragmentTable().getCutInfo(ions[k]);
+                double[] intArray = unSearchPeakGroup.getIntensitiesMap().get(cutInfo);
                 //离子峰
-                Double[] rasteredInt = new Double[peakLength];
-                System.arraycopy(intArray, leftIndex, rasteredInt, 0, peakLength);
-                ionHullInt.put(cutInfo, rasteredInt);
+                double[] rasteredInt = Arrays.copyOfRange(intArray, leftIndex, leftIndex + peakLength);
+                ionHullInts[k] = rasteredInt;
                 //peakGroup强度
-                Double ionIntTemp = MathUtil.sum(rasteredInt);
+                double ionIntTemp = MathUtil.sum(rasteredInt);
                 peakGroupInt += ionIntTemp;
                 //离子峰强度
-                ionIntensity.put(cutInfo, ionIntTemp);
-                apexIonIntensity.put(cutInfo, intArray[apexRtIndex]);
+                ionInts[k] = ionIntTemp;
+                apexIonInts[k] = intArray[apexRtIndex];
                 //信噪比
                 signalToNoiseSum += unSearchPeakGroup.getNoise1000Map().get(cutInfo)[apexRtIndex];
             }
@@ -305,14 +297,16 @@ public class PeakGroupPicker {
             if (unSearchPeakGroup.getMs1Ints() != null && unSearchPeakGroup.getMs1Ints()[apexRtIndex] < maxIonIntensityInApex) { //排除最高强度Ion大于ms1前体强度的峰
                 continue;
             }
-            if (unSearchPeakGroup.getSelfInts() != null && unSearchPeakGroup.getMs1Ints() != null && unSearchPeakGroup.getSelfInts()[apexRtIndex] != null && unSearchPeakGroup.getMs1Ints()[apexRtIndex] < unSearchPeakGroup.getSelfInts()[apexRtIndex]) { //排除self大于ms1前体强度的峰
+            if (unSearchPeakGroup.getSelfInts() != null && unSearchPeakGroup.getMs1Ints() != null && unSearchPeakGroup.getMs1Ints()[apexRtIndex] < unSearchPeakGroup.getSelfInts()[apexRtIndex]) { //排除self大于ms1前体强度的峰
                 continue;
             }
             if (peakGroupInt == 0D) {
                 continue;
             }
             peakGroup.setIonHullRt(rasteredRt);
-            peakGroup.setIonHullInt(ionHullInt);
+            peakGroup.setFragmentTable(unSearchPeakGroup.getFragmentTable());
+            peakGroup.setIons(ions);
+            peakGroup.setIonHullInts(ionHullInts);
             peakGroup.setIntensitySum(peakGroupInt);
             peakGroup.setTic(totalXic);
             peakGroup.setMs1Ints(ms1Ints);
@@ -323,8 +317,8 @@ public class PeakGroupPicker {
                 peakGroup.setMs1Sum(0d);
             }
 
-            peakGroup.setIonIntensity(ionIntensity);
-            peakGroup.setApexIonsIntensity(apexIonIntensity);
+            peakGroup.setIonInts(ionInts);
+            peakGroup.setApexIonInts(apexIonInts);
             peakGroup.setSignalToNoiseSum(signalToNoiseSum);
             peakGroupList.add(peakGroup);
         }
@@ -390,7 +384,7 @@ public class PeakGroupPicker {
         }
     }
 
-    private List<Integer> getTopIndex(Double[] value, double minIon) {
+    private List<Integer> getTopIndex(double[] value, double minIon) {
         Integer[] indexAfterSort = ArrayUtil.indexAfterSort(value);
         List<Integer> index = new ArrayList<>();
         for (int i = 0; i < value.length; i++) {
@@ -438,8 +432,8 @@ public class PeakGroupPicker {
         return midSize + Constants.SIDE_PEAK_DENSITY * (midSize - set.size());
     }
 
-    private Double[] filteredCopy(Double[] array, int leftIndex, int rightIndex, double maxValue) {
-        Double[] result = new Double[rightIndex - leftIndex + 1];
+    private double[] filteredCopy(double[] array, int leftIndex, int rightIndex, double maxValue) {
+        double[] result = new double[rightIndex - leftIndex + 1];
         for (int i = 0; i < result.length; i++) {
             if (array[leftIndex + i] <= maxValue) {
                 result[i] = array[leftIndex + i];
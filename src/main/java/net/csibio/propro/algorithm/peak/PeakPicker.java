@@ -4,6 +4,7 @@ import lombok.extern.slf4j.Slf4j;
 import net.csibio.propro.constants.constant.Constants;
 import net.csibio.propro.domain.bean.data.RtIntensityPairsDouble;
 import net.csibio.propro.domain.bean.data.UnSearchPeakGroup;
+import net.csibio.propro.domain.bean.peptide.FragmentTable;
 import net.csibio.propro.domain.bean.peptide.PeptideCoord;
 import net.csibio.propro.domain.bean.score.IonPeak;
 import net.csibio.propro.domain.bean.score.PeakGroup;
@@ -15,15 +16,15 @@ import net.csibio.propro.service.OverviewService;
 import net.csibio.propro.service.PeptideService;
 import net.csibio.propro.service.TaskService;
 import net.csibio.propro.utils.ArrayUtil;
-import net.csibio.propro.utils.MathUtil;
 import net.csibio.propro.utils.PeakUtil;
+import org.apache.commons.lang3.ArrayUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Created by Nico Wang Ruimin
@@ -58,20 +59,24 @@ public class PeakPicker {
      */
     public PeakGroupListWrapper searchByIonsShape(DataDO data, PeptideCoord coord, SigmaSpacing ss) {
 
-        Map<String, Float> libIntMap = coord.buildIntensityMap();
-        //将没有提取到信号的CutInfo过滤掉,同时将Float类型的参数调整为Double类型进行计算
-        HashMap<String, Double[]> intensitiesMap = new HashMap<>();
-        for (String cutInfo : libIntMap.keySet()) {
+        FragmentTable table = coord.getFragmentTable();
+        //将没有提取到信号的CutInfo过滤掉,同时将Float类型的参数调整为double类型进行计算,碎片按照碎片表中的编号排列
+        HashMap<String, double[]> intensitiesMap = new HashMap<>();
+        int[] ions = new int[table.size()];
+        int ionSize = 0;
+        for (int i = 0; i < table.size(); i++) {
+            String cutInfo = table.getCutInfo(i);
             float[] intensityArray = data.getIntMap().get(cutInfo); //获取对应的XIC数据
             //如果没有提取到信号,dataDO为null
             if (intensityArray == null) continue;
-            intensitiesMap.put(cutInfo, ArrayUtil.floatToDouble(intensityArray));
+            intensitiesMap.put(cutInfo, ArrayUtil.toDoubles(intensityArray));
+            ions[ionSize++] = i;
         }
 
         //计算GaussFilter
-        Double[] rtArray = ArrayUtil.floatToDouble(data.getRtArray());
+        double[] rtArray = ArrayUtil.toDoubles(data.getRtArray());
         //使用ionsHigh进行平滑选峰
-        Double[] ionsHighSmooth = gaussFilter.filter(rtArray, ArrayUtil.intToDouble(data.getIonsHigh()), ss);
+        double[] ionsHighSmooth = gaussFilter.filter(rtArray, ArrayUtil.toDoubles(data.getIonsHigh()), ss);
 
         UnSearchPeakGroup unSearchPeakGroup = new UnSearchPeakGroup();
         unSearchPeakGroup.setIonsLow(data.getIonsLow());
@@ -84,7 +89,7 @@ public class PeakPicker {
             return new PeakGroupListWrapper(false);
         }
 
-        data.getIntMap().put("HS", ArrayUtil.doubleTofloat(ionsHighSmooth));
+        data.getIntMap().put("HS", ArrayUtil.toFloats(ionsHighSmooth));
         data.getIntMap().put("H", ArrayUtil.intTofloat(data.getIonsHigh()));
         data.getIntMap().put("L", ArrayUtil.intTofloat(data.getIonsLow()));
         data.getCutInfoMap().put("HS", 0f);
@@ -93,7 +98,12 @@ public class PeakPicker {
 
         unSearchPeakGroup.setMaxPeaks4IonsHigh(maxPeaksForIonsHigh.toPairs());
 
-        HashMap<String, Double[]> smoothIntensitiesMap = gaussFilter.filter(rtArray, intensitiesMap, ss);
+        //所有碎片一次性完成平滑
+        double[][] intensities = new double[ionSize][];
+        for (int k = 0; k < ionSize; k++) {
+            intensities[k] = intensitiesMap.get(table.getCutInfo(ions[k]));
+        }
+        double[][] smoothIntensities = gaussFilter.filter(rtArray, intensities, ss);
         HashMap<String, RtIntensityPairsDouble> maxPeaks4Ions = new HashMap<>();
         HashMap<String, List<IonPeak>> peaks4Ions = new HashMap<>();
 
@@ -102,46 +112,49 @@ public class PeakPicker {
 
 
         //对每一个片段离子选峰
-        double libIntSum = MathUtil.sum(libIntMap.values());
-        HashMap<String, Double> normedLibIntMap = new HashMap<>();
-        for (String cutInfo : intensitiesMap.keySet()) {
+        int pickedSize = 0;
+        for (int k = 0; k < ionSize; k++) {
+            String cutInfo = table.getCutInfo(ions[k]);
 //            //计算两个信噪比
-            double[] noises200 = noiseEstimator.computeSTN(rtArray, smoothIntensitiesMap.get(cutInfo), 200, 30);
-            double[] noisesOri1000 = noiseEstimator.computeSTN(rtArray, intensitiesMap.get(cutInfo), 1000, 30);
+            double[] noises200 = noiseEstimator.computeSTN(rtArray, smoothIntensities[k], 200, 30);
+            double[] noisesOri1000 = noiseEstimator.computeSTN(rtArray, intensities[k], 1000, 30);
             //根据信噪比和峰值形状选择最高峰,用降噪200及平滑过后的图去挑选Peak峰
-            RtIntensityPairsDouble maxPeakPairs = peakPicker.pickMaxPeak(rtArray, smoothIntensitiesMap.get(cutInfo), noises200);
+            RtIntensityPairsDouble maxPeakPairs = peakPicker.pickMaxPeak(rtArray, smoothIntensities[k], noises200);
             //根据信噪比和最高峰选择谱图
             if (maxPeakPairs == null) {
                 log.info("Error: MaxPeakPairs were null!" + rtArray.length);
                 break;
             }
-            List<IonPeak> ionPeakList = pickChromatogram(rtArray, intensitiesMap.get(cutInfo), smoothIntensitiesMap.get(cutInfo), noisesOri1000, maxPeakPairs);
+            List<IonPeak> ionPeakList = pickChromatogram(rtArray, intensities[k], smoothIntensities[k], noisesOri1000, maxPeakPairs);
             maxPeaks4Ions.put(cutInfo, maxPeakPairs);
             peaks4Ions.put(cutInfo, ionPeakList);
-
-            normedLibIntMap.put(cutInfo, libIntMap.get(cutInfo) / libIntSum);
             noise1000Map.put(cutInfo, noisesOri1000);
+            pickedSize++;
         }
-        if (peaks4Ions.size() == 0) {
+        if (pickedSize == 0) {
             return new PeakGroupListWrapper(false);
         }
+        //只有完成选峰的碎片参与后续的峰组选择与打分
+        ions = Arrays.copyOf(ions, pickedSize);
         unSearchPeakGroup.setMaxPeaks4Ions(maxPeaks4Ions);
 
         unSearchPeakGroup.setFloatRtArray(data.getRtArray());
         unSearchPeakGroup.setRtArray(rtArray);
-        unSearchPeakGroup.setMs1Ints(ArrayUtil.floatToDouble(data.getMs1Ints()));
-        unSearchPeakGroup.setSelfInts(ArrayUtil.floatToDouble(data.getSelfInts()));
+        unSearchPeakGroup.setMs1Ints(ArrayUtil.toDoubles(data.getMs1Ints()));
+        unSearchPeakGroup.setSelfInts(ArrayUtil.toDoubles(data.getSelfInts()));
         unSearchPeakGroup.setIntensitiesMap(intensitiesMap);
 
         unSearchPeakGroup.setPeaks4Ions(peaks4Ions);
         unSearchPeakGroup.setNoise1000Map(noise1000Map);
         unSearchPeakGroup.setCoord(coord);
+        unSearchPeakGroup.setFragmentTable(table);
+        unSearchPeakGroup.setIons(ions);
         List<PeakGroup> peakGroups = peakGroupPicker.findPeakGroupsClassic(unSearchPeakGroup);
         if (peakGroups.size() == 0) {
             return new PeakGroupListWrapper(false);
         }
 
-        return new PeakGroupListWrapper(peakGroups, normedLibIntMap);
+        return new PeakGroupListWrapper(peakGroups, table, ions);
     }
 
     /**
@@ -152,27 +165,32 @@ public class PeakPicker {
      */
     public PeakGroupListWrapper searchByIonsCount(DataDO data, PeptideCoord coord, SigmaSpacing ss) {
 
-        Map<String, Float> libIntMap = coord.buildIntensityMap();
-        //将没有提取到信号的CutInfo过滤掉,同时将Float类型的参数调整为Double类型进行计算
-        HashMap<String, Double[]> intensitiesMap = new HashMap<>();
-        for (String cutInfo : libIntMap.keySet()) {
+        FragmentTable table = coord.getFragmentTable();
+        //将没有提取到信号的CutInfo过滤掉,同时将Float类型的参数调整为double类型进行计算,碎片按照碎片表中的编号排列
+        HashMap<String, double[]> intensitiesMap = new HashMap<>();
+        int[] ions = new int[table.size()];
+        int ionSize = 0;
+        for (int i = 0; i < table.size(); i++) {
+            String cutInfo = table.getCutInfo(i);
             float[] intensityArray = data.getIntMap().get(cutInfo); //获取单Fragment的XIC数据
             //如果没有提取到信号,dataDO为null
             if (intensityArray == null) continue;
-            intensitiesMap.put(cutInfo, ArrayUtil.floatToDouble(intensityArray));
+            intensitiesMap.put(cutInfo, ArrayUtil.toDoubles(intensityArray));
+            ions[ionSize++] = i;
         }
+        ions = Arrays.copyOf(ions, ionSize);
 
         //计算GaussFilter
-        Double[] rtArray = ArrayUtil.floatToDouble(data.getRtArray());
+        double[] rtArray = ArrayUtil.toDoubles(data.getRtArray());
         //使用ionsHigh进行平滑选峰
-        Double[] ionsHighSmooth = gaussFilter.filter(rtArray, ArrayUtil.intToDouble(data.getIonsHigh()), ss);
+        double[] ionsHighSmooth = gaussFilter.filter(rtArray, ArrayUtil.toDoubles(data.getIonsHigh()), ss);
 
         UnSearchPeakGroup unSearchPeakGroup = new UnSearchPeakGroup();
         unSearchPeakGroup.setIonsLow(data.getIonsLow());
         unSearchPeakGroup.setIonsHigh(data.getIonsHigh());
         unSearchPeakGroup.setIonsHighSmooth(ionsHighSmooth);
 
-        data.getIntMap().put("HS", ArrayUtil.doubleTofloat(ionsHighSmooth));
+        data.getIntMap().put("HS", ArrayUtil.toFloats(ionsHighSmooth));
         data.getIntMap().put("H", ArrayUtil.intTofloat(data.getIonsHigh()));
         data.getIntMap().put("L", ArrayUtil.intTofloat(data.getIonsLow()));
         data.getCutInfoMap().put("HS", 0f);
@@ -180,12 +198,9 @@ public class PeakPicker {
         data.getCutInfoMap().put("L", 0f);
 
         //对每一个片段离子选峰
-        double libIntSum = MathUtil.sum(libIntMap.values());
-        HashMap<String, Double> normedLibIntMap = new HashMap<>();
         HashMap<String, double[]> noise1000Map = new HashMap<>();
         for (String cutInfo : intensitiesMap.keySet()) {
             double[] noisesOri1000 = noiseEstimator.computeSTN(rtArray, intensitiesMap.get(cutInfo), 1000, 30);
-            normedLibIntMap.put(cutInfo, libIntMap.get(cutInfo) / libIntSum);
             noise1000Map.put(cutInfo, noisesOri1000);
         }
 
@@ -197,18 +212,20 @@ public class PeakPicker {
 
         unSearchPeakGroup.setFloatRtArray(data.getRtArray());
         unSearchPeakGroup.setRtArray(rtArray);
-        unSearchPeakGroup.setMs1Ints(ArrayUtil.floatToDouble(data.getMs1Ints()));
-        unSearchPeakGroup.setSelfInts(ArrayUtil.floatToDouble(data.getSelfInts()));
+        unSearchPeakGroup.setMs1Ints(ArrayUtil.toDoubles(data.getMs1Ints()));
+        unSearchPeakGroup.setSelfInts(ArrayUtil.toDoubles(data.getSelfInts()));
         unSearchPeakGroup.setIntensitiesMap(intensitiesMap);
 
         unSearchPeakGroup.setNoise1000Map(noise1000Map);
         unSearchPeakGroup.setCoord(coord);
+        unSearchPeakGroup.setFragmentTable(table);
+        unSearchPeakGroup.setIons(ions);
         List<PeakGroup> peakGroups = peakGroupPicker.findPeakGroupsByIonsCount(unSearchPeakGroup);
         if (peakGroups.size() == 0) {
             return new PeakGroupListWrapper(false);
         }
 
-        return new PeakGroupListWrapper(peakGroups, normedLibIntMap);
+        return new PeakGroupListWrapper(peakGroups, table, ions);
     }
 
     /**
@@ -222,6 +239,17 @@ public class PeakPicker {
      * @return maxPeaks
      */
     public RtIntensityPairsDouble pickMaxPeak(Double[] rtArray, Double[] intensityArray, double[] signalToNoise) {
+        return pickMaxPeak(ArrayUtils.toPrimitive(rtArray), ArrayUtils.toPrimitive(intensityArray), signalToNoise);
+    }
+
+    /**
+     * pickMaxPeak的原始类型版本
+     *
+     * @param intensityArray smoothed rtIntensityPairs
+     * @param signalToNoise  window width = 200
+     * @return maxPeaks
+     */
+    public RtIntensityPairsDouble pickMaxPeak(double[] rtArray, double[] intensityArray, double[] signalToNoise) {
         if (rtArray.length < 5) {
             return null;
         }
@@ -372,6 +400,16 @@ public class PeakPicker {
      * @return maxPeaks
      */
     public RtIntensityPairsDouble pickMaxPeak(Double[] rtArray, Double[] intensityArray) {
+        return pickMaxPeak(ArrayUtils.toPrimitive(rtArray), ArrayUtils.toPrimitive(intensityArray));
+    }
+
+    /**
+     * pickMaxPeak的原始类型版本
+     *
+     * @param intensityArray smoothed rtIntensityPairs
+     * @return maxPeaks
+     */
+    public RtIntensityPairsDouble pickMaxPeak(double[] rtArray, double[] intensityArray) {
         if (rtArray.length < 5) {
             return null;
         }
@@ -473,10 +511,23 @@ public class PeakPicker {
      * @return 左右边界rt, chromatogram边界内intensity求和
      */
     public List<IonPeak> pickChromatogram(Double[] rtArray, Double[] intensityArray, Double[] smoothIntensityArray, double[] signalToNoise, RtIntensityPairsDouble maxPeakPairs) {
+        return pickChromatogram(ArrayUtils.toPrimitive(rtArray), ArrayUtils.toPrimitive(intensityArray), ArrayUtils.toPrimitive(smoothIntensityArray), signalToNoise, maxPeakPairs);
+    }
+
+    /**
+     * pickChromatogram的原始类型版本
+     *
+     * @param intensityArray       origin rtIntensity pair
+     * @param smoothIntensityArray rtIntensity pair after smooth
+     * @param signalToNoise        window length = 1000
+     * @param maxPeakPairs         picked max peak
+     * @return 左右边界rt, chromatogram边界内intensity求和
+     */
+    public List<IonPeak> pickChromatogram(double[] rtArray, double[] intensityArray, double[] smoothIntensityArray, double[] signalToNoise, RtIntensityPairsDouble maxPeakPairs) {
         int maxPeakSize = maxPeakPairs.getRtArray().length;
         int leftIndex, rightIndex;
 
-        Double[] chromatogram;
+        double[] chromatogram;
         if (Constants.CHROMATOGRAM_PICKER_METHOD.equals("legacy")) {
             chromatogram = intensityArray;
         } else {
@@ -519,7 +570,7 @@ public class PeakPicker {
         return ionPeakList;
     }
 
-    private double integratePeaks(Double[] intensityArray, int leftIndex, int rightIndex) {
+    private double integratePeaks(double[] intensityArray, int leftIndex, int rightIndex) {
         double intensity = 0d;
         for (int i = leftIndex; i <= rightIndex; i++) {
             intensity += intensityArray[i];
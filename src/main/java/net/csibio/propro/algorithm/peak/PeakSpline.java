@@ -2,6 +2,7 @@ package net.csibio.propro.algorithm.peak;
 
 import net.csibio.propro.domain.bean.data.RtIntensityPairsDouble;
 import net.csibio.propro.utils.MathUtil;
+import org.apache.commons.lang3.ArrayUtils;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
@@ -70,6 +71,10 @@ public class PeakSpline {
     }
 
     public void init(Double[] rt, Double[] intensity, int leftBoundary, int rightBoundary) {
+        init(ArrayUtils.toPrimitive(rt), ArrayUtils.toPrimitive(intensity), leftBoundary, rightBoundary);
+    }
+
+    public void init(double[] rt, double[] intensity, int leftBoundary, int rightBoundary) {
         int maxIndex = rightBoundary - leftBoundary;
         x = new double[maxIndex + 1];
         a = new double[maxIndex + 1];
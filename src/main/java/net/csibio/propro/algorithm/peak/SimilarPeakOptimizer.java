@@ -2,46 +2,53 @@ package net.csibio.propro.algorithm.peak;
 
 import lombok.extern.slf4j.Slf4j;
 import net.csibio.aird.bean.WindowRange;
-import net.csibio.propro.domain.bean.data.DataScore;
-import net.csibio.propro.domain.bean.score.PeakGroup;
+import net.csibio.propro.algorithm.extract.LibraryCoordIndex;
+import net.csibio.propro.domain.bean.learner.ScoreMatrix;
+import net.csibio.propro.domain.bean.peptide.LibraryCoordSnapshot;
 import net.csibio.propro.domain.bean.score.SelectedPeakGroup;
 import net.csibio.propro.domain.db.BlockIndexDO;
-import net.csibio.propro.domain.db.PeptideDO;
-import net.csibio.propro.domain.query.PeptideQuery;
 import net.csibio.propro.service.BlockIndexService;
-import net.csibio.propro.service.PeptideService;
-import net.csibio.propro.utils.PeptideUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
-import java.util.function.Function;
-import java.util.stream.Collectors;
 
 @Slf4j
 @Component("similarPeakOptimizer")
 public class SimilarPeakOptimizer {
 
     @Autowired
-    PeptideService peptideService;
+    LibraryCoordIndex libraryCoordIndex;
     @Autowired
     BlockIndexService blockIndexService;
 
-    public List<SelectedPeakGroup> optimizer(String runId, List<DataScore> dataList, Map<String, SelectedPeakGroup> selectedDataMap, List<WindowRange> ranges, String libraryId, double minTotalScore) {
+    public List<SelectedPeakGroup> optimizer(String runId, ScoreMatrix matrix, Map<String, SelectedPeakGroup> selectedDataMap, List<WindowRange> ranges, String libraryId, double minTotalScore) {
         List<SelectedPeakGroup> selectedList = new ArrayList<>();
-        Map<String, DataScore> dataMap = dataList.stream().filter(data -> !data.getDecoy()).collect(Collectors.toMap(DataScore::getPeptideRef, Function.identity()));
+        //真肽段的PeptideRef与其在打分矩阵中的编号
+        Map<String, Integer> groupMap = new HashMap<>();
+        for (int group = 0; group < matrix.getGroups(); group++) {
+            if (!matrix.isDecoy(group)) {
+                groupMap.put(matrix.getPeptideRefs()[group], group);
+            }
+        }
+        LibraryCoordSnapshot snapshot = libraryCoordIndex.get(libraryId);
         for (WindowRange range : ranges) {
             TreeMap<Double, List<SelectedPeakGroup>> rtMap = new TreeMap<>();
             BlockIndexDO index = blockIndexService.getMS2(runId, range.getMz());
             for (Float rt : index.getRts()) {
                 rtMap.put((double) rt, new ArrayList<>());
             }
-            Map<String, PeptideDO> peptideMap = peptideService.getAll(new PeptideQuery(libraryId).setMzStart(range.getStart()).setMzEnd(range.getEnd())).stream().collect(Collectors.toMap(PeptideDO::getPeptideRef, Function.identity()));
-            for (PeptideDO peptide : peptideMap.values()) {
-                SelectedPeakGroup selectedPeakGroup = selectedDataMap.get(peptide.getPeptideRef());
+            //窗口内肽段的PeptideRef与其在标准库快照中的编号
+            Map<String, Integer> peptideMap = new HashMap<>();
+            for (int i = snapshot.from(range.getStart()); i < snapshot.to(range.getEnd()); i++) {
+                peptideMap.put(snapshot.getPeptideRefs()[i], i);
+            }
+            for (String peptideRef : peptideMap.keySet()) {
+                SelectedPeakGroup selectedPeakGroup = selectedDataMap.get(peptideRef);
                 if (selectedPeakGroup != null && selectedPeakGroup.getFdr() <= 0.01) {
                     if (rtMap.get(selectedPeakGroup.getApexRt()) != null) {
                         rtMap.get(selectedPeakGroup.getApexRt()).add(selectedPeakGroup);
@@ -62,13 +69,13 @@ public class SimilarPeakOptimizer {
                     for (int b = a + 1; b < peakGroupList.size(); b++) {
                         SelectedPeakGroup selectedPeakGroupA = peakGroupList.get(a);
                         SelectedPeakGroup selectedPeakGroupB = peakGroupList.get(b);
-                        PeptideDO peptideA = peptideMap.get(selectedPeakGroupA.getPeptideRef());
-                        PeptideDO peptideB = peptideMap.get(selectedPeakGroupB.getPeptideRef());
-                        int minLength = Math.min(peptideA.getSequence().length(), peptideB.getSequence().length());
-                        if (PeptideUtil.similar(peptideA, peptideB, minLength <= 8 ? 5 : 6)) {
+                        int peptideA = peptideMap.get(selectedPeakGroupA.getPeptideRef());
+                        int peptideB = peptideMap.get(selectedPeakGroupB.getPeptideRef());
+                        int minLength = Math.min(snapshot.sequenceLength(peptideA), snapshot.sequenceLength(peptideB));
+                        if (snapshot.similar(peptideA, peptideB, minLength <= 8 ? 5 : 6)) {
                             //如果是两个相邻干扰峰,开始处理
-                            DataScore dataA = dataMap.get(peptideA.getPeptideRef());
-                            DataScore dataB = dataMap.get(peptideB.getPeptideRef());
+                            Integer groupA = groupMap.get(selectedPeakGroupA.getPeptideRef());
+                            Integer groupB = groupMap.get(selectedPeakGroupB.getPeptideRef());
                             //如果两组分数相同
                             if (Math.abs(selectedPeakGroupA.getTotalScore() - selectedPeakGroupB.getTotalScore()) < 0.1) {
 //                                log.info("两组的得分几乎一样");
@@ -76,17 +83,9 @@ public class SimilarPeakOptimizer {
                             }
                             //选择得分较小的一组
                             if (selectedPeakGroupA.getTotalScore() < selectedPeakGroupB.getTotalScore()) {
-                                for (PeakGroup peakGroup : dataA.getPeakGroupList()) {
-                                    if (peakGroup.getSelectedRt().equals(selectedPeakGroupA.getSelectedRt())) {
-                                        peakGroup.setNotMine(true);
-                                    }
-                                }
+                                markNotMine(matrix, groupA, selectedPeakGroupA.getSelectedRt());
                             } else {
-                                for (PeakGroup peakGroup : dataB.getPeakGroupList()) {
-                                    if (peakGroup.getSelectedRt().equals(selectedPeakGroupB.getSelectedRt())) {
-                                        peakGroup.setNotMine(true);
-                                    }
-                                }
+                                markNotMine(matrix, groupB, selectedPeakGroupB.getSelectedRt());
                             }
                         }
                     }
@@ -95,4 +94,15 @@ public class SimilarPeakOptimizer {
         }
         return selectedList;
     }
+
+    /**
+     * 将肽段中selectedRt与被选中峰组相同的峰组标记为notMine
+     */
+    private void markNotMine(ScoreMatrix matrix, int group, double selectedRt) {
+        for (int row = matrix.from(group); row < matrix.to(group); row++) {
+            if (matrix.getSelectedRts()[row] == selectedRt) {
+                matrix.markNotMine(row);
+            }
+        }
+    }
 }
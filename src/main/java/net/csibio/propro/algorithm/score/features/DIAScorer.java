@@ -5,15 +5,16 @@ import net.csibio.aird.bean.MzIntensityPairs;
 import net.csibio.propro.algorithm.formula.FragmentFactory;
 import net.csibio.propro.algorithm.score.ScoreType;
 import net.csibio.propro.constants.constant.Constants;
-import net.csibio.propro.constants.constant.IsotopeConstants;
 import net.csibio.propro.domain.bean.common.IntegerPair;
+import net.csibio.propro.domain.bean.data.SpectrumBlock;
+import net.csibio.propro.domain.bean.peptide.FragmentTable;
 import net.csibio.propro.domain.bean.score.BYSeries;
 import net.csibio.propro.domain.bean.score.IntegrateWindowMzIntensity;
 import net.csibio.propro.domain.bean.score.PeakGroup;
 import net.csibio.propro.loader.AminoAcidLoader;
 import net.csibio.propro.loader.ElementsLoader;
 import net.csibio.propro.loader.UnimodLoader;
-import net.csibio.propro.utils.FeatureUtil;
+import net.csibio.propro.utils.ConvolutionUtil;
 import net.csibio.propro.utils.ScoreUtil;
 import org.apache.commons.math3.util.FastMath;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -46,37 +47,37 @@ public class DIAScorer {
     AminoAcidLoader aminoAcidLoader;
     @Autowired
     FragmentFactory fragmentFactory;
+    @Autowired
+    IsotopeEngine isotopeEngine;
 
     /**
      * peakGroup.massdev_score 按光谱图中的强度加权mz与库中mz的偏差ppm百分比之和
      * peakGroup.weighted_massdev_score 按spectrum intensity加权的mz与product mz的偏差ppm百分比按libraryIntensity加权之和
      *
-     * @param productMzArray  根据transitionGroup获得存在transition中的productMz，存成Float array
-     * @param pairs           根据transitionGroup选取的RT选择的最近的Spectrum
-     * @param normedLibIntMap unNormalized library intensity(in peptidepeptide)
-     * @param peakGroup       scoreForAll
+     * @param pairs         根据transitionGroup选取的RT选择的最近的Spectrum
+     * @param normedLibInts 归一化的库强度,与peakGroup.ions一一对应
+     * @param peakGroup     scoreForAll, 碎片的productMz从peakGroup的碎片表中获取
      */
-    public void calculateDiaMassDiffScore(HashMap<String, Float> productMzArray, MzIntensityPairs pairs, HashMap<String, Double> normedLibIntMap, PeakGroup peakGroup, List<String> scoreTypes) {
+    public void calculateDiaMassDiffScore(MzIntensityPairs pairs, double[] normedLibInts, PeakGroup peakGroup, List<String> scoreTypes) {
 
+        FragmentTable table = peakGroup.getFragmentTable();
+        int[] ions = peakGroup.getIons();
         double ppmScore = 0.0d;
         double ppmScoreWeighted = 0.0d;
-        for (String key : productMzArray.keySet()) {
-            float productMz = productMzArray.get(key);
+        for (int k = 0; k < ions.length; k++) {
+            float productMz = table.getMzs()[ions[k]];
             float left = productMz - Constants.DIA_EXTRACT_WINDOW;
             float right = productMz + Constants.DIA_EXTRACT_WINDOW;
 
             try {
                 IntegrateWindowMzIntensity mzIntensity = ScoreUtil.integrateWindow(pairs.getMzArray(), pairs.getIntensityArray(), left, right);
                 if (mzIntensity.isSignalFound()) {
-                    if (normedLibIntMap.get(key) == null) {
-                        continue;
-                    }
                     double diffPpm = Math.abs(mzIntensity.getMz() - productMz) * 1000000d / productMz;
                     ppmScore += diffPpm;
-                    ppmScoreWeighted += diffPpm * normedLibIntMap.get(key);
+                    ppmScoreWeighted += diffPpm * normedLibInts[k];
                 }
             } catch (Exception e) {
-                log.error(key + ":" + FeatureUtil.toString(normedLibIntMap));
+                log.error(table.getCutInfo(ions[k]) + ":" + productMz);
                 e.printStackTrace();
             }
         }
@@ -93,26 +94,27 @@ public class DIAScorer {
      * scores.isotope_correlation
      * scores.isotope_overlap //feature intensity加权的可能（带电量1-4）无法区分同位素峰值的平均发生次数之和
      *
-     * @param peakGroup        single mrmFeature
-     * @param productMzMap     mz of fragment
-     * @param pairs            spectrum of selected Rt
-     * @param productChargeMap charge in peptide
-     * @param scoreTypes       scoreForAll for JProphet
+     * @param peakGroup  single mrmFeature, 碎片的mz与带电量从peakGroup的碎片表中获取
+     * @param pairs      spectrum of selected Rt
+     * @param scoreTypes scoreForAll for JProphet
      */
-    public void calculateIsotopeScores(PeakGroup peakGroup, HashMap<String, Float> productMzMap, HashMap<String, Integer> productChargeMap, MzIntensityPairs pairs, List<String> scoreTypes) {
+    public void calculateIsotopeScores(PeakGroup peakGroup, MzIntensityPairs pairs, List<String> scoreTypes) {
         double isotopeCorr = 0d;
         double isotopeOverlap = 0d;
-        int maxIsotope = Constants.DIA_NR_ISOTOPES + 1;
+        int maxIsotope = IsotopeEngine.MAX_ISOTOPE;
 
         //getFirstIsotopeRelativeIntensities
         double relIntensity;//离子强度占peak group总强度的比例
         double intensitySum = peakGroup.getIntensitySum();
 
-        for (String cutInfo : peakGroup.getIonIntensity().keySet()) {
-            float monoPeakMz = productMzMap.get(cutInfo);
-            int putativeFragmentCharge = productChargeMap.get(cutInfo);
-            relIntensity = peakGroup.getIonIntensity().get(cutInfo) / intensitySum;
-            Double[] runDistribution = new Double[maxIsotope];
+        FragmentTable table = peakGroup.getFragmentTable();
+        int[] ions = peakGroup.getIons();
+        double[] ionInts = peakGroup.getIonInts();
+        for (int k = 0; k < ions.length; k++) {
+            float monoPeakMz = table.getMzs()[ions[k]];
+            int putativeFragmentCharge = table.getCharges()[ions[k]];
+            relIntensity = ionInts[k] / intensitySum;
+            double[] runDistribution = new double[maxIsotope];
             double maxIntensity = 0.0d; //记录强度最大的一个同位素对应的强度值
             for (int iso = 0; iso < maxIsotope; iso++) {
                 float left = monoPeakMz + iso * Constants.C13C12_MASSDIFF_U / putativeFragmentCharge;
@@ -128,39 +130,9 @@ public class DIAScorer {
                 runDistribution[iso] = mzIntensity.getIntensity();
             }
 
-            //get scores.isotope_correlation
-            double massWeight = monoPeakMz * putativeFragmentCharge;
-            double factor = massWeight / Constants.AVG_TOTAL;
-            HashMap<String, Integer> formula = new HashMap<>(); //等比放大算多少个？
-            formula.put("C", (int) Math.round(Constants.C * factor));
-            formula.put("N", (int) Math.round(Constants.N * factor));
-            formula.put("O", (int) Math.round(Constants.O * factor));
-            formula.put("S", (int) Math.round(Constants.S * factor));
-
-            double theroyWeight = Constants.AVG_WEIGHT_C * formula.get("C") +
-                    Constants.AVG_WEIGHT_N * formula.get("N") +
-                    Constants.AVG_WEIGHT_O * formula.get("O") +
-                    Constants.AVG_WEIGHT_S * formula.get("S");//模拟表达式的weight
-            double remainingMass = massWeight - theroyWeight;
-            formula.put("H", (int) Math.round(remainingMass / Constants.AVG_WEIGHT_H));//residual添加H
-
-            Double[] isotopeDistributionC = convolvePow(IsotopeConstants.C, formula.get("C"));
-            Double[] isotopeDistributionH = convolvePow(IsotopeConstants.H, formula.get("H"));
-            Double[] isotopeDistributionN = convolvePow(IsotopeConstants.N, formula.get("N"));
-            Double[] isotopeDistributionO = convolvePow(IsotopeConstants.O, formula.get("O"));
-            Double[] isotopeDistributionS = convolvePow(IsotopeConstants.S, formula.get("S"));
-
-            Double[] theroyDistribution;
-            theroyDistribution = convolve(isotopeDistributionC, isotopeDistributionH, maxIsotope);
-            theroyDistribution = convolve(theroyDistribution, isotopeDistributionN, maxIsotope);
-            theroyDistribution = convolve(theroyDistribution, isotopeDistributionO, maxIsotope);
-            theroyDistribution = convolve(theroyDistribution, isotopeDistributionS, maxIsotope);
-
-//            MathUtil.renormalize(distributionResult);
-//            double maxValueOfDistribution = distributionResult.get(MathUtil.findMaxIndex(distributionResult));
-//            for (int j = 0; j < distributionResult.size(); j++) {
-//                distributionResult.set(j, distributionResult.get(j) / maxValueOfDistribution);
-//            }
+            //get scores.isotope_correlation, 理论同位素分布由isotopeEngine按照元素组成缓存
+            double[] theroyDistribution = isotopeEngine.get(monoPeakMz * putativeFragmentCharge);
+
             double corr = 0.0d, m1 = 0.0d, m2 = 0.0d, s1 = 0.0d, s2 = 0.0d;
             for (int j = 0; j < maxIsotope; j++) {
                 corr += runDistribution[j] * theroyDistribution[j];
@@ -208,28 +180,174 @@ public class DIAScorer {
     }
 
     public IntegerPair calcTotalIons(MzIntensityPairs pairs, HashMap<Integer, String> unimodHashMap, String sequence, int charge, float minIntensity, float minIntensity2, float maxIntensity) {
-        //计算理论值
-        int totalCount1 = 0;
-        int totalCount2 = 0;
+        return calcTotalIons(pairs, buildBYLadder(unimodHashMap, sequence, charge), minIntensity, minIntensity2, maxIntensity);
+    }
+
+    /**
+     * 计算肽段在1~charge-1价下所有理论b,y离子的mz,去重后从小到大排列
+     * 同一个肽段在每一帧光谱上使用的都是同一组理论值,因此只需要计算一次,缓存在PeptideCoord中即可
+     *
+     * @param unimodHashMap
+     * @param sequence
+     * @param charge
+     * @return
+     */
+    public double[] buildBYLadder(HashMap<Integer, String> unimodHashMap, String sequence, int charge) {
         Set<Double> totalIons = new HashSet<>();
         for (int i = 0; i < charge; i++) {
             BYSeries bySeries = fragmentFactory.getBYSeries(unimodHashMap, sequence, i, 10000);
             totalIons.addAll(bySeries.getBSeries());
             totalIons.addAll(bySeries.getYSeries());
         }
+        double[] ladder = new double[totalIons.size()];
+        int index = 0;
+        for (Double ion : totalIons) {
+            ladder[index++] = ion;
+        }
+        Arrays.sort(ladder);
+        return ladder;
+    }
+
+    /**
+     * 使用预先计算好的理论离子序列统计光谱中命中的离子数目
+     * 理论离子与光谱的mz均为从小到大排列,每一个离子的积分窗口左右边界也是单调递增的,因此使用双指针在mzArray上扫描一遍即可,
+     * 统计规则与ScoreUtil.integrateWindow完全一致,窗口边界恰好与光谱中的mz相等时退回到原始的二分查找
+     *
+     * @param pairs         光谱
+     * @param ladder        buildBYLadder的结果
+     * @param minIntensity  强度下限1
+     * @param minIntensity2 强度下限2
+     * @param maxIntensity  强度上限
+     * @return
+     */
+    public IntegerPair calcTotalIons(MzIntensityPairs pairs, double[] ladder, float minIntensity, float minIntensity2, float maxIntensity) {
+        int totalCount1 = 0;
+        int totalCount2 = 0;
+        float[] mzArray = pairs.getMzArray();
+        float[] intArray = pairs.getIntensityArray();
+        int length = mzArray.length;
+        if (length == 0) {
+            return new IntegerPair(0, 0);
+        }
 
-        for (double seriesMz : totalIons) {
+        int leftPointer = 0;
+        int rightPointer = 0;
+        for (double seriesMz : ladder) {
             Double left = seriesMz - 0.015;
             Double right = seriesMz + 0.015;
+            float leftMz = left.floatValue();
+            float rightMz = right.floatValue();
+
+            //leftPointer为第一个大于等于leftMz的位置,rightPointer为第一个大于rightMz的位置
+            while (leftPointer < length && mzArray[leftPointer] < leftMz) {
+                leftPointer++;
+            }
+            if (rightPointer < leftPointer) {
+                rightPointer = leftPointer;
+            }
+            while (rightPointer < length && mzArray[rightPointer] <= rightMz) {
+                rightPointer++;
+            }
 
-            IntegrateWindowMzIntensity mzIntensity = ScoreUtil.integrateWindow(pairs.getMzArray(), pairs.getIntensityArray(), left.floatValue(), right.floatValue());
-            if (mzIntensity.isSignalFound() &&
-                    (Math.abs(seriesMz - mzIntensity.getMz()) * 1000000 / seriesMz) < Constants.DIA_BYSERIES_PPM_DIFF &&
-                    mzIntensity.getIntensity() > minIntensity && mzIntensity.getIntensity() <= maxIntensity) {
-                if (mzIntensity.getIntensity() > minIntensity) {
-                    totalCount1++;
+            int leftIndex;
+            int rightIndex;
+            if ((leftPointer < length && mzArray[leftPointer] == leftMz) || (rightPointer > 0 && mzArray[rightPointer - 1] == rightMz)) {
+                leftIndex = ConvolutionUtil.findIndex(mzArray, leftMz, true);
+                rightIndex = ConvolutionUtil.findIndex(mzArray, rightMz, false);
+            } else {
+                leftIndex = leftPointer == length ? -1 : leftPointer;
+                rightIndex = rightPointer == 0 ? -1 : rightPointer - 1;
+            }
+            if (leftIndex == -1 || rightIndex == -1) {
+                continue;
+            }
+
+            double mz = 0d, intensity = 0d;
+            for (int index = leftIndex; index <= rightIndex; index++) {
+                intensity += intArray[index];
+                mz += mzArray[index] * intArray[index];
+            }
+            if (!(intensity > 0f)) {
+                continue;
+            }
+            mz /= intensity;
+            if ((Math.abs(seriesMz - mz) * 1000000 / seriesMz) < Constants.DIA_BYSERIES_PPM_DIFF &&
+                    intensity > minIntensity && intensity <= maxIntensity) {
+                totalCount1++;
+                if (intensity > minIntensity2) {
+                    totalCount2++;
                 }
-                if (mzIntensity.getIntensity() > minIntensity2) {
+            }
+        }
+
+        return new IntegerPair(totalCount1, totalCount2);
+    }
+
+    /**
+     * 与calcTotalIons(MzIntensityPairs, ladder, ...)逻辑完全一致,直接在列式存储的光谱块上统计第index张光谱中命中的离子数目,不需要复制光谱
+     *
+     * @param block         光谱块
+     * @param index         光谱编号
+     * @param ladder        buildBYLadder的结果
+     * @param minIntensity  强度下限1
+     * @param minIntensity2 强度下限2
+     * @param maxIntensity  强度上限
+     * @return
+     */
+    public IntegerPair calcTotalIons(SpectrumBlock block, int index, double[] ladder, float minIntensity, float minIntensity2, float maxIntensity) {
+        int totalCount1 = 0;
+        int totalCount2 = 0;
+        int from = block.from(index);
+        int to = block.to(index);
+        if (from == to) {
+            return new IntegerPair(0, 0);
+        }
+
+        int leftPointer = from;
+        int rightPointer = from;
+        for (double seriesMz : ladder) {
+            Double left = seriesMz - 0.015;
+            Double right = seriesMz + 0.015;
+            float leftMz = left.floatValue();
+            float rightMz = right.floatValue();
+
+            while (leftPointer < to && block.mz(leftPointer) < leftMz) {
+                leftPointer++;
+            }
+            if (rightPointer < leftPointer) {
+                rightPointer = leftPointer;
+            }
+            while (rightPointer < to && block.mz(rightPointer) <= rightMz) {
+                rightPointer++;
+            }
+
+            int leftIndex;
+            int rightIndex;
+            if ((leftPointer < to && block.mz(leftPointer) == leftMz) || (rightPointer > from && block.mz(rightPointer - 1) == rightMz)) {
+                leftIndex = ConvolutionUtil.findIndex(block, from, to, leftMz, true);
+                rightIndex = ConvolutionUtil.findIndex(block, from, to, rightMz, false);
+            } else {
+                leftIndex = leftPointer == to ? -1 : leftPointer;
+                rightIndex = rightPointer == from ? -1 : rightPointer - 1;
+            }
+            if (leftIndex == -1 || rightIndex == -1) {
+                continue;
+            }
+
+            double mz = 0d, intensity = 0d;
+            for (int position = leftIndex; position <= rightIndex; position++) {
+                float ionInt = block.intensity(position);
+                intensity += ionInt;
+                mz += block.mz(position) * ionInt;
+            }
+            if (!(intensity > 0f)) {
+                continue;
+            }
+            mz /= intensity;
+            if ((Math.abs(seriesMz - mz) * 1000000 / seriesMz) < Constants.DIA_BYSERIES_PPM_DIFF &&
+                    intensity > minIntensity && intensity <= maxIntensity) {
+                totalCount1++;
+                if (intensity > minIntensity2) {
                     totalCount2++;
                 }
             }
@@ -248,31 +366,6 @@ public class DIAScorer {
         return isotopePercentList;
     }
 
-    /**
-     * @param factor number of predicted element
-     * @return
-     */
-    private Double[] convolvePow(List<Double[]> distribution, int factor) {
-
-        if (factor == 1) {
-            return distribution.get(0);
-        }
-        int log2n = (int) Math.ceil(FastMath.log(2, factor));
-
-        Double[] distributionResult;
-        if ((factor & 1) == 1) {
-            distributionResult = distribution.get(0);
-        } else {
-            distributionResult = new Double[]{1d};
-        }
-        for (int i = 1; i <= log2n; i++) {
-            if ((factor & (1 << i)) == 1 << i) {
-                distributionResult = convolve(distributionResult, distribution.get(i), Constants.DIA_NR_ISOTOPES + 1);
-            }
-        }
-        return distributionResult;
-    }
-
     /**
      * @param isotopeDistribution percent list of isotope
      * @param maxIsotope          Constants.DIA_NR_ISOTOPES + 1 = 5
@@ -295,25 +388,4 @@ public class DIAScorer {
         }
         return result;
     }
-
-    private Double[] convolve(Double[] leftDistribution, Double[] rightFormerResult, int maxIsotope) {
-        int rMax = leftDistribution.length + rightFormerResult.length - 1;
-//        Collections.sort(leftDistribution);
-//        Collections.reverse(leftDistribution);
-//        Collections.sort(rightFormerResult);
-//        Collections.reverse(rightFormerResult);
-        if (maxIsotope != 0 && rMax > maxIsotope) {
-            rMax = maxIsotope;
-        }
-        Double[] result = new Double[rMax];
-        for (int i = 0; i < rMax; i++) {
-            result[i] = 0d;
-        }
-        for (int i = leftDistribution.length - 1; i >= 0; i--) {
-            for (int j = Math.min(rMax - i, rightFormerResult.length) - 1; j >= 0; j--) {
-                result[i + j] += leftDistribution[i] * rightFormerResult[j];
-            }
-        }
-        return result;
-    }
 }
@@ -4,6 +4,7 @@ import net.csibio.propro.constants.constant.Constants;
 import net.csibio.propro.domain.bean.data.RtIntensityPairsDouble;
 import net.csibio.propro.domain.bean.score.EmgModelParams;
 import net.csibio.propro.domain.bean.score.PeakGroup;
+import net.csibio.propro.utils.ArrayUtil;
 import net.csibio.propro.utils.MathUtil;
 import net.finmath.optimizer.SolverException;
 import org.slf4j.Logger;
@@ -36,8 +37,8 @@ public class ElutionScorer {
     @Deprecated
     public void calculateElutionModelScore(PeakGroup peakGroupFeature, PeakGroup scores, List<String> scoreTypes) {
         double elutionModelFitScore = 0.0d;
-        for (String cutInfo : peakGroupFeature.getIonHullInt().keySet()) {
-            RtIntensityPairsDouble preparedHullPoints = prepareElutionFit(peakGroupFeature.getIonHullRt(), peakGroupFeature.getIonHullInt().get(cutInfo));
+        for (double[] ionHullInt : peakGroupFeature.getIonHullInts()) {
+            RtIntensityPairsDouble preparedHullPoints = prepareElutionFit(peakGroupFeature.getIonHullRt(), ArrayUtil.toBoxed(ionHullInt, 0, ionHullInt.length));
             if (preparedHullPoints == null) {
                 elutionModelFitScore += -1;
                 continue;
@@ -97,7 +98,7 @@ public class ElutionScorer {
             elutionModelFitScore += fScore;
         }
 
-        elutionModelFitScore /= peakGroupFeature.getIonHullInt().size();
+        elutionModelFitScore /= peakGroupFeature.ionSize();
 
 //        return elutionModelFitScore;
 //        scores.put(ScoreType.ElutionModelFitScore.getName(), avgScore, scoreTypes);
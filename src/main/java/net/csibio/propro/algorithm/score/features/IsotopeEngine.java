@@ -0,0 +1,164 @@
+package net.csibio.propro.algorithm.score.features;
+
+import net.csibio.propro.config.VMProperties;
+import net.csibio.propro.constants.constant.Constants;
+import net.csibio.propro.constants.constant.IsotopeConstants;
+import org.apache.commons.math3.util.FastMath;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 理论同位素分布计算引擎,进程内共享
+ * 碎片的质量(mz*charge)先按averagine模型换算为元素组成,再由各元素的同位素分布卷积得到碎片的同位素分布
+ * 同一个元素组成的分布只计算一次,以元素组成为key缓存为原始类型数组,计算结果与逐次卷积完全一致
+ * <p>
+ * 元素组成随质量变化得很慢,常见碎片质量范围内不同的元素组成只有数万种,缓存达到isotope.cache上限后不再写入新的分布
+ */
+@Component("isotopeEngine")
+public class IsotopeEngine {
+
+    /**
+     * 同位素分布的长度,即单同位素峰加上DIA_NR_ISOTOPES个同位素峰
+     */
+    public static final int MAX_ISOTOPE = Constants.DIA_NR_ISOTOPES + 1;
+
+    @Autowired
+    VMProperties vmProperties;
+
+    private final ConcurrentHashMap<IsotopeFormula, double[]> cache = new ConcurrentHashMap<>();
+
+    AtomicLong hits = new AtomicLong(0);
+    AtomicLong misses = new AtomicLong(0);
+    AtomicLong rejects = new AtomicLong(0);
+
+    /**
+     * 获取指定质量的碎片的理论同位素分布,返回的数组为所有调用方共享,调用方只能读取
+     *
+     * @param massWeight 碎片的质量,即mz*charge
+     * @return 长度为MAX_ISOTOPE的理论同位素分布
+     */
+    public double[] get(double massWeight) {
+        IsotopeFormula formula = averagine(massWeight);
+        double[] distribution = cache.get(formula);
+        if (distribution != null) {
+            hits.incrementAndGet();
+            return distribution;
+        }
+        misses.incrementAndGet();
+        distribution = distribution(formula);
+        if (cache.size() < vmProperties.getIsotopeCache()) {
+            double[] existing = cache.putIfAbsent(formula, distribution);
+            return existing == null ? distribution : existing;
+        }
+        rejects.incrementAndGet();
+        return distribution;
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    public Map<String, Object> stat() {
+        Map<String, Object> stat = new LinkedHashMap<>();
+        long hit = hits.get();
+        long miss = misses.get();
+        stat.put("maxSize", vmProperties.getIsotopeCache());
+        stat.put("size", cache.size());
+        stat.put("hits", hit);
+        stat.put("misses", miss);
+        stat.put("hitRate", hit + miss == 0 ? 0d : hit * 1d / (hit + miss));
+        stat.put("rejects", rejects.get());
+        return stat;
+    }
+
+    /**
+     * 按照averagine模型等比放大估算碎片的元素组成,剩余的质量全部计为H
+     *
+     * @param massWeight 碎片的质量
+     * @return
+     */
+    public static IsotopeFormula averagine(double massWeight) {
+        double factor = massWeight / Constants.AVG_TOTAL;
+        int c = (int) Math.round(Constants.C * factor);
+        int n = (int) Math.round(Constants.N * factor);
+        int o = (int) Math.round(Constants.O * factor);
+        int s = (int) Math.round(Constants.S * factor);
+        double theroyWeight = Constants.AVG_WEIGHT_C * c +
+                Constants.AVG_WEIGHT_N * n +
+                Constants.AVG_WEIGHT_O * o +
+                Constants.AVG_WEIGHT_S * s;//模拟表达式的weight
+        double remainingMass = massWeight - theroyWeight;
+        int h = (int) Math.round(remainingMass / Constants.AVG_WEIGHT_H);//residual添加H
+        return new IsotopeFormula(c, h, n, o, s);
+    }
+
+    /**
+     * 计算元素组成对应的理论同位素分布,卷积顺序与DIAScorer中原有的实现保持一致
+     *
+     * @param formula
+     * @return 长度为MAX_ISOTOPE的理论同位素分布,超出卷积结果长度的部分为0
+     */
+    public static double[] distribution(IsotopeFormula formula) {
+        double[] result = convolve(convolvePow(IsotopeConstants.C, formula.c()), convolvePow(IsotopeConstants.H, formula.h()));
+        result = convolve(result, convolvePow(IsotopeConstants.N, formula.n()));
+        result = convolve(result, convolvePow(IsotopeConstants.O, formula.o()));
+        result = convolve(result, convolvePow(IsotopeConstants.S, formula.s()));
+        if (result.length == MAX_ISOTOPE) {
+            return result;
+        }
+        double[] padded = new double[MAX_ISOTOPE];
+        System.arraycopy(result, 0, padded, 0, Math.min(result.length, MAX_ISOTOPE));
+        return padded;
+    }
+
+    /**
+     * distribution中第i个元素为单个原子的同位素分布自身卷积2^i次的结果,按factor的二进制位进行组合
+     *
+     * @param factor 原子数目
+     * @return
+     */
+    private static double[] convolvePow(List<Double[]> distribution, int factor) {
+        if (factor == 1) {
+            return unbox(distribution.get(0));
+        }
+        int log2n = (int) Math.ceil(FastMath.log(2, factor));
+
+        double[] result;
+        if ((factor & 1) == 1) {
+            result = unbox(distribution.get(0));
+        } else {
+            result = new double[]{1d};
+        }
+        for (int i = 1; i <= log2n; i++) {
+            if ((factor & (1 << i)) == 1 << i) {
+                result = convolve(result, unbox(distribution.get(i)));
+            }
+        }
+        return result;
+    }
+
+    private static double[] convolve(double[] left, double[] right) {
+        int rMax = Math.min(left.length + right.length - 1, MAX_ISOTOPE);
+        double[] result = new double[rMax];
+        for (int i = left.length - 1; i >= 0; i--) {
+            for (int j = Math.min(rMax - i, right.length) - 1; j >= 0; j--) {
+                result[i + j] += left[i] * right[j];
+            }
+        }
+        return result;
+    }
+
+    private static double[] unbox(Double[] array) {
+        double[] result = new double[array.length];
+        for (int i = 0; i < array.length; i++) {
+            result[i] = array[i];
+        }
+        return result;
+    }
+}
@@ -0,0 +1,13 @@
+package net.csibio.propro.algorithm.score.features;
+
+/**
+ * 按averagine模型估算出的元素组成,同位素分布缓存的key
+ *
+ * @param c C原子数目
+ * @param h H原子数目
+ * @param n N原子数目
+ * @param o O原子数目
+ * @param s S原子数目
+ */
+public record IsotopeFormula(int c, int h, int n, int o, int s) {
+}
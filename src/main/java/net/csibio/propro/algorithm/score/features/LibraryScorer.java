@@ -5,14 +5,12 @@ import net.csibio.propro.algorithm.score.ScoreType;
 import net.csibio.propro.constants.constant.Constants;
 import net.csibio.propro.domain.bean.score.PeakGroup;
 import net.csibio.propro.domain.bean.score.SlopeIntercept;
-import net.csibio.propro.utils.ArrayUtil;
 import net.csibio.propro.utils.MathUtil;
 import net.csibio.propro.utils.ScoreUtil;
 import org.apache.commons.math3.stat.correlation.PearsonsCorrelation;
 import org.apache.commons.math3.util.FastMath;
 import org.springframework.stereotype.Component;
 
-import java.util.HashMap;
 import java.util.List;
 
 /**
@@ -31,23 +29,15 @@ public class LibraryScorer {
      * scores.library_norm_manhattan // 对run intensity 算平均占比差距
      * scores.norm_rt_score //normalizedRunRt与groupRt之差
      *
-     * @param peakGroup       get runIntensity: from features extracted
-     * @param normedLibIntMap get libraryIntensity: from transitions
-     * @param scoreTypes      library_corr, library_norm_manhattan
+     * @param peakGroup     get runIntensity: from features extracted
+     * @param normedLibInt  get libraryIntensity: from transitions, 与peakGroup.ions一一对应
+     * @param scoreTypes    library_corr, library_norm_manhattan
      */
-    public void calculateLibraryScores(PeakGroup peakGroup, HashMap<String, Double> normedLibIntMap, List<String> scoreTypes) {
-        for (String cutInfo : normedLibIntMap.keySet()) {
-            peakGroup.getApexIonsIntensity().putIfAbsent(cutInfo, 0d);
-        }
-        Double[] runIntensity = new Double[peakGroup.getIonIntensity().size()];
-        Double[] apexRunIntensity = new Double[peakGroup.getApexIonsIntensity().size()];
-        Double[] normedLibInt = new Double[peakGroup.getIonIntensity().size()];
-        peakGroup.getIonIntensity().values().toArray(runIntensity);
-        peakGroup.getApexIonsIntensity().values().toArray(apexRunIntensity);
-        normedLibIntMap.values().toArray(normedLibInt);
+    public void calculateLibraryScores(PeakGroup peakGroup, double[] normedLibInt, List<String> scoreTypes) {
+        double[] runIntensity = peakGroup.getIonInts();
 
-        Double[] normedRunInt = ScoreUtil.normalizeSumDoubleArray(runIntensity, peakGroup.getIntensitySum());
-        Double[] normedApexRunInt = ScoreUtil.normalizeSumDoubleArray(apexRunIntensity);
+        double[] normedRunInt = ScoreUtil.normalizeSumDoubleArray(runIntensity, peakGroup.getIntensitySum());
+        double[] normedApexRunInt = ScoreUtil.normalizeSumDoubleArray(peakGroup.getApexIonInts());
 
         //library_norm_manhattan
         if (scoreTypes.contains(ScoreType.Rsmd.getName())) {
@@ -81,7 +71,7 @@ public class LibraryScorer {
 
             //Apex处的pearson系数
             PearsonsCorrelation pearson = new PearsonsCorrelation();
-            double pearsonApex = pearson.correlation(ArrayUtil.toPrimitive(normedLibInt), ArrayUtil.toPrimitive(normedApexRunInt));
+            double pearsonApex = pearson.correlation(normedLibInt, normedApexRunInt);
             if (Double.isNaN(pearsonApex)) {
                 pearsonApex = 0d;
             }
@@ -173,7 +163,7 @@ public class LibraryScorer {
 //    }
 
 
-    private double calculateLibraryShiftScore(Double[] libIntensities, Double[] runIntensities) {
+    private double calculateLibraryShiftScore(double[] libIntensities, double[] runIntensities) {
         double maxRatio = 0d, minRatio = Double.MAX_VALUE;
         for (int i = 0; i < libIntensities.length; i++) {
             double ratio = runIntensities[i] / libIntensities[i];
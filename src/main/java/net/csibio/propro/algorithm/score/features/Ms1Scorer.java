@@ -31,13 +31,12 @@ public class Ms1Scorer {
     public void calcPearsonScore(PeakGroup peakGroup, List<String> scoreTypes) {
         Double[] ms1Ints = peakGroup.getMs1Ints();
         Double[] selfInts = peakGroup.getSelfInts();
-        Double[] bestIonInts = peakGroup.getIonHullInt().get(peakGroup.getBestIon());
-        if (bestIonInts == null || ms1Ints == null) {
+        double[] dBestIonInts = peakGroup.getIonHullInt(peakGroup.getBestIon());
+        if (dBestIonInts == null || ms1Ints == null) {
             peakGroup.put(ScoreType.MS1, -1d, scoreTypes);
             return;
         }
 
-        double[] dBestIonInts = ArrayUtil.toPrimitive(bestIonInts);
         double[] dMs1Ints = ArrayUtil.toPrimitive(ms1Ints);
         double[] dSelfInts = ArrayUtil.toPrimitive(selfInts);
         PeakFindingOptions options = new PeakFindingOptions();
@@ -1,12 +1,9 @@
 package net.csibio.propro.algorithm.score.features;
 
-import com.google.common.collect.HashBasedTable;
-import com.google.common.collect.Table;
 import lombok.extern.slf4j.Slf4j;
 import net.csibio.propro.algorithm.peak.Smoother;
 import net.csibio.propro.algorithm.score.ScoreType;
 import net.csibio.propro.domain.bean.common.DoublePairs;
-import net.csibio.propro.domain.bean.peptide.PeptideCoord;
 import net.csibio.propro.domain.bean.score.PeakGroup;
 import net.csibio.propro.domain.options.PeakFindingOptions;
 import net.csibio.propro.utils.ArrayUtil;
@@ -16,10 +13,7 @@ import org.apache.commons.math3.util.FastMath;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 /**
  * xcorr_coelution_score 互相关偏移的mean + std
@@ -42,57 +36,51 @@ public class XicScorer {
      * xcorrShapeScore
      * xcorrShapeScoreWeighted
      *
-     * @param peakGroup list of features in selected mrmfeature
+     * @param peakGroup     list of features in selected mrmfeature
+     * @param normedLibInts 归一化的库强度,与peakGroup.ions一一对应
      */
-    public void calcXICScores(PeakGroup peakGroup, HashMap<String, Double> normedLibIntMap, List<String> scoreTypes) {
-        Table<Integer, Integer, Double[]> xcorrMatrix = initializeXCorrMatrix(peakGroup);
+    public void calcXICScores(PeakGroup peakGroup, double[] normedLibInts, List<String> scoreTypes) {
+        double[][] ionHullInts = peakGroup.getIonHullInts();
+        int size = ionHullInts.length;
+        double[][] standardizedInts = new double[size][];
+        for (int i = 0; i < size; i++) {
+            standardizedInts[i] = MathUtil.standardizeDataOfdouble(ionHullInts[i]);
+        }
 
-        List<Double> normedLibIntList = new ArrayList<>(normedLibIntMap.values());
-        List<Integer> deltas = new ArrayList<>();
-        List<Double> deltasWeighted = new ArrayList<>();
-        List<Double> intensities = new ArrayList<>();
-        List<Double> intensitiesWeighted = new ArrayList<>();
-        Double[] value;
+        int[] deltas = new int[size * (size + 1) / 2];
+        int deltaCount = 0;
+        double sumDelta = 0.0d, sumDeltaWeighted = 0.0d, sumIntensity = 0.0d, sumIntensityWeighted = 0.0d;
+        double[] value;
         int maxIndex;
-        int size = peakGroup.getIonHullInt().size();
         for (int i = 0; i < size; i++) {
-            value = xcorrMatrix.get(i, i);
-            if (value == null) {
-                log.error("Peak Group Intensity List is null!!!");
-                continue;
-            }
-            maxIndex = MathUtil.findMaxIndex(value);
-            int midIndex = (value.length - 1) / 2;
-            deltasWeighted.add(FastMath.abs(maxIndex - midIndex) * normedLibIntList.get(i) * normedLibIntList.get(i));
-            intensitiesWeighted.add(value[maxIndex] * normedLibIntList.get(i) * normedLibIntList.get(i));
+            double[] selfValue = calculateCrossCorrelation(standardizedInts[i], standardizedInts[i]);
+            maxIndex = MathUtil.findMaxIndex(selfValue);
+            int midIndex = (selfValue.length - 1) / 2;
+            sumDeltaWeighted += FastMath.abs(maxIndex - midIndex) * normedLibInts[i] * normedLibInts[i];
+            sumIntensityWeighted += selfValue[maxIndex] * normedLibInts[i] * normedLibInts[i];
             for (int j = i; j < size; j++) {
-                value = xcorrMatrix.get(i, j);
+                value = j == i ? selfValue : calculateCrossCorrelation(standardizedInts[i], standardizedInts[j]);
                 maxIndex = MathUtil.findMaxIndex(value);
-                deltas.add(Math.abs(maxIndex - midIndex)); //first: maxdelay //delta: 偏移量
-                intensities.add(value[maxIndex]);//value[max] 吻合系数
+                int delta = Math.abs(maxIndex - midIndex); //first: maxdelay //delta: 偏移量
+                deltas[deltaCount++] = delta;
+                sumDelta += delta;
+                sumIntensity += value[maxIndex]; //value[max] 吻合系数
                 if (j != i) {
-                    deltasWeighted.add(Math.abs(maxIndex - midIndex) * normedLibIntList.get(i) * normedLibIntList.get(j) * 2d);
-                    intensitiesWeighted.add(value[maxIndex] * normedLibIntList.get(i) * normedLibIntList.get(j) * 2d);
+                    sumDeltaWeighted += delta * normedLibInts[i] * normedLibInts[j] * 2d;
+                    sumIntensityWeighted += value[maxIndex] * normedLibInts[i] * normedLibInts[j] * 2d;
                 }
             }
         }
-        double sumDelta = 0.0d, sumDeltaWeighted = 0.0d, sumIntensity = 0.0d, sumIntensityWeighted = 0.0d;
-        for (int i = 0; i < deltas.size(); i++) {
-            sumDelta += deltas.get(i);
-            sumDeltaWeighted += deltasWeighted.get(i);
-            sumIntensity += intensities.get(i);
-            sumIntensityWeighted += intensitiesWeighted.get(i);
-        }
-        double meanDelta = sumDelta / deltas.size();
-        double meanIntensity = sumIntensity / intensities.size();
+        double meanDelta = sumDelta / deltaCount;
+        double meanIntensity = sumIntensity / deltaCount;
         sumDelta = 0;
-        for (int delta : deltas) {
-            sumDelta += (delta - meanDelta) * (delta - meanDelta);
+        for (int k = 0; k < deltaCount; k++) {
+            sumDelta += (deltas[k] - meanDelta) * (deltas[k] - meanDelta);
         }
         //TODO WRM 这里可能会出现deltas.size()==1的情况
         double stdDelta = 0d;
-        if (deltas.size() != 1) {
-            stdDelta = Math.sqrt(sumDelta / (deltas.size() - 1));
+        if (deltaCount != 1) {
+            stdDelta = Math.sqrt(sumDelta / (deltaCount - 1));
         }
         if (scoreTypes.contains(ScoreType.CorrCoe.getName())) {
             peakGroup.put(ScoreType.CorrCoe.getName(), meanDelta + stdDelta, scoreTypes); //时间偏差
@@ -114,43 +102,28 @@ public class XicScorer {
      * @param peakGroup
      * @return
      */
-    public void calcPearsonMatrixScore(PeakGroup peakGroup, HashMap<String, Double> normedLibIntMap, PeptideCoord coord, List<String> scoreTypes) {
-        String bestIon = null;
-        String nextIon = null;
-        String maxIon = null;
+    public void calcPearsonMatrixScore(PeakGroup peakGroup, double[] normedLibInts, List<String> scoreTypes) {
+        //ions按照碎片表中的编号从小到大排列,因此第0个位置即为库中存在信号的最大碎片
+        int[] ions = peakGroup.getIons();
+        double[] ionInts = peakGroup.getIonInts();
+        int bestSlot = ions.length > 0 ? 0 : -1; //默认取存在的最大碎片最为最佳碎片
+        int nextSlot = ions.length > 1 ? 1 : -1;
+        int maxSlot = -1;
         double maxIonIntensity = -1d;
-        for (int i = 0; i < coord.getFragments().size(); i++) {
-            String cutInfo = coord.getFragments().get(i).getCutInfo();
-            Double intensity = peakGroup.getIonIntensity().get(cutInfo);
-            if (intensity != null) {
-                if (intensity > maxIonIntensity) {
-                    maxIon = cutInfo;
-                    maxIonIntensity = intensity;
-                }
-                if (bestIon == null) { //默认取存在的最大碎片最为最佳碎片
-                    bestIon = coord.getFragments().get(i).getCutInfo();
-                    continue;
-                }
-                if (nextIon == null) {
-                    nextIon = coord.getFragments().get(i).getCutInfo();
-                }
+        for (int k = 0; k < ions.length; k++) {
+            if (ionInts[k] > maxIonIntensity) {
+                maxSlot = k;
+                maxIonIntensity = ionInts[k];
             }
         }
 
         //实际最大碎片就是理论最大碎片的时候,考虑实际最大碎片是否被干扰导致增强
-        if (bestIon != null && nextIon != null && bestIon.equals(maxIon)) {
+        if (bestSlot != -1 && nextSlot != -1 && bestSlot == maxSlot) {
             //判定方式为整体占比
-            double realRatio = maxIonIntensity / peakGroup.getIonIntensity().get(nextIon);
-            double libRatio = normedLibIntMap.get(bestIon) / normedLibIntMap.get(nextIon);
-            if (realRatio / libRatio > 2) { //如果超过理论2倍的占比
-                for (int i = 1; i < coord.getFragments().size(); i++) {
-                    String cutInfo = coord.getFragments().get(i).getCutInfo();
-                    Double intensity = peakGroup.getIonIntensity().get(cutInfo);
-                    if (intensity != null) {
-                        bestIon = coord.getFragments().get(i).getCutInfo();
-                        break;
-                    }
-                }
+            double realRatio = maxIonIntensity / ionInts[nextSlot];
+            double libRatio = normedLibInts[bestSlot] / normedLibInts[nextSlot];
+            if (realRatio / libRatio > 2) { //如果超过理论2倍的占比,则改用库中第一个碎片之后的首个有信号的碎片
+                bestSlot = ions[0] == 0 ? 1 : 0;
             }
         }
 
@@ -176,26 +149,27 @@ public class XicScorer {
 //            }
 //        }
 
-        HashMap<String, Double[]> ionMap = peakGroup.getIonHullInt();
-        if (ionMap.get(bestIon) == null) {
-            peakGroup.setBestIon(bestIon);
+        if (bestSlot == -1) {
+            peakGroup.setBestIon(null);
             peakGroup.put(ScoreType.Elution, -1d, scoreTypes);
             return;
         }
+        String bestIon = peakGroup.getIonCutInfo(bestSlot);
+        double[][] ionHullInts = peakGroup.getIonHullInts();
         PeakFindingOptions options = new PeakFindingOptions();
         options.fillParams();
         double[] rts = ArrayUtil.toPrimitive(peakGroup.getIonHullRt());
-        DoublePairs pairs = smoother.doSmooth(new DoublePairs(rts, ArrayUtil.toPrimitive(ionMap.get(bestIon))), options);
+        DoublePairs pairs = smoother.doSmooth(new DoublePairs(rts, ionHullInts[bestSlot]), options);
         double[] bestIonSmoothEic = pairs.y();
         double total = 0d;
-        for (Map.Entry<String, Double[]> entry : ionMap.entrySet()) {
-            Double pearson = new PearsonsCorrelation().correlation(bestIonSmoothEic, ArrayUtil.toPrimitive(entry.getValue()));
+        for (double[] ionHullInt : ionHullInts) {
+            Double pearson = new PearsonsCorrelation().correlation(bestIonSmoothEic, ionHullInt);
             if (pearson.isNaN()) {
                 pearson = -1d;
             }
             total += pearson;
         }
-        total = total / ionMap.size();
+        total = total / ionHullInts.length;
         peakGroup.setBestIon(bestIon);
         peakGroup.put(ScoreType.Elution, total, scoreTypes);
     }
@@ -204,7 +178,7 @@ public class XicScorer {
 
         // log(mean of Apex sn s)
         double snScore = peakGroup.getSignalToNoiseSum();
-        snScore /= peakGroup.getIonIntensity().size();
+        snScore /= peakGroup.ionSize();
         if (snScore < 1) {
             peakGroup.put(ScoreType.LogSn.getName(), 0d, scoreTypes);
         } else {
@@ -213,41 +187,6 @@ public class XicScorer {
     }
 
 
-    /**
-     * Get the XCorrMatrix with run Features
-     * 对于一个 mrmFeature，算其中 chromatogramFeature 的 xcorrMatrix
-     *
-     * @param peakGroup features in mrmFeature
-     *                  HullInt: redistributed chromatogram in range of (peptideRef constant) leftRt and rightRt
-     * @return Table<Integer, Integer, Float [ ]> xcorrMatrix
-     */
-    private Table<Integer, Integer, Double[]> initializeXCorrMatrix(PeakGroup peakGroup) {
-        List<Double[]> intensityList = new ArrayList<>(peakGroup.getIonHullInt().values());
-        int listLength = intensityList.size();
-        Table<Integer, Integer, Double[]> xcorrMatrix = HashBasedTable.create();
-        Table<Integer, Integer, Double> pearsonMatrix = HashBasedTable.create();
-        double[] intensityi, intensityj;
-        HashMap<Integer, double[]> standardizeDataMap = new HashMap<>();
-        for (int i = 0; i < listLength; i++) {
-            standardizeDataMap.put(i, MathUtil.standardizeData(intensityList.get(i)));
-        }
-        for (int i = 0; i < listLength; i++) {
-            for (int j = i; j < listLength; j++) {
-                intensityi = standardizeDataMap.get(i);
-                intensityj = standardizeDataMap.get(j);
-                xcorrMatrix.put(i, j, calculateCrossCorrelation(intensityi, intensityj));
-                PearsonsCorrelation pearson = new PearsonsCorrelation();
-                double pearsonApex = pearson.correlation(intensityi, intensityj);
-                if (Double.isNaN(pearsonApex)) {
-                    pearsonApex = 0d;
-                }
-                pearsonMatrix.put(i, j, pearsonApex);
-            }
-        }
-
-        return xcorrMatrix;
-    }
-
     /**
      * xcorrMatrix的意义：sum(反斜向的元素)/data.length(3)
      * 0   1   2
@@ -259,9 +198,9 @@ public class XicScorer {
      * @param data2 the same length as data1
      * @return value of xcorrMatrix element
      */
-    private Double[] calculateCrossCorrelation(double[] data1, double[] data2) {
+    private double[] calculateCrossCorrelation(double[] data1, double[] data2) {
         int maxDelay = data1.length;
-        Double[] output = new Double[maxDelay * 2 + 1];
+        double[] output = new double[maxDelay * 2 + 1];
         double sxy;
         int j;
         for (int delay = -maxDelay; delay <= maxDelay; delay++) {
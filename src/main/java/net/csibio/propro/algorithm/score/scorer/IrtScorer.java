@@ -16,7 +16,6 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
 
 @Component("irtScorer")
@@ -54,14 +53,14 @@ public class IrtScorer {
             return null;
         }
         List<PeakGroup> peakGroupList = peakGroupListWrapper.getList();
-        HashMap<String, Double> normedLibIntMap = peakGroupListWrapper.getNormIntMap();
+        double[] normedLibInts = peakGroupListWrapper.getNormedLibInts();
 
         List<String> scoreTypes4Irt = ScoreType.usedScoreTypes();
 
         for (PeakGroup peakGroup : peakGroupList) {
             peakGroup.initScore(scoreTypes4Irt.size());
-            xicScorer.calcXICScores(peakGroup, normedLibIntMap, scoreTypes4Irt);
-            libraryScorer.calculateLibraryScores(peakGroup, normedLibIntMap, scoreTypes4Irt);
+            xicScorer.calcXICScores(peakGroup, normedLibInts, scoreTypes4Irt);
+            libraryScorer.calculateLibraryScores(peakGroup, normedLibInts, scoreTypes4Irt);
             peakGroup.put(ScoreType.IonsDelta.getName(), (maxIonsCount - peakGroup.getIonsLow()) * 1d / maxIonsCount, scoreTypes4Irt);
             double deltaWeight = (maxIonsCount - peakGroup.getIonsLow()) * 1d / maxIonsCount;
             peakGroup.put(ScoreType.IonsDelta, deltaWeight, scoreTypes4Irt);
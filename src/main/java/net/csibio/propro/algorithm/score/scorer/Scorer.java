@@ -12,6 +12,8 @@ import net.csibio.propro.algorithm.score.features.*;
 import net.csibio.propro.constants.enums.IdentifyStatus;
 import net.csibio.propro.constants.enums.PeakFindingMethod;
 import net.csibio.propro.domain.bean.data.DataScore;
+import net.csibio.propro.domain.bean.data.SpectrumBlock;
+import net.csibio.propro.domain.bean.learner.ScoreMatrix;
 import net.csibio.propro.domain.bean.peptide.PeptideCoord;
 import net.csibio.propro.domain.bean.score.PeakGroup;
 import net.csibio.propro.domain.bean.score.PeakGroupListWrapper;
@@ -23,7 +25,6 @@ import net.csibio.propro.domain.db.RunDO;
 import net.csibio.propro.domain.options.AnalyzeParams;
 import net.csibio.propro.domain.options.SigmaSpacing;
 import net.csibio.propro.service.*;
-import net.csibio.propro.utils.PeptideUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -77,7 +78,7 @@ public class Scorer {
     @Autowired
     PeakFitter peakFitter;
 
-    public DataDO score(RunDO run, DataDO dataDO, PeptideCoord coord, TreeMap<Float, MzIntensityPairs> ms1Map, TreeMap<Float, MzIntensityPairs> ms2Map, AnalyzeParams params) {
+    public DataDO score(RunDO run, DataDO dataDO, PeptideCoord coord, SpectrumBlock ms1Block, SpectrumBlock ms2Block, AnalyzeParams params) {
 
         if (dataDO.getIntMap() == null || dataDO.getIntMap().size() <= coord.getFragments().size() / 2) {
             dataDO.setStatus(IdentifyStatus.NO_ENOUGH_FRAGMENTS.getCode());
@@ -98,7 +99,7 @@ public class Scorer {
         if (!peakGroupListWrapper.isFound()) {
             //重试机制:扩大RT搜索范围并使用IonsShape重新计算XIC
             coord.setRtRange(coord.getRtStart() - params.getMethod().getEic().getExtraRtWindow(), coord.getRtEnd() + params.getMethod().getEic().getExtraRtWindow());
-            dataDO = extractor.extract(coord, ms1Map, ms2Map, params, true, 100f);
+            dataDO = extractor.extract(coord, ms1Block, ms2Block, params, true, 100f);
             if (dataDO.getIntMap() == null || dataDO.getIntMap().size() <= coord.getFragments().size() / 2) {
                 dataDO.setStatus(IdentifyStatus.NO_ENOUGH_FRAGMENTS.getCode());
                 return dataDO;
@@ -117,19 +118,12 @@ public class Scorer {
         //开始为每一个PeakGroup打分
         //Step1.准备相关的打分需要使用的前验数据
         List<PeakGroup> peakGroupList = peakGroupListWrapper.getList();
-        HashMap<String, Double> normedLibIntMap = peakGroupListWrapper.getNormIntMap(); //归一化的库强度值
-        HashMap<String, Float> productMzMap = new HashMap<>(); //碎片mz map
-        HashMap<String, Integer> productChargeMap = new HashMap<>(); //碎片带电量map
-        dataDO.getCutInfoMap().forEach((key, value) -> {
-            int charge = PeptideUtil.parseChargeFromCutInfo(key);
-            productChargeMap.put(key, charge);
-            productMzMap.put(key, value);
-        });
+        double[] normedLibInts = peakGroupListWrapper.getNormedLibInts(); //归一化的库强度值,与峰组中的碎片编号一一对应
         HashMap<Double, MzIntensityPairs> selectedSpectMap = new HashMap<>();
         int maxIonsCount = Arrays.stream(dataDO.getIonsHigh()).max().getAsInt();
 
         for (PeakGroup peakGroup : peakGroupList) {
-            selectedSpectMap.put(peakGroup.getSelectedRt(), ms2Map.get(peakGroup.getSelectedRt().floatValue()));
+            selectedSpectMap.put(peakGroup.getSelectedRt(), ms2Block.getPairs(ms2Block.indexOf(peakGroup.getSelectedRt().floatValue())));
         }
 
         peakGroupList = peakGroupList.stream().sorted(Comparator.comparing(PeakGroup::getSelectedRt)).collect(Collectors.toList());
@@ -139,13 +133,13 @@ public class Scorer {
             peakGroup.initScore(scoreTypes.size());
             //根据RT时间和前体m/z获取最近的一个原始谱图
             MzIntensityPairs mzIntensityPairs = selectedSpectMap.get(peakGroup.getSelectedRt());
-            libraryScorer.calculateLibraryScores(peakGroup, normedLibIntMap, scoreTypes);
+            libraryScorer.calculateLibraryScores(peakGroup, normedLibInts, scoreTypes);
             xicScorer.calculateLogSnScore(peakGroup, scoreTypes);
-            diaScorer.calculateDiaMassDiffScore(productMzMap, mzIntensityPairs, normedLibIntMap, peakGroup, scoreTypes);
+            diaScorer.calculateDiaMassDiffScore(mzIntensityPairs, normedLibInts, peakGroup, scoreTypes);
             libraryScorer.calculateNormRtScore(peakGroup, run.getIrt().getSi(), dataDO.getLibRt(), scoreTypes);
-            xicScorer.calcXICScores(peakGroup, normedLibIntMap, scoreTypes);
-            xicScorer.calcPearsonMatrixScore(peakGroup, normedLibIntMap, coord, scoreTypes);
-            diaScorer.calculateIsotopeScores(peakGroup, productMzMap, productChargeMap, mzIntensityPairs, scoreTypes);
+            xicScorer.calcXICScores(peakGroup, normedLibInts, scoreTypes);
+            xicScorer.calcPearsonMatrixScore(peakGroup, normedLibInts, scoreTypes);
+            diaScorer.calculateIsotopeScores(peakGroup, mzIntensityPairs, scoreTypes);
             if (maxIonsCount != 0) {
                 peakGroup.put(ScoreType.IonsDelta, (maxIonsCount - peakGroup.getIonsHigh()) * 1d / maxIonsCount, scoreTypes);
             } else {
@@ -161,7 +155,7 @@ public class Scorer {
         return dataDO;
     }
 
-    public void strictScoreForOne(DataDO dataDO, PeptideCoord coord, TreeMap<Float, MzIntensityPairs> rtMap, double shapeScoreThreshold) {
+    public void strictScoreForOne(DataDO dataDO, PeptideCoord coord, SpectrumBlock ms2Block, double shapeScoreThreshold) {
         if (dataDO.getIntMap() == null || dataDO.getIntMap().size() < coord.getFragments().size()) {
             dataDO.setStatus(IdentifyStatus.NO_ENOUGH_FRAGMENTS.getCode());
             return;
@@ -174,13 +168,13 @@ public class Scorer {
         }
 
         List<PeakGroup> peakGroupList = peakGroupListWrapper.getList();
-        HashMap<String, Double> normedLibIntMap = peakGroupListWrapper.getNormIntMap();
+        double[] normedLibInts = peakGroupListWrapper.getNormedLibInts();
         for (PeakGroup peakGroup : peakGroupList) {
             peakGroup.initScore(2);
             List<String> scoreTypes = new ArrayList<>();
             scoreTypes.add(ScoreType.CorrShape.getName());
             scoreTypes.add(ScoreType.CorrShapeW.getName());
-            xicScorer.calcXICScores(peakGroup, normedLibIntMap, scoreTypes);
+            xicScorer.calcXICScores(peakGroup, normedLibInts, scoreTypes);
             if (peakGroup.get(ScoreType.CorrShapeW.getName(), scoreTypes) < shapeScoreThreshold || peakGroup.get(ScoreType.CorrShape.getName(), scoreTypes) < shapeScoreThreshold) {
                 continue;
             }
@@ -291,6 +285,41 @@ public class Scorer {
         return bestFeatureScoresList;
     }
 
+    /**
+     * 在打分矩阵上挑选出每一个肽段总分最高的峰
+     *
+     * @param matrix
+     * @return
+     */
+    public List<SelectedPeakGroup> findBestPeakGroup(ScoreMatrix matrix) {
+        List<SelectedPeakGroup> bestFeatureScoresList = new ArrayList<>();
+        for (int group = 0; group < matrix.getGroups(); group++) {
+            int bestRow = matrix.bestRow(group);
+            if (bestRow != -1) {
+                bestFeatureScoresList.add(matrix.toSelectedPeakGroup(group, bestRow));
+            }
+        }
+        return bestFeatureScoresList;
+    }
+
+    /**
+     * 在打分矩阵上挑选出指定肽段总分最高的峰
+     *
+     * @param matrix
+     * @param groups 肽段在矩阵中的编号
+     * @return
+     */
+    public List<SelectedPeakGroup> findBestPeakGroup(ScoreMatrix matrix, int[] groups) {
+        List<SelectedPeakGroup> bestFeatureScoresList = new ArrayList<>();
+        for (int group : groups) {
+            int bestRow = matrix.bestRow(group);
+            if (bestRow != -1) {
+                bestFeatureScoresList.add(matrix.toSelectedPeakGroup(group, bestRow));
+            }
+        }
+        return bestFeatureScoresList;
+    }
+
     public List<SelectedPeakGroup> findBestPeakGroupByMinTotalScore(List<DataScore> dataScoreList, Double minTotalScore) {
         List<SelectedPeakGroup> selectedPeakGroups = new ArrayList<>();
         for (DataScore dataScore : dataScoreList) {
@@ -368,10 +397,6 @@ public class Scorer {
     }
 
     public void removeIons(PeakGroupListWrapper peakGroupListWrapper, String cutInfo) {
-        peakGroupListWrapper.getNormIntMap().remove(cutInfo);
-        for (PeakGroup peakGroup : peakGroupListWrapper.getList()) {
-            peakGroup.getIonIntensity().remove(cutInfo);
-            peakGroup.getIonHullInt().remove(cutInfo);
-        }
+        peakGroupListWrapper.remove(cutInfo);
     }
 }
@@ -23,6 +23,14 @@ public class StatConst {
     public static String TOTAL_PEAK_COUNT = "TOTAL_PEAK_COUNT";
     public static String STATUS_SUCCESS_PEPTIDE_COUNT = "STATUS_SUCCESS_PEPTIDE_COUNT";
 
+    //XIC结果入库的吞吐量
+    public static String PERSIST_DOCS_PER_SECOND = "PERSIST_DOCS_PER_SECOND";
+    public static String PERSIST_BYTES_PER_SECOND = "PERSIST_BYTES_PER_SECOND";
+
+    //XGBoost训练的耗时(毫秒)与累计轮数
+    public static String XGB_COST = "XGB_COST";
+    public static String XGB_ROUNDS = "XGB_ROUNDS";
+
     public static String MATCHED_UNIQUE_PEPTIDE_COUNT = "MATCHED_UNIQUE_PEPTIDE_COUNT";
     public static String MATCHED_TOTAL_PEPTIDE_COUNT = "MATCHED_TOTAL_PEPTIDE_COUNT";
     public static String MATCHED_UNIQUE_PROTEIN_COUNT = "MATCHED_UNIQUE_PROTEIN_COUNT";
@@ -55,4 +55,38 @@ public class CSiTaskExecutor {
         executor.setAwaitTerminationSeconds(60);
         return executor;
     }
+
+    /**
+     * XIC流水线中负责预读并解码MS2窗口的线程池,每一个正在分析的Run占用一个线程
+     */
+    @Bean(name = "prefetchExecutor")
+    public Executor prefetchExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(vmProperties.getMultiple());
+        executor.setMaxPoolSize(20);
+        executor.setQueueCapacity(99999);
+        executor.setKeepAliveSeconds(5);
+        executor.setThreadNamePrefix("prefetchExecutor-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(60);
+        return executor;
+    }
+
+    /**
+     * XIC流水线中负责将结果写入数据库的线程池
+     */
+    @Bean(name = "persistExecutor")
+    public Executor persistExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(vmProperties.getMultiple());
+        executor.setMaxPoolSize(20);
+        executor.setQueueCapacity(99999);
+        executor.setKeepAliveSeconds(5);
+        executor.setThreadNamePrefix("persistExecutor-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(60);
+        return executor;
+    }
 }
@@ -0,0 +1,131 @@
+package net.csibio.propro.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * 肽段坐标选峰打分专用的线程池,取代JVM全局共享的common pool
+ * 多个Run同时分析时,每一个调用方能够使用的并行度为 总线程数/当前正在执行的调用方数目,以保证各个任务之间公平地共享CPU
+ */
+@Slf4j
+@Component("scoringPool")
+public class ScoringPool {
+
+    @Autowired
+    VMProperties vmProperties;
+
+    ForkJoinPool pool;
+
+    /**
+     * 当前正在使用线程池的调用方数目
+     */
+    AtomicInteger activeCallers = new AtomicInteger(0);
+
+    /**
+     * 累计完成的元素数目
+     */
+    AtomicLong completedItems = new AtomicLong(0);
+
+    @PostConstruct
+    public void init() {
+        int threads = vmProperties.getScoringThreads();
+        AtomicInteger threadIndex = new AtomicInteger(0);
+        pool = new ForkJoinPool(threads, p -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            thread.setName("scoringPool-" + threadIndex.incrementAndGet());
+            return thread;
+        }, null, false);
+        log.info("Scoring Pool Threads: " + threads);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        pool.shutdown();
+    }
+
+    public <T> void forEach(List<T> items, Consumer<T> action) {
+        forEach(items.size(), index -> action.accept(items.get(index)));
+    }
+
+    /**
+     * 并行处理[0, size)范围内的所有元素,函数在所有元素处理完毕后返回
+     * 每一个工作单元通过共享游标领取元素,工作单元的数目即为本次调用能够占用的并行度
+     *
+     * @param size   元素数目
+     * @param action 处理函数
+     */
+    public void forEach(int size, IntConsumer action) {
+        if (size <= 0) {
+            return;
+        }
+        //已经运行在本线程池中时直接串行执行,避免嵌套调用时占满线程导致死锁
+        if (ForkJoinTask.inForkJoinPool() && ForkJoinTask.getPool() == pool) {
+            for (int i = 0; i < size; i++) {
+                action.accept(i);
+            }
+            completedItems.addAndGet(size);
+            return;
+        }
+
+        int callers = activeCallers.incrementAndGet();
+        try {
+            int parallelism = Math.max(1, Math.min(size, pool.getParallelism() / callers));
+            AtomicInteger cursor = new AtomicInteger(0);
+            ForkJoinTask<?>[] workers = new ForkJoinTask[parallelism];
+            for (int w = 0; w < parallelism; w++) {
+                workers[w] = pool.submit(() -> {
+                    int index;
+                    while ((index = cursor.getAndIncrement()) < size) {
+                        action.accept(index);
+                        completedItems.incrementAndGet();
+                    }
+                });
+            }
+            for (ForkJoinTask<?> worker : workers) {
+                worker.join();
+            }
+        } finally {
+            activeCallers.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return 线程池的总并行度
+     */
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * 线程池的运行状态
+     *
+     * @return
+     */
+    public Map<String, Object> stat() {
+        Map<String, Object> stat = new LinkedHashMap<>();
+        stat.put("parallelism", pool.getParallelism());
+        stat.put("poolSize", pool.getPoolSize());
+        stat.put("activeThreads", pool.getActiveThreadCount());
+        stat.put("runningThreads", pool.getRunningThreadCount());
+        stat.put("utilization", pool.getParallelism() == 0 ? 0d : pool.getActiveThreadCount() * 1d / pool.getParallelism());
+        stat.put("queuedSubmissions", pool.getQueuedSubmissionCount());
+        stat.put("queuedTasks", pool.getQueuedTaskCount());
+        stat.put("activeCallers", activeCallers.get());
+        stat.put("completedItems", completedItems.get());
+        return stat;
+    }
+}
@@ -1,6 +1,8 @@
 package net.csibio.propro.config;
 
 import com.sun.management.OperatingSystemMXBean;
+import net.csibio.propro.constants.enums.DataCodec;
+import net.csibio.propro.utils.DataUtil;
 import net.csibio.propro.utils.RepositoryUtil;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -25,12 +27,70 @@ public class VMProperties {
     //  当前计算机的RAM/10向上取整
     private int multiple = (int) Math.ceil(size / 10.0);
 
+    //  XIC提取时允许同时驻留在内存中的已解码MS2窗口数目
+    @Value("${prefetch:2}")
+    private int prefetch;
+
+    //  XIC结果入库时每一次批量写入的文档数目
+    @Value("${persist.chunk:500}")
+    private int persistChunk;
+
+    //  XIC流水线中允许等待入库的窗口数目,超过后打分线程阻塞等待
+    @Value("${persist.queue:2}")
+    private int persistQueue;
+
+    //  批量写入失败后的重试次数
+    @Value("${persist.retries:3}")
+    private int persistRetries;
+
+    //  选峰打分线程池的线程数目,小于等于0时使用CPU核数
+    @Value("${scoring.threads:0}")
+    private int scoringThreads;
+
+    //  共享光谱缓存的容量(MB),等于0时使用JVM最大堆内存的1/8,小于0时关闭缓存
+    @Value("${spectrum.cache.mb:0}")
+    private int spectrumCacheMb;
+
+    //  解码后的光谱是否存放在堆外内存中,开启时需要通过-XX:MaxDirectMemorySize预留足够的直接内存
+    @Value("${spectrum.offheap:false}")
+    private boolean spectrumOffHeap;
+
+    //  进程内共享的理论同位素分布缓存最多保存的元素组成数目
+    @Value("${isotope.cache:100000}")
+    private int isotopeCache;
+
+    //  内存中最多同时保存的标准库坐标快照数目,小于等于0时不缓存,每次都从数据库重新读取
+    @Value("${library.index.max:4}")
+    private int libraryIndexMax;
+
+    //  标准库坐标快照是否同时保存为标准库目录下的二进制文件,进程重启以后直接从文件中映射读取
+    @Value("${library.index.disk:true}")
+    private boolean libraryIndexDisk;
+
+    //  内存中最多同时保存的run光谱块索引数目,小于等于0时不缓存,每次都从数据库重新读取
+    @Value("${block.index.max:16}")
+    private int blockIndexMax;
+
+    //  任务日志与进度的合并写入间隔(毫秒),间隔内的多次更新只写入一次数据库,等于0时每次更新都立即写入
+    @Value("${task.flush.ms:1000}")
+    private int taskFlushMs;
+
+    //  新写入的XIC谱图数组使用的编码格式,可选ZLIB与SHUFFLE,读取时按照数据中记录的格式自动解码
+    @Value("${data.codec:SHUFFLE}")
+    private String dataCodec;
+
     @PostConstruct
     public void init() {
         System.out.println("Multiple Threads: " + multiple);
         System.out.println("Repository: " + env.getProperty("repository"));
         System.out.println("RAM: " + size + "GB");
+        System.out.println("Prefetch Blocks: " + getPrefetch());
+        System.out.println("Persist Chunk/Queue: " + getPersistChunk() + "/" + getPersistQueue());
+        System.out.println("Scoring Threads: " + getScoringThreads());
+        System.out.println("Spectrum Cache: " + getSpectrumCacheBytes() / 1024 / 1024 + "MB" + (spectrumOffHeap ? "(Off-Heap)" : ""));
+        System.out.println("Data Codec: " + getDataCodec().getName());
         RepositoryUtil.repository = repository;
+        DataUtil.codec = getDataCodec();
     }
 
     public void setRepository(String repository) {
@@ -52,4 +112,117 @@ public class VMProperties {
         return Math.max(multiple, 1);
     }
 
+    public void setPrefetch(int prefetch) {
+        this.prefetch = prefetch;
+    }
+
+    public int getPrefetch() {
+        return Math.max(prefetch, 1);
+    }
+
+    public void setPersistChunk(int persistChunk) {
+        this.persistChunk = persistChunk;
+    }
+
+    public int getPersistChunk() {
+        return Math.max(persistChunk, 1);
+    }
+
+    public void setPersistQueue(int persistQueue) {
+        this.persistQueue = persistQueue;
+    }
+
+    public int getPersistQueue() {
+        return Math.max(persistQueue, 1);
+    }
+
+    public void setPersistRetries(int persistRetries) {
+        this.persistRetries = persistRetries;
+    }
+
+    public int getPersistRetries() {
+        return Math.max(persistRetries, 0);
+    }
+
+    public void setScoringThreads(int scoringThreads) {
+        this.scoringThreads = scoringThreads;
+    }
+
+    public int getScoringThreads() {
+        if (scoringThreads <= 0) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        return scoringThreads;
+    }
+
+    public void setSpectrumCacheMb(int spectrumCacheMb) {
+        this.spectrumCacheMb = spectrumCacheMb;
+    }
+
+    public long getSpectrumCacheBytes() {
+        if (spectrumCacheMb < 0) {
+            return 0L;
+        }
+        if (spectrumCacheMb == 0) {
+            return Runtime.getRuntime().maxMemory() / 8;
+        }
+        return spectrumCacheMb * 1024L * 1024L;
+    }
+
+    public void setSpectrumOffHeap(boolean spectrumOffHeap) {
+        this.spectrumOffHeap = spectrumOffHeap;
+    }
+
+    public boolean isSpectrumOffHeap() {
+        return spectrumOffHeap;
+    }
+
+    public void setIsotopeCache(int isotopeCache) {
+        this.isotopeCache = isotopeCache;
+    }
+
+    public int getIsotopeCache() {
+        return Math.max(isotopeCache, 0);
+    }
+
+    public void setLibraryIndexMax(int libraryIndexMax) {
+        this.libraryIndexMax = libraryIndexMax;
+    }
+
+    public int getLibraryIndexMax() {
+        return Math.max(libraryIndexMax, 0);
+    }
+
+    public void setLibraryIndexDisk(boolean libraryIndexDisk) {
+        this.libraryIndexDisk = libraryIndexDisk;
+    }
+
+    public boolean isLibraryIndexDisk() {
+        return libraryIndexDisk;
+    }
+
+    public void setBlockIndexMax(int blockIndexMax) {
+        this.blockIndexMax = blockIndexMax;
+    }
+
+    public int getBlockIndexMax() {
+        return Math.max(blockIndexMax, 0);
+    }
+
+    public void setTaskFlushMs(int taskFlushMs) {
+        this.taskFlushMs = taskFlushMs;
+    }
+
+    public int getTaskFlushMs() {
+        return Math.max(taskFlushMs, 0);
+    }
+
+    public void setDataCodec(String dataCodec) {
+        this.dataCodec = dataCodec;
+    }
+
+    public DataCodec getDataCodec() {
+        DataCodec codec = DataCodec.getByName(dataCodec);
+        return codec == null ? DataCodec.SHUFFLE : codec;
+    }
 }
@@ -14,6 +14,10 @@ public class Constants {
     //每批处理的数据
     public static final int MAX_PAGE_SIZE_FOR_FRAGMENT = 100000;
     public static final int DECOY_GENERATOR_TRY_TIMES = 10;
+    //重新生成伪肽段时每一批次读取,生成并写回的肽段数目
+    public static final int DECOY_CHUNK_SIZE = 5000;
+    //按SWATH窗口切分MS1时每一批次解码的光谱数目
+    public static final int MS1_CHUNK_SPECTRA = 200;
     public static final int MAX_UPDATE_RECORD_FOR_PEPTIDE = 100000;
     public static final int PRECISION = 1000000;
     public static final double SIDE_PEAK_DENSITY = 0.4d;
@@ -54,6 +58,8 @@ public class Constants {
     public static final double DEFAULT_FDR = 0.01d;
     public static final double DEFAULT_RT_EXTRACTION_WINDOW = 600.0d;
     public static final float DEFAULT_MZ_EXTRACTION_WINDOW = 0.05f;
+    //批量XIC提取时每一批次包含的肽段坐标数目,用于控制[coord][fragment][rt]缓冲区的内存占用
+    public static final int XIC_BATCH_SIZE = 512;
 
     public static final String DEFAULT_RT_EXTRACTION_WINDOW_STR = "600";
     public static final String DEFAULT_MZ_EXTRACTION_WINDOW_STR = "0.05";
@@ -0,0 +1,51 @@
+package net.csibio.propro.constants.enums;
+
+/**
+ * DataDO中谱图数组(rt,ms1,self,ions以及各个碎片的强度)的编码格式,code记录在DataDO.codec中
+ */
+public enum DataCodec {
+
+    //每一个数组单独进行zlib压缩,旧版本的数据codec字段为空,均按照该格式解码
+    ZLIB(0, "ZLIB"),
+    //RT差分,所有数组打包后按字节重排,再进行一次快速压缩
+    SHUFFLE(1, "SHUFFLE"),
+    ;
+
+    int code;
+
+    String name;
+
+    DataCodec(int code, String name) {
+        this.code = code;
+        this.name = name;
+    }
+
+    public static DataCodec getByCode(Integer code) {
+        if (code == null) {
+            return ZLIB;
+        }
+        for (DataCodec codec : values()) {
+            if (codec.getCode() == code) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    public static DataCodec getByName(String name) {
+        for (DataCodec codec : values()) {
+            if (codec.getName().equals(name)) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    public String getName() {
+        return name;
+    }
+}
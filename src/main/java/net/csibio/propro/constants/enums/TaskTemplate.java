@@ -57,6 +57,11 @@ public enum TaskTemplate {
      */
     COMPRESSOR_AND_SORT("COMPRESSOR_AND_SORT"),
 
+    /**
+     * regenerate decoys for all the peptides in a library
+     */
+    GENERATE_DECOYS("GENERATE_DECOYS"),
+
     ;
 
     String name;
@@ -2,23 +2,23 @@ package net.csibio.propro.controller;
 
 import io.swagger.annotations.Api;
 import lombok.extern.slf4j.Slf4j;
-import net.csibio.aird.bean.Compressor;
-import net.csibio.aird.bean.MzIntensityPairs;
-import net.csibio.aird.parser.DIAParser;
 import net.csibio.propro.constants.constant.SmoothConst;
 import net.csibio.propro.constants.enums.ResultCode;
 import net.csibio.propro.domain.Result;
 import net.csibio.propro.domain.bean.blockindex.BlockIndexVO;
 import net.csibio.propro.domain.bean.common.DoubleTreble;
 import net.csibio.propro.domain.bean.common.FloatPairs;
+import net.csibio.propro.domain.bean.common.IdName;
 import net.csibio.propro.domain.db.BlockIndexDO;
 import net.csibio.propro.domain.db.RunDO;
 import net.csibio.propro.domain.query.BlockIndexQuery;
+import net.csibio.propro.domain.query.RunQuery;
 import net.csibio.propro.service.BlockIndexService;
 import net.csibio.propro.service.RunService;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
@@ -90,22 +90,9 @@ public class BlockIndexController {
             return Result.Error(ResultCode.RUN_NOT_EXISTED);
         }
 
-        Compressor mzCompressor = run.fetchCompressor(Compressor.TARGET_MZ);
-        DIAParser parser = new DIAParser(run.getAirdPath(), mzCompressor, run.fetchCompressor(Compressor.TARGET_INTENSITY), mzCompressor.getPrecision());
         List<FloatPairs> pairsList = new ArrayList<>();
-        try {
-            for (float rt : rtList) {
-                MzIntensityPairs pairs = parser.getSpectrumByRt(
-                        blockIndex.getStartPtr(),
-                        blockIndex.getRts(),
-                        blockIndex.getMzs(),
-                        blockIndex.getInts(),
-                        rt);
-                pairsList.add(new FloatPairs(pairs.getMzArray(), pairs.getIntensityArray()));
-                parser.close();
-            }
-        } finally {
-            parser.close();
+        for (float rt : rtList) {
+            pairsList.add(runService.getSpectrum(run, blockIndex, rt));
         }
 
         return Result.OK(pairsList);
@@ -126,13 +113,10 @@ public class BlockIndexController {
             return Result.Error(ResultCode.RUN_NOT_EXISTED);
         }
 
-        Compressor mzCompressor = run.fetchCompressor(Compressor.TARGET_MZ);
-        DIAParser parser = new DIAParser(run.getAirdPath(), mzCompressor, run.fetchCompressor(Compressor.TARGET_INTENSITY), mzCompressor.getPrecision());
-        MzIntensityPairs pairs = parser.getSpectrumByRt(blockIndex.getStartPtr(), blockIndex.getRts(), blockIndex.getMzs(), blockIndex.getInts(), rt);
-        parser.close();
+        FloatPairs pairs = runService.getSpectrum(run, blockIndex, rt);
         // 对光谱进行高斯平滑
-        float[] mzFloat = pairs.getMzArray();
-        float[] intFloat = pairs.getIntensityArray();
+        float[] mzFloat = pairs.x();
+        float[] intFloat = pairs.y();
         double[] mzArray = new double[mzFloat.length];
         double[] intArray = new double[intFloat.length];
         for (int i = 0; i < mzArray.length; i++) {
@@ -162,4 +146,27 @@ public class BlockIndexController {
         }
         return Result.OK(new DoubleTreble(mzArray, intArray, smoothInts));
     }
+
+    /**
+     * 将旧版本以列表格式存储的光谱块索引转换为二进制压缩格式,runId为空时转换所有的run
+     */
+    @PostMapping(value = "/migrate")
+    Result migrate(@RequestParam(value = "runId", required = false) String runId) {
+        List<String> runIds = new ArrayList<>();
+        if (StringUtils.isEmpty(runId)) {
+            runService.getAll(new RunQuery(), IdName.class).forEach(idName -> runIds.add(idName.id()));
+        } else {
+            runIds.add(runId);
+        }
+        int count = 0;
+        for (String id : runIds) {
+            Result<Integer> res = blockIndexService.migrate(id);
+            if (res.isFailed()) {
+                return res;
+            }
+            count += res.getData();
+        }
+        log.info("光谱块索引格式转换完成,run数目:" + runIds.size() + ",光谱块数目:" + count);
+        return Result.OK(count);
+    }
 }
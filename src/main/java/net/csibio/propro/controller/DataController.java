@@ -4,7 +4,6 @@ import io.swagger.annotations.Api;
 import lombok.extern.slf4j.Slf4j;
 import net.csibio.propro.constants.enums.ResultCode;
 import net.csibio.propro.domain.Result;
-import net.csibio.propro.domain.bean.data.BaseData;
 import net.csibio.propro.domain.db.DataSumDO;
 import net.csibio.propro.domain.db.OverviewDO;
 import net.csibio.propro.domain.query.DataSumQuery;
@@ -16,7 +15,6 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.util.ArrayList;
 import java.util.List;
 
 @Api(tags = {"Data Module"})
@@ -54,15 +52,7 @@ public class DataController {
             return res;
         }
 
-        List<DataSumDO> dataSumList = res.getData();
-
-        List<RunDataVO> dataList = new ArrayList<>();
-        dataSumList.forEach(dataSum -> {
-            BaseData baseData = dataService.getById(dataSum.getId(), BaseData.class, overview.getProjectId());
-            RunDataVO dataVO = new RunDataVO(overview.getRunId());
-            dataVO.merge(baseData, dataSum);
-            dataList.add(dataVO);
-        });
+        List<RunDataVO> dataList = dataService.getRunDataList(overview.getRunId(), res.getData(), overview.getProjectId());
         Result<List<RunDataVO>> result = new Result<>(true);
         result.setPagination(res.getPagination());
         result.setData(dataList);
@@ -4,6 +4,7 @@ import io.swagger.annotations.Api;
 import lombok.extern.slf4j.Slf4j;
 import net.csibio.aird.bean.WindowRange;
 import net.csibio.propro.algorithm.decoy.repeatCount.RepeatCount;
+import net.csibio.propro.algorithm.extract.LibraryCoordIndex;
 import net.csibio.propro.constants.constant.SymbolConst;
 import net.csibio.propro.constants.enums.ResultCode;
 import net.csibio.propro.constants.enums.TaskTemplate;
@@ -48,6 +49,8 @@ public class LibraryController extends XController<LibraryDO, LibraryQuery, Libr
     ProjectService projectService;
     @Autowired
     RunService runService;
+    @Autowired
+    LibraryCoordIndex libraryCoordIndex;
 
     @GetMapping(value = "/list")
     Result list(LibraryQuery query) {
@@ -181,7 +184,10 @@ public class LibraryController extends XController<LibraryDO, LibraryQuery, Libr
             return Result.Error(ResultCode.LIBRARY_NOT_EXISTED);
         }
 
-        return libraryService.generateDecoys(library, generator);
+        TaskDO taskDO = new TaskDO(TaskTemplate.GENERATE_DECOYS, library.getName());
+        taskService.insert(taskDO);
+        libraryTask.generateDecoys(library, generator, taskDO);
+        return Result.OK(taskDO);
     }
 
     @GetMapping(value = "/repeatCount")
@@ -213,4 +219,19 @@ public class LibraryController extends XController<LibraryDO, LibraryQuery, Libr
         peptideLink.setSuccess(true);
         return peptideLink;
     }
+
+    @GetMapping(value = "/coordIndex")
+    Result<Map<String, Object>> coordIndexStat() {
+        return Result.OK(libraryCoordIndex.stat());
+    }
+
+    @PostMapping(value = "/coordIndex/clear")
+    Result clearCoordIndex(@RequestParam(value = "libraryId", required = false) String libraryId) {
+        if (StringUtils.isEmpty(libraryId)) {
+            libraryCoordIndex.clear();
+        } else {
+            libraryCoordIndex.invalidate(libraryId);
+        }
+        return Result.OK();
+    }
 }
@@ -3,6 +3,8 @@ package net.csibio.propro.controller;
 import io.swagger.annotations.Api;
 import lombok.extern.slf4j.Slf4j;
 import net.csibio.propro.algorithm.decoy.repeatCount.RepeatCount;
+import net.csibio.propro.algorithm.extract.BlockIndexRegistry;
+import net.csibio.propro.algorithm.extract.SpectrumCache;
 import net.csibio.propro.constants.enums.ResultCode;
 import net.csibio.propro.domain.Result;
 import net.csibio.propro.domain.bean.common.IdName;
@@ -22,6 +24,7 @@ import org.springframework.web.bind.annotation.*;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -42,6 +45,10 @@ public class RunController {
     LibraryTask libraryTask;
     @Autowired
     RepeatCount repeatCount;
+    @Autowired
+    SpectrumCache spectrumCache;
+    @Autowired
+    BlockIndexRegistry blockIndexRegistry;
 
     @GetMapping(value = "/listByProjectId")
     Result<List<IdName>> listByProjectId(@RequestParam("projectId") String projectId) {
@@ -153,4 +160,34 @@ public class RunController {
                         .collect(Collectors.toList());
         return Result.OK(filtered);
     }
+
+    @GetMapping(value = "/spectrumCache")
+    Result<Map<String, Object>> spectrumCacheStat() {
+        return Result.OK(spectrumCache.stat());
+    }
+
+    @PostMapping(value = "/spectrumCache/clear")
+    Result clearSpectrumCache(@RequestParam(value = "runId", required = false) String runId) {
+        if (StringUtils.isEmpty(runId)) {
+            spectrumCache.clear();
+        } else {
+            spectrumCache.invalidate(runId);
+        }
+        return Result.OK();
+    }
+
+    @GetMapping(value = "/blockIndex")
+    Result<Map<String, Object>> blockIndexStat() {
+        return Result.OK(blockIndexRegistry.stat());
+    }
+
+    @PostMapping(value = "/blockIndex/clear")
+    Result clearBlockIndex(@RequestParam(value = "runId", required = false) String runId) {
+        if (StringUtils.isEmpty(runId)) {
+            blockIndexRegistry.clear();
+        } else {
+            blockIndexRegistry.invalidate(runId);
+        }
+        return Result.OK();
+    }
 }
@@ -0,0 +1,43 @@
+package net.csibio.propro.controller;
+
+import io.swagger.annotations.Api;
+import net.csibio.propro.algorithm.score.features.IsotopeEngine;
+import net.csibio.propro.config.ScoringPool;
+import net.csibio.propro.domain.Result;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * 打分阶段共享资源的监控与维护,包括打分线程池与同位素分布缓存
+ */
+@Api(tags = {"Scoring Module"})
+@RestController
+@RequestMapping("/api/scoring/")
+public class ScoringController {
+
+    @Autowired
+    ScoringPool scoringPool;
+    @Autowired
+    IsotopeEngine isotopeEngine;
+
+    @GetMapping(value = "/pool")
+    Result<Map<String, Object>> poolStat() {
+        return Result.OK(scoringPool.stat());
+    }
+
+    @GetMapping(value = "/isotopeEngine")
+    Result<Map<String, Object>> isotopeEngineStat() {
+        return Result.OK(isotopeEngine.stat());
+    }
+
+    @PostMapping(value = "/isotopeEngine/clear")
+    Result clearIsotopeEngine() {
+        isotopeEngine.clear();
+        return Result.OK();
+    }
+}
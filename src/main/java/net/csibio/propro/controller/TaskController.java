@@ -2,6 +2,7 @@ package net.csibio.propro.controller;
 
 import net.csibio.propro.constants.enums.ResultCode;
 import net.csibio.propro.domain.Result;
+import net.csibio.propro.domain.bean.task.TaskLogTail;
 import net.csibio.propro.domain.db.TaskDO;
 import net.csibio.propro.domain.query.TaskQuery;
 import net.csibio.propro.service.TaskService;
@@ -62,4 +63,13 @@ public class TaskController {
 
         return Result.OK(task);
     }
+
+    /**
+     * 增量获取任务日志,前端轮询时以上一次返回的next作为from
+     */
+    @GetMapping(value = "/logs")
+    Result<TaskLogTail> logs(@RequestParam(value = "id") String id,
+                             @RequestParam(value = "from", required = false, defaultValue = "0") int from) {
+        return taskService.tail(id, from);
+    }
 }
@@ -7,9 +7,11 @@ import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.CloseableIterator;
 
 import java.util.HashMap;
 import java.util.List;
+import java.util.function.Consumer;
 
 import static org.springframework.data.mongodb.core.query.Criteria.where;
 
@@ -55,6 +57,26 @@ public abstract class BaseDAO<T, Q extends PageQuery> {
         return mongoTemplate.find(buildQueryWithoutPage(query), clazz, getCollectionName());
     }
 
+    /**
+     * 以游标的方式逐条读取查询结果,适用于结果集很大的场景,避免一次性加载全部文档
+     *
+     * @param query
+     * @param clazz
+     * @param consumer 每读取一条结果调用一次
+     * @param fields   需要读取的字段,为空时读取全部字段
+     */
+    public <K> void stream(Q query, Class<K> clazz, Consumer<K> consumer, String... fields) {
+        Query q = buildQueryWithoutPage(query);
+        for (String field : fields) {
+            q.fields().include(field);
+        }
+        try (CloseableIterator<K> iterator = mongoTemplate.stream(q, clazz, getCollectionName())) {
+            while (iterator.hasNext()) {
+                consumer.accept(iterator.next());
+            }
+        }
+    }
+
     public List<T> getList(Q query) {
         return mongoTemplate.find(buildQuery(query), getDomainClass(), getCollectionName());
     }
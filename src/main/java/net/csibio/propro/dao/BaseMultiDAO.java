@@ -1,14 +1,18 @@
 package net.csibio.propro.dao;
 
+import com.mongodb.bulk.BulkWriteError;
 import net.csibio.propro.domain.query.PageQuery;
 import org.bson.Document;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.index.*;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.CloseableIterator;
 import org.springframework.util.StringUtils;
 
 import java.lang.annotation.Annotation;
@@ -16,11 +20,17 @@ import java.lang.reflect.Field;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.function.Consumer;
 
 import static org.springframework.data.mongodb.core.query.Criteria.where;
 
 public abstract class BaseMultiDAO<T, Q extends PageQuery> {
 
+    /**
+     * MongoDB的重复键错误码
+     */
+    public static final int DUPLICATE_KEY = 11000;
+
     @Autowired
     MongoTemplate mongoTemplate;
 
@@ -61,6 +71,27 @@ public abstract class BaseMultiDAO<T, Q extends PageQuery> {
         return mongoTemplate.find(buildQueryWithoutPage(query), clazz, getCollectionName(routerId));
     }
 
+    /**
+     * 以游标的方式逐条读取查询结果,只读取fields中指定的字段.适用于无法一次性载入内存的大批量数据
+     *
+     * @param query
+     * @param clazz    结果映射的类型
+     * @param routerId
+     * @param consumer 每读取一条结果调用一次
+     * @param fields   需要读取的字段,为空时读取全部字段
+     */
+    public <K> void stream(Q query, Class<K> clazz, String routerId, Consumer<K> consumer, String... fields) {
+        Query q = buildQueryWithoutPage(query);
+        for (String field : fields) {
+            q.fields().include(field);
+        }
+        try (CloseableIterator<K> iterator = mongoTemplate.stream(q, clazz, getCollectionName(routerId))) {
+            while (iterator.hasNext()) {
+                consumer.accept(iterator.next());
+            }
+        }
+    }
+
     public List<T> getList(Q query, String routerId) {
         return mongoTemplate.find(buildQuery(query), getDomainClass(), getCollectionName(routerId));
     }
@@ -87,6 +118,32 @@ public abstract class BaseMultiDAO<T, Q extends PageQuery> {
         return list;
     }
 
+    /**
+     * 使用UNORDERED模式批量插入,单条文档失败不会中断同一批次中其余文档的写入
+     * 重复键错误视为该文档已经写入(例如超时后的重试),因此对于带有唯一索引的集合,重复调用本函数是幂等的
+     *
+     * @param list
+     * @param routerId
+     * @return 本次实际新插入的文档数目
+     */
+    public int bulkInsert(List<T> list, String routerId) {
+        if (list == null || list.isEmpty()) {
+            return 0;
+        }
+        BulkOperations ops = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, getDomainClass(), getCollectionName(routerId));
+        ops.insert(list);
+        try {
+            return ops.execute().getInsertedCount();
+        } catch (BulkOperationException e) {
+            for (BulkWriteError error : e.getErrors()) {
+                if (error.getCode() != DUPLICATE_KEY) {
+                    throw e;
+                }
+            }
+            return e.getResult().getInsertedCount();
+        }
+    }
+
     public T update(T t, String routerId) {
         mongoTemplate.save(t, getCollectionName(routerId));
         return t;
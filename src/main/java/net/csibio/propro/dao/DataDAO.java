@@ -15,6 +15,20 @@ public class DataDAO extends BaseMultiDAO<DataDO, DataQuery> {
 
     public static String CollectionName = "data";
 
+    /**
+     * 半监督学习需要读取的字段,不包含占据文档绝大部分空间的压缩谱图
+     */
+    public static final String[] SCORE_FIELDS = {"id", "libRt", "irt", "proteins", "peptideRef", "decoy",
+            "peakGroupList.scores", "peakGroupList.totalScore", "peakGroupList.apexRt", "peakGroupList.selectedRt",
+            "peakGroupList.intensitySum", "peakGroupList.fitIntSum", "peakGroupList.ms1Sum", "peakGroupList.bestIon",
+            "peakGroupList.ionsLow"};
+
+    /**
+     * 列表页需要读取的字段,对应BaseData中持久化在Data表中的部分(fdr与qValue来自DataSum),不包含压缩谱图
+     */
+    public static final String[] BASE_FIELDS = {"id", "overviewId", "peptideRef", "decoy", "proteins", "peakGroupList",
+            "irt", "status", "cutInfosFeature"};
+
     @Override
     protected String getCollectionName(String projectId) {
         if (StringUtils.isNotEmpty(projectId)) {
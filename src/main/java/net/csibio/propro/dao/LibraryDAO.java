@@ -6,8 +6,10 @@ import org.apache.commons.lang3.StringUtils;
 import org.bson.Document;
 import org.springframework.data.mongodb.core.query.BasicQuery;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
+import java.util.Date;
 import java.util.List;
 
 import static org.springframework.data.mongodb.core.query.Criteria.where;
@@ -73,6 +75,29 @@ public class LibraryDAO extends BaseDAO<LibraryDO, LibraryQuery> {
         return mongoTemplate.find(query, LibraryDO.class, CollectionName);
     }
 
+    /**
+     * 只读取标准库的最后修改时间,用于校验标准库坐标快照文件是否过期
+     *
+     * @param id
+     * @return 标准库不存在或者没有修改时间时返回null
+     */
+    public Date getLastModifiedDate(String id) {
+        Query query = new Query(where("id").is(id));
+        query.fields().include("lastModifiedDate");
+        LibraryDO library = mongoTemplate.findOne(query, LibraryDO.class, CollectionName);
+        return library == null ? null : library.getLastModifiedDate();
+    }
+
+    /**
+     * 标准库中的肽段被修改以后调用,将标准库的最后修改时间更新为当前时间
+     *
+     * @param id
+     */
+    public void updateLastModifiedDate(String id) {
+        Query query = new Query(where("id").is(id));
+        mongoTemplate.updateFirst(query, new Update().set("lastModifiedDate", new Date()), LibraryDO.class, CollectionName);
+    }
+
     public LibraryDO getByName(String name) {
         LibraryQuery query = new LibraryQuery();
         query.setName(name);
@@ -23,6 +23,17 @@ public class PeptideDAO extends BaseDAO<PeptideDO, PeptideQuery> {
 
     public static String CollectionName = "peptide";
 
+    /**
+     * 构建标准库坐标快照需要读取的字段
+     */
+    public static final String[] COORD_FIELDS = {"id", "peptideRef", "proteins", "isUnique", "sequence", "charge", "mz", "rt",
+            "unimodMap", "fragments", "decoySequence", "decoyUnimodMap", "decoyFragments", "fingerPrintsByte"};
+
+    /**
+     * 生成伪肽段需要读取的字段
+     */
+    public static final String[] DECOY_SOURCE_FIELDS = {"id", "libraryId", "peptideRef", "sequence", "fullName", "unimodMap", "fragments"};
+
     @Override
     protected String getCollectionName() {
         return CollectionName;
@@ -98,6 +109,19 @@ public class PeptideDAO extends BaseDAO<PeptideDO, PeptideQuery> {
         return mongoTemplate.findOne(query, PeptideCoord.class, CollectionName);
     }
 
+    /**
+     * 只读取肽段所属的标准库id,不加载碎片等其他字段
+     *
+     * @param id
+     * @return 肽段不存在时返回null
+     */
+    public String getLibraryIdById(String id) {
+        Query query = new Query(where("id").is(id));
+        query.fields().include("libraryId");
+        PeptideDO peptide = mongoTemplate.findOne(query, PeptideDO.class, CollectionName);
+        return peptide == null ? null : peptide.getLibraryId();
+    }
+
     public void deleteAllByLibraryId(String libraryId) {
         Query query = new Query(where("libraryId").is(libraryId));
         mongoTemplate.remove(query, PeptideDO.class, CollectionName);
@@ -131,6 +155,21 @@ public class PeptideDAO extends BaseDAO<PeptideDO, PeptideQuery> {
         ops.execute();
     }
 
+    /**
+     * 一次性清除标准库下所有肽段的伪肽段信息
+     *
+     * @param libraryId
+     * @return 被修改的肽段数目
+     */
+    public long clearDecoys(String libraryId) {
+        Query query = new Query(where("libraryId").is(libraryId));
+        Update update = new Update();
+        update.unset("decoySequence");
+        update.unset("decoyUnimodMap");
+        update.unset("decoyFragments");
+        return mongoTemplate.updateMulti(query, update, PeptideDO.class, CollectionName).getModifiedCount();
+    }
+
     public long countByProtein(String libraryId) {
         AggregationResults<BasicDBObject> a = mongoTemplate.aggregate(
                 Aggregation.newAggregation(
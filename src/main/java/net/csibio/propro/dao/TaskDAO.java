@@ -1,11 +1,15 @@
 package net.csibio.propro.dao;
 
+import net.csibio.propro.domain.bean.task.TaskLog;
 import net.csibio.propro.domain.db.TaskDO;
 import net.csibio.propro.domain.query.TaskQuery;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
+
 import static org.springframework.data.mongodb.core.query.Criteria.where;
 
 @Service
@@ -50,4 +54,37 @@ public class TaskDAO extends BaseDAO<TaskDO, TaskQuery> {
         return query;
     }
 
+    /**
+     * 只更新任务的状态字段,并将新增的日志追加到logs的末尾,不再重写整个任务文档
+     *
+     * @param task
+     * @param newLogs 上一次写入以后新增的日志
+     */
+    public void progress(TaskDO task, List<TaskLog> newLogs) {
+        Update update = new Update();
+        update.set("status", task.getStatus());
+        update.set("name", task.getName());
+        update.set("taskTemplate", task.getTaskTemplate());
+        update.set("runIds", task.getRunIds());
+        update.set("totalCost", task.getTotalCost());
+        update.set("features", task.getFeatures());
+        update.set("lastModifiedDate", task.getLastModifiedDate());
+        if (newLogs.size() != 0) {
+            update.push("logs").each(newLogs.toArray());
+        }
+        mongoTemplate.updateFirst(new Query(where("id").is(task.getId())), update, TaskDO.class, CollectionName);
+    }
+
+    /**
+     * 读取任务的状态以及从from开始的日志
+     *
+     * @param id
+     * @param from 第一条需要读取的日志的编号
+     * @return 只包含id, status, totalCost以及logs的任务
+     */
+    public TaskDO getLogs(String id, int from) {
+        Query query = new Query(where("id").is(id));
+        query.fields().include("status").include("totalCost").slice("logs", from, Integer.MAX_VALUE);
+        return mongoTemplate.findOne(query, TaskDO.class, CollectionName);
+    }
 }
@@ -0,0 +1,160 @@
+package net.csibio.propro.domain.bean.data;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 按照SWATH窗口的前体mz范围切分的MS1光谱
+ * 每一个MS2窗口只需要前体mz位于窗口范围内的MS1数据点,因此MS1光谱在解码后按窗口范围裁剪为若干个分区,
+ * 每一个分区都保留全部的rt.窗口与分区一一对应;窗口大量重叠(例如ScanningSwath)时分区的总大小会远超MS1本身,
+ * 此时所有窗口共享同一个按窗口并集裁剪的分区
+ * <p>
+ * 分区在最后一个使用它的窗口取走以后即不再被引用,可以被回收
+ */
+@Data
+public class MS1Partition {
+
+    /**
+     * 窗口大小之和超过窗口并集大小的倍数时,所有窗口共享同一个分区
+     */
+    public static final double MAX_OVERLAP = 2d;
+
+    /**
+     * 每一个分区裁剪时使用的mz范围
+     */
+    double[] starts;
+    double[] ends;
+
+    /**
+     * 第i个窗口使用的分区编号
+     */
+    int[] partitionOf;
+
+    /**
+     * 每一个分区的光谱,构建过程中为null,被所有窗口取走以后重新置为null
+     */
+    SpectrumBlock[] blocks;
+
+    /**
+     * 每一个分区还没有被取走的次数
+     */
+    int[] pending;
+
+    long bytes;
+
+    public MS1Partition() {
+    }
+
+    /**
+     * 根据窗口范围规划分区,此时还不包含任何光谱
+     *
+     * @param windowStarts 每一个窗口的开始mz,已经在两侧扩展了提取时使用的mz窗口
+     * @param windowEnds   每一个窗口的结束mz,已经在两侧扩展了提取时使用的mz窗口
+     * @return
+     */
+    public static MS1Partition plan(double[] windowStarts, double[] windowEnds) {
+        int size = windowStarts.length;
+        MS1Partition partition = new MS1Partition();
+        partition.setPartitionOf(new int[size]);
+        if (size == 0) {
+            partition.setStarts(new double[0]);
+            partition.setEnds(new double[0]);
+        } else if (overlap(windowStarts, windowEnds) > MAX_OVERLAP) {
+            double start = Double.MAX_VALUE, end = -Double.MAX_VALUE;
+            for (int i = 0; i < size; i++) {
+                start = Math.min(start, windowStarts[i]);
+                end = Math.max(end, windowEnds[i]);
+            }
+            partition.setStarts(new double[]{start});
+            partition.setEnds(new double[]{end});
+        } else {
+            int[] partitionOf = partition.getPartitionOf();
+            for (int i = 0; i < size; i++) {
+                partitionOf[i] = i;
+            }
+            partition.setStarts(windowStarts.clone());
+            partition.setEnds(windowEnds.clone());
+        }
+        int[] pending = new int[partition.getStarts().length];
+        for (int p : partition.getPartitionOf()) {
+            pending[p]++;
+        }
+        partition.setPending(pending);
+        partition.setBlocks(new SpectrumBlock[pending.length]);
+        return partition;
+    }
+
+    public int size() {
+        return starts.length;
+    }
+
+    /**
+     * 按照每一个分区的mz范围裁剪一段连续rt的MS1光谱,结果追加到parts中
+     *
+     * @param chunk MS1光谱中的一段,按rt顺序依次传入
+     * @param parts 每一个分区已经裁剪得到的光谱段
+     */
+    public void split(SpectrumBlock chunk, List<List<SpectrumBlock>> parts) {
+        for (int p = 0; p < starts.length; p++) {
+            parts.get(p).add(chunk.trim(starts[p], ends[p]));
+        }
+    }
+
+    /**
+     * 将每一个分区的所有光谱段拼接为最终的光谱块,拼接完成后即释放对应的光谱段
+     *
+     * @param parts
+     */
+    public void build(List<List<SpectrumBlock>> parts) {
+        bytes = 0L;
+        for (int p = 0; p < starts.length; p++) {
+            blocks[p] = SpectrumBlock.concat(parts.get(p));
+            parts.set(p, new ArrayList<>());
+            bytes += blocks[p].bytes();
+        }
+    }
+
+    /**
+     * 取出第window个窗口使用的MS1分区,最后一个使用该分区的窗口取走以后不再持有该分区
+     *
+     * @param window 窗口编号
+     * @return
+     */
+    public synchronized SpectrumBlock take(int window) {
+        int p = partitionOf[window];
+        SpectrumBlock block = blocks[p];
+        if (--pending[p] == 0) {
+            blocks[p] = null;
+        }
+        return block;
+    }
+
+    /**
+     * @return 窗口大小之和与窗口并集大小的比值
+     */
+    private static double overlap(double[] windowStarts, double[] windowEnds) {
+        int size = windowStarts.length;
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(windowStarts[a], windowStarts[b]));
+        double sum = 0d, union = 0d;
+        double start = windowStarts[order[0]], end = windowEnds[order[0]];
+        for (int i : order) {
+            sum += windowEnds[i] - windowStarts[i];
+            if (windowStarts[i] > end) {
+                union += end - start;
+                start = windowStarts[i];
+                end = windowEnds[i];
+            } else {
+                end = Math.max(end, windowEnds[i]);
+            }
+        }
+        union += end - start;
+        return union <= 0 ? 1d : sum / union;
+    }
+}
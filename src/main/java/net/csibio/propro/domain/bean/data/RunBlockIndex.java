@@ -0,0 +1,145 @@
+package net.csibio.propro.domain.bean.data;
+
+import lombok.Data;
+import net.csibio.propro.domain.db.BlockIndexDO;
+import net.csibio.propro.utils.ArrayUtil;
+import net.csibio.propro.utils.BlockIndexUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 一个run的全部光谱块索引在内存中的只读快照
+ * MS2光谱块按照窗口的开始mz从小到大排列,通过二分查找定位前体mz所在的窗口.每一个光谱块中的nums,rts,mzs与ints
+ * 在构建时从二进制解码(旧格式则从列表转换)为原始类型数组,并以只读列表的形式挂回BlockIndexDO,避免长期持有大量装箱对象
+ * <p>
+ * 快照构建完成以后不再修改,其中的BlockIndexDO由所有调用方共享,调用方只能读取
+ */
+@Data
+public class RunBlockIndex {
+
+    String runId;
+
+    /**
+     * 构建快照时run的版本号,run被删除或者重新解析以后版本号递增,旧的快照随之失效
+     */
+    long version;
+
+    BlockIndexDO ms1;
+
+    /**
+     * 所有带有窗口信息的MS2光谱块,按照窗口的开始mz从小到大排列
+     */
+    List<BlockIndexDO> ms2List;
+
+    //以下数组与ms2List一一对应
+    double[] starts;
+    double[] ends;
+    //ends的前缀最大值,用于在窗口相互重叠时二分定位第一个可能包含目标mz的窗口
+    double[] maxEnds;
+
+    List<BlockIndexDO> all;
+
+    long bytes;
+
+    public RunBlockIndex() {
+    }
+
+    /**
+     * @param runId
+     * @param version
+     * @param blocks  run对应的全部光谱块索引,构建以后归快照所有
+     * @return
+     */
+    public static RunBlockIndex build(String runId, long version, List<BlockIndexDO> blocks) {
+        RunBlockIndex index = new RunBlockIndex();
+        index.setRunId(runId);
+        index.setVersion(version);
+        index.setAll(Collections.unmodifiableList(blocks));
+        List<BlockIndexDO> ms2List = new ArrayList<>();
+        long bytes = 0L;
+        for (BlockIndexDO block : blocks) {
+            bytes += compact(block);
+            if (block.getLevel() == null) {
+                continue;
+            }
+            if (block.getLevel() == 1) {
+                if (index.getMs1() == null) {
+                    index.setMs1(block);
+                }
+            } else if (block.getLevel() == 2 && block.getRange() != null) {
+                ms2List.add(block);
+            }
+        }
+        ms2List.sort(Comparator.comparing(block -> block.getRange().getStart()));
+        int size = ms2List.size();
+        double[] starts = new double[size];
+        double[] ends = new double[size];
+        double[] maxEnds = new double[size];
+        for (int i = 0; i < size; i++) {
+            starts[i] = ms2List.get(i).getRange().getStart();
+            ends[i] = ms2List.get(i).getRange().getEnd();
+            maxEnds[i] = i == 0 ? ends[i] : Math.max(maxEnds[i - 1], ends[i]);
+        }
+        index.setMs2List(Collections.unmodifiableList(ms2List));
+        index.setStarts(starts);
+        index.setEnds(ends);
+        index.setMaxEnds(maxEnds);
+        index.setBytes(bytes);
+        return index;
+    }
+
+    /**
+     * 获取前体mz所在的MS2光谱块,窗口相互重叠时返回开始mz最小的窗口
+     *
+     * @param mz
+     * @return 不存在时返回null
+     */
+    public BlockIndexDO getMS2(double mz) {
+        //第一个ends前缀最大值不小于mz的位置,在此之前的窗口都不可能包含mz
+        int low = 0, high = maxEnds.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (maxEnds[mid] < mz) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        for (int i = low; i < starts.length && starts[i] <= mz; i++) {
+            if (ends[i] >= mz) {
+                return ms2List.get(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 将光谱块中的二进制列解码,旧格式的列表替换为以原始类型数组为底层存储的只读列表
+     *
+     * @return 估算的内存占用
+     */
+    private static long compact(BlockIndexDO block) {
+        BlockIndexUtil.decompress(block);
+        if (block.getNums() != null && !ArrayUtil.isPrimitiveList(block.getNums())) {
+            block.setNums(ArrayUtil.asList(ArrayUtil.toIntArray(block.getNums())));
+        }
+        if (block.getRts() != null && !ArrayUtil.isPrimitiveList(block.getRts())) {
+            block.setRts(ArrayUtil.asList(ArrayUtil.toFloatArray(block.getRts())));
+        }
+        if (block.getMzs() != null && !ArrayUtil.isPrimitiveList(block.getMzs())) {
+            block.setMzs(ArrayUtil.asList(ArrayUtil.toLongArray(block.getMzs())));
+        }
+        if (block.getInts() != null && !ArrayUtil.isPrimitiveList(block.getInts())) {
+            block.setInts(ArrayUtil.asList(ArrayUtil.toLongArray(block.getInts())));
+        }
+        long bytes = 128L;
+        bytes += block.getNums() == null ? 0 : (long) block.getNums().size() * Integer.BYTES;
+        bytes += block.getRts() == null ? 0 : (long) block.getRts().size() * Float.BYTES;
+        bytes += block.getMzs() == null ? 0 : (long) block.getMzs().size() * Long.BYTES;
+        bytes += block.getInts() == null ? 0 : (long) block.getInts().size() * Long.BYTES;
+        return bytes;
+    }
+}
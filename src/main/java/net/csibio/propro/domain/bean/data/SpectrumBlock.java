@@ -0,0 +1,308 @@
+package net.csibio.propro.domain.bean.data;
+
+import lombok.Getter;
+import net.csibio.aird.bean.MzIntensityPairs;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 一个光谱块(一个SWATH窗口或者全部MS1)的列式存储
+ * 所有光谱的rt从小到大存放在rts中,第i张光谱的mz与intensity位于mzs/ints的[offsets[i], offsets[i+1])区间内
+ * mzs与ints可以是堆内数组的包装,也可以是堆外的DirectByteBuffer.相比TreeMap<Float, MzIntensityPairs>,
+ * 一个窗口只占用两块连续内存,按rt查询时不需要装箱,也不需要遍历红黑树
+ * <p>
+ * 光谱块在构建完成后只读,可以在多个线程之间共享.slice得到的子块与原光谱块共享mzs与ints
+ * 因此只提供getter,equals与hashCode保持对象标识语义
+ */
+@Getter
+public class SpectrumBlock {
+
+    /**
+     * 每一张光谱在数组之外的估算开销(rts与offsets中的一个元素)
+     */
+    private static final long SPECTRUM_OVERHEAD = 8L;
+
+    /**
+     * 所有光谱的rt,从小到大排列
+     */
+    final float[] rts;
+
+    /**
+     * 长度为rts.length+1,第i张光谱在mzs/ints中的开始位置为offsets[i],结束位置(不包含)为offsets[i+1]
+     */
+    final int[] offsets;
+
+    /**
+     * 所有光谱的mz首尾相接,每一张光谱内部从小到大排列
+     */
+    final FloatBuffer mzs;
+
+    /**
+     * 与mzs一一对应的强度
+     */
+    final FloatBuffer ints;
+
+    /**
+     * 是否存储在堆外内存中
+     */
+    final boolean direct;
+
+    public SpectrumBlock(float[] rts, int[] offsets, FloatBuffer mzs, FloatBuffer ints, boolean direct) {
+        this.rts = rts;
+        this.offsets = offsets;
+        this.mzs = mzs;
+        this.ints = ints;
+        this.direct = direct;
+    }
+
+    /**
+     * 将解析器输出的TreeMap转换为列式存储
+     *
+     * @param spectra key为rt的光谱
+     * @param direct  是否使用堆外内存存储mz与intensity
+     * @return
+     */
+    public static SpectrumBlock of(TreeMap<Float, MzIntensityPairs> spectra, boolean direct) {
+        int size = spectra.size();
+        float[] rts = new float[size];
+        int[] offsets = new int[size + 1];
+        int index = 0;
+        for (Map.Entry<Float, MzIntensityPairs> entry : spectra.entrySet()) {
+            rts[index] = entry.getKey();
+            offsets[index + 1] = offsets[index] + entry.getValue().getMzArray().length;
+            index++;
+        }
+
+        int total = offsets[size];
+        FloatBuffer mzs;
+        FloatBuffer ints;
+        if (direct) {
+            mzs = ByteBuffer.allocateDirect(total * Float.BYTES).order(ByteOrder.nativeOrder()).asFloatBuffer();
+            ints = ByteBuffer.allocateDirect(total * Float.BYTES).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        } else {
+            mzs = FloatBuffer.wrap(new float[total]);
+            ints = FloatBuffer.wrap(new float[total]);
+        }
+        index = 0;
+        for (MzIntensityPairs pairs : spectra.values()) {
+            mzs.put(offsets[index], pairs.getMzArray());
+            ints.put(offsets[index], pairs.getIntensityArray());
+            index++;
+        }
+        return new SpectrumBlock(rts, offsets, mzs, ints, direct);
+    }
+
+    public int size() {
+        return rts.length;
+    }
+
+    public float getRt(int index) {
+        return rts[index];
+    }
+
+    /**
+     * @param index 光谱编号
+     * @return 该光谱在mzs/ints中的开始位置
+     */
+    public int from(int index) {
+        return offsets[index];
+    }
+
+    /**
+     * @param index 光谱编号
+     * @return 该光谱在mzs/ints中的结束位置(不包含)
+     */
+    public int to(int index) {
+        return offsets[index + 1];
+    }
+
+    public float mz(int position) {
+        return mzs.get(position);
+    }
+
+    public float intensity(int position) {
+        return ints.get(position);
+    }
+
+    /**
+     * 精确查找rt对应的光谱编号
+     *
+     * @param rt
+     * @return 光谱编号, 不存在时返回-1
+     */
+    public int indexOf(float rt) {
+        int index = Arrays.binarySearch(rts, rt);
+        return index < 0 ? -1 : index;
+    }
+
+    /**
+     * 第一个rt大于等于target的光谱编号
+     */
+    public int firstIndexNotBelow(double target) {
+        int low = 0, high = rts.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (rts[mid] >= target) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 第一个rt大于target的光谱编号
+     */
+    public int firstIndexAbove(double target) {
+        int low = 0, high = rts.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (rts[mid] > target) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 截取rt在[rtStart, rtEnd]范围内的光谱,子块与本光谱块共享mz与intensity的存储,不复制光谱数据
+     *
+     * @param rtStart
+     * @param rtEnd
+     * @return
+     */
+    public SpectrumBlock slice(double rtStart, double rtEnd) {
+        int from = firstIndexNotBelow(rtStart);
+        int to = Math.max(from, firstIndexAbove(rtEnd));
+        return new SpectrumBlock(Arrays.copyOfRange(rts, from, to), Arrays.copyOfRange(offsets, from, to + 1), mzs, ints, direct);
+    }
+
+    /**
+     * 只保留每一张光谱中mz位于[mzStart, mzEnd]的数据点,以及范围两侧各一个相邻的数据点,结果复制为新的堆内光谱块
+     * 保留相邻数据点使得ConvolutionUtil.accumulation在该范围内任意窗口上的结果与原光谱块完全一致
+     *
+     * @param mzStart
+     * @param mzEnd
+     * @return
+     */
+    public SpectrumBlock trim(double mzStart, double mzEnd) {
+        int size = rts.length;
+        int[] froms = new int[size];
+        int[] tos = new int[size];
+        int[] trimmedOffsets = new int[size + 1];
+        for (int i = 0; i < size; i++) {
+            int from = from(i);
+            int to = to(i);
+            //第一个不小于mzStart的数据点
+            int low = from, high = to;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (mz(mid) < mzStart) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            while (high < to && mz(high) <= mzEnd) {
+                high++;
+            }
+            froms[i] = Math.max(from, low - 1);
+            tos[i] = Math.min(to, high + 1);
+            trimmedOffsets[i + 1] = trimmedOffsets[i] + tos[i] - froms[i];
+        }
+        float[] trimmedMzs = new float[trimmedOffsets[size]];
+        float[] trimmedInts = new float[trimmedOffsets[size]];
+        for (int i = 0; i < size; i++) {
+            mzs.get(froms[i], trimmedMzs, trimmedOffsets[i], tos[i] - froms[i]);
+            ints.get(froms[i], trimmedInts, trimmedOffsets[i], tos[i] - froms[i]);
+        }
+        return new SpectrumBlock(rts.clone(), trimmedOffsets, FloatBuffer.wrap(trimmedMzs), FloatBuffer.wrap(trimmedInts), false);
+    }
+
+    /**
+     * 将按rt顺序排列的多个光谱块首尾相接,复制为一个新的堆内光谱块
+     *
+     * @param parts 前一个光谱块的rt均小于后一个光谱块
+     * @return
+     */
+    public static SpectrumBlock concat(List<SpectrumBlock> parts) {
+        int size = 0;
+        int total = 0;
+        for (SpectrumBlock part : parts) {
+            size += part.size();
+            total += part.size() == 0 ? 0 : part.to(part.size() - 1) - part.from(0);
+        }
+        float[] rts = new float[size];
+        int[] offsets = new int[size + 1];
+        float[] mzArray = new float[total];
+        float[] intArray = new float[total];
+        int index = 0;
+        for (SpectrumBlock part : parts) {
+            if (part.size() == 0) {
+                continue;
+            }
+            //slice得到的子块中光谱数据仍然是连续存放的,整体复制即可
+            int base = part.from(0);
+            int length = part.to(part.size() - 1) - base;
+            part.getMzs().get(base, mzArray, offsets[index], length);
+            part.getInts().get(base, intArray, offsets[index], length);
+            for (int i = 0; i < part.size(); i++) {
+                rts[index + i] = part.getRt(i);
+                offsets[index + i + 1] = offsets[index] + part.to(i) - base;
+            }
+            index += part.size();
+        }
+        return new SpectrumBlock(rts, offsets, FloatBuffer.wrap(mzArray), FloatBuffer.wrap(intArray), false);
+    }
+
+    /**
+     * 将第index张光谱复制为MzIntensityPairs,用于尚未迁移到列式存储的打分函数
+     *
+     * @param index 光谱编号, 为-1时返回null
+     * @return
+     */
+    public MzIntensityPairs getPairs(int index) {
+        if (index < 0) {
+            return null;
+        }
+        int from = from(index);
+        int length = to(index) - from;
+        float[] mzArray = new float[length];
+        float[] intArray = new float[length];
+        mzs.get(from, mzArray);
+        ints.get(from, intArray);
+        return new MzIntensityPairs(mzArray, intArray);
+    }
+
+    /**
+     * 转换回TreeMap形式,仅用于兼容旧接口,每一张光谱都会被复制一次
+     *
+     * @return
+     */
+    public TreeMap<Float, MzIntensityPairs> toTreeMap() {
+        TreeMap<Float, MzIntensityPairs> spectra = new TreeMap<>();
+        for (int i = 0; i < rts.length; i++) {
+            spectra.put(rts[i], getPairs(i));
+        }
+        return spectra;
+    }
+
+    /**
+     * 估算的内存占用(字节),slice得到的子块与原光谱块共享存储,只计算本块覆盖的部分
+     *
+     * @return
+     */
+    public long bytes() {
+        long points = rts.length == 0 ? 0 : offsets[rts.length] - offsets[0];
+        return rts.length * SPECTRUM_OVERHEAD + points * Float.BYTES * 2;
+    }
+}
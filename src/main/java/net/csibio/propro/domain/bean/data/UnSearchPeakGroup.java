@@ -2,6 +2,7 @@ package net.csibio.propro.domain.bean.data;
 
 import lombok.Data;
 import net.csibio.propro.domain.bean.common.DoublePair;
+import net.csibio.propro.domain.bean.peptide.FragmentTable;
 import net.csibio.propro.domain.bean.peptide.PeptideCoord;
 import net.csibio.propro.domain.bean.score.IonPeak;
 
@@ -12,16 +13,20 @@ import java.util.List;
 public class UnSearchPeakGroup {
 
     PeptideCoord coord;
+    //肽段的碎片表
+    FragmentTable fragmentTable;
+    //参与选峰的碎片在碎片表中的编号,从小到大排列
+    int[] ions;
     //当前PeptideRef对应的rt数组[Float版本]
     float[] floatRtArray;
-    //当前PeptideRef对应的rt数组[Double版本]
-    Double[] rtArray;
+    //当前PeptideRef对应的rt数组[double版本]
+    double[] rtArray;
     //当前peptideRef对应的强度值,key为cutInfo
-    HashMap<String, Double[]> intensitiesMap;
+    HashMap<String, double[]> intensitiesMap;
     //ms1 eic intensity图
-    Double[] ms1Ints;
+    double[] ms1Ints;
     //precursor eic intensity
-    Double[] selfInts;
+    double[] selfInts;
     //每一个cutInfo对应的峰顶数组
     HashMap<String, RtIntensityPairsDouble> maxPeaks4Ions;
     //每一个cutInfo对应的峰组
@@ -33,6 +38,6 @@ public class UnSearchPeakGroup {
     List<DoublePair> maxPeaks4IonsHigh; //left为rt, right为平滑后的ionsCount
     int[] ionsLow; //原始的ions50,数组长度与rtArray一致且一一对应
     int[] ionsHigh; //原始的ions300,数组长度与rtArray一致且一一对应
-    Double[] ionsHighSmooth; //平滑后的IonsCount,数组长度与rtArray一致且一一对应
+    double[] ionsHighSmooth; //平滑后的IonsCount,数组长度与rtArray一致且一一对应
     double[] noise10004IonCount;
 }
@@ -0,0 +1,81 @@
+package net.csibio.propro.domain.bean.data;
+
+import lombok.Data;
+
+/**
+ * 一个SWATH窗口内一批肽段坐标的XIC批量提取结果
+ * 所有坐标共享同一组光谱,强度按照[coord][fragment][rt]的方式存储在原始类型数组中
+ * <p>
+ * 每一个坐标的碎片排列顺序为: 真肽段碎片(targetSize个) + 伪肽段碎片(decoySize个) + 前体自身(1个)
+ */
+@Data
+public class XicBatch {
+
+    /**
+     * 窗口内所有光谱的rt,从小到大排列
+     */
+    float[] rts;
+
+    /**
+     * 窗口内的所有光谱,光谱编号与rts一一对应
+     */
+    SpectrumBlock block;
+
+    /**
+     * 构建批次时每一个坐标使用的rt范围,用于判断坐标在后续流程中是否被修改过rt范围
+     */
+    double[] coordRtStart;
+    double[] coordRtEnd;
+
+    /**
+     * 每一个坐标在rts中的索引范围,左闭右开
+     */
+    int[] rtFrom;
+    int[] rtTo;
+
+    /**
+     * 每一个坐标的真肽段碎片数目与伪肽段碎片数目
+     */
+    int[] targetSize;
+    int[] decoySize;
+
+    /**
+     * [coord][fragment][rt], rt的索引从rtFrom[coord]开始计数
+     */
+    float[][][] ints;
+
+    public XicBatch() {
+    }
+
+    public XicBatch(float[] rts, SpectrumBlock block, int coordSize) {
+        this.rts = rts;
+        this.block = block;
+        this.coordRtStart = new double[coordSize];
+        this.coordRtEnd = new double[coordSize];
+        this.rtFrom = new int[coordSize];
+        this.rtTo = new int[coordSize];
+        this.targetSize = new int[coordSize];
+        this.decoySize = new int[coordSize];
+        this.ints = new float[coordSize][][];
+    }
+
+    public int size() {
+        return ints.length;
+    }
+
+    /**
+     * 获取指定坐标的某一个碎片的XIC
+     *
+     * @param coordIndex 坐标索引
+     * @param fragIndex  碎片在真肽段或伪肽段碎片列表中的索引
+     * @param decoy      是否为伪肽段碎片
+     * @return
+     */
+    public float[] getFragmentInts(int coordIndex, int fragIndex, boolean decoy) {
+        return ints[coordIndex][decoy ? targetSize[coordIndex] + fragIndex : fragIndex];
+    }
+
+    public float[] getSelfInts(int coordIndex) {
+        return ints[coordIndex][targetSize[coordIndex] + decoySize[coordIndex]];
+    }
+}
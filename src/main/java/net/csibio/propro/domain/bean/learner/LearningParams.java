@@ -23,6 +23,12 @@ public class LearningParams {
 
     int xevalNumIter = 20;
 
+    //LDA随机训练的并行成员数目,每一个成员使用独立的随机划分,最终权重取所有成员的平均值.trainTestRatio为1时所有成员的训练集相同,只训练一个成员
+    int ldaEnsemble = 5;
+
+    //随机划分训练集使用的种子,第i个成员的种子为seed+i,种子相同时训练结果与线程数无关
+    long seed = 0;
+
 //    double ssInitialFdr = 0.15;
 
     double ssIterationFdr = 0.05; //0.1 3310; 0.08 3300; 0.05 3276
@@ -31,6 +37,18 @@ public class LearningParams {
 
     double xgbIterationFdr = 0.008;
 
+    //XGBoost每一次训练的最大轮数
+    int xgbRounds = 480;
+
+    //验证集上的指标连续多少轮没有提升时提前停止训练,小于等于0时不启用早停
+    int xgbEarlyStoppingRounds = 30;
+
+    //从训练集中留出作为验证集的比例
+    double xgbValidRatio = 0.2;
+
+    //XGBoost训练使用的线程数,小于等于0时与打分线程池的并行度一致
+    int xgbThreads = 0;
+
     String ssMainScore = "var_xcorr_shape";
 
     boolean parametric = false;
@@ -0,0 +1,322 @@
+package net.csibio.propro.domain.bean.learner;
+
+import lombok.Data;
+import net.csibio.propro.domain.bean.data.DataScore;
+import net.csibio.propro.domain.bean.score.PeakGroup;
+import net.csibio.propro.domain.bean.score.SelectedPeakGroup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 半监督学习使用的稠密打分矩阵
+ * 每一行是一个峰组,每一列是一种子分数(与scoreTypes的顺序一致),按行优先存放在scores中
+ * 同一个肽段的所有峰组在矩阵中连续存放,第g个肽段的峰组位于[groupOffsets[g], groupOffsets[g+1])行
+ * <p>
+ * 相比List<DataScore>,全部子分数只占用一个double数组,不再为每一个峰组创建PeakGroup对象和装箱的Double[]
+ * 为空的子分数按照BaseScores.get的约定记为0,为空的rt与定量值记为NaN
+ */
+@Data
+public class ScoreMatrix {
+
+    private static final int INIT_GROUPS = 1024;
+    private static final int INIT_ROWS = 4096;
+
+    List<String> scoreTypes;
+
+    /**
+     * 子分数的种类数目,即矩阵的列数
+     */
+    int cols;
+
+    /**
+     * 肽段数目
+     */
+    int groups;
+
+    /**
+     * 峰组数目,即矩阵的行数
+     */
+    int rows;
+
+    //以下为肽段维度的数据,长度不小于groups
+    String[] ids;
+    String[] peptideRefs;
+    boolean[] decoys;
+    List<List<String>> proteins;
+    double[] libRts;
+    double[] irts;
+    /**
+     * 长度不小于groups+1,第g个肽段的峰组位于[groupOffsets[g], groupOffsets[g+1])行
+     */
+    int[] groupOffsets;
+
+    //以下为峰组维度的数据,长度不小于rows
+    /**
+     * 行优先存放的子分数,第row行第col列位于scores[row * cols + col]
+     */
+    double[] scores;
+    double[] totalScores;
+    boolean[] notMine;
+    double[] apexRts;
+    double[] selectedRts;
+    double[] intensitySums;
+    double[] fitIntSums;
+    double[] ms1Sums;
+    int[] ionsLows;
+    String[] bestIons;
+
+    public ScoreMatrix(List<String> scoreTypes) {
+        this.scoreTypes = scoreTypes;
+        this.cols = scoreTypes.size();
+        this.ids = new String[INIT_GROUPS];
+        this.peptideRefs = new String[INIT_GROUPS];
+        this.decoys = new boolean[INIT_GROUPS];
+        this.proteins = new ArrayList<>(INIT_GROUPS);
+        this.libRts = new double[INIT_GROUPS];
+        this.irts = new double[INIT_GROUPS];
+        this.groupOffsets = new int[INIT_GROUPS + 1];
+        this.scores = new double[INIT_ROWS * cols];
+        this.totalScores = new double[INIT_ROWS];
+        this.notMine = new boolean[INIT_ROWS];
+        this.apexRts = new double[INIT_ROWS];
+        this.selectedRts = new double[INIT_ROWS];
+        this.intensitySums = new double[INIT_ROWS];
+        this.fitIntSums = new double[INIT_ROWS];
+        this.ms1Sums = new double[INIT_ROWS];
+        this.ionsLows = new int[INIT_ROWS];
+        this.bestIons = new String[INIT_ROWS];
+    }
+
+    private ScoreMatrix() {
+    }
+
+    /**
+     * 复制一个共享全部子分数与峰组信息,但拥有独立总分数组的矩阵,用于多个训练任务在同一份数据上并行打分
+     * 除总分以外的数组均与原矩阵共用,调用方不能修改
+     *
+     * @return
+     */
+    public ScoreMatrix fork() {
+        ScoreMatrix fork = new ScoreMatrix();
+        fork.scoreTypes = scoreTypes;
+        fork.cols = cols;
+        fork.groups = groups;
+        fork.rows = rows;
+        fork.ids = ids;
+        fork.peptideRefs = peptideRefs;
+        fork.decoys = decoys;
+        fork.proteins = proteins;
+        fork.libRts = libRts;
+        fork.irts = irts;
+        fork.groupOffsets = groupOffsets;
+        fork.scores = scores;
+        fork.totalScores = Arrays.copyOf(totalScores, totalScores.length);
+        fork.notMine = notMine;
+        fork.apexRts = apexRts;
+        fork.selectedRts = selectedRts;
+        fork.intensitySums = intensitySums;
+        fork.fitIntSums = fitIntSums;
+        fork.ms1Sums = ms1Sums;
+        fork.ionsLows = ionsLows;
+        fork.bestIons = bestIons;
+        return fork;
+    }
+
+    /**
+     * 将一个肽段的打分结果追加到矩阵末尾,追加完成后dataScore即可被回收
+     *
+     * @param dataScore
+     */
+    public void append(DataScore dataScore) {
+        List<PeakGroup> peakGroupList = dataScore.getPeakGroupList() == null ? new ArrayList<>() : dataScore.getPeakGroupList();
+        ensureGroups(groups + 1);
+        ensureRows(rows + peakGroupList.size());
+
+        ids[groups] = dataScore.getId();
+        peptideRefs[groups] = dataScore.getPeptideRef();
+        decoys[groups] = dataScore.getDecoy() != null && dataScore.getDecoy();
+        proteins.add(dataScore.getProteins());
+        libRts[groups] = unbox(dataScore.getLibRt());
+        irts[groups] = unbox(dataScore.getIrt());
+
+        for (PeakGroup peakGroup : peakGroupList) {
+            Double[] peakScores = peakGroup.getScores();
+            if (peakScores != null) {
+                int base = rows * cols;
+                for (int col = 0; col < Math.min(cols, peakScores.length); col++) {
+                    scores[base + col] = peakScores[col] == null ? 0d : peakScores[col];
+                }
+            }
+            totalScores[rows] = unbox(peakGroup.getTotalScore());
+            apexRts[rows] = unbox(peakGroup.getApexRt());
+            selectedRts[rows] = unbox(peakGroup.getSelectedRt());
+            intensitySums[rows] = peakGroup.getIntensitySum();
+            fitIntSums[rows] = unbox(peakGroup.getFitIntSum());
+            ms1Sums[rows] = unbox(peakGroup.getMs1Sum());
+            ionsLows[rows] = peakGroup.getIonsLow();
+            bestIons[rows] = peakGroup.getBestIon();
+            rows++;
+        }
+        groups++;
+        groupOffsets[groups] = rows;
+    }
+
+    /**
+     * 读取完成后释放预留的空间
+     */
+    public void trim() {
+        ids = Arrays.copyOf(ids, groups);
+        peptideRefs = Arrays.copyOf(peptideRefs, groups);
+        decoys = Arrays.copyOf(decoys, groups);
+        libRts = Arrays.copyOf(libRts, groups);
+        irts = Arrays.copyOf(irts, groups);
+        groupOffsets = Arrays.copyOf(groupOffsets, groups + 1);
+        scores = Arrays.copyOf(scores, rows * cols);
+        totalScores = Arrays.copyOf(totalScores, rows);
+        notMine = Arrays.copyOf(notMine, rows);
+        apexRts = Arrays.copyOf(apexRts, rows);
+        selectedRts = Arrays.copyOf(selectedRts, rows);
+        intensitySums = Arrays.copyOf(intensitySums, rows);
+        fitIntSums = Arrays.copyOf(fitIntSums, rows);
+        ms1Sums = Arrays.copyOf(ms1Sums, rows);
+        ionsLows = Arrays.copyOf(ionsLows, rows);
+        bestIons = Arrays.copyOf(bestIons, rows);
+    }
+
+    /**
+     * @param group 肽段编号
+     * @return 该肽段第一个峰组的行号
+     */
+    public int from(int group) {
+        return groupOffsets[group];
+    }
+
+    /**
+     * @param group 肽段编号
+     * @return 该肽段最后一个峰组的行号+1
+     */
+    public int to(int group) {
+        return groupOffsets[group + 1];
+    }
+
+    public double get(int row, int col) {
+        return scores[row * cols + col];
+    }
+
+    public boolean isDecoy(int group) {
+        return decoys[group];
+    }
+
+    public void markNotMine(int row) {
+        notMine[row] = true;
+    }
+
+    /**
+     * 在肽段内部挑选总分最高的峰组,被标记为notMine以及总分为空的峰组不参与挑选
+     *
+     * @param group 肽段编号
+     * @return 行号, 没有可选的峰组时返回-1
+     */
+    public int bestRow(int group) {
+        int best = -1;
+        double maxScore = -Double.MAX_VALUE;
+        for (int row = from(group); row < to(group); row++) {
+            if (notMine[row]) {
+                continue;
+            }
+            if (totalScores[row] > maxScore) {
+                maxScore = totalScores[row];
+                best = row;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 将某一行复制为装箱的子分数数组,仅用于每个肽段选出的峰组
+     */
+    public Double[] boxScores(int row) {
+        Double[] boxed = new Double[cols];
+        int base = row * cols;
+        for (int col = 0; col < cols; col++) {
+            boxed[col] = scores[base + col];
+        }
+        return boxed;
+    }
+
+    /**
+     * 将第group个肽段的第row行转换为SelectedPeakGroup
+     *
+     * @param group 肽段编号
+     * @param row   行号
+     * @return
+     */
+    public SelectedPeakGroup toSelectedPeakGroup(int group, int row) {
+        SelectedPeakGroup peakGroup = new SelectedPeakGroup();
+        peakGroup.setId(ids[group]);
+        peakGroup.setIrt(box(irts[group]));
+        peakGroup.setLibRt(box(libRts[group]));
+        peakGroup.setProteins(proteins.get(group));
+        peakGroup.setPeptideRef(peptideRefs[group]);
+        peakGroup.setDecoy(decoys[group]);
+
+        peakGroup.setTotalScore(box(totalScores[row]));
+        peakGroup.setScores(boxScores(row));
+        peakGroup.setMs1Sum(box(ms1Sums[row]));
+        peakGroup.setApexRt(box(apexRts[row]));
+        peakGroup.setBestIon(bestIons[row]);
+        peakGroup.setSelectedRt(box(selectedRts[row]));
+        peakGroup.setIntensitySum(intensitySums[row]);
+        peakGroup.setFitIntSum(box(fitIntSums[row]));
+        peakGroup.setIonsLow(ionsLows[row]);
+        return peakGroup;
+    }
+
+    /**
+     * 估算的内存占用(字节),不包含字符串
+     */
+    public long bytes() {
+        return (long) scores.length * Double.BYTES + (long) totalScores.length * (Double.BYTES * 7 + Integer.BYTES + 1)
+                + (long) libRts.length * (Double.BYTES * 2 + Integer.BYTES + 1);
+    }
+
+    private void ensureGroups(int capacity) {
+        if (capacity <= ids.length) {
+            return;
+        }
+        int size = Math.max(capacity, ids.length * 2);
+        ids = Arrays.copyOf(ids, size);
+        peptideRefs = Arrays.copyOf(peptideRefs, size);
+        decoys = Arrays.copyOf(decoys, size);
+        libRts = Arrays.copyOf(libRts, size);
+        irts = Arrays.copyOf(irts, size);
+        groupOffsets = Arrays.copyOf(groupOffsets, size + 1);
+    }
+
+    private void ensureRows(int capacity) {
+        if (capacity <= totalScores.length) {
+            return;
+        }
+        int size = Math.max(capacity, totalScores.length * 2);
+        scores = Arrays.copyOf(scores, size * cols);
+        totalScores = Arrays.copyOf(totalScores, size);
+        notMine = Arrays.copyOf(notMine, size);
+        apexRts = Arrays.copyOf(apexRts, size);
+        selectedRts = Arrays.copyOf(selectedRts, size);
+        intensitySums = Arrays.copyOf(intensitySums, size);
+        fitIntSums = Arrays.copyOf(fitIntSums, size);
+        ms1Sums = Arrays.copyOf(ms1Sums, size);
+        ionsLows = Arrays.copyOf(ionsLows, size);
+        bestIons = Arrays.copyOf(bestIons, size);
+    }
+
+    private static double unbox(Double value) {
+        return value == null ? Double.NaN : value;
+    }
+
+    private static Double box(double value) {
+        return Double.isNaN(value) ? null : value;
+    }
+}
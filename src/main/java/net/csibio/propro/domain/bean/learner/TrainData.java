@@ -15,6 +15,11 @@ public class TrainData {
     List<DataScore> targets;
     List<DataScore> decoys;
 
+    //使用ScoreMatrix时,训练集以肽段编号的形式存放
+    ScoreMatrix matrix;
+    int[] targetGroups;
+    int[] decoyGroups;
+
     public TrainData() {
     }
 
@@ -22,4 +27,10 @@ public class TrainData {
         this.targets = targets;
         this.decoys = decoys;
     }
+
+    public TrainData(ScoreMatrix matrix, int[] targetGroups, int[] decoyGroups) {
+        this.matrix = matrix;
+        this.targetGroups = targetGroups;
+        this.decoyGroups = decoyGroups;
+    }
 }
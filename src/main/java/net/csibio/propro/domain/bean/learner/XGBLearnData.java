@@ -0,0 +1,38 @@
+package net.csibio.propro.domain.bean.learner;
+
+import lombok.Data;
+import ml.dmlc.xgboost4j.java.Booster;
+
+/**
+ * 一次XGBoost半监督训练的结果
+ */
+@Data
+public class XGBLearnData {
+
+    Booster booster;
+
+    /**
+     * 预测时使用的树的数目,即早停时验证集指标最好的轮数,为0时使用全部的树
+     */
+    int treeLimit;
+
+    /**
+     * 最后一次训练实际进行的轮数
+     */
+    int rounds;
+
+    /**
+     * 所有训练累计进行的轮数
+     */
+    int totalRounds;
+
+    /**
+     * 最后一次训练在验证集上的最好指标:在指定FDR下验证集中被鉴定出的真肽段比例
+     */
+    Double validMetric;
+
+    /**
+     * 训练总耗时(毫秒)
+     */
+    long cost;
+}
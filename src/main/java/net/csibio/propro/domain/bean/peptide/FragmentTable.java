@@ -0,0 +1,94 @@
+package net.csibio.propro.domain.bean.peptide;
+
+import lombok.Data;
+import net.csibio.propro.utils.PeptideUtil;
+
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * 一个肽段(真肽段或伪肽段)的碎片表
+ * 碎片按照库中的顺序使用从0开始的连续整数编号,mz,带电量以及库强度以并行的原始类型数组存储
+ * 每一个PeptideCoord只需要构建一次,所有打分器都通过碎片编号访问碎片信息,避免每一个峰组都重新构建以cutInfo为key的Map
+ */
+@Data
+public class FragmentTable {
+
+    /**
+     * 构建本表时使用的碎片列表,用于判断PeptideCoord中的碎片列表是否已经被替换
+     */
+    List<FragmentInfo> source;
+
+    String[] cutInfos;
+
+    /**
+     * 碎片的荷质比,与DataDO.cutInfoMap中的value保持一致,使用float存储
+     */
+    float[] mzs;
+
+    /**
+     * 由cutInfo解析得到的碎片带电量
+     */
+    int[] charges;
+
+    /**
+     * 库中的碎片强度
+     */
+    double[] libInts;
+
+    /**
+     * 所有碎片库强度之和
+     */
+    double libIntSum;
+
+    /**
+     * key为cutInfo,value为碎片编号
+     */
+    HashMap<String, Integer> indexMap;
+
+    public FragmentTable() {
+    }
+
+    public static FragmentTable build(List<FragmentInfo> fragments) {
+        int size = fragments.size();
+        FragmentTable table = new FragmentTable();
+        table.setSource(fragments);
+        table.setCutInfos(new String[size]);
+        table.setMzs(new float[size]);
+        table.setCharges(new int[size]);
+        table.setLibInts(new double[size]);
+        table.setIndexMap(new HashMap<>(size * 2));
+        double libIntSum = 0d;
+        for (int i = 0; i < size; i++) {
+            FragmentInfo fi = fragments.get(i);
+            table.cutInfos[i] = fi.getCutInfo();
+            table.mzs[i] = fi.getMz().floatValue();
+            table.charges[i] = PeptideUtil.parseChargeFromCutInfo(fi.getCutInfo());
+            table.libInts[i] = fi.getIntensity();
+            table.indexMap.put(fi.getCutInfo(), i);
+            libIntSum += table.libInts[i];
+        }
+        table.setLibIntSum(libIntSum);
+        return table;
+    }
+
+    public int size() {
+        return cutInfos.length;
+    }
+
+    /**
+     * @param cutInfo
+     * @return 碎片编号, 不存在时返回-1
+     */
+    public int indexOf(String cutInfo) {
+        if (cutInfo == null) {
+            return -1;
+        }
+        Integer index = indexMap.get(cutInfo);
+        return index == null ? -1 : index;
+    }
+
+    public String getCutInfo(int index) {
+        return cutInfos[index];
+    }
+}
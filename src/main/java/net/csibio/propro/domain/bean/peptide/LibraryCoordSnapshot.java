@@ -0,0 +1,521 @@
+package net.csibio.propro.domain.bean.peptide;
+
+import lombok.Data;
+import net.csibio.propro.domain.db.PeptideDO;
+import net.csibio.propro.utils.CompressUtil;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * 一个标准库在内存中的只读快照,所有肽段按照前体mz从小到大排列
+ * 数值字段与碎片信息以列的形式存放在原始类型数组中,第i个肽段的真碎片位于[fragmentOffsets[i], decoyFragmentOffsets[i]),
+ * 伪碎片位于[decoyFragmentOffsets[i], fragmentOffsets[i+1]),指纹位于[fingerPrintOffsets[i], fingerPrintOffsets[i+1])
+ * <p>
+ * 快照构建完成以后不再修改,可以在多个线程以及多个run之间共享.每一次调用toCoord都会生成新的PeptideCoord与FragmentInfo,调用方可以自由修改
+ * 生成的坐标包含PeptideDAO.COORD_FIELDS中的全部字段(碎片的predict与annotations也一并保留),与原先按PeptideCoord直接查询数据库得到的坐标一致
+ * 快照与run无关,RT窗口由调用方在切片时按照每一个run的iRT校准结果计算.快照可以通过save/load保存为二进制文件,进程重启以后无需再从数据库读取
+ */
+@Data
+public class LibraryCoordSnapshot {
+
+    /**
+     * 快照文件的文件头与格式版本,格式发生变化时递增FORMAT_VERSION,旧文件会被重新构建
+     */
+    static final int MAGIC = 0x50504344;
+    static final int FORMAT_VERSION = 3;
+
+    String libraryId;
+
+    /**
+     * 构建快照时标准库的版本号,标准库被修改以后版本号递增,旧的快照随之失效
+     */
+    long version;
+
+    /**
+     * 开始构建快照时标准库的最后修改时间(毫秒),随快照一起写入文件头.读取文件时与数据库中的值不一致即视为过期
+     */
+    long modified;
+
+    int size;
+
+    //以下为肽段维度的数据,按照mz从小到大排列
+    double[] mzs;
+    double[] rts;
+    int[] charges;
+    boolean[] uniques;
+    String[] ids;
+    String[] peptideRefs;
+    String[] sequences;
+    String[] decoySequences;
+    List<List<String>> proteins;
+    List<HashMap<Integer, String>> unimodMaps;
+    List<HashMap<Integer, String>> decoyUnimodMaps;
+
+    //以下为碎片维度的数据,真伪碎片共用同一组数组
+    int[] fragmentOffsets;
+    int[] decoyFragmentOffsets;
+    String[] cutInfos;
+    double[] fragmentMzs;
+    double[] fragmentInts;
+    int[] fragmentCharges;
+    //是否为预测碎片,0为null,1为false,2为true
+    byte[] fragmentPredicts;
+    String[] annotations;
+
+    //肽段指纹,每一个肽段内部去重并从小到大排列
+    int[] fingerPrintOffsets;
+    float[] fingerPrints;
+
+    public LibraryCoordSnapshot() {
+    }
+
+    /**
+     * @param libraryId
+     * @param version
+     * @param peptides 标准库中的全部肽段,构建完成后即可释放
+     * @return
+     */
+    public static LibraryCoordSnapshot build(String libraryId, long version, List<PeptideDO> peptides) {
+        peptides.sort(Comparator.comparing(PeptideDO::getMz));
+        int size = peptides.size();
+        int fragmentCount = 0;
+        for (PeptideDO peptide : peptides) {
+            fragmentCount += count(peptide.getFragments()) + count(peptide.getDecoyFragments());
+        }
+
+        LibraryCoordSnapshot snapshot = new LibraryCoordSnapshot();
+        snapshot.libraryId = libraryId;
+        snapshot.version = version;
+        snapshot.size = size;
+        snapshot.mzs = new double[size];
+        snapshot.rts = new double[size];
+        snapshot.charges = new int[size];
+        snapshot.uniques = new boolean[size];
+        snapshot.ids = new String[size];
+        snapshot.peptideRefs = new String[size];
+        snapshot.sequences = new String[size];
+        snapshot.decoySequences = new String[size];
+        snapshot.proteins = new ArrayList<>(size);
+        snapshot.unimodMaps = new ArrayList<>(size);
+        snapshot.decoyUnimodMaps = new ArrayList<>(size);
+        snapshot.fragmentOffsets = new int[size + 1];
+        snapshot.decoyFragmentOffsets = new int[size];
+        snapshot.cutInfos = new String[fragmentCount];
+        snapshot.fragmentMzs = new double[fragmentCount];
+        snapshot.fragmentInts = new double[fragmentCount];
+        snapshot.fragmentCharges = new int[fragmentCount];
+        snapshot.fragmentPredicts = new byte[fragmentCount];
+        snapshot.annotations = new String[fragmentCount];
+        snapshot.fingerPrintOffsets = new int[size + 1];
+
+        List<float[]> fingerPrintList = new ArrayList<>(size);
+        int fragmentPos = 0;
+        for (int i = 0; i < size; i++) {
+            PeptideDO peptide = peptides.get(i);
+            snapshot.mzs[i] = peptide.getMz();
+            snapshot.rts[i] = peptide.getRt() == null ? Double.NaN : peptide.getRt();
+            snapshot.charges[i] = peptide.getCharge() == null ? 0 : peptide.getCharge();
+            snapshot.uniques[i] = peptide.getIsUnique() == null || peptide.getIsUnique();
+            snapshot.ids[i] = peptide.getId();
+            snapshot.peptideRefs[i] = peptide.getPeptideRef();
+            snapshot.sequences[i] = peptide.getSequence();
+            snapshot.decoySequences[i] = peptide.getDecoySequence();
+            snapshot.proteins.add(peptide.getProteins() == null ? null : new ArrayList<>(peptide.getProteins()));
+            snapshot.unimodMaps.add(peptide.getUnimodMap());
+            snapshot.decoyUnimodMaps.add(peptide.getDecoyUnimodMap());
+
+            snapshot.fragmentOffsets[i] = fragmentPos;
+            fragmentPos = snapshot.fill(peptide.getFragments(), fragmentPos);
+            snapshot.decoyFragmentOffsets[i] = fragmentPos;
+            fragmentPos = snapshot.fill(peptide.getDecoyFragments(), fragmentPos);
+
+            float[] fingerPrints = peptide.getFingerPrintsByte() == null ? new float[0] : dedupe(CompressUtil.transToFloat(peptide.getFingerPrintsByte()));
+            fingerPrintList.add(fingerPrints);
+            snapshot.fingerPrintOffsets[i + 1] = snapshot.fingerPrintOffsets[i] + fingerPrints.length;
+        }
+        snapshot.fragmentOffsets[size] = fragmentPos;
+        snapshot.fingerPrints = new float[snapshot.fingerPrintOffsets[size]];
+        for (int i = 0; i < size; i++) {
+            float[] fingerPrints = fingerPrintList.get(i);
+            System.arraycopy(fingerPrints, 0, snapshot.fingerPrints, snapshot.fingerPrintOffsets[i], fingerPrints.length);
+        }
+        return snapshot;
+    }
+
+    /**
+     * 将快照写入二进制文件,先写入临时文件再重命名,读取方不会看到写了一半的文件
+     *
+     * @param file
+     * @throws IOException
+     */
+    public void save(File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(size);
+            out.writeInt(cutInfos.length);
+            out.writeInt(fingerPrints.length);
+            writeString(out, libraryId);
+            out.writeLong(modified);
+            for (int i = 0; i < size; i++) {
+                out.writeDouble(mzs[i]);
+            }
+            for (int i = 0; i < size; i++) {
+                out.writeDouble(rts[i]);
+            }
+            for (int i = 0; i < size; i++) {
+                out.writeInt(charges[i]);
+            }
+            for (int i = 0; i < size; i++) {
+                out.writeByte(uniques[i] ? 1 : 0);
+            }
+            writeInts(out, fragmentOffsets);
+            writeInts(out, decoyFragmentOffsets);
+            writeInts(out, fragmentCharges);
+            writeInts(out, fingerPrintOffsets);
+            out.write(fragmentPredicts);
+            for (double mz : fragmentMzs) {
+                out.writeDouble(mz);
+            }
+            for (double intensity : fragmentInts) {
+                out.writeDouble(intensity);
+            }
+            for (float fingerPrint : fingerPrints) {
+                out.writeFloat(fingerPrint);
+            }
+            for (int i = 0; i < size; i++) {
+                writeString(out, ids[i]);
+                writeString(out, peptideRefs[i]);
+                writeString(out, sequences[i]);
+                writeString(out, decoySequences[i]);
+                writeStrings(out, proteins.get(i));
+                writeUnimodMap(out, unimodMaps.get(i));
+                writeUnimodMap(out, decoyUnimodMaps.get(i));
+            }
+            for (String cutInfo : cutInfos) {
+                writeString(out, cutInfo);
+            }
+            for (String annotation : annotations) {
+                writeString(out, annotation);
+            }
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 通过内存映射读取save写入的快照文件,数值列整块拷贝,cutInfo在快照内部复用同一个字符串实例
+     *
+     * @param file
+     * @param version 读取以后快照使用的版本号
+     * @return
+     * @throws IOException 文件不存在,格式不匹配或者内容不完整
+     */
+    public static LibraryCoordSnapshot load(File file, long version) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                throw new IOException("Unknown Coord File Format:" + file.getPath());
+            }
+            LibraryCoordSnapshot snapshot = new LibraryCoordSnapshot();
+            snapshot.version = version;
+            int size = buffer.getInt();
+            int fragmentCount = buffer.getInt();
+            int fingerPrintCount = buffer.getInt();
+            snapshot.size = size;
+            snapshot.libraryId = readString(buffer);
+            snapshot.modified = buffer.getLong();
+            snapshot.mzs = readDoubles(buffer, size);
+            snapshot.rts = readDoubles(buffer, size);
+            snapshot.charges = readInts(buffer, size);
+            snapshot.uniques = new boolean[size];
+            for (int i = 0; i < size; i++) {
+                snapshot.uniques[i] = buffer.get() == 1;
+            }
+            snapshot.fragmentOffsets = readInts(buffer, size + 1);
+            snapshot.decoyFragmentOffsets = readInts(buffer, size);
+            snapshot.fragmentCharges = readInts(buffer, fragmentCount);
+            snapshot.fingerPrintOffsets = readInts(buffer, size + 1);
+            snapshot.fragmentPredicts = new byte[fragmentCount];
+            buffer.get(snapshot.fragmentPredicts);
+            snapshot.fragmentMzs = readDoubles(buffer, fragmentCount);
+            snapshot.fragmentInts = readDoubles(buffer, fragmentCount);
+            snapshot.fingerPrints = new float[fingerPrintCount];
+            buffer.asFloatBuffer().get(snapshot.fingerPrints);
+            buffer.position(buffer.position() + fingerPrintCount * Float.BYTES);
+
+            snapshot.ids = new String[size];
+            snapshot.peptideRefs = new String[size];
+            snapshot.sequences = new String[size];
+            snapshot.decoySequences = new String[size];
+            snapshot.proteins = new ArrayList<>(size);
+            snapshot.unimodMaps = new ArrayList<>(size);
+            snapshot.decoyUnimodMaps = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                snapshot.ids[i] = readString(buffer);
+                snapshot.peptideRefs[i] = readString(buffer);
+                snapshot.sequences[i] = readString(buffer);
+                snapshot.decoySequences[i] = readString(buffer);
+                snapshot.proteins.add(readStrings(buffer));
+                snapshot.unimodMaps.add(readUnimodMap(buffer));
+                snapshot.decoyUnimodMaps.add(readUnimodMap(buffer));
+            }
+            snapshot.cutInfos = new String[fragmentCount];
+            HashMap<String, String> cutInfoPool = new HashMap<>();
+            for (int i = 0; i < fragmentCount; i++) {
+                String cutInfo = readString(buffer);
+                snapshot.cutInfos[i] = cutInfo == null ? null : cutInfoPool.computeIfAbsent(cutInfo, k -> k);
+            }
+            snapshot.annotations = new String[fragmentCount];
+            for (int i = 0; i < fragmentCount; i++) {
+                String annotation = readString(buffer);
+                snapshot.annotations[i] = annotation == null ? null : cutInfoPool.computeIfAbsent(annotation, k -> k);
+            }
+            return snapshot;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+            throw new IOException("Incomplete Coord File:" + file.getPath(), e);
+        }
+    }
+
+    /**
+     * @param mzStart
+     * @return 第一个mz大于等于mzStart的肽段编号
+     */
+    public int from(double mzStart) {
+        int low = 0, high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mzs[mid] >= mzStart) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 与数据库查询的条件一致,mz区间为左闭右开
+     *
+     * @param mzEnd
+     * @return 第一个mz大于等于mzEnd的肽段编号
+     */
+    public int to(double mzEnd) {
+        return from(mzEnd);
+    }
+
+    /**
+     * 生成第index个肽段的坐标
+     *
+     * @param index
+     * @param maxFragments 真碎片数目超过maxFragments时,真伪碎片都只保留库中排在前面的maxFragments个,小于等于0时保留全部碎片
+     * @return
+     */
+    public PeptideCoord toCoord(int index, int maxFragments) {
+        PeptideCoord coord = new PeptideCoord();
+        coord.setId(ids[index]);
+        coord.setPeptideRef(peptideRefs[index]);
+        coord.setProteins(proteins.get(index) == null ? null : new ArrayList<>(proteins.get(index)));
+        coord.setSequence(sequences[index]);
+        coord.setCharge(charges[index] == 0 ? null : charges[index]);
+        coord.setMz(mzs[index]);
+        coord.setIsUnique(uniques[index]);
+        coord.setRt(Double.isNaN(rts[index]) ? null : rts[index]);
+        coord.setUnimodMap(unimodMaps.get(index));
+        coord.setDecoySequence(decoySequences[index]);
+        coord.setDecoyUnimodMap(decoyUnimodMaps.get(index));
+        int limit = Integer.MAX_VALUE;
+        if (maxFragments > 0 && decoyFragmentOffsets[index] - fragmentOffsets[index] > maxFragments) {
+            limit = maxFragments;
+        }
+        coord.setFragments(fragments(fragmentOffsets[index], decoyFragmentOffsets[index], limit));
+        coord.setDecoyFragments(fragments(decoyFragmentOffsets[index], fragmentOffsets[index + 1], limit));
+        return coord;
+    }
+
+    public int sequenceLength(int index) {
+        return sequences[index] == null ? 0 : sequences[index].length();
+    }
+
+    /**
+     * 两个肽段共有的指纹数目是否达到similarity,与PeptideUtil.similar的判定规则一致
+     */
+    public boolean similar(int a, int b, int similarity) {
+        int i = fingerPrintOffsets[a], iEnd = fingerPrintOffsets[a + 1];
+        int j = fingerPrintOffsets[b], jEnd = fingerPrintOffsets[b + 1];
+        int count = 0;
+        while (i < iEnd && j < jEnd) {
+            int compare = Float.compare(fingerPrints[i], fingerPrints[j]);
+            if (compare == 0) {
+                count++;
+                i++;
+                j++;
+            } else if (compare < 0) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return count >= similarity;
+    }
+
+    /**
+     * 估算的内存占用(字节),不包含字符串与修饰Map
+     */
+    public long bytes() {
+        return (long) size * (Double.BYTES * 2 + Integer.BYTES * 4 + 1)
+                + (long) cutInfos.length * (Double.BYTES * 2 + Integer.BYTES + 1)
+                + (long) fingerPrints.length * Float.BYTES;
+    }
+
+    private List<FragmentInfo> fragments(int from, int to, int limit) {
+        to = from + Math.min(limit, to - from);
+        List<FragmentInfo> fragments = new ArrayList<>(to - from);
+        for (int pos = from; pos < to; pos++) {
+            FragmentInfo fragment = new FragmentInfo(cutInfos[pos], Double.isNaN(fragmentMzs[pos]) ? null : fragmentMzs[pos],
+                    Double.isNaN(fragmentInts[pos]) ? null : fragmentInts[pos], fragmentCharges[pos] == 0 ? null : fragmentCharges[pos]);
+            fragment.setPredict(fragmentPredicts[pos] == 0 ? null : fragmentPredicts[pos] == 2);
+            fragment.setAnnotations(annotations[pos]);
+            fragments.add(fragment);
+        }
+        return fragments;
+    }
+
+    private int fill(List<FragmentInfo> fragments, int pos) {
+        if (fragments == null) {
+            return pos;
+        }
+        for (FragmentInfo fragment : fragments) {
+            cutInfos[pos] = fragment.getCutInfo();
+            fragmentMzs[pos] = fragment.getMz() == null ? Double.NaN : fragment.getMz();
+            fragmentInts[pos] = fragment.getIntensity() == null ? Double.NaN : fragment.getIntensity();
+            fragmentCharges[pos] = fragment.getCharge() == null ? 0 : fragment.getCharge();
+            fragmentPredicts[pos] = (byte) (fragment.getPredict() == null ? 0 : fragment.getPredict() ? 2 : 1);
+            annotations[pos] = fragment.getAnnotations();
+            pos++;
+        }
+        return pos;
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    /**
+     * 长度为-1表示null
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> values) throws IOException {
+        if (values == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(values.size());
+        for (String value : values) {
+            writeString(out, value);
+        }
+    }
+
+    private static void writeUnimodMap(DataOutputStream out, HashMap<Integer, String> unimodMap) throws IOException {
+        if (unimodMap == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(unimodMap.size());
+        for (Map.Entry<Integer, String> entry : unimodMap.entrySet()) {
+            out.writeInt(entry.getKey());
+            writeString(out, entry.getValue());
+        }
+    }
+
+    private static int[] readInts(ByteBuffer buffer, int length) {
+        int[] values = new int[length];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + length * Integer.BYTES);
+        return values;
+    }
+
+    private static double[] readDoubles(ByteBuffer buffer, int length) {
+        double[] values = new double[length];
+        buffer.asDoubleBuffer().get(values);
+        buffer.position(buffer.position() + length * Double.BYTES);
+        return values;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static List<String> readStrings(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        List<String> values = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            values.add(readString(buffer));
+        }
+        return values;
+    }
+
+    private static HashMap<Integer, String> readUnimodMap(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        HashMap<Integer, String> unimodMap = new HashMap<>();
+        for (int i = 0; i < length; i++) {
+            int position = buffer.getInt();
+            unimodMap.put(position, readString(buffer));
+        }
+        return unimodMap;
+    }
+
+    private static int count(List<FragmentInfo> fragments) {
+        return fragments == null ? 0 : fragments.size();
+    }
+
+    private static float[] dedupe(Float[] values) {
+        if (values.length == 0) {
+            return new float[0];
+        }
+        float[] sorted = new float[values.length];
+        for (int i = 0; i < values.length; i++) {
+            sorted[i] = values[i];
+        }
+        Arrays.sort(sorted);
+        int length = 1;
+        for (int i = 1; i < sorted.length; i++) {
+            if (Float.compare(sorted[i], sorted[length - 1]) != 0) {
+                sorted[length++] = sorted[i];
+            }
+        }
+        return Arrays.copyOf(sorted, length);
+    }
+}
@@ -2,6 +2,7 @@ package net.csibio.propro.domain.bean.peptide;
 
 import lombok.Data;
 import net.csibio.propro.domain.db.PeptideDO;
+import org.springframework.data.annotation.Transient;
 
 import java.util.HashMap;
 import java.util.List;
@@ -77,6 +78,21 @@ public class PeptideCoord {
      */
     double rtEnd;
 
+    /**
+     * 真伪肽段各自的理论b,y离子序列(去重且从小到大排列),在计算离子数目时懒加载,不存储到数据库中
+     */
+    @Transient
+    double[] byLadder;
+    @Transient
+    double[] decoyByLadder;
+
+    /**
+     * 真伪肽段各自的碎片表,在打分时懒加载,碎片列表被替换以后会自动重建,不存储到数据库中
+     */
+    @Transient
+    FragmentTable fragmentTable;
+    @Transient
+    FragmentTable decoyFragmentTable;
 
     public PeptideCoord() {
     }
@@ -109,6 +125,32 @@ public class PeptideCoord {
         return decoy ? decoySequence : sequence;
     }
 
+    public double[] getByLadder() {
+        return decoy ? decoyByLadder : byLadder;
+    }
+
+    public void setByLadder(double[] ladder) {
+        if (decoy) {
+            this.decoyByLadder = ladder;
+        } else {
+            this.byLadder = ladder;
+        }
+    }
+
+    public FragmentTable getFragmentTable() {
+        List<FragmentInfo> infos = getFragments();
+        FragmentTable table = decoy ? decoyFragmentTable : fragmentTable;
+        if (table == null || table.getSource() != infos) {
+            table = FragmentTable.build(infos);
+            if (decoy) {
+                this.decoyFragmentTable = table;
+            } else {
+                this.fragmentTable = table;
+            }
+        }
+        return table;
+    }
+
     //根据自身构建IntensityMap,key为cutInfo,value为对应的Intensity值
     public Map<String, Float> buildIntensityMap() {
 
@@ -2,12 +2,13 @@ package net.csibio.propro.domain.bean.score;
 
 import lombok.Data;
 import net.csibio.propro.algorithm.score.ScoreType;
+import net.csibio.propro.domain.bean.peptide.FragmentTable;
+import org.apache.commons.lang3.ArrayUtils;
 import org.springframework.data.annotation.Transient;
 
 import java.io.Serializable;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 @Data
 public class PeakGroup extends BaseScores implements Serializable {
@@ -45,15 +46,19 @@ public class PeakGroup extends BaseScores implements Serializable {
     @Transient
     Double[] ionHullRt;     //在算法选定的峰形范围内的Rt和Intensity对
     @Transient
-    HashMap<String, Double[]> ionHullInt;
-    @Transient
     Double[] ms1Ints;
     @Transient
     Double[] selfInts;
     @Transient
-    HashMap<String, Double> ionIntensity; //各个cutInfo在该peakGroup范围内的intensity总和
+    FragmentTable fragmentTable; //肽段的碎片表
+    @Transient
+    int[] ions; //提取到信号的碎片在碎片表中的编号,从小到大排列,以下三个数组均与之一一对应
+    @Transient
+    double[][] ionHullInts; //各个碎片在算法选定的峰形范围内的Intensity
+    @Transient
+    double[] ionInts; //各个碎片在该peakGroup范围内的intensity总和
     @Transient
-    HashMap<String, Double> apexIonsIntensity; //各个cutInfo在apex处的intensity
+    double[] apexIonInts; //各个碎片在apex处的intensity
     @Transient
     Boolean notMine = false;
 
@@ -80,20 +85,58 @@ public class PeakGroup extends BaseScores implements Serializable {
      * @return
      */
     public boolean base() {
-        if (ionIntensity != null) {
-            AtomicBoolean allHit = new AtomicBoolean(true);
-            ionIntensity.values().forEach(value -> {
+        if (ionInts != null) {
+            for (double value : ionInts) {
                 if (value == 0) {
-                    allHit.set(false);
+                    return false;
                 }
-            });
-            if (!allHit.get()) {
-                return false;
             }
         }
         return true;
     }
 
+    public int ionSize() {
+        return ions == null ? 0 : ions.length;
+    }
+
+    /**
+     * @param cutInfo
+     * @return 碎片在ions中的位置, 不存在时返回-1
+     */
+    public int slotOf(String cutInfo) {
+        if (fragmentTable == null || ions == null) {
+            return -1;
+        }
+        int index = fragmentTable.indexOf(cutInfo);
+        if (index == -1) {
+            return -1;
+        }
+        int k = Arrays.binarySearch(ions, index);
+        return k < 0 ? -1 : k;
+    }
+
+    public String getIonCutInfo(int slot) {
+        return fragmentTable.getCutInfo(ions[slot]);
+    }
+
+    /**
+     * @param cutInfo
+     * @return 碎片在该peakGroup范围内的intensity总和, 不存在时返回null
+     */
+    public Double getIonInt(String cutInfo) {
+        int k = slotOf(cutInfo);
+        return k == -1 ? null : ionInts[k];
+    }
+
+    /**
+     * @param cutInfo
+     * @return 碎片在峰形范围内的Intensity, 不存在时返回null
+     */
+    public double[] getIonHullInt(String cutInfo) {
+        int k = slotOf(cutInfo);
+        return k == -1 ? null : ionHullInts[k];
+    }
+
     public boolean getFine() {
         if (!base()) {
             return false;
@@ -145,17 +188,27 @@ public class PeakGroup extends BaseScores implements Serializable {
     }
 
     public void remove(String cutInfo) {
-        this.getIonIntensity().remove(cutInfo);
-        this.getIonHullInt().remove(cutInfo);
-        this.getApexIonsIntensity().remove(cutInfo);
+        removeSlot(slotOf(cutInfo));
     }
 
     public void remove(List<String> cutInfos) {
         for (String cutInfo : cutInfos) {
-            this.setIntensitySum(this.getIntensitySum() - this.getIonIntensity().get(cutInfo));
-            this.getIonIntensity().remove(cutInfo);
-            this.getIonHullInt().remove(cutInfo);
-            this.getApexIonsIntensity().remove(cutInfo);
+            int k = slotOf(cutInfo);
+            if (k == -1) {
+                continue;
+            }
+            this.setIntensitySum(this.getIntensitySum() - ionInts[k]);
+            removeSlot(k);
+        }
+    }
+
+    private void removeSlot(int k) {
+        if (k == -1) {
+            return;
         }
+        this.ions = ArrayUtils.remove(ions, k);
+        this.ionHullInts = ArrayUtils.remove(ionHullInts, k);
+        this.ionInts = ArrayUtils.remove(ionInts, k);
+        this.apexIonInts = ArrayUtils.remove(apexIonInts, k);
     }
 }
@@ -1,7 +1,10 @@
 package net.csibio.propro.domain.bean.score;
 
 import lombok.Data;
+import net.csibio.propro.domain.bean.peptide.FragmentTable;
+import org.apache.commons.lang3.ArrayUtils;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 
@@ -26,6 +29,21 @@ public class PeakGroupListWrapper {
      */
     HashMap<String, Double> normIntMap;
 
+    /**
+     * 肽段的碎片表
+     */
+    FragmentTable fragmentTable;
+
+    /**
+     * 提取到信号的碎片在碎片表中的编号,从小到大排列
+     */
+    int[] ions;
+
+    /**
+     * 归一化的库强度,与ions一一对应
+     */
+    double[] normedLibInts;
+
     public PeakGroupListWrapper() {
     }
 
@@ -38,4 +56,35 @@ public class PeakGroupListWrapper {
         this.list = list;
         this.normIntMap = normIntMap;
     }
+
+    public PeakGroupListWrapper(List<PeakGroup> list, FragmentTable fragmentTable, int[] ions) {
+        this.found = true;
+        this.list = list;
+        this.fragmentTable = fragmentTable;
+        this.ions = ions;
+        this.normedLibInts = new double[ions.length];
+        this.normIntMap = new HashMap<>();
+        for (int k = 0; k < ions.length; k++) {
+            normedLibInts[k] = fragmentTable.getLibInts()[ions[k]] / fragmentTable.getLibIntSum();
+            normIntMap.put(fragmentTable.getCutInfo(ions[k]), normedLibInts[k]);
+        }
+    }
+
+    /**
+     * 移除某一个碎片,同时从所有峰组中移除
+     *
+     * @param cutInfo
+     */
+    public void remove(String cutInfo) {
+        normIntMap.remove(cutInfo);
+        int index = fragmentTable == null ? -1 : fragmentTable.indexOf(cutInfo);
+        int k = index == -1 ? -1 : Arrays.binarySearch(ions, index);
+        if (k >= 0) {
+            ions = ArrayUtils.remove(ions, k);
+            normedLibInts = ArrayUtils.remove(normedLibInts, k);
+        }
+        for (PeakGroup peakGroup : list) {
+            peakGroup.remove(cutInfo);
+        }
+    }
 }
@@ -0,0 +1,31 @@
+package net.csibio.propro.domain.bean.task;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 增量读取的任务日志,前端以next作为下一次请求的from,只获取新增的日志
+ */
+@Data
+public class TaskLogTail {
+
+    String id;
+
+    String status;
+
+    Long totalCost;
+
+    /**
+     * 本次返回的第一条日志的编号
+     */
+    int from;
+
+    /**
+     * 下一次请求时使用的日志编号
+     */
+    int next;
+
+    List<TaskLog> logs = new ArrayList<>();
+}
@@ -3,6 +3,7 @@ package net.csibio.propro.domain.db;
 import lombok.Data;
 import net.csibio.aird.bean.WindowRange;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
@@ -59,6 +60,19 @@ public class BlockIndexDO {
      */
     String features;
 
+    //以下为nums,rts,mzs与ints的二进制压缩存储,写入数据库前由BlockIndexUtil.compress生成,此时对应的列表为空.
+    //字段为空时为旧版本直接存储列表的格式.读取以后需要调用BlockIndexUtil.decompress还原为列表
+    byte[] numsBytes;
+    byte[] rtsBytes;
+    byte[] mzsBytes;
+    byte[] intsBytes;
+
+    /**
+     * 每一张光谱在文件中的位置,第i张光谱位于[pointers[i], pointers[i+1]),不写入数据库,由fetchPointers在首次使用时计算
+     */
+    @Transient
+    volatile long[] pointers;
+
     public void init() {
         startPtr = 0L;
         endPtr = 0L;
@@ -67,4 +81,23 @@ public class BlockIndexDO {
         mzs = new ArrayList<>();
         ints = new ArrayList<>();
     }
+
+    /**
+     * 光谱块中每一张光谱的mz与intensity首尾相接地存放,第i张光谱的开始位置为startPtr加上之前所有光谱的mzs与ints之和
+     * 计算结果保存在本对象中,同一个光谱块多次按编号截取时不需要重复累加
+     *
+     * @return 长度为rts.size()+1的数组, 最后一个元素为最后一张光谱的结束位置
+     */
+    public long[] fetchPointers() {
+        long[] result = pointers;
+        if (result == null || result.length != mzs.size() + 1) {
+            result = new long[mzs.size() + 1];
+            result[0] = startPtr;
+            for (int i = 0; i < mzs.size(); i++) {
+                result[i + 1] = result[i] + mzs.get(i) + ints.get(i);
+            }
+            pointers = result;
+        }
+        return result;
+    }
 }
@@ -62,6 +62,11 @@ public class DataDO extends BaseDO {
     //压缩后的intensityMap,对应intensityMap
     Map<String, byte[]> intMapBytes;
 
+    //谱图数组的编码格式,参见DataCodec,为空时为旧版本的ZLIB格式
+    Integer codec;
+    //SHUFFLE格式下所有谱图数组打包压缩后的数据,此时rtBytes,ms1IntsBytes,selfIntsBytes,ionsLowBytes,ionsHighBytes与intMapBytes均为空
+    byte[] xicBytes;
+
     //*******************非数据库字段,仅在计算过程中产生*******************************
     @Transient
     float[] rtArray;  //排序后的rt
@@ -7,6 +7,7 @@ import net.csibio.propro.constants.enums.TaskTemplate;
 import net.csibio.propro.domain.BaseDO;
 import net.csibio.propro.domain.bean.task.TaskLog;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
@@ -47,6 +48,12 @@ public class TaskDO extends BaseDO {
 
     String features;
 
+    /**
+     * 已经写入数据库的日志条数,TaskService据此只追加新增的日志.为null时表示未知,下一次更新将整体写入
+     */
+    @Transient
+    Integer flushedLogs;
+
     public TaskDO() {
     }
 
@@ -63,7 +70,7 @@ public class TaskDO extends BaseDO {
         runIds.add(runId);
     }
 
-    public TaskDO addLog(String content) {
+    public synchronized TaskDO addLog(String content) {
         if (logs == null) {
             if (status == null || taskTemplate == null) {
                 this.taskTemplate = TaskTemplate.DEFAULT.getName();
@@ -80,7 +87,7 @@ public class TaskDO extends BaseDO {
         return this;
     }
 
-    public TaskDO addLog(List<String> contents) {
+    public synchronized TaskDO addLog(List<String> contents) {
         if (logs == null) {
             logs = new ArrayList<>();
             logs.add(new TaskLog("Task Started"));
@@ -94,7 +101,7 @@ public class TaskDO extends BaseDO {
         return this;
     }
 
-    public TaskDO start() {
+    public synchronized TaskDO start() {
         if (logs == null || logs.size() == 0) {
             logs = new ArrayList<>();
             logs.add(new TaskLog("Task Started"));
@@ -8,6 +8,7 @@ import net.csibio.propro.exceptions.XException;
 
 import java.util.HashMap;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface BaseMultiService<T, Q extends PageQuery> {
 
@@ -86,6 +87,26 @@ public interface BaseMultiService<T, Q extends PageQuery> {
         }
     }
 
+    /**
+     * 批量无序插入,重复键视为已写入,可以安全地重试
+     *
+     * @param tList
+     * @param routerId
+     * @return 实际新插入的文档数目
+     */
+    default Result<Integer> bulkInsert(List<T> tList, String routerId) {
+        try {
+            for (T t : tList) {
+                beforeInsert(t, routerId);
+            }
+            return Result.OK(getBaseDAO().bulkInsert(tList, routerId));
+        } catch (XException xe) {
+            return Result.Error(xe.getResultCode());
+        } catch (Exception e) {
+            return Result.Error(ResultCode.INSERT_ERROR.getCode(), e.getMessage());
+        }
+    }
+
     default Result<List<T>> update(List<T> tList, String routerId) {
         try {
             for (T t : tList) {
@@ -162,6 +183,10 @@ public interface BaseMultiService<T, Q extends PageQuery> {
         return getBaseDAO().getAll(q, clazz, routerId);
     }
 
+    default <K> void stream(Q q, Class<K> clazz, String routerId, Consumer<K> consumer, String... fields) {
+        getBaseDAO().stream(q, clazz, routerId, consumer, fields);
+    }
+
     default long count(Q q, String routerId) {
         return getBaseDAO().count(q, routerId);
     }
@@ -1,6 +1,7 @@
 package net.csibio.propro.service;
 
 import net.csibio.aird.bean.MzIntensityPairs;
+import net.csibio.propro.domain.Result;
 import net.csibio.propro.domain.bean.common.AnyPair;
 import net.csibio.propro.domain.db.BlockIndexDO;
 import net.csibio.propro.domain.query.BlockIndexQuery;
@@ -21,4 +22,12 @@ public interface BlockIndexService extends BaseService<BlockIndexDO, BlockIndexQ
     BlockIndexDO getMS2(String runId, Double mz);
 
     List<BlockIndexDO> getLinkedBlockIndex(String runId, Double mz, Double deltaMz, Integer collectedNumber);
+
+    /**
+     * 将run中仍以列表格式存储的光谱块索引转换为二进制压缩格式
+     *
+     * @param runId
+     * @return 转换的光谱块数目
+     */
+    Result<Integer> migrate(String runId);
 }
@@ -1,17 +1,42 @@
 package net.csibio.propro.service;
 
 import net.csibio.propro.domain.Result;
+import net.csibio.propro.domain.bean.learner.ScoreMatrix;
 import net.csibio.propro.domain.db.DataDO;
+import net.csibio.propro.domain.db.DataSumDO;
 import net.csibio.propro.domain.db.PeptideDO;
 import net.csibio.propro.domain.db.RunDO;
 import net.csibio.propro.domain.query.DataQuery;
 import net.csibio.propro.domain.vo.RunDataVO;
 import net.csibio.propro.exceptions.XException;
 
+import java.util.List;
+
 public interface DataService extends BaseMultiService<DataDO, DataQuery> {
 
     RunDataVO getDataFromDB(String projectId, String runId, String overviewId, String peptideRef);
 
+    /**
+     * 为一页DataSum批量组装列表数据,所有对应的Data通过一次in查询读取,并且只读取BaseData中的字段
+     * 列表中不包含谱图,谱图在需要时通过getDataFromDB单独读取
+     *
+     * @param runId
+     * @param dataSumList 当前页的DataSum,返回结果与其顺序一致
+     * @param projectId
+     * @return
+     */
+    List<RunDataVO> getRunDataList(String runId, List<DataSumDO> dataSumList, String projectId);
+
+    /**
+     * 以游标方式读取某一个overview下所有待鉴定的打分结果,逐条压缩进打分矩阵
+     *
+     * @param overviewId
+     * @param scoreTypes 打分矩阵的列,与打分时使用的scoreTypes一致
+     * @param projectId
+     * @return
+     */
+    ScoreMatrix getScoreMatrix(String overviewId, List<String> scoreTypes, String projectId);
+
     /**
      * 根据一个肽段生成其预测 兄弟(2电)肽段并且构建其EIC谱图
      * 其中预测RT时间会根据其在库中的兄弟肽段来进行推测
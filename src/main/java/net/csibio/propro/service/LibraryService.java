@@ -55,10 +55,12 @@ public interface LibraryService extends BaseService<LibraryDO, LibraryQuery> {
 
     /**
      * 为库下所有的肽段生成对应的伪肽段,同时清除已经生成的伪肽段
+     * 肽段按批次读取,每一批次在打分线程池中并行生成后批量写回,各阶段的耗时记录在taskDO中
      *
      * @param library   需要重新生成伪肽段的库
      * @param generator 伪肽段生成算法
+     * @param taskDO    任务,可以为null
      * @return
      */
-    Result generateDecoys(LibraryDO library, String generator);
+    Result generateDecoys(LibraryDO library, String generator, TaskDO taskDO);
 }
@@ -21,6 +21,14 @@ public interface PeptideService extends BaseService<PeptideDO, PeptideQuery> {
 
     Result updateDecoyInfos(List<PeptideDO> peptides);
 
+    /**
+     * 清除标准库下所有肽段的伪肽段信息
+     *
+     * @param libraryId
+     * @return 被修改的肽段数目
+     */
+    Result<Long> clearDecoys(String libraryId);
+
     Result removeAllByLibraryId(String libraryId);
 
     /**
@@ -1,11 +1,13 @@
 package net.csibio.propro.service;
 
 import net.csibio.propro.domain.bean.common.FloatPairs;
+import net.csibio.propro.domain.bean.data.SpectrumBlock;
 import net.csibio.propro.domain.bean.run.RunIrt;
 import net.csibio.propro.domain.db.BlockIndexDO;
 import net.csibio.propro.domain.db.RunDO;
 import net.csibio.propro.domain.db.TaskDO;
 import net.csibio.propro.domain.query.RunQuery;
+import net.csibio.propro.exceptions.XException;
 
 import java.util.List;
 
@@ -36,4 +38,19 @@ public interface RunService extends BaseService<RunDO, RunQuery> {
      * @return
      */
     FloatPairs getSpectrum(RunDO run, BlockIndexDO blockIndex, Float rt);
+
+    /**
+     * 读取光谱块中rt位于[rtStart, rtEnd]范围内的光谱,用于单个肽段的实时提取
+     * 光谱块不在共享缓存中时只解码范围内的光谱.mzStart与mzEnd不为空时只保留该mz范围内的数据点,
+     * 在该范围内进行的XIC累加结果与完整的光谱一致
+     *
+     * @param run
+     * @param blockIndex
+     * @param rtStart
+     * @param rtEnd
+     * @param mzStart    可以为空
+     * @param mzEnd      可以为空
+     * @return
+     */
+    SpectrumBlock getSpectra(RunDO run, BlockIndexDO blockIndex, double rtStart, double rtEnd, Double mzStart, Double mzEnd) throws XException;
 }
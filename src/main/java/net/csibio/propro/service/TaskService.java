@@ -1,5 +1,7 @@
 package net.csibio.propro.service;
 
+import net.csibio.propro.domain.Result;
+import net.csibio.propro.domain.bean.task.TaskLogTail;
 import net.csibio.propro.domain.db.TaskDO;
 import net.csibio.propro.domain.query.TaskQuery;
 
@@ -8,4 +10,18 @@ import net.csibio.propro.domain.query.TaskQuery;
  * Time: 2018-08-15 10:05
  */
 public interface TaskService extends BaseService<TaskDO, TaskQuery>{
+
+    /**
+     * 增量读取任务日志,读取前会先写入该任务尚在缓冲区中的更新
+     *
+     * @param taskId
+     * @param from   第一条需要读取的日志的编号
+     * @return
+     */
+    Result<TaskLogTail> tail(String taskId, int from);
+
+    /**
+     * 立即写入缓冲区中所有尚未写入数据库的任务更新
+     */
+    void flush();
 }
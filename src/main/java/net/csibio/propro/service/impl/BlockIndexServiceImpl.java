@@ -1,16 +1,18 @@
 package net.csibio.propro.service.impl;
 
 import net.csibio.aird.bean.MzIntensityPairs;
+import net.csibio.propro.algorithm.extract.BlockIndexRegistry;
 import net.csibio.propro.constants.enums.ResultCode;
 import net.csibio.propro.dao.BaseDAO;
 import net.csibio.propro.dao.BlockIndexDAO;
+import net.csibio.propro.domain.Result;
 import net.csibio.propro.domain.bean.common.AnyPair;
+import net.csibio.propro.domain.bean.data.RunBlockIndex;
 import net.csibio.propro.domain.db.BlockIndexDO;
 import net.csibio.propro.domain.query.BlockIndexQuery;
 import net.csibio.propro.exceptions.XException;
 import net.csibio.propro.service.BlockIndexService;
-import net.csibio.propro.utils.ArrayUtil;
-import net.csibio.propro.utils.ConvolutionUtil;
+import net.csibio.propro.utils.BlockIndexUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -23,51 +25,65 @@ public class BlockIndexServiceImpl implements BlockIndexService {
 
     @Autowired
     BlockIndexDAO blockIndexDAO;
+    @Autowired
+    BlockIndexRegistry blockIndexRegistry;
 
+    /**
+     * 返回的BlockIndexDO来自共享的光谱块索引注册表,调用方只能读取
+     */
     @Override
     public List<BlockIndexDO> getAllByRunId(String runId) {
-        BlockIndexQuery query = new BlockIndexQuery();
-        query.setRunId(runId);
-        return blockIndexDAO.getAll(query);
+        return blockIndexRegistry.get(runId).getAll();
     }
 
+    /**
+     * 按照窗口的开始mz从小到大排列
+     */
     @Override
     public List<BlockIndexDO> getAllMS2ByRunId(String runId) {
-        BlockIndexQuery query = new BlockIndexQuery();
-        query.setRunId(runId);
-        query.setLevel(2);
-        List<BlockIndexDO> indexList = blockIndexDAO.getAll(query);
-        indexList = indexList.stream().filter(b -> b.getRange() != null).toList();
-        return indexList;
+        return blockIndexRegistry.get(runId).getMs2List();
     }
 
+    /**
+     * 返回rt所在的相邻两个光谱的rt:第一个不小于rt的光谱及其前一个光谱.rt不大于第一个光谱时返回前两个光谱,
+     * rt不小于最后一个光谱时两者均为最后一个光谱
+     */
     @Override
     public AnyPair<Float, Float> getNearestSpectrumByRt(TreeMap<Float, MzIntensityPairs> rtMap, Double rt) {
-        float[] fArray = ArrayUtil.toPrimitive(rtMap.keySet());
-        int rightIndex = ConvolutionUtil.findRightIndex(fArray, rt.floatValue());
-        int finalIndex = rightIndex;
-        if (rightIndex == -1) {
-            //Max value in fArray is less than rt. The max index of fArray is the nearest index.
-            finalIndex = fArray.length - 1;
-            return new AnyPair<Float, Float>(fArray[finalIndex], fArray[finalIndex]);
-        } else if (rightIndex != 0 && (fArray[rightIndex] - rt) > (fArray[rightIndex - 1] - rt)) {
-            //if rightIndex == 0, finalIndex == 0
-            finalIndex = rightIndex - 1;
+        //直接在TreeMap上导航,无需每次都将全部rt复制为数组
+        float target = rt.floatValue();
+        Float last = rtMap.lastKey();
+        if (target >= last) {
+            return new AnyPair<Float, Float>(last, last);
+        }
+        Float right = rtMap.ceilingKey(target);
+        Float left = rtMap.lowerKey(right);
+        if (left == null) {
+            return new AnyPair<Float, Float>(right, rtMap.higherKey(right));
+        }
+        return new AnyPair<Float, Float>(left, right);
+    }
+
+    /**
+     * 单个读取的光谱块索引不经过注册表,读取以后解码为列表
+     */
+    @Override
+    public BlockIndexDO getById(String id) {
+        BlockIndexDO blockIndex = blockIndexDAO.getById(id);
+        if (blockIndex != null) {
+            BlockIndexUtil.decompress(blockIndex);
         }
-        return new AnyPair<Float, Float>(fArray[finalIndex], fArray[finalIndex + 1]);
+        return blockIndex;
     }
 
     @Override
     public BlockIndexDO getMS1(String runId) {
-        BlockIndexQuery query = new BlockIndexQuery(runId, 1);
-        return blockIndexDAO.getOne(query);
+        return blockIndexRegistry.get(runId).getMs1();
     }
 
     @Override
     public BlockIndexDO getMS2(String runId, Double mz) {
-        BlockIndexQuery query = new BlockIndexQuery(runId, 2);
-        query.setMz(mz);
-        return blockIndexDAO.getOne(query);
+        return blockIndexRegistry.get(runId).getMS2(mz);
     }
 
     /**
@@ -82,15 +98,16 @@ public class BlockIndexServiceImpl implements BlockIndexService {
      */
     @Override
     public List<BlockIndexDO> getLinkedBlockIndex(String runId, Double mz, Double deltaMz, Integer collectedNumber) {
+        RunBlockIndex blockIndex = blockIndexRegistry.get(runId);
         List<BlockIndexDO> indexList = new ArrayList<>();
-        BlockIndexDO index0 = getMS2(runId, mz);
+        BlockIndexDO index0 = blockIndex.getMS2(mz);
         indexList.add(index0);
         for (int i = 1; i <= collectedNumber; i++) {
-            BlockIndexDO index1 = getMS2(runId, mz - deltaMz * i);
+            BlockIndexDO index1 = blockIndex.getMS2(mz - deltaMz * i);
             if (index1 != null) {
                 indexList.add(index1);
             }
-            BlockIndexDO index2 = getMS2(runId, mz + deltaMz * i);
+            BlockIndexDO index2 = blockIndex.getMS2(mz + deltaMz * i);
             if (index2 != null) {
                 indexList.add(index2);
             }
@@ -99,6 +116,26 @@ public class BlockIndexServiceImpl implements BlockIndexService {
         return indexList;
     }
 
+    @Override
+    public Result<Integer> migrate(String runId) {
+        if (runId == null) {
+            return Result.Error(ResultCode.RUN_ID_CANNOT_BE_EMPTY);
+        }
+        int count = 0;
+        for (BlockIndexDO blockIndex : blockIndexDAO.getAll(new BlockIndexQuery().setRunId(runId))) {
+            if (BlockIndexUtil.needCompress(blockIndex)) {
+                BlockIndexUtil.compress(blockIndex);
+                //整体覆盖写入,原有的列表字段随之删除
+                blockIndexDAO.update(blockIndex);
+                count++;
+            }
+        }
+        if (count > 0) {
+            blockIndexRegistry.invalidate(runId);
+        }
+        return Result.OK(count);
+    }
+
     @Override
     public BaseDAO<BlockIndexDO, BlockIndexQuery> getBaseDAO() {
         return blockIndexDAO;
@@ -109,6 +146,7 @@ public class BlockIndexServiceImpl implements BlockIndexService {
         if (blockIndexDO.getRunId() == null) {
             throw new XException(ResultCode.RUN_ID_CANNOT_BE_EMPTY);
         }
+        BlockIndexUtil.compress(blockIndexDO);
     }
 
     @Override
@@ -119,6 +157,7 @@ public class BlockIndexServiceImpl implements BlockIndexService {
         if (blockIndexDO.getRunId() == null) {
             throw new XException(ResultCode.RUN_ID_CANNOT_BE_EMPTY);
         }
+        BlockIndexUtil.compress(blockIndexDO);
     }
 
     @Override
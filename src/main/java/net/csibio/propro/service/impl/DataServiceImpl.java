@@ -3,10 +3,14 @@ package net.csibio.propro.service.impl;
 import lombok.extern.slf4j.Slf4j;
 import net.csibio.propro.algorithm.extract.Extractor;
 import net.csibio.propro.algorithm.score.scorer.Scorer;
+import net.csibio.propro.constants.enums.IdentifyStatus;
 import net.csibio.propro.constants.enums.ResultCode;
 import net.csibio.propro.dao.BaseMultiDAO;
 import net.csibio.propro.dao.DataDAO;
 import net.csibio.propro.domain.Result;
+import net.csibio.propro.domain.bean.data.BaseData;
+import net.csibio.propro.domain.bean.data.DataScore;
+import net.csibio.propro.domain.bean.learner.ScoreMatrix;
 import net.csibio.propro.domain.bean.peptide.PeptideCoord;
 import net.csibio.propro.domain.db.*;
 import net.csibio.propro.domain.options.AnalyzeParams;
@@ -17,6 +21,11 @@ import net.csibio.propro.service.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 @Slf4j
 @Service("dataService")
 public class DataServiceImpl implements DataService {
@@ -58,6 +67,15 @@ public class DataServiceImpl implements DataService {
         //Do Nothing
     }
 
+    @Override
+    public ScoreMatrix getScoreMatrix(String overviewId, List<String> scoreTypes, String projectId) {
+        ScoreMatrix matrix = new ScoreMatrix(scoreTypes);
+        DataQuery query = new DataQuery().setOverviewId(overviewId).setStatus(IdentifyStatus.WAIT.getCode());
+        stream(query, DataScore.class, projectId, matrix::append, DataDAO.SCORE_FIELDS);
+        matrix.trim();
+        return matrix;
+    }
+
     @Override
     public RunDataVO getDataFromDB(String projectId, String runId, String overviewId, String peptideRef) {
         RunDataVO dataVO = new RunDataVO(runId, overviewId, peptideRef);
@@ -70,6 +88,23 @@ public class DataServiceImpl implements DataService {
         return dataVO;
     }
 
+    @Override
+    public List<RunDataVO> getRunDataList(String runId, List<DataSumDO> dataSumList, String projectId) {
+        List<RunDataVO> dataList = new ArrayList<>(dataSumList.size());
+        if (dataSumList.isEmpty()) {
+            return dataList;
+        }
+        List<String> ids = dataSumList.stream().map(DataSumDO::getId).toList();
+        Map<String, BaseData> dataMap = new HashMap<>(ids.size() * 2);
+        stream(new DataQuery().setIds(ids), BaseData.class, projectId, data -> dataMap.put(data.getId(), data), DataDAO.BASE_FIELDS);
+        for (DataSumDO dataSum : dataSumList) {
+            RunDataVO dataVO = new RunDataVO(runId);
+            dataVO.merge(dataMap.get(dataSum.getId()), dataSum);
+            dataList.add(dataVO);
+        }
+        return dataList;
+    }
+
     @Override
     public Result<RunDataVO> predictDataFromFile(RunDO run, PeptideDO peptide, Boolean changeCharge, String peakPickerMethod, String overviewId) throws XException {
         if (peptide == null) {
@@ -1,12 +1,15 @@
 package net.csibio.propro.service.impl;
 
 import lombok.extern.slf4j.Slf4j;
+import net.csibio.propro.algorithm.decoy.BaseGenerator;
 import net.csibio.propro.algorithm.decoy.generator.NicoGenerator;
 import net.csibio.propro.algorithm.decoy.generator.ReplaceGenerator;
 import net.csibio.propro.algorithm.decoy.generator.ShuffleGenerator;
+import net.csibio.propro.algorithm.extract.LibraryCoordIndex;
 import net.csibio.propro.algorithm.parser.*;
 import net.csibio.propro.algorithm.stat.LibraryStat;
 import net.csibio.propro.algorithm.stat.StatConst;
+import net.csibio.propro.constants.constant.Constants;
 import net.csibio.propro.constants.enums.ResultCode;
 import net.csibio.propro.constants.enums.TaskStatus;
 import net.csibio.propro.dao.BaseDAO;
@@ -31,6 +34,8 @@ import org.springframework.stereotype.Service;
 
 import java.io.InputStream;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 @Slf4j
 @Service("libraryService")
@@ -66,6 +71,8 @@ public class LibraryServiceImpl implements LibraryService {
     ShuffleGenerator shuffleGenerator;
     @Autowired
     ReplaceGenerator replaceGenerator;
+    @Autowired
+    LibraryCoordIndex libraryCoordIndex;
 
     @Override
     public BaseDAO<LibraryDO, LibraryQuery> getBaseDAO() {
@@ -205,39 +212,88 @@ public class LibraryServiceImpl implements LibraryService {
 
     @Override
     public Result clearDecoys(LibraryDO library) {
-        List<PeptideDO> allByLibraryId = peptideService.getAllByLibraryId(library.getId());
-        for (PeptideDO peptideDO : allByLibraryId) {
-            peptideDO.clearDecoy();
-            peptideService.update(peptideDO);
+        Result<Long> result = peptideService.clearDecoys(library.getId());
+        if (result.isFailed()) {
+            return result;
         }
-
-        log.info("伪肽段清除完毕");
+        log.info("伪肽段清除完毕,总计:" + result.getData() + "个");
         return Result.OK("成功清除");
     }
 
     @Override
-    public Result generateDecoys(LibraryDO library, String generator) {
-        List<PeptideDO> peptideList = peptideService.getAllByLibraryId(library.getId());
-        switch (generator) {
+    public Result generateDecoys(LibraryDO library, String generator, TaskDO taskDO) {
+        BaseGenerator decoyGenerator;
+        switch (generator == null ? "" : generator) {
             case NicoGenerator.NAME:
-                nicoGenerator.generate(peptideList);
+                decoyGenerator = nicoGenerator;
                 break;
             case ShuffleGenerator.NAME:
-                shuffleGenerator.generate(peptideList);
+                decoyGenerator = shuffleGenerator;
                 break;
             case ReplaceGenerator.NAME:
-                replaceGenerator.generate(peptideList);
+                decoyGenerator = replaceGenerator;
                 break;
             default:
                 generator = ShuffleGenerator.NAME;
-                shuffleGenerator.generate(peptideList);
+                decoyGenerator = shuffleGenerator;
+        }
+        taskLog(taskDO, "开始生成伪肽段,生成算法:" + generator);
+
+        //读取,生成与写回三个阶段按批次交替进行,读取耗时为总耗时减去另外两个阶段的耗时
+        long start = System.currentTimeMillis();
+        AtomicLong generateCost = new AtomicLong(0);
+        AtomicLong writeCost = new AtomicLong(0);
+        AtomicLong total = new AtomicLong(0);
+        AtomicLong failed = new AtomicLong(0);
+        List<PeptideDO> chunk = new ArrayList<>(Constants.DECOY_CHUNK_SIZE);
+        Consumer<List<PeptideDO>> flush = peptides -> {
+            long stageStart = System.currentTimeMillis();
+            failed.addAndGet(decoyGenerator.generate(peptides));
+            generateCost.addAndGet(System.currentTimeMillis() - stageStart);
+            stageStart = System.currentTimeMillis();
+            peptideService.updateDecoyInfos(peptides);
+            writeCost.addAndGet(System.currentTimeMillis() - stageStart);
+            total.addAndGet(peptides.size());
+            peptides.clear();
+        };
+        try {
+            peptideDAO.stream(new PeptideQuery(library.getId()), PeptideDO.class, peptide -> {
+                chunk.add(peptide);
+                if (chunk.size() >= Constants.DECOY_CHUNK_SIZE) {
+                    flush.accept(chunk);
+                }
+            }, PeptideDAO.DECOY_SOURCE_FIELDS);
+            if (!chunk.isEmpty()) {
+                flush.accept(chunk);
+            }
+        } catch (Exception e) {
+            log.error("伪肽段生成失败:" + library.getId(), e);
+            if (taskDO != null) {
+                taskDO.finish(TaskStatus.FAILED.getName(), "伪肽段生成失败:" + e.getMessage());
+                taskService.update(taskDO);
+            }
+            return Result.Error(ResultCode.UPDATE_ERROR);
         }
-        peptideService.updateDecoyInfos(peptideList);
+        long readCost = System.currentTimeMillis() - start - generateCost.get() - writeCost.get();
+        taskLog(taskDO, "伪肽段生成完毕,总计:" + total.get() + "个,失败:" + failed.get() + "个;读取耗时:" + readCost + "毫秒,生成耗时:" + generateCost.get() + "毫秒,写入耗时:" + writeCost.get() + "毫秒");
+
         library.setGenerator(generator);
         update(library);
+        if (taskDO != null) {
+            taskDO.finish(TaskStatus.SUCCESS.getName());
+            taskService.update(taskDO);
+        }
         return Result.OK();
     }
 
+    private void taskLog(TaskDO taskDO, String content) {
+        log.info(content);
+        if (taskDO != null) {
+            taskDO.addLog(content);
+            taskService.update(taskDO);
+        }
+    }
+
     //    @Cacheable(cacheNames = "libraryGetId", key = "#id")
     @Override
     public LibraryDO getById(String id) {
@@ -254,6 +310,8 @@ public class LibraryServiceImpl implements LibraryService {
         try {
             beforeUpdate(libraryDO);
             getBaseDAO().update(libraryDO);
+            //标准库的肽段在导入,生成伪肽段等操作完成后都会更新标准库,此时在写入完成以后丢弃旧的坐标快照
+            libraryCoordIndex.invalidate(libraryDO.getId());
             return Result.OK(libraryDO);
         } catch (XException xe) {
             return Result.Error(xe.getResultCode());
@@ -270,6 +328,7 @@ public class LibraryServiceImpl implements LibraryService {
                 beforeUpdate(t);
             }
             getBaseDAO().update(libraryDOS);
+            libraryDOS.forEach(library -> libraryCoordIndex.invalidate(library.getId()));
             return Result.OK(libraryDOS);
         } catch (XException xe) {
             return Result.Error(xe.getResultCode());
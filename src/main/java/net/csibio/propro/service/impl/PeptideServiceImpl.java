@@ -1,6 +1,7 @@
 package net.csibio.propro.service.impl;
 
 import net.csibio.aird.bean.WindowRange;
+import net.csibio.propro.algorithm.extract.LibraryCoordIndex;
 import net.csibio.propro.algorithm.formula.FormulaCalculator;
 import net.csibio.propro.algorithm.formula.FragmentFactory;
 import net.csibio.propro.algorithm.stat.StatConst;
@@ -11,6 +12,7 @@ import net.csibio.propro.dao.LibraryDAO;
 import net.csibio.propro.dao.PeptideDAO;
 import net.csibio.propro.domain.Result;
 import net.csibio.propro.domain.bean.peptide.FragmentInfo;
+import net.csibio.propro.domain.bean.peptide.LibraryCoordSnapshot;
 import net.csibio.propro.domain.bean.peptide.PeptideCoord;
 import net.csibio.propro.domain.bean.peptide.Protein;
 import net.csibio.propro.domain.bean.score.SlopeIntercept;
@@ -56,6 +58,8 @@ public class PeptideServiceImpl implements PeptideService {
     FormulaCalculator formulaCalculator;
     @Autowired
     LibraryService libraryService;
+    @Autowired
+    LibraryCoordIndex libraryCoordIndex;
 
     @Override
     public List<PeptideDO> getAllByLibraryId(String libraryId) {
@@ -91,20 +95,88 @@ public class PeptideServiceImpl implements PeptideService {
     }
 
     @Override
-    public void beforeRemove(String libraryId) throws XException {
-        //Do Nothing
+    public void beforeRemove(String id) throws XException {
+    }
+
+    /**
+     * 以下写入方法在数据库写入完成以后再使标准库的坐标索引失效,
+     * 避免在写入过程中有并发的读取用旧数据重新构建出索引.写入失败时数据库可能已被部分修改,同样需要失效
+     */
+    @Override
+    public Result<PeptideDO> insert(PeptideDO peptide) {
+        try {
+            return PeptideService.super.insert(peptide);
+        } finally {
+            libraryCoordIndex.invalidate(peptide.getLibraryId());
+        }
+    }
+
+    @Override
+    public Result<List<PeptideDO>> insert(List<PeptideDO> peptides) {
+        try {
+            return PeptideService.super.insert(peptides);
+        } finally {
+            invalidate(peptides);
+        }
+    }
+
+    @Override
+    public Result<PeptideDO> update(PeptideDO peptide) {
+        try {
+            return PeptideService.super.update(peptide);
+        } finally {
+            libraryCoordIndex.invalidate(peptide.getLibraryId());
+        }
+    }
+
+    @Override
+    public Result<List<PeptideDO>> update(List<PeptideDO> peptides) {
+        try {
+            return PeptideService.super.update(peptides);
+        } finally {
+            invalidate(peptides);
+        }
+    }
+
+    @Override
+    public Result removeById(String id) {
+        String libraryId = id == null || id.isEmpty() ? null : peptideDAO.getLibraryIdById(id);
+        try {
+            return PeptideService.super.removeById(id);
+        } finally {
+            if (libraryId != null) {
+                libraryCoordIndex.invalidate(libraryId);
+            }
+        }
+    }
+
+    private void invalidate(List<PeptideDO> peptides) {
+        peptides.stream().map(PeptideDO::getLibraryId).filter(Objects::nonNull).distinct().forEach(libraryCoordIndex::invalidate);
     }
 
     @Override
     public Result updateDecoyInfos(List<PeptideDO> peptides) {
         peptideDAO.updateDecoyInfos(peptides);
+        invalidate(peptides);
         return Result.OK();
     }
 
+    @Override
+    public Result<Long> clearDecoys(String libraryId) {
+        try {
+            long modified = peptideDAO.clearDecoys(libraryId);
+            libraryCoordIndex.invalidate(libraryId);
+            return Result.OK(modified);
+        } catch (Exception e) {
+            return Result.Error(ResultCode.UPDATE_ERROR);
+        }
+    }
+
     @Override
     public Result removeAllByLibraryId(String libraryId) {
         try {
             peptideDAO.deleteAllByLibraryId(libraryId);
+            libraryCoordIndex.invalidate(libraryId);
             return Result.OK();
         } catch (Exception e) {
             return Result.Error(ResultCode.DELETE_ERROR);
@@ -153,11 +225,16 @@ public class PeptideServiceImpl implements PeptideService {
     @Override
     public List<PeptideCoord> buildCoord4Irt(String libraryId, WindowRange mzRange) {
         long start = System.currentTimeMillis();
-        PeptideQuery query = new PeptideQuery(libraryId);
-        query.setMzStart(mzRange.getStart()).setMzEnd(mzRange.getEnd());
-        List<PeptideCoord> targetList = getAll(query, PeptideCoord.class);
+        LibraryCoordSnapshot snapshot = libraryCoordIndex.get(libraryId);
         long dbTime = System.currentTimeMillis() - start;
-        targetList.parallelStream().forEach(s -> s.setRtRange(-1, 99999));
+        int from = snapshot.from(mzRange.getStart());
+        int to = snapshot.to(mzRange.getEnd());
+        List<PeptideCoord> targetList = new ArrayList<>(Math.max(to - from, 0));
+        for (int i = from; i < to; i++) {
+            PeptideCoord coord = snapshot.toCoord(i, 0);
+            coord.setRtRange(-1, 99999);
+            targetList.add(coord);
+        }
         logger.info("构建提取EIC的MS2坐标(4Irt),总计" + targetList.size() + "条记录,读取标准库耗时:" + dbTime + "毫秒");
         return targetList;
     }
@@ -165,30 +242,23 @@ public class PeptideServiceImpl implements PeptideService {
     @Override
     public List<PeptideCoord> buildCoord(String libraryId, WindowRange mzRange, Double rtWindow, SlopeIntercept si) {
         long start = System.currentTimeMillis();
-        PeptideQuery query = new PeptideQuery(libraryId);
-        query.setMzStart(mzRange.getStart()).setMzEnd(mzRange.getEnd());
-        List<PeptideCoord> targetList = getAll(query, PeptideCoord.class);
+        LibraryCoordSnapshot snapshot = libraryCoordIndex.get(libraryId);
         long dbTime = System.currentTimeMillis() - start;
-
-        if (rtWindow != null) {
-            for (PeptideCoord peptideCoord : targetList) {
-                double iRt = (peptideCoord.getRt() - si.getIntercept()) / si.getSlope();
-                peptideCoord.setIrt(iRt);
-                peptideCoord.setRtStart(iRt - rtWindow);
-                peptideCoord.setRtEnd(iRt + rtWindow);
-            }
-        } else {
-            for (PeptideCoord peptideCoord : targetList) {
-                peptideCoord.setRtStart(-1);
-                peptideCoord.setRtEnd(99999);
-            }
-        }
-
-        for (PeptideCoord coord : targetList) {
-            if (coord.getFragments().size() > 6) {
-                coord.setFragments(coord.getFragments().subList(0, 6));
-                coord.setDecoyFragments(coord.getDecoyFragments().subList(0, 6));
+        int from = snapshot.from(mzRange.getStart());
+        int to = snapshot.to(mzRange.getEnd());
+        List<PeptideCoord> targetList = new ArrayList<>(Math.max(to - from, 0));
+        for (int i = from; i < to; i++) {
+            PeptideCoord coord = snapshot.toCoord(i, 6);
+            if (rtWindow != null) {
+                double iRt = (coord.getRt() - si.getIntercept()) / si.getSlope();
+                coord.setIrt(iRt);
+                coord.setRtStart(iRt - rtWindow);
+                coord.setRtEnd(iRt + rtWindow);
+            } else {
+                coord.setRtStart(-1);
+                coord.setRtEnd(99999);
             }
+            targetList.add(coord);
         }
         logger.info("Build XIC Coord for MS2,Total:" + targetList.size() + " coords,ReadingTime:" + dbTime + "ms,mz start:" + mzRange.getStart());
         return targetList;
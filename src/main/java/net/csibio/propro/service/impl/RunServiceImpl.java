@@ -1,11 +1,14 @@
 package net.csibio.propro.service.impl;
 
 import com.alibaba.fastjson.JSONObject;
+import lombok.extern.slf4j.Slf4j;
 import net.csibio.aird.bean.AirdInfo;
 import net.csibio.aird.bean.BlockIndex;
 import net.csibio.aird.bean.Compressor;
 import net.csibio.aird.bean.MzIntensityPairs;
 import net.csibio.aird.parser.DIAParser;
+import net.csibio.propro.algorithm.extract.BlockIndexRegistry;
+import net.csibio.propro.algorithm.extract.SpectrumCache;
 import net.csibio.propro.constants.enums.ResultCode;
 import net.csibio.propro.constants.enums.TaskStatus;
 import net.csibio.propro.dao.BaseDAO;
@@ -13,6 +16,7 @@ import net.csibio.propro.dao.RunDAO;
 import net.csibio.propro.domain.Result;
 import net.csibio.propro.domain.bean.common.FloatPairs;
 import net.csibio.propro.domain.bean.common.IdName;
+import net.csibio.propro.domain.bean.data.SpectrumBlock;
 import net.csibio.propro.domain.bean.run.RunIrt;
 import net.csibio.propro.domain.db.BlockIndexDO;
 import net.csibio.propro.domain.db.RunDO;
@@ -34,6 +38,7 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
+@Slf4j
 @Service("runService")
 public class RunServiceImpl implements RunService {
 
@@ -43,6 +48,10 @@ public class RunServiceImpl implements RunService {
     TaskService taskService;
     @Autowired
     BlockIndexService blockIndexService;
+    @Autowired
+    SpectrumCache spectrumCache;
+    @Autowired
+    BlockIndexRegistry blockIndexRegistry;
 
     @Override
     public BaseDAO<RunDO, RunQuery> getBaseDAO() {
@@ -83,8 +92,10 @@ public class RunServiceImpl implements RunService {
 
     @Override
     public void beforeRemove(String id) throws XException {
-        //删除实验前首先删除所有关联的索引
+        //删除实验前首先删除所有关联的索引以及缓存的光谱
         blockIndexService.remove(new BlockIndexQuery().setRunId(id));
+        spectrumCache.invalidate(id);
+        blockIndexRegistry.invalidate(id);
     }
 
     @Override
@@ -99,6 +110,7 @@ public class RunServiceImpl implements RunService {
 
     @Override
     public void uploadAirdFile(RunDO runDO, TaskDO taskDO) {
+        spectrumCache.invalidate(runDO.getId());
         taskDO.addLog("Start Parsing Aird File:" + runDO.getName());
         taskService.update(taskDO);
         try {
@@ -133,6 +145,8 @@ public class RunServiceImpl implements RunService {
                 blockIndexList.add(blockIndexDO);
             }
             blockIndexService.insert(blockIndexList);
+            //解析期间读取到的旧索引全部作废
+            blockIndexRegistry.invalidate(runDO.getId());
             taskDO.addLog("Block Index Insert Success.索引存储成功");
             taskService.update(taskDO);
 
@@ -157,6 +171,16 @@ public class RunServiceImpl implements RunService {
 
     @Override
     public FloatPairs getSpectrum(RunDO run, BlockIndexDO blockIndex, Float rt) {
+        //光谱块在共享缓存中时直接读取,否则只解码rt对应的这一张光谱
+        try {
+            SpectrumBlock block = spectrumCache.get(run, blockIndex, rt, rt);
+            MzIntensityPairs cached = block.getPairs(block.indexOf(rt));
+            if (cached != null) {
+                return new FloatPairs(cached.getMzArray(), cached.getIntensityArray());
+            }
+        } catch (XException e) {
+            log.warn("Read Spectrum From Cache Failed,Run:" + run.getId() + ",Rt:" + rt);
+        }
         Compressor mzCompressor = run.fetchCompressor(Compressor.TARGET_MZ);
         DIAParser parser = new DIAParser(run.getAirdPath(), mzCompressor, run.fetchCompressor(Compressor.TARGET_INTENSITY), mzCompressor.getPrecision());
         MzIntensityPairs pairs = parser.getSpectrumByRt(blockIndex.getStartPtr(), blockIndex.getRts(), blockIndex.getMzs(), blockIndex.getInts(), rt);
@@ -164,6 +188,15 @@ public class RunServiceImpl implements RunService {
         return new FloatPairs(pairs.getMzArray(), pairs.getIntensityArray());
     }
 
+    @Override
+    public SpectrumBlock getSpectra(RunDO run, BlockIndexDO blockIndex, double rtStart, double rtEnd, Double mzStart, Double mzEnd) throws XException {
+        SpectrumBlock block = spectrumCache.get(run, blockIndex, rtStart, rtEnd);
+        if (mzStart != null && mzEnd != null) {
+            block = block.trim(mzStart, mzEnd);
+        }
+        return block;
+    }
+
     @Override
     public Result remove(RunQuery query) {
         List<IdName> runList = getAll(query, IdName.class);
@@ -1,8 +1,13 @@
 package net.csibio.propro.service.impl;
 
+import net.csibio.propro.config.VMProperties;
 import net.csibio.propro.constants.enums.ResultCode;
+import net.csibio.propro.constants.enums.TaskStatus;
 import net.csibio.propro.dao.BaseDAO;
 import net.csibio.propro.dao.TaskDAO;
+import net.csibio.propro.domain.Result;
+import net.csibio.propro.domain.bean.task.TaskLog;
+import net.csibio.propro.domain.bean.task.TaskLogTail;
 import net.csibio.propro.domain.db.TaskDO;
 import net.csibio.propro.domain.query.TaskQuery;
 import net.csibio.propro.exceptions.XException;
@@ -12,11 +17,22 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by James Lu MiaoShan
  * Time: 2018-08-15 10:05
+ * <p>
+ * 任务的更新只写入状态字段并以$push追加新增的日志,不再重写整个任务文档
+ * 同一个任务在task.flush.ms间隔内的多次更新会合并为一次写入,由后台线程定时写入缓冲区中的任务,任务结束时立即写入
  */
 @Service("taskService")
 public class TaskServiceImpl implements TaskService {
@@ -25,7 +41,54 @@ public class TaskServiceImpl implements TaskService {
 
     @Autowired
     TaskDAO taskDAO;
+    @Autowired
+    VMProperties vmProperties;
+
+    /**
+     * 等待写入的任务,key为任务id
+     */
+    private final ConcurrentHashMap<String, TaskDO> pending = new ConcurrentHashMap<>();
+
+    /**
+     * 每一个运行中的任务最近一次写入数据库的时间
+     */
+    private final ConcurrentHashMap<String, Long> lastFlushTime = new ConcurrentHashMap<>();
+
+    /**
+     * 写入锁按照任务id的哈希分段,同一个任务的写入串行执行,不同任务之间互不阻塞
+     */
+    private static final int LOCK_STRIPES = 64;
+    private final Object[] writeLocks = new Object[LOCK_STRIPES];
+
+    private ScheduledExecutorService flusher;
+
+    public TaskServiceImpl() {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            writeLocks[i] = new Object();
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        int interval = vmProperties.getTaskFlushMs();
+        if (interval <= 0) {
+            return;
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "taskFlusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+    }
 
+    @PreDestroy
+    public void destroy() {
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        flush();
+    }
 
     @Override
     public BaseDAO<TaskDO, TaskQuery> getBaseDAO() {
@@ -42,6 +105,7 @@ public class TaskServiceImpl implements TaskService {
         }
         taskDO.setCreateDate(new Date());
         taskDO.setLastModifiedDate(new Date());
+        taskDO.setFlushedLogs(taskDO.getLogs() == null ? 0 : taskDO.getLogs().size());
     }
 
     @Override
@@ -59,7 +123,119 @@ public class TaskServiceImpl implements TaskService {
     }
 
     @Override
-    public void beforeRemove(String libraryId) throws XException {
-        //Do Nothing
+    public void beforeRemove(String id) throws XException {
+        pending.remove(id);
+        lastFlushTime.remove(id);
+    }
+
+    @Override
+    public Result<TaskDO> update(TaskDO taskDO) {
+        try {
+            beforeUpdate(taskDO);
+        } catch (XException xe) {
+            return Result.Error(xe.getResultCode());
+        }
+        String id = taskDO.getId();
+        Long lastTime = lastFlushTime.get(id);
+        if (!isFinished(taskDO) && taskDO.getFlushedLogs() != null && lastTime != null
+                && System.currentTimeMillis() - lastTime < vmProperties.getTaskFlushMs()) {
+            pending.put(id, taskDO);
+            return Result.OK(taskDO);
+        }
+        pending.remove(id);
+        try {
+            write(taskDO);
+            return Result.OK(taskDO);
+        } catch (Exception e) {
+            logger.error("Task Update Failed:" + id, e);
+            return Result.Error(ResultCode.UPDATE_ERROR);
+        }
+    }
+
+    @Override
+    public Result<TaskLogTail> tail(String taskId, int from) {
+        if (taskId == null || taskId.isEmpty()) {
+            return Result.Error(ResultCode.ID_CANNOT_BE_NULL_OR_ZERO);
+        }
+        TaskDO buffered = pending.remove(taskId);
+        if (buffered != null) {
+            flush(taskId, buffered);
+        }
+        from = Math.max(from, 0);
+        TaskDO task = taskDAO.getLogs(taskId, from);
+        if (task == null) {
+            return Result.Error(ResultCode.TASK_NOT_EXISTED);
+        }
+        TaskLogTail tail = new TaskLogTail();
+        tail.setId(taskId);
+        tail.setStatus(task.getStatus());
+        tail.setTotalCost(task.getTotalCost());
+        tail.setFrom(from);
+        if (task.getLogs() != null) {
+            tail.setLogs(task.getLogs());
+        }
+        tail.setNext(from + tail.getLogs().size());
+        return Result.OK(tail);
+    }
+
+    @Override
+    public void flush() {
+        for (String id : new ArrayList<>(pending.keySet())) {
+            TaskDO task = pending.remove(id);
+            if (task == null) {
+                continue;
+            }
+            flush(id, task);
+        }
+    }
+
+    /**
+     * 写入一个缓冲中的任务,写入失败时只记录日志并放回缓冲区,由下一次flush重试,不会丢失日志也不影响任务本身的状态
+     */
+    private void flush(String id, TaskDO task) {
+        try {
+            write(task);
+        } catch (Exception e) {
+            logger.error("Task Flush Failed:" + id, e);
+            pending.putIfAbsent(id, task);
+        }
+    }
+
+    /**
+     * 写入上一次写入以后的变化,数据库中日志条数未知或者日志被整体替换时重写整个文档
+     * 同一个任务同一时刻只允许一个线程写入,避免同一批日志被重复追加
+     */
+    private void write(TaskDO task) {
+        synchronized (lock(task.getId())) {
+            List<TaskLog> newLogs = null;
+            int logCount;
+            synchronized (task) {
+                List<TaskLog> logs = task.getLogs();
+                logCount = logs == null ? 0 : logs.size();
+                Integer flushed = task.getFlushedLogs();
+                if (flushed != null && flushed <= logCount) {
+                    newLogs = logs == null ? new ArrayList<>() : new ArrayList<>(logs.subList(flushed, logCount));
+                }
+            }
+            if (newLogs == null) {
+                taskDAO.update(task);
+            } else {
+                taskDAO.progress(task, newLogs);
+            }
+            task.setFlushedLogs(logCount);
+            if (isFinished(task)) {
+                lastFlushTime.remove(task.getId());
+            } else {
+                lastFlushTime.put(task.getId(), System.currentTimeMillis());
+            }
+        }
+    }
+
+    private Object lock(String id) {
+        return writeLocks[(id.hashCode() & Integer.MAX_VALUE) % LOCK_STRIPES];
+    }
+
+    private boolean isFinished(TaskDO task) {
+        return TaskStatus.SUCCESS.getName().equals(task.getStatus()) || TaskStatus.FAILED.getName().equals(task.getStatus());
     }
 }
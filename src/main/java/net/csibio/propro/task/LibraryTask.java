@@ -40,6 +40,14 @@ public class LibraryTask extends BaseTask {
         libraryService.uploadFile(library, libFileStream, taskDO);
     }
 
+    @Async(value = "uploadFileExecutor")
+    public void generateDecoys(LibraryDO library, String generator, TaskDO taskDO) {
+        taskDO.start();
+        taskDO.setStatus(TaskStatus.RUNNING.getName());
+        taskService.update(taskDO);
+        libraryService.generateDecoys(library, generator, taskDO);
+    }
+
     /**
      * 用于直接扫描本地仓库指定路径下的库文件,具体的指定路径见RepositoryUtil
      *
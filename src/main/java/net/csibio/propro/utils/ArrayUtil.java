@@ -20,6 +20,76 @@ public class ArrayUtil {
         return list;
     }
 
+    /**
+     * 以原始类型数组为底层存储的只读列表,不进行装箱复制,适用于需要长期驻留内存的大列表
+     */
+    public static List<Float> asList(float[] array) {
+        return new ReadOnlyList<>(array.length) {
+            @Override
+            public Float get(int index) {
+                return array[index];
+            }
+        };
+    }
+
+    public static List<Long> asList(long[] array) {
+        return new ReadOnlyList<>(array.length) {
+            @Override
+            public Long get(int index) {
+                return array[index];
+            }
+        };
+    }
+
+    public static List<Integer> asList(int[] array) {
+        return new ReadOnlyList<>(array.length) {
+            @Override
+            public Integer get(int index) {
+                return array[index];
+            }
+        };
+    }
+
+    /**
+     * @return 是否为asList生成的以原始类型数组为底层存储的只读列表
+     */
+    public static boolean isPrimitiveList(List<?> list) {
+        return list instanceof ReadOnlyList;
+    }
+
+    public static float[] toFloatArray(List<Float> list) {
+        if (list == null) {
+            return null;
+        }
+        float[] array = new float[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    public static long[] toLongArray(List<Long> list) {
+        if (list == null) {
+            return null;
+        }
+        long[] array = new long[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    public static int[] toIntArray(List<Integer> list) {
+        if (list == null) {
+            return null;
+        }
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
     public static float[] doubleTofloat(Double[] array) {
         if (array == null) {
             return null;
@@ -43,6 +113,50 @@ public class ArrayUtil {
     }
 
 
+    public static double[] toDoubles(float[] array) {
+        if (array == null) {
+            return null;
+        }
+        double[] d = new double[array.length];
+        for (int i = 0; i < array.length; i++) {
+            d[i] = array[i];
+        }
+        return d;
+    }
+
+    public static double[] toDoubles(int[] array) {
+        if (array == null) {
+            return null;
+        }
+        double[] d = new double[array.length];
+        for (int i = 0; i < array.length; i++) {
+            d[i] = array[i];
+        }
+        return d;
+    }
+
+    public static float[] toFloats(double[] array) {
+        if (array == null) {
+            return null;
+        }
+        float[] f = new float[array.length];
+        for (int i = 0; i < array.length; i++) {
+            f[i] = (float) array[i];
+        }
+        return f;
+    }
+
+    /**
+     * 截取double数组中[from, from + length)的部分并转换为装箱类型
+     */
+    public static Double[] toBoxed(double[] array, int from, int length) {
+        Double[] d = new Double[length];
+        for (int i = 0; i < length; i++) {
+            d[i] = array[from + i];
+        }
+        return d;
+    }
+
     public static Double[] intToDouble(int[] array) {
         if (array == null) {
             return null;
@@ -359,6 +473,18 @@ public class ArrayUtil {
         return result;
     }
 
+    /**
+     * 返回升序排序以后各元素在原数组中的索引,相等元素保持原有的先后顺序
+     */
+    public static Integer[] indexAfterSort(double[] array) {
+        Integer[] result = new Integer[array.length];
+        for (int i = 0; i < array.length; i++) {
+            result[i] = i;
+        }
+        Arrays.sort(result, (a, b) -> Double.compare(array[a], array[b]));
+        return result;
+    }
+
     /**
      * Get ascend sort index of list.
      */
@@ -673,9 +799,41 @@ public class ArrayUtil {
         return targetIndex;
     }
 
+    public static int binaryNearSearch(double[] array, double target) {
+        int binarySearchIndex = Arrays.binarySearch(array, target);
+        int targetIndex = -1;
+        if (binarySearchIndex < 0) {
+            binarySearchIndex = -binarySearchIndex - 1;
+            if (binarySearchIndex == 0) {
+                targetIndex = 0;
+            } else {
+                double left = target - array[binarySearchIndex - 1];
+                double right = array[binarySearchIndex] - target;
+                targetIndex = left < right ? (binarySearchIndex - 1) : binarySearchIndex;
+            }
+        } else {
+            targetIndex = binarySearchIndex;
+        }
+        return targetIndex;
+    }
+
     public static float[] add(float[] old, float value) {
         float[] newArray = Arrays.copyOf(old, old.length + 1);
         newArray[newArray.length - 1] = value;
         return newArray;
     }
+
+    private abstract static class ReadOnlyList<T> extends AbstractList<T> implements RandomAccess {
+
+        private final int size;
+
+        ReadOnlyList(int size) {
+            this.size = size;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
 }
@@ -0,0 +1,141 @@
+package net.csibio.propro.utils;
+
+import net.csibio.propro.domain.db.BlockIndexDO;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * BlockIndexDO中nums,rts,mzs与ints的二进制压缩存储
+ * 所有列都转换为单调不减的int序列,使用CompressUtil.compressForSortedInt进行差分与位压缩:
+ * nums直接压缩;rts为非负的浮点数,其浮点位与数值同序,直接压缩浮点位;mzs与ints为每一个子谱图压缩后的大小,压缩其前缀和
+ * 不满足条件的列(例如乱序的rt,总大小超过int范围的光谱块)保持原有的列表格式
+ */
+public class BlockIndexUtil {
+
+    /**
+     * 将可以压缩的列转换为二进制并清空对应的列表,已经压缩过的列保持不变
+     */
+    public static void compress(BlockIndexDO block) {
+        if (block.getNums() != null) {
+            byte[] bytes = encodeSorted(ArrayUtil.toIntArray(block.getNums()));
+            if (bytes != null) {
+                block.setNumsBytes(bytes);
+                block.setNums(null);
+            }
+        }
+        if (block.getRts() != null) {
+            int[] bits = new int[block.getRts().size()];
+            for (int i = 0; i < bits.length; i++) {
+                bits[i] = Float.floatToRawIntBits(block.getRts().get(i));
+            }
+            byte[] bytes = encodeSorted(bits);
+            if (bytes != null) {
+                block.setRtsBytes(bytes);
+                block.setRts(null);
+            }
+        }
+        if (block.getMzs() != null) {
+            byte[] bytes = encodeSizes(block.getMzs());
+            if (bytes != null) {
+                block.setMzsBytes(bytes);
+                block.setMzs(null);
+            }
+        }
+        if (block.getInts() != null) {
+            byte[] bytes = encodeSizes(block.getInts());
+            if (bytes != null) {
+                block.setIntsBytes(bytes);
+                block.setInts(null);
+            }
+        }
+    }
+
+    /**
+     * 将二进制的列还原为以原始类型数组为底层存储的只读列表,旧格式的列保持不变
+     */
+    public static void decompress(BlockIndexDO block) {
+        if (block.getNumsBytes() != null) {
+            block.setNums(ArrayUtil.asList(decodeSorted(block.getNumsBytes())));
+            block.setNumsBytes(null);
+        }
+        if (block.getRtsBytes() != null) {
+            int[] bits = decodeSorted(block.getRtsBytes());
+            float[] rts = new float[bits.length];
+            for (int i = 0; i < bits.length; i++) {
+                rts[i] = Float.intBitsToFloat(bits[i]);
+            }
+            block.setRts(ArrayUtil.asList(rts));
+            block.setRtsBytes(null);
+        }
+        if (block.getMzsBytes() != null) {
+            block.setMzs(ArrayUtil.asList(decodeSizes(block.getMzsBytes())));
+            block.setMzsBytes(null);
+        }
+        if (block.getIntsBytes() != null) {
+            block.setInts(ArrayUtil.asList(decodeSizes(block.getIntsBytes())));
+            block.setIntsBytes(null);
+        }
+    }
+
+    /**
+     * @return 是否存在仍以旧格式存储,并且可以压缩的列
+     */
+    public static boolean needCompress(BlockIndexDO block) {
+        return (block.getNums() != null && block.getNumsBytes() == null)
+                || (block.getRts() != null && block.getRtsBytes() == null)
+                || (block.getMzs() != null && block.getMzsBytes() == null)
+                || (block.getInts() != null && block.getIntsBytes() == null);
+    }
+
+    /**
+     * @return values不是单调不减的非负序列时返回null
+     */
+    private static byte[] encodeSorted(int[] values) {
+        int last = 0;
+        for (int value : values) {
+            if (value < last) {
+                return null;
+            }
+            last = value;
+        }
+        int[] compressed = CompressUtil.compressForSortedInt(values);
+        ByteBuffer buffer = ByteBuffer.allocate(compressed.length * Integer.BYTES);
+        buffer.asIntBuffer().put(compressed);
+        return buffer.array();
+    }
+
+    private static int[] decodeSorted(byte[] bytes) {
+        int[] compressed = new int[bytes.length / Integer.BYTES];
+        ByteBuffer.wrap(bytes).asIntBuffer().get(compressed);
+        return CompressUtil.decompressForSortedInt(compressed);
+    }
+
+    /**
+     * @return 存在负数或者总和超过int范围时返回null
+     */
+    private static byte[] encodeSizes(List<Long> sizes) {
+        int[] offsets = new int[sizes.size()];
+        long sum = 0L;
+        for (int i = 0; i < offsets.length; i++) {
+            long size = sizes.get(i);
+            sum += size;
+            if (size < 0 || sum > Integer.MAX_VALUE) {
+                return null;
+            }
+            offsets[i] = (int) sum;
+        }
+        return encodeSorted(offsets);
+    }
+
+    private static long[] decodeSizes(byte[] bytes) {
+        int[] offsets = decodeSorted(bytes);
+        long[] sizes = new long[offsets.length];
+        int last = 0;
+        for (int i = 0; i < offsets.length; i++) {
+            sizes[i] = offsets[i] - last;
+            last = offsets[i];
+        }
+        return sizes;
+    }
+}
@@ -13,11 +13,16 @@ import java.nio.DoubleBuffer;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.util.Arrays;
+import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
 import java.util.zip.Inflater;
 
 public class CompressUtil {
 
+    //fastCompress使用的压缩器,每一个线程复用同一个实例,避免频繁创建与释放native资源
+    private static final ThreadLocal<Deflater> FAST_DEFLATER = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED));
+    private static final ThreadLocal<Inflater> FAST_INFLATER = ThreadLocal.withInitial(Inflater::new);
+
     //byte[]压缩为byte[]
     public static byte[] zlibCompress(byte[] data) {
         byte[] output;
@@ -80,6 +85,81 @@ public class CompressUtil {
         return output;
     }
 
+    /**
+     * 快速压缩,同一线程复用Deflater,返回结果的前4个字节为压缩前的长度,解压时可以一次性分配输出数组
+     */
+    public static byte[] fastCompress(byte[] data) {
+        Deflater deflater = FAST_DEFLATER.get();
+        deflater.reset();
+        deflater.setInput(data);
+        deflater.finish();
+        byte[] output = new byte[Integer.BYTES + data.length + data.length / 1000 + 64];
+        ByteBuffer.wrap(output).putInt(data.length);
+        int length = Integer.BYTES;
+        while (!deflater.finished()) {
+            if (length == output.length) {
+                output = Arrays.copyOf(output, output.length * 2);
+            }
+            length += deflater.deflate(output, length, output.length - length);
+        }
+        return Arrays.copyOf(output, length);
+    }
+
+    public static byte[] fastDecompress(byte[] data) {
+        Inflater inflater = FAST_INFLATER.get();
+        inflater.reset();
+        inflater.setInput(data, Integer.BYTES, data.length - Integer.BYTES);
+        byte[] output = new byte[ByteBuffer.wrap(data).getInt()];
+        int length = 0;
+        try {
+            while (length < output.length && !inflater.finished()) {
+                int count = inflater.inflate(output, length, output.length - length);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += count;
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Corrupted Compressed Data", e);
+        }
+        if (length != output.length) {
+            throw new IllegalArgumentException("Corrupted Compressed Data, Expected " + output.length + " Bytes But Got " + length);
+        }
+        return output;
+    }
+
+    /**
+     * 按字节重排: 先写入所有数值的最高位字节,再写入次高位字节,以此类推
+     *
+     * @param values 待重排的数值
+     * @param output 输出数组,从offset开始需要预留values.length*4个字节
+     * @param offset
+     */
+    public static void shuffle(int[] values, byte[] output, int offset) {
+        int size = values.length;
+        for (int i = 0; i < size; i++) {
+            int value = values[i];
+            output[offset + i] = (byte) (value >>> 24);
+            output[offset + size + i] = (byte) (value >>> 16);
+            output[offset + 2 * size + i] = (byte) (value >>> 8);
+            output[offset + 3 * size + i] = (byte) value;
+        }
+    }
+
+    /**
+     * shuffle的逆过程
+     */
+    public static int[] unshuffle(byte[] input, int offset, int size) {
+        int[] values = new int[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = (input[offset + i] & 0xff) << 24
+                    | (input[offset + size + i] & 0xff) << 16
+                    | (input[offset + 2 * size + i] & 0xff) << 8
+                    | (input[offset + 3 * size + i] & 0xff);
+        }
+        return values;
+    }
+
     public static int[] compressForSortedInt(int[] target) {
         SkippableIntegratedComposition codec = new SkippableIntegratedComposition(new IntegratedBinaryPacking(), new IntegratedVariableByte());
         // output vector should be large enough...
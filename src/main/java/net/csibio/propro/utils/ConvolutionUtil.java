@@ -3,11 +3,13 @@ package net.csibio.propro.utils;
 import net.csibio.aird.bean.MzIntensityPairs;
 import net.csibio.propro.constants.enums.ResultCode;
 import net.csibio.propro.domain.Result;
+import net.csibio.propro.domain.bean.data.SpectrumBlock;
 import net.csibio.propro.domain.bean.run.BaseRun;
 import net.csibio.propro.domain.db.RunDO;
 import net.csibio.propro.exceptions.XException;
 
 import java.io.File;
+import java.util.Arrays;
 
 /**
  * Created by James Lu MiaoShan
@@ -51,6 +53,123 @@ public class ConvolutionUtil {
         return result;
     }
 
+    /**
+     * 批量计算多个mz窗口在同一张光谱上的intensity和,每一个窗口的结果与单独调用accumulation完全一致
+     * 窗口需要预先按照mzStart从小到大排好序,这样只需要在mzArray上做一次归并式的扫描,省去了每一个窗口的二分查找
+     *
+     * @param pairs    其中mzArray已经从小到到已经排好序
+     * @param mzStarts 所有窗口的左边界
+     * @param mzEnds   所有窗口的右边界
+     * @param windows  本次需要计算的窗口索引,已按照mzStart从小到大排序
+     * @param size     windows中有效的窗口数目
+     * @param results  输出结果,results[k]对应windows[k]
+     */
+    public static void accumulation(MzIntensityPairs pairs, float[] mzStarts, float[] mzEnds, int[] windows, int size, float[] results) {
+        float[] mzArray = pairs.getMzArray();
+        float[] intensityArray = pairs.getIntensityArray();
+        int length = mzArray.length;
+        if (length == 0) {
+            Arrays.fill(results, 0, size, 0f);
+            return;
+        }
+        float maxMz = mzArray[length - 1];
+        int cursor = 0;
+        for (int k = 0; k < size; k++) {
+            int window = windows[k];
+            float mzStart = mzStarts[window];
+            //与findRightIndex保持一致:mzStart大于等于最大的mz时直接返回0
+            if (mzStart >= maxMz) {
+                results[k] = 0f;
+                continue;
+            }
+            while (mzArray[cursor] < mzStart) {
+                cursor++;
+            }
+            //mzStart恰好落在重复的mz上时二分查找的落点不确定,此时退回原始算法以保证结果完全一致
+            if (cursor + 1 < length && mzArray[cursor] == mzStart && mzArray[cursor + 1] == mzStart) {
+                results[k] = accumulation(pairs, mzStart, mzEnds[window]);
+                continue;
+            }
+            float mzEnd = mzEnds[window];
+            float result = 0f;
+            for (int i = cursor; i < length && mzArray[i] <= mzEnd; i++) {
+                result += intensityArray[i];
+            }
+            results[k] = result;
+        }
+    }
+
+    /**
+     * 计算光谱块中第index张光谱的mz在[start, end]范围对应的intensity和,结果与accumulation(MzIntensityPairs, mzStart, mzEnd)完全一致
+     *
+     * @param block   列式存储的光谱块
+     * @param index   光谱编号
+     * @param mzStart
+     * @param mzEnd
+     * @return
+     */
+    public static float accumulation(SpectrumBlock block, int index, float mzStart, float mzEnd) {
+        int from = block.from(index);
+        int to = block.to(index);
+        if (from == to) {
+            return 0f;
+        }
+        //Index of first mz bigger than mzStart
+        int rightIndex = findRightIndex(block, from, to, mzStart);
+        //No element is bigger than mzStart in mzArray
+        if (rightIndex == -1) {
+            return 0f;
+        }
+        float result = 0f;
+        for (int i = rightIndex; i < to && block.mz(i) <= mzEnd; i++) {
+            result += block.intensity(i);
+        }
+        return result;
+    }
+
+    /**
+     * 批量计算多个mz窗口在光谱块中第index张光谱上的intensity和,与accumulation(MzIntensityPairs, mzStarts, mzEnds, windows, size, results)的逻辑完全一致
+     *
+     * @param block    列式存储的光谱块
+     * @param index    光谱编号
+     * @param mzStarts 所有窗口的左边界
+     * @param mzEnds   所有窗口的右边界
+     * @param windows  本次需要计算的窗口索引,已按照mzStart从小到大排序
+     * @param size     windows中有效的窗口数目
+     * @param results  输出结果,results[k]对应windows[k]
+     */
+    public static void accumulation(SpectrumBlock block, int index, float[] mzStarts, float[] mzEnds, int[] windows, int size, float[] results) {
+        int from = block.from(index);
+        int to = block.to(index);
+        if (from == to) {
+            Arrays.fill(results, 0, size, 0f);
+            return;
+        }
+        float maxMz = block.mz(to - 1);
+        int cursor = from;
+        for (int k = 0; k < size; k++) {
+            int window = windows[k];
+            float mzStart = mzStarts[window];
+            if (mzStart >= maxMz) {
+                results[k] = 0f;
+                continue;
+            }
+            while (block.mz(cursor) < mzStart) {
+                cursor++;
+            }
+            if (cursor + 1 < to && block.mz(cursor) == mzStart && block.mz(cursor + 1) == mzStart) {
+                results[k] = accumulation(block, index, mzStart, mzEnds[window]);
+                continue;
+            }
+            float mzEnd = mzEnds[window];
+            float result = 0f;
+            for (int i = cursor; i < to && block.mz(i) <= mzEnd; i++) {
+                result += block.intensity(i);
+            }
+            results[k] = result;
+        }
+    }
+
     /**
      * 计算 mz在[start, end]范围对应的intensity和
      *
@@ -198,6 +317,74 @@ public class ConvolutionUtil {
         }
     }
 
+    /**
+     * 与findRightIndex(float[], Float)一致,在光谱块的[from, to)区间内查找,返回的是在光谱块中的绝对位置
+     */
+    public static int findRightIndex(SpectrumBlock block, int from, int to, float target) {
+        int rightIndex = to - 1;
+
+        if (target <= block.mz(from)) {
+            return from;
+        }
+        if (target >= block.mz(rightIndex)) {
+            return -1;
+        }
+
+        int leftIndex = from;
+        while (leftIndex + 1 < rightIndex) {
+            int tmp = (leftIndex + rightIndex) / 2;
+            float mz = block.mz(tmp);
+            if (target < mz) {
+                rightIndex = tmp;
+            } else if (target > mz) {
+                leftIndex = tmp;
+            } else {
+                return tmp;
+            }
+        }
+
+        return rightIndex;
+    }
+
+    /**
+     * 与findIndex(float[], float, boolean)一致,在光谱块的[from, to)区间内查找,返回的是在光谱块中的绝对位置
+     */
+    public static int findIndex(SpectrumBlock block, int from, int to, float target, boolean isLeftIndex) {
+        int leftIndex = from, rightIndex = to - 1;
+        if (isLeftIndex) {
+            if (target < block.mz(from)) {
+                return from;
+            }
+            if (target > block.mz(rightIndex)) {
+                return -1;
+            }
+        } else {
+            if (target < block.mz(from)) {
+                return -1;
+            }
+            if (target > block.mz(rightIndex)) {
+                return rightIndex;
+            }
+        }
+
+        while (leftIndex + 1 < rightIndex) {
+            int tmp = (leftIndex + rightIndex) / 2;
+            float mz = block.mz(tmp);
+            if (target < mz) {
+                rightIndex = tmp;
+            } else if (target > mz) {
+                leftIndex = tmp;
+            } else {
+                return tmp;
+            }
+        }
+        if (isLeftIndex) {
+            return rightIndex;
+        } else {
+            return leftIndex;
+        }
+    }
+
     public static int findIndex(float[] array, float target, int leftIndex, int rightIndex, boolean isLeftIndex) {
         if (array == null) {
             return 0;
@@ -1,13 +1,30 @@
 package net.csibio.propro.utils;
 
 import lombok.extern.slf4j.Slf4j;
+import net.csibio.propro.algorithm.codec.BaseCodec;
+import net.csibio.propro.algorithm.codec.ShuffleCodec;
+import net.csibio.propro.algorithm.codec.ZlibCodec;
+import net.csibio.propro.constants.enums.DataCodec;
 import net.csibio.propro.domain.db.DataDO;
 
-import java.util.HashMap;
+import java.util.EnumMap;
 
 @Slf4j
 public class DataUtil {
 
+    /**
+     * 新写入数据使用的编码格式,启动时由VMProperties根据data.codec设置
+     */
+    public static DataCodec codec = DataCodec.SHUFFLE;
+
+    private static final EnumMap<DataCodec, BaseCodec> CODECS = new EnumMap<>(DataCodec.class);
+
+    static {
+        for (BaseCodec dataCodec : new BaseCodec[]{new ZlibCodec(), new ShuffleCodec()}) {
+            CODECS.put(dataCodec.getType(), dataCodec);
+        }
+    }
+
     public static void clearOrigin(DataDO data) {
         data.setRtArray(null);
         data.setIntMap(null);
@@ -28,67 +45,32 @@ public class DataUtil {
         data.setLibIntMap(null);
         data.setIonsLowBytes(null);
         data.setIonsHighBytes(null);
+        data.setXicBytes(null);
+    }
+
+    public static BaseCodec getCodec(DataCodec type) {
+        return CODECS.get(type);
     }
 
     public static void compress(DataDO data) {
-        if (data.getRtArray() != null) {
-            data.setRtBytes(CompressUtil.compressedToBytes(data.getRtArray()));
-        }
-        if (data.getMs1Ints() != null) {
-            data.setMs1IntsBytes(CompressUtil.compressedToBytes(data.getMs1Ints()));
-        }
-        if (data.getSelfInts() != null) {
-            data.setSelfIntsBytes(CompressUtil.compressedToBytes(data.getSelfInts()));
-        }
-        if (data.getIonsLow() != null) {
-            data.setIonsLowBytes(CompressUtil.compressedToBytes(data.getIonsLow()));
-        }
-        if (data.getIonsHigh() != null) {
-            data.setIonsHighBytes(CompressUtil.compressedToBytes(data.getIonsHigh()));
-        }
-        if (data.getIntMap() != null && data.getIntMap().size() > 0) {
-            HashMap<String, byte[]> intMap = new HashMap<>();
-            data.getIntMap().forEach((key, value) -> {
-                if (value != null) {
-                    intMap.put(key, CompressUtil.compressedToBytes(value));
-                } else {
-                    intMap.put(key, null);
-                }
-            });
-            data.setIntMapBytes(intMap);
-        }
+        BaseCodec dataCodec = getCodec(codec);
+        dataCodec.encode(data);
+        data.setCodec(dataCodec.getType().getCode());
         data.setCutInfosFeature(FeatureUtil.toString(data.getCutInfoMap()));
         data.setLibIntFeature(FeatureUtil.toString(data.getLibIntMap()));
         clearOrigin(data);
     }
 
+    /**
+     * 按照数据中记录的编码格式解码,codec为空的旧数据按照ZLIB格式解码
+     */
     public static void decompress(DataDO data) {
-        if (data.getRtBytes() != null) {
-            data.setRtArray(CompressUtil.transTofloat(data.getRtBytes()));
-        }
-        if (data.getMs1IntsBytes() != null) {
-            data.setMs1Ints(CompressUtil.transTofloat(data.getMs1IntsBytes()));
-        }
-        if (data.getSelfIntsBytes() != null) {
-            data.setSelfInts(CompressUtil.transTofloat(data.getSelfIntsBytes()));
-        }
-        if (data.getIonsLowBytes() != null) {
-            data.setIonsLow(CompressUtil.transToInt(data.getIonsLowBytes()));
-        }
-        if (data.getIonsHighBytes() != null) {
-            data.setIonsHigh(CompressUtil.transToInt(data.getIonsHighBytes()));
-        }
-        if (data.getIntMapBytes() != null && data.getIntMapBytes().size() > 0) {
-            HashMap<String, float[]> intensityMap = new HashMap<>();
-            data.getIntMapBytes().forEach((key, value) -> {
-                if (value != null) {
-                    intensityMap.put(key, CompressUtil.transTofloat(value));
-                } else {
-                    intensityMap.put(key, null);
-                }
-            });
-            data.setIntMap(intensityMap);
+        DataCodec type = DataCodec.getByCode(data.getCodec());
+        if (type == null) {
+            log.error("未知的数据编码格式:" + data.getCodec() + ",DataId:" + data.getId());
+            return;
         }
+        getCodec(type).decode(data);
 
         if (data.getCutInfosFeature() != null) {
             data.setCutInfoMap(FeatureUtil.toFloatMap(data.getCutInfosFeature()));
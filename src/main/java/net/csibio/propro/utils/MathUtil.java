@@ -270,6 +270,21 @@ public class MathUtil {
         return index;
     }
 
+    public static int findMaxIndex(double[] data) {
+        if (data == null || data.length == 0) {
+            return -1;
+        }
+        double max = data[0];
+        int index = 0;
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] > max) {
+                max = data[i];
+                index = i;
+            }
+        }
+        return index;
+    }
+
     public static int findMaxIndex(List<Double> data) {
         if (data == null || data.size() == 0) {
             return -1;
@@ -334,6 +349,20 @@ public class MathUtil {
         return meanVariance;
     }
 
+    /**
+     * 求出数组的平均值和方差,原始类型版本
+     *
+     * @param arrays
+     * @return 0:mean 1:variance
+     */
+    public static double[] getMeanVariance(double[] arrays) {
+        double[] meanVariance = new double[2];
+        double mean = mean(arrays);
+        meanVariance[0] = mean;
+        meanVariance[1] = var(arrays, mean);
+        return meanVariance;
+    }
+
     /**
      * Normalize a with a's mean and std.
      */
@@ -415,6 +444,23 @@ public class MathUtil {
         return sum / n;
     }
 
+    //求平均值,如果是NaN的直接跳过
+    public static double mean(double[] array) {
+        int n = array.length;
+        double sum = 0;
+        for (double i : array) {
+            if (Double.isNaN(i)) {
+                n--;
+            } else {
+                sum += i;
+            }
+        }
+        if (n <= 0) {
+            logger.error("All the data in array are all NaN!!!");
+        }
+        return sum / n;
+    }
+
     //求标准差,如果是NaN的直接跳过
     public static double std(Double[] array) {
         double mean = mean(array);
@@ -463,6 +509,24 @@ public class MathUtil {
         return var;
     }
 
+    //已知平均值,求方差,如果是NaN的直接跳过
+    public static double var(double[] array, double mean) {
+        int n = array.length;
+        double var = 0;
+        for (double i : array) {
+            if (Double.isNaN(i)) {
+                n--;
+            } else {
+                var += Math.pow(i - mean, 2);
+            }
+        }
+        if (n <= 0) {
+            logger.error("All of the data in array are NaN!!!");
+        }
+        var /= n;
+        return var;
+    }
+
     public static Double[] dot(Double[][] array, Double[] w) {
         int aLength = array.length;
         int wLength = w.length;
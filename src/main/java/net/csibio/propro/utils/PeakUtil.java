@@ -13,6 +13,18 @@ public class PeakUtil {
         }
     }
 
+    public static int findNearestIndex(double[] x, double value) {
+        if (x.length == 1) {
+            return 0;
+        }
+        BisectionLowHigh bisectionLowHigh = MathUtil.bisection(x, value);
+        if (x[bisectionLowHigh.high()] - value > value - x[bisectionLowHigh.low()]) {
+            return bisectionLowHigh.low();
+        } else {
+            return bisectionLowHigh.high();
+        }
+    }
+
     public static int findNearestIndex(float[] x, float value) {
         BisectionLowHigh bisectionLowHigh = MathUtil.bisection(x, value);
         if (x[bisectionLowHigh.high()] - value > value - x[bisectionLowHigh.low()]) {
@@ -454,6 +454,79 @@ public class ProProUtil {
         return td;
     }
 
+    /**
+     * 划分测试集与训练集,与split(List<DataScore>, double)的规则一致,返回的训练集为肽段在矩阵中的编号
+     *
+     * @param matrix
+     * @param fraction 切分比例
+     * @return
+     */
+    public static TrainData split(ScoreMatrix matrix, double fraction) {
+        return split(matrix, fraction, new Random());
+    }
+
+    /**
+     * 使用指定的随机数生成器划分训练集,相同的种子总是得到相同的划分结果
+     *
+     * @param matrix
+     * @param fraction 切分比例
+     * @param random
+     * @return
+     */
+    public static TrainData split(ScoreMatrix matrix, double fraction, Random random) {
+        List<Integer> targets = new ArrayList<>();
+        List<Integer> decoys = new ArrayList<>();
+        for (int group = 0; group < matrix.getGroups(); group++) {
+            if (matrix.isDecoy(group)) {
+                decoys.add(group);
+            } else {
+                targets.add(group);
+            }
+        }
+
+        if (LearningParams.isDebug) {
+            Comparator<Integer> byPeptideRef = Comparator.comparing(group -> matrix.getPeptideRefs()[group]);
+            targets.sort(byPeptideRef);
+            decoys.sort(byPeptideRef);
+        } else {
+            Collections.shuffle(targets, random);
+            Collections.shuffle(decoys, random);
+        }
+
+        int targetLength = (int) Math.ceil(targets.size() * fraction);
+        int decoyLength = (int) Math.ceil(decoys.size() * fraction);
+        int[] targetGroups = targets.subList(0, targetLength).stream().mapToInt(Integer::intValue).toArray();
+        int[] decoyGroups = decoys.subList(0, decoyLength).stream().mapToInt(Integer::intValue).toArray();
+        return new TrainData(matrix, targetGroups, decoyGroups);
+    }
+
+    /**
+     * 从训练样本中按比例留出验证集,真伪样本分别切分,与split的随机规则一致
+     *
+     * @param trainPeaks
+     * @param validRatio 验证集所占的比例
+     * @return 长度为2的数组, 第一个为训练集, 第二个为验证集
+     */
+    public static TrainPeaks[] split(TrainPeaks trainPeaks, double validRatio) {
+        List<SelectedPeakGroup> targets = new ArrayList<>(trainPeaks.getBestTargets());
+        List<SelectedPeakGroup> decoys = new ArrayList<>(trainPeaks.getTopDecoys());
+        //调试模式下保持原有顺序,保证每一次的切分结果都相同
+        if (!LearningParams.isDebug) {
+            Collections.shuffle(targets);
+            Collections.shuffle(decoys);
+        }
+
+        int validTargets = (int) Math.floor(targets.size() * validRatio);
+        int validDecoys = (int) Math.floor(decoys.size() * validRatio);
+        TrainPeaks train = new TrainPeaks();
+        train.setBestTargets(targets.subList(validTargets, targets.size()));
+        train.setTopDecoys(decoys.subList(validDecoys, decoys.size()));
+        TrainPeaks valid = new TrainPeaks();
+        valid.setBestTargets(targets.subList(0, validTargets));
+        valid.setTopDecoys(decoys.subList(0, validDecoys));
+        return new TrainPeaks[]{train, valid};
+    }
+
     public static ScoreData fakeSortTgId(ScoreData scoreData) {
         String[] groupId = scoreData.getGroupId();
         int groupIdLength = groupId.length;
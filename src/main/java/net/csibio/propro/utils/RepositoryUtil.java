@@ -60,6 +60,13 @@ public class RepositoryUtil {
         return FilenameUtils.concat(FilenameUtils.concat(repository, LIBRARY_ROOT), FASTA_LIBRARY_ROOT);
     }
 
+    /**
+     * 标准库坐标快照文件,与标准库文件存放在同一个目录下
+     */
+    public static String getLibraryCoordPath(String libraryId) {
+        return FilenameUtils.concat(getAnaLibraryRepo(), libraryId + ".coord");
+    }
+
     public static String getExport(String projectName) {
         return FilenameUtils.concat(FilenameUtils.concat(repository, EXPORT), projectName);
     }
@@ -75,6 +75,22 @@ public class ScoreUtil {
         return normalizedIntensity;
     }
 
+    public static double[] normalizeSumDoubleArray(double[] intensityList, double sum) {
+        double[] normalizedIntensity = new double[intensityList.length];
+        for (int i = 0; i < intensityList.length; i++) {
+            normalizedIntensity[i] = (intensityList[i] / sum);
+        }
+        return normalizedIntensity;
+    }
+
+    public static double[] normalizeSumDoubleArray(double[] intensityList) {
+        double sum = 0d;
+        for (int i = 0; i < intensityList.length; i++) {
+            sum += intensityList[i];
+        }
+        return normalizeSumDoubleArray(intensityList, sum);
+    }
+
     public static List<Double> normalizeSumDouble(List<Double> intensityList, double sum) {
         List<Double> normalizedIntensity = new ArrayList<>();
         for (int i = 0; i < intensityList.size(); i++) {
@@ -0,0 +1,89 @@
+package net.csibio.propro.benchmark;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.core.convert.support.DefaultConversionService;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 基准测试使用的轻量级装配器,不启动Spring容器也不连接Mongo
+ * 只装配@Component/@Service标注的算法组件与加载器,@Value字段取注解中的默认值,Service接口与DAO等依赖保持为null
+ * 被测的计算路径不应当访问数据库,一旦访问会直接抛出空指针异常
+ */
+public class BenchmarkBeans {
+
+    private static final String DAO_PACKAGE = "net.csibio.propro.dao.";
+
+    private final Map<Class<?>, Object> beans = new HashMap<>();
+    private final DefaultConversionService conversionService = new DefaultConversionService();
+    private final StandardEnvironment environment = new StandardEnvironment();
+
+    @SuppressWarnings("unchecked")
+    public synchronized <T> T get(Class<T> clazz) {
+        Object bean = beans.get(clazz);
+        if (bean != null) {
+            return (T) bean;
+        }
+        try {
+            T instance = clazz.getDeclaredConstructor().newInstance();
+            //先登记再注入,以支持组件之间的循环依赖
+            beans.put(clazz, instance);
+            for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers())) {
+                        continue;
+                    }
+                    Object value = resolve(field);
+                    if (value != null) {
+                        field.setAccessible(true);
+                        field.set(instance, value);
+                    }
+                }
+            }
+            for (Method method : clazz.getMethods()) {
+                if (method.isAnnotationPresent(PostConstruct.class)) {
+                    method.invoke(instance);
+                }
+            }
+            return instance;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot create benchmark bean:" + clazz.getName(), e);
+        }
+    }
+
+    private Object resolve(Field field) {
+        Value value = field.getAnnotation(Value.class);
+        if (value != null) {
+            //形如${key:default}
+            String expression = value.value();
+            int split = expression.indexOf(':');
+            if (split == -1 || !expression.endsWith("}")) {
+                return null;
+            }
+            return conversionService.convert(expression.substring(split + 1, expression.length() - 1), field.getType());
+        }
+        if (!field.isAnnotationPresent(Autowired.class)) {
+            return null;
+        }
+        if (field.getType().isAssignableFrom(StandardEnvironment.class)) {
+            return environment;
+        }
+        Class<?> type = field.getType();
+        if (type.isInterface() || type.getName().startsWith(DAO_PACKAGE)) {
+            return null;
+        }
+        if (AnnotatedElementUtils.hasAnnotation(type, Component.class)) {
+            return get(type);
+        }
+        return null;
+    }
+}
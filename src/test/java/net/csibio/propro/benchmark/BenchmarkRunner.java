@@ -0,0 +1,54 @@
+package net.csibio.propro.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+
+/**
+ * 统一的基准测试入口,结果以JSON格式输出,便于在不同提交之间进行对比(例如使用jmh.morethan.net或者直接diff)
+ * 默认运行benchmark包下的全部基准测试,第一个参数为需要运行的基准测试的正则表达式
+ * 结果文件默认为target/jmh/jmh-{当前提交}.json,可以通过-Djmh.result指定
+ * <p>
+ * 运行方式: mvn -P benchmark test-compile exec:exec -Dbenchmark=Extraction
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : BenchmarkRunner.class.getPackageName() + ".*";
+        String result = System.getProperty("jmh.result", "target/jmh/jmh-" + commit() + ".json");
+        File parent = new File(result).getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        Options opt = new OptionsBuilder()
+                .include(include)
+                .resultFormat(ResultFormatType.JSON)
+                .result(result)
+                .build();
+        new Runner(opt).run();
+        System.out.println("基准测试结果:" + result);
+    }
+
+    /**
+     * @return 当前的git提交编号,不在git仓库中时返回local
+     */
+    private static String commit() {
+        try {
+            Process process = new ProcessBuilder("git", "rev-parse", "--short", "HEAD").redirectErrorStream(true).start();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                String line = reader.readLine();
+                if (process.waitFor() == 0 && line != null && !line.isBlank()) {
+                    return line.trim();
+                }
+            }
+        } catch (Exception ignored) {
+        }
+        return "local";
+    }
+}
@@ -0,0 +1,120 @@
+package net.csibio.propro.benchmark;
+
+import net.csibio.propro.algorithm.codec.BaseCodec;
+import net.csibio.propro.constants.enums.DataCodec;
+import net.csibio.propro.domain.db.DataDO;
+import net.csibio.propro.utils.DataUtil;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * XIC结果的编解码: 对比ZLIB与SHUFFLE两种编码格式的编码耗时与解码耗时,每一次调用处理全部size个结果
+ * 压缩率(压缩后字节数/原始字节数)在Setup阶段输出
+ * <p>
+ * 运行方式: mvn -P benchmark test-compile exec:exec -Dbenchmark=CodecBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class CodecBenchmark {
+
+    @Param({"ZLIB", "SHUFFLE"})
+    String codec;
+
+    @Param({"10000"})
+    int size;
+
+    @Param({"200"})
+    int points;
+
+    @Param({"6"})
+    int fragments;
+
+    BaseCodec dataCodec;
+    List<DataDO> originList;
+    List<DataDO> encodedList;
+
+    @Setup
+    public void setup() {
+        dataCodec = DataUtil.getCodec(DataCodec.getByName(codec));
+        originList = new SyntheticDia(20210803L, 600, 625).xicData(size, points, fragments);
+        encodedList = new ArrayList<>(size);
+        long rawBytes = 0, encodedBytes = 0;
+        for (DataDO origin : originList) {
+            DataDO data = origin(origin);
+            dataCodec.encode(data);
+            encodedList.add(encoded(data));
+            rawBytes += (long) points * Float.BYTES * (5 + fragments);
+            encodedBytes += bytes(data);
+        }
+        System.out.println(codec + " Compression Ratio: " + encodedBytes + "/" + rawBytes + "=" + String.format("%.3f", encodedBytes * 1d / rawBytes));
+    }
+
+    @Benchmark
+    public void encode(Blackhole bh) {
+        for (DataDO origin : originList) {
+            DataDO data = origin(origin);
+            dataCodec.encode(data);
+            bh.consume(data);
+        }
+    }
+
+    @Benchmark
+    public void decode(Blackhole bh) {
+        for (DataDO encoded : encodedList) {
+            DataDO data = encoded(encoded);
+            dataCodec.decode(data);
+            bh.consume(data);
+        }
+    }
+
+    private static DataDO origin(DataDO origin) {
+        DataDO data = new DataDO();
+        data.setRtArray(origin.getRtArray());
+        data.setMs1Ints(origin.getMs1Ints());
+        data.setSelfInts(origin.getSelfInts());
+        data.setIonsLow(origin.getIonsLow());
+        data.setIonsHigh(origin.getIonsHigh());
+        data.setIntMap(origin.getIntMap());
+        return data;
+    }
+
+    /**
+     * 只保留压缩字段,模拟从数据库中读取的文档
+     */
+    private static DataDO encoded(DataDO encoded) {
+        DataDO data = new DataDO();
+        data.setRtBytes(encoded.getRtBytes());
+        data.setMs1IntsBytes(encoded.getMs1IntsBytes());
+        data.setSelfIntsBytes(encoded.getSelfIntsBytes());
+        data.setIonsLowBytes(encoded.getIonsLowBytes());
+        data.setIonsHighBytes(encoded.getIonsHighBytes());
+        data.setIntMapBytes(encoded.getIntMapBytes() == null ? null : new HashMap<>(encoded.getIntMapBytes()));
+        data.setXicBytes(encoded.getXicBytes());
+        return data;
+    }
+
+    private static long bytes(DataDO data) {
+        long size = length(data.getRtBytes()) + length(data.getMs1IntsBytes()) + length(data.getSelfIntsBytes())
+                + length(data.getIonsLowBytes()) + length(data.getIonsHighBytes()) + length(data.getXicBytes());
+        if (data.getIntMapBytes() != null) {
+            for (Map.Entry<String, byte[]> entry : data.getIntMapBytes().entrySet()) {
+                size += entry.getKey().length() + length(entry.getValue());
+            }
+        }
+        return size;
+    }
+
+    private static long length(byte[] array) {
+        return array == null ? 0 : array.length;
+    }
+}
@@ -0,0 +1,86 @@
+package net.csibio.propro.benchmark;
+
+import net.csibio.propro.algorithm.extract.Extractor;
+import net.csibio.propro.constants.constant.Constants;
+import net.csibio.propro.domain.bean.data.SpectrumBlock;
+import net.csibio.propro.domain.bean.peptide.FragmentInfo;
+import net.csibio.propro.domain.bean.peptide.PeptideCoord;
+import net.csibio.propro.domain.db.MethodDO;
+import net.csibio.propro.domain.options.AnalyzeParams;
+import net.csibio.propro.utils.ConvolutionUtil;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单个MS2窗口的XIC提取: 逐碎片逐光谱累加(ConvolutionUtil.accumulation),逐肽段提取(Extractor.extract)以及批量提取(Extractor.extractBatch)
+ * 数据由SyntheticDia生成,coordSize个肽段分布在spectraSize张光谱上,RT窗口使用方法包的默认值
+ * <p>
+ * 运行方式: mvn -P benchmark test-compile exec:exec -Dbenchmark=ExtractionBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExtractionBenchmark {
+
+    @Param({"200", "1000"})
+    int coordSize;
+
+    @Param({"1000"})
+    int spectraSize;
+
+    @Param({"2000"})
+    int noisePeaks;
+
+    Extractor extractor;
+    AnalyzeParams params;
+    List<PeptideCoord> coords;
+    SpectrumBlock ms1Block;
+    SpectrumBlock ms2Block;
+
+    @Setup
+    public void setup() {
+        BenchmarkBeans beans = new BenchmarkBeans();
+        extractor = beans.get(Extractor.class);
+        params = new AnalyzeParams(new MethodDO().init());
+        SyntheticDia dia = new SyntheticDia(20210801L, 600, 625);
+        coords = dia.coords(coordSize, spectraSize, params.getMethod().getEic().getRtWindow());
+        ms2Block = dia.ms2Block(coords, spectraSize, noisePeaks);
+        ms1Block = dia.ms1Block(coords, spectraSize, noisePeaks);
+    }
+
+    @Benchmark
+    public void accumulation(Blackhole bh) {
+        float ppmWindow = params.getMethod().getEic().getMzWindow().floatValue();
+        for (PeptideCoord coord : coords) {
+            int from = ms2Block.firstIndexNotBelow(coord.getRtStart());
+            int to = Math.max(from, ms2Block.firstIndexAbove(coord.getRtEnd()));
+            for (FragmentInfo fragment : coord.getFragments()) {
+                float mz = fragment.getMz().floatValue();
+                float window = mz * ppmWindow * Constants.PPM_F;
+                float[] ints = new float[to - from];
+                for (int i = from; i < to; i++) {
+                    ints[i - from] = ConvolutionUtil.accumulation(ms2Block, i, mz - window, mz + window);
+                }
+                bh.consume(ints);
+            }
+        }
+    }
+
+    @Benchmark
+    public void extract(Blackhole bh) {
+        for (PeptideCoord coord : coords) {
+            bh.consume(extractor.extract(coord, ms1Block, ms2Block, params, true, null));
+        }
+    }
+
+    @Benchmark
+    public void extractBatch(Blackhole bh) {
+        bh.consume(extractor.extractBatch(coords, ms2Block, params));
+    }
+}
@@ -0,0 +1,76 @@
+package net.csibio.propro.benchmark;
+
+import net.csibio.propro.algorithm.learner.Statistics;
+import net.csibio.propro.algorithm.learner.classifier.Lda;
+import net.csibio.propro.algorithm.score.ScoreType;
+import net.csibio.propro.domain.bean.learner.LearningParams;
+import net.csibio.propro.domain.bean.learner.ScoreMatrix;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 半监督学习: 在模拟的打分矩阵上训练LDA权重(Lda.classifier),按权重计算总分(Lda.score)以及FDR统计(Statistics.errorStatistics)
+ * 真肽段的第一个峰组的子分数整体高于其他峰组,保证训练能够收敛
+ * <p>
+ * 运行方式: mvn -P benchmark test-compile exec:exec -Dbenchmark=LearnerBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class LearnerBenchmark {
+
+    @Param({"20000"})
+    int peptides;
+
+    @Param({"5"})
+    int peakGroups;
+
+    Lda lda;
+    Statistics statistics;
+    ScoreMatrix matrix;
+    List<String> scoreTypes;
+    HashMap<String, Double> weights;
+
+    @Setup
+    public void setup() {
+        BenchmarkBeans beans = new BenchmarkBeans();
+        lda = beans.get(Lda.class);
+        statistics = beans.get(Statistics.class);
+        scoreTypes = ScoreType.usedScoreTypes();
+        matrix = new SyntheticDia(20210803L, 600, 625).scoreMatrix(peptides, peakGroups, scoreTypes);
+        weights = new HashMap<>();
+        for (String scoreType : scoreTypes) {
+            weights.put(scoreType, 1d / scoreTypes.size());
+        }
+    }
+
+    private LearningParams learningParams() {
+        LearningParams learningParams = new LearningParams();
+        learningParams.setScoreTypes(scoreTypes);
+        return learningParams;
+    }
+
+    @Benchmark
+    public void ldaClassifier(Blackhole bh) {
+        bh.consume(lda.classifier(matrix, learningParams()));
+    }
+
+    @Benchmark
+    public void score(Blackhole bh) {
+        lda.score(matrix, weights, scoreTypes);
+        bh.consume(matrix.getTotalScores());
+    }
+
+    @Benchmark
+    public void errorStatistics(Blackhole bh) {
+        lda.score(matrix, weights, scoreTypes);
+        bh.consume(statistics.errorStatistics(matrix, learningParams()));
+    }
+}
@@ -0,0 +1,97 @@
+package net.csibio.propro.benchmark;
+
+import net.csibio.propro.algorithm.peak.GaussFilter;
+import net.csibio.propro.algorithm.peak.NoiseEstimator;
+import net.csibio.propro.algorithm.peak.PeakPicker;
+import net.csibio.propro.domain.bean.data.RtIntensityPairsDouble;
+import net.csibio.propro.domain.options.SigmaSpacing;
+import org.apache.commons.lang3.ArrayUtils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 选峰流程中装箱版本(Double[])与原始类型版本(double[])的性能对比
+ * 模拟一个肽段的6个碎片XIC,每个XIC包含rtSize个点,依次执行高斯平滑,信噪比计算与最高峰挑选
+ * <p>
+ * 运行方式: 在IDE中直接运行main函数,或者 mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=net.csibio.propro.benchmark.PeakPickingBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PeakPickingBenchmark {
+
+    @Param({"300", "1200"})
+    int rtSize;
+
+    int ionSize = 6;
+
+    GaussFilter gaussFilter = new GaussFilter();
+    NoiseEstimator noiseEstimator = new NoiseEstimator();
+    PeakPicker peakPicker = new PeakPicker();
+    SigmaSpacing ss = SigmaSpacing.create();
+
+    double[] rts;
+    double[][] ints;
+    Double[] boxedRts;
+    HashMap<String, Double[]> boxedIntMap;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1024);
+        rts = new double[rtSize];
+        ints = new double[ionSize][rtSize];
+        boxedIntMap = new HashMap<>();
+        for (int i = 0; i < rtSize; i++) {
+            rts[i] = i * 3.4d;
+        }
+        for (int k = 0; k < ionSize; k++) {
+            double apex = rtSize * 3.4d / 2;
+            for (int i = 0; i < rtSize; i++) {
+                double gauss = Math.exp(-Math.pow(rts[i] - apex, 2) / (2 * 30 * 30)) * 10000 / (k + 1);
+                ints[k][i] = gauss + random.nextDouble() * 200;
+            }
+            boxedIntMap.put("y" + (k + 3), ArrayUtils.toObject(ints[k]));
+        }
+        boxedRts = ArrayUtils.toObject(rts);
+    }
+
+    @Benchmark
+    public void boxed(Blackhole bh) {
+        HashMap<String, Double[]> smoothMap = gaussFilter.filter(boxedRts, boxedIntMap, ss);
+        for (String cutInfo : boxedIntMap.keySet()) {
+            double[] noises200 = noiseEstimator.computeSTN(boxedRts, smoothMap.get(cutInfo), 200, 30);
+            double[] noises1000 = noiseEstimator.computeSTN(boxedRts, boxedIntMap.get(cutInfo), 1000, 30);
+            RtIntensityPairsDouble maxPeaks = peakPicker.pickMaxPeak(boxedRts, smoothMap.get(cutInfo), noises200);
+            bh.consume(noises1000);
+            bh.consume(maxPeaks);
+        }
+    }
+
+    @Benchmark
+    public void primitive(Blackhole bh) {
+        double[][] smooths = gaussFilter.filter(rts, ints, ss);
+        for (int k = 0; k < ionSize; k++) {
+            double[] noises200 = noiseEstimator.computeSTN(rts, smooths[k], 200, 30);
+            double[] noises1000 = noiseEstimator.computeSTN(rts, ints[k], 1000, 30);
+            RtIntensityPairsDouble maxPeaks = peakPicker.pickMaxPeak(rts, smooths[k], noises200);
+            bh.consume(noises1000);
+            bh.consume(maxPeaks);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder().include(PeakPickingBenchmark.class.getSimpleName()).build();
+        new Runner(options).run();
+    }
+}
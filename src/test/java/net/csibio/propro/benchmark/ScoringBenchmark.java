@@ -0,0 +1,125 @@
+package net.csibio.propro.benchmark;
+
+import net.csibio.propro.algorithm.extract.Extractor;
+import net.csibio.propro.algorithm.peak.PeakPicker;
+import net.csibio.propro.algorithm.score.scorer.Scorer;
+import net.csibio.propro.domain.bean.data.SpectrumBlock;
+import net.csibio.propro.domain.bean.irt.IrtResult;
+import net.csibio.propro.domain.bean.peptide.PeptideCoord;
+import net.csibio.propro.domain.bean.score.SlopeIntercept;
+import net.csibio.propro.domain.db.DataDO;
+import net.csibio.propro.domain.db.MethodDO;
+import net.csibio.propro.domain.db.RunDO;
+import net.csibio.propro.domain.options.AnalyzeParams;
+import net.csibio.propro.domain.options.SigmaSpacing;
+import net.csibio.propro.utils.DataUtil;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 提取之后的单肽段处理: 选峰(PeakPicker.searchByIonsShape),选峰加全部子分数打分(Scorer.score)以及入库前的压缩(DataUtil.compress)
+ * 每一轮迭代开始前重新提取XIC,避免上一轮写入DataDO中的中间结果影响下一轮的测量
+ * <p>
+ * 运行方式: mvn -P benchmark test-compile exec:exec -Dbenchmark=ScoringBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScoringBenchmark {
+
+    @Param({"200"})
+    int coordSize;
+
+    @Param({"1000"})
+    int spectraSize;
+
+    @Param({"2000"})
+    int noisePeaks;
+
+    Extractor extractor;
+    PeakPicker peakPicker;
+    Scorer scorer;
+    AnalyzeParams params;
+    RunDO run;
+    SigmaSpacing ss;
+    List<PeptideCoord> coords;
+    SpectrumBlock ms1Block;
+    SpectrumBlock ms2Block;
+    List<DataDO> dataList;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        BenchmarkBeans beans = new BenchmarkBeans();
+        extractor = beans.get(Extractor.class);
+        peakPicker = beans.get(PeakPicker.class);
+        scorer = beans.get(Scorer.class);
+        params = new AnalyzeParams(new MethodDO().init());
+        ss = params.getMethod().getIrt().getSs();
+        IrtResult irt = new IrtResult();
+        irt.setSi(new SlopeIntercept(1d, 0d));
+        run = new RunDO();
+        run.setIrt(irt);
+        SyntheticDia dia = new SyntheticDia(20210802L, 600, 625);
+        coords = dia.coords(coordSize, spectraSize, params.getMethod().getEic().getRtWindow());
+        ms2Block = dia.ms2Block(coords, spectraSize, noisePeaks);
+        ms1Block = dia.ms1Block(coords, spectraSize, noisePeaks);
+    }
+
+    @Setup(Level.Iteration)
+    public void extract() {
+        dataList = new ArrayList<>(coords.size());
+        for (PeptideCoord coord : coords) {
+            dataList.add(extractor.extract(coord, ms1Block, ms2Block, params, true, null));
+        }
+    }
+
+    @Benchmark
+    public void searchByIonsShape(Blackhole bh) {
+        for (int i = 0; i < coords.size(); i++) {
+            DataDO data = dataList.get(i);
+            if (data != null) {
+                bh.consume(peakPicker.searchByIonsShape(data, coords.get(i), ss));
+            }
+        }
+    }
+
+    @Benchmark
+    public void score(Blackhole bh) {
+        for (int i = 0; i < coords.size(); i++) {
+            DataDO data = dataList.get(i);
+            if (data != null) {
+                bh.consume(scorer.score(run, data, coords.get(i), ms1Block, ms2Block, params));
+            }
+        }
+    }
+
+    /**
+     * compress会清空原始数组,因此每次都在副本上进行压缩
+     */
+    @Benchmark
+    public void compress(Blackhole bh) {
+        for (DataDO data : dataList) {
+            if (data == null) {
+                continue;
+            }
+            DataDO copy = new DataDO();
+            copy.setRtArray(data.getRtArray());
+            copy.setIntMap(data.getIntMap());
+            copy.setSelfInts(data.getSelfInts());
+            copy.setMs1Ints(data.getMs1Ints());
+            copy.setIonsLow(data.getIonsLow());
+            copy.setIonsHigh(data.getIonsHigh());
+            copy.setCutInfoMap(data.getCutInfoMap());
+            copy.setLibIntMap(data.getLibIntMap());
+            DataUtil.compress(copy);
+            bh.consume(copy);
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package net.csibio.propro.benchmark;
+
+import net.csibio.propro.algorithm.score.ScoreType;
+import net.csibio.propro.domain.bean.data.DataScore;
+import net.csibio.propro.domain.bean.data.SpectrumBlock;
+import net.csibio.propro.domain.bean.learner.ScoreMatrix;
+import net.csibio.propro.domain.bean.peptide.FragmentInfo;
+import net.csibio.propro.domain.bean.peptide.PeptideCoord;
+import net.csibio.propro.domain.bean.score.PeakGroup;
+import net.csibio.propro.domain.db.DataDO;
+
+import java.nio.FloatBuffer;
+import java.util.*;
+
+/**
+ * 确定性的DIA模拟数据生成器,相同的seed总是生成完全相同的数据,基准测试不依赖真实的aird文件与Mongo
+ * <p>
+ * 模拟一个MS2窗口: spectraSize张光谱,每张光谱包含noisePeaks个随机噪音峰,以及窗口内所有肽段碎片按高斯峰形在各自RT附近的信号
+ * 每一个肽段包含6个真碎片与6个伪碎片,真碎片的信号写入光谱,伪碎片只作为提取坐标
+ */
+public class SyntheticDia {
+
+    static final String AMINO_ACIDS = "ACDEFGHIKLMNPQRSTVWY";
+
+    /**
+     * 相邻两张MS2光谱之间的RT间隔(秒)
+     */
+    public static final float CYCLE = 3.4f;
+
+    /**
+     * 色谱峰的标准差(秒)
+     */
+    public static final double PEAK_SIGMA = 6d;
+
+    public static final int FRAGMENT_SIZE = 6;
+
+    final Random random;
+
+    final double mzStart;
+    final double mzEnd;
+
+    public SyntheticDia(long seed, double mzStart, double mzEnd) {
+        this.random = new Random(seed);
+        this.mzStart = mzStart;
+        this.mzEnd = mzEnd;
+    }
+
+    /**
+     * 生成窗口内的肽段坐标,RT均匀分布在整个梯度上,RT范围为rt±rtWindow
+     *
+     * @param size        肽段数目
+     * @param spectraSize 梯度上的光谱数目,用于确定RT范围
+     * @param rtWindow    坐标的RT窗口(秒),为-1时使用整个梯度
+     * @return
+     */
+    public List<PeptideCoord> coords(int size, int spectraSize, double rtWindow) {
+        double gradient = spectraSize * CYCLE;
+        List<PeptideCoord> coords = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String sequence = sequence(8 + random.nextInt(12));
+            int charge = 2 + random.nextInt(2);
+            PeptideCoord coord = new PeptideCoord();
+            coord.setId(String.valueOf(i));
+            coord.setPeptideRef(sequence + "_" + charge);
+            coord.setProteins(Collections.singletonList("PROT" + (i / 3)));
+            coord.setIsUnique(true);
+            coord.setSequence(sequence);
+            coord.setCharge(charge);
+            coord.setMz(mzStart + random.nextDouble() * (mzEnd - mzStart));
+            coord.setUnimodMap(new HashMap<>());
+            coord.setDecoySequence(new StringBuilder(sequence).reverse().toString());
+            coord.setDecoyUnimodMap(new HashMap<>());
+            coord.setFragments(fragments());
+            coord.setDecoyFragments(fragments());
+            double rt = gradient * 0.05 + random.nextDouble() * gradient * 0.9;
+            coord.setRt(rt);
+            coord.setIrt(rt);
+            if (rtWindow == -1) {
+                coord.setRtRange(-1, 99999);
+            } else {
+                coord.setRtRange(rt - rtWindow, rt + rtWindow);
+            }
+            coords.add(coord);
+        }
+        return coords;
+    }
+
+    /**
+     * 生成包含所有坐标真碎片信号的光谱块
+     *
+     * @param coords      肽段坐标
+     * @param spectraSize 光谱数目
+     * @param noisePeaks  每张光谱中的噪音峰数目
+     * @return
+     */
+    public SpectrumBlock ms2Block(List<PeptideCoord> coords, int spectraSize, int noisePeaks) {
+        List<float[]> signalMzs = new ArrayList<>();
+        List<float[]> signalInts = new ArrayList<>();
+        for (PeptideCoord coord : coords) {
+            float[] mzs = new float[coord.getFragments().size()];
+            float[] ints = new float[coord.getFragments().size()];
+            for (int i = 0; i < mzs.length; i++) {
+                mzs[i] = coord.getFragments().get(i).getMz().floatValue();
+                ints[i] = coord.getFragments().get(i).getIntensity().floatValue();
+            }
+            signalMzs.add(mzs);
+            signalInts.add(ints);
+        }
+        return block(coords, signalMzs, signalInts, spectraSize, noisePeaks, 150f, 1500f);
+    }
+
+    /**
+     * 生成包含所有坐标前体信号的MS1光谱块
+     */
+    public SpectrumBlock ms1Block(List<PeptideCoord> coords, int spectraSize, int noisePeaks) {
+        List<float[]> signalMzs = new ArrayList<>();
+        List<float[]> signalInts = new ArrayList<>();
+        for (PeptideCoord coord : coords) {
+            signalMzs.add(new float[]{coord.getMz().floatValue()});
+            signalInts.add(new float[]{50000f});
+        }
+        return block(coords, signalMzs, signalInts, spectraSize, noisePeaks, 400f, 1200f);
+    }
+
+    /**
+     * 生成半监督学习使用的打分矩阵,真肽段的子分数整体高于伪肽段,每个肽段包含peakGroups个峰组
+     *
+     * @param peptides   真伪肽段各自的数目
+     * @param peakGroups 每个肽段的峰组数目
+     * @param scoreTypes 子分数类型
+     * @return
+     */
+    public ScoreMatrix scoreMatrix(int peptides, int peakGroups, List<String> scoreTypes) {
+        ScoreMatrix matrix = new ScoreMatrix(scoreTypes);
+        for (int i = 0; i < peptides * 2; i++) {
+            boolean decoy = i % 2 == 1;
+            DataScore dataScore = new DataScore();
+            dataScore.setId(String.valueOf(i));
+            dataScore.setPeptideRef("PEPTIDE" + (i / 2) + "_2");
+            dataScore.setDecoy(decoy);
+            dataScore.setProteins(Collections.singletonList("PROT" + (i / 6)));
+            dataScore.setLibRt(random.nextDouble() * 100);
+            dataScore.setIrt(dataScore.getLibRt());
+            List<PeakGroup> peakGroupList = new ArrayList<>(peakGroups);
+            for (int p = 0; p < peakGroups; p++) {
+                PeakGroup peakGroup = new PeakGroup();
+                peakGroup.initScore(scoreTypes.size());
+                //只有真肽段的第一个峰组是真实信号
+                double shift = (!decoy && p == 0) ? 1.5d : 0d;
+                for (int s = 0; s < scoreTypes.size(); s++) {
+                    peakGroup.getScores()[s] = random.nextGaussian() + shift;
+                }
+                peakGroup.put(ScoreType.Dotprod, Math.min(1d, Math.abs(random.nextGaussian() * 0.2 + shift * 0.3)), scoreTypes);
+                double rt = 100 + random.nextDouble() * 3000;
+                peakGroup.setApexRt(rt);
+                peakGroup.setSelectedRt(rt);
+                peakGroup.setIntensitySum(random.nextDouble() * 1e6);
+                peakGroup.setFitIntSum(peakGroup.getIntensitySum());
+                peakGroup.setMs1Sum(random.nextDouble() * 1e6);
+                peakGroup.setIonsLow(random.nextInt(FRAGMENT_SIZE));
+                peakGroup.setBestIon("y" + (3 + random.nextInt(FRAGMENT_SIZE)));
+                peakGroupList.add(peakGroup);
+            }
+            dataScore.setPeakGroupList(peakGroupList);
+            matrix.append(dataScore);
+        }
+        matrix.trim();
+        return matrix;
+    }
+
+    /**
+     * 生成未压缩的XIC结果,每一个结果包含points个等间隔的RT,以及fragments个碎片的高斯峰强度,约三成的点没有信号
+     *
+     * @param size      结果数目
+     * @param points    每一个XIC的点数
+     * @param fragments 每一个结果的碎片数目
+     * @return
+     */
+    public List<DataDO> xicData(int size, int points, int fragments) {
+        List<DataDO> dataList = new ArrayList<>(size);
+        for (int d = 0; d < size; d++) {
+            DataDO data = new DataDO();
+            data.setPeptideRef("PEPTIDE" + d + "_2");
+            float[] rtArray = new float[points];
+            float start = random.nextInt(2000) * CYCLE;
+            for (int i = 0; i < points; i++) {
+                rtArray[i] = start + i * CYCLE;
+            }
+            data.setRtArray(rtArray);
+            double apex = points * (0.2 + random.nextDouble() * 0.6);
+            data.setMs1Ints(trace(points, apex, 1e6));
+            data.setSelfInts(trace(points, apex, 1e4));
+            int[] ionsLow = new int[points];
+            int[] ionsHigh = new int[points];
+            HashMap<String, float[]> intMap = new HashMap<>();
+            for (int f = 0; f < fragments; f++) {
+                float[] ints = trace(points, apex, 2e5 / (f + 1));
+                for (int i = 0; i < points; i++) {
+                    if (ints[i] > 0) {
+                        ionsLow[i]++;
+                    }
+                    if (ints[i] > 300) {
+                        ionsHigh[i]++;
+                    }
+                }
+                intMap.put("y" + (f + 3), ints);
+            }
+            data.setIonsLow(ionsLow);
+            data.setIonsHigh(ionsHigh);
+            data.setIntMap(intMap);
+            dataList.add(data);
+        }
+        return dataList;
+    }
+
+    private float[] trace(int points, double apex, double height) {
+        float[] ints = new float[points];
+        for (int i = 0; i < points; i++) {
+            if (random.nextDouble() < 0.3) {
+                continue;
+            }
+            double delta = (i - apex) * CYCLE;
+            ints[i] = (float) (height * Math.exp(-delta * delta / (2 * PEAK_SIGMA * PEAK_SIGMA)) + random.nextDouble() * 500);
+        }
+        return ints;
+    }
+
+    private SpectrumBlock block(List<PeptideCoord> coords, List<float[]> signalMzs, List<float[]> signalInts,
+                                int spectraSize, int noisePeaks, float minMz, float maxMz) {
+        float[] rts = new float[spectraSize];
+        int[] offsets = new int[spectraSize + 1];
+        List<float[]> mzList = new ArrayList<>(spectraSize);
+        List<float[]> intList = new ArrayList<>(spectraSize);
+        for (int s = 0; s < spectraSize; s++) {
+            rts[s] = s * CYCLE;
+            TreeMap<Float, Float> peaks = new TreeMap<>();
+            for (int n = 0; n < noisePeaks; n++) {
+                peaks.merge(minMz + random.nextFloat() * (maxMz - minMz), 50f + random.nextFloat() * 500f, Float::sum);
+            }
+            for (int c = 0; c < coords.size(); c++) {
+                double delta = rts[s] - coords.get(c).getRt();
+                if (Math.abs(delta) > PEAK_SIGMA * 4) {
+                    continue;
+                }
+                double gauss = Math.exp(-delta * delta / (2 * PEAK_SIGMA * PEAK_SIGMA));
+                float[] mzs = signalMzs.get(c);
+                float[] ints = signalInts.get(c);
+                for (int i = 0; i < mzs.length; i++) {
+                    peaks.merge(mzs[i], (float) (ints[i] * gauss), Float::sum);
+                }
+            }
+            float[] mzArray = new float[peaks.size()];
+            float[] intArray = new float[peaks.size()];
+            int i = 0;
+            for (Map.Entry<Float, Float> entry : peaks.entrySet()) {
+                mzArray[i] = entry.getKey();
+                intArray[i] = entry.getValue();
+                i++;
+            }
+            mzList.add(mzArray);
+            intList.add(intArray);
+            offsets[s + 1] = offsets[s] + mzArray.length;
+        }
+        float[] mzs = new float[offsets[spectraSize]];
+        float[] ints = new float[offsets[spectraSize]];
+        for (int s = 0; s < spectraSize; s++) {
+            System.arraycopy(mzList.get(s), 0, mzs, offsets[s], mzList.get(s).length);
+            System.arraycopy(intList.get(s), 0, ints, offsets[s], intList.get(s).length);
+        }
+        return new SpectrumBlock(rts, offsets, FloatBuffer.wrap(mzs), FloatBuffer.wrap(ints), false);
+    }
+
+    private List<FragmentInfo> fragments() {
+        List<FragmentInfo> fragments = new ArrayList<>(FRAGMENT_SIZE);
+        for (int i = 0; i < FRAGMENT_SIZE; i++) {
+            double mz = 200 + random.nextDouble() * 1200;
+            double intensity = 2000 + random.nextDouble() * 20000 / (i + 1);
+            fragments.add(new FragmentInfo("y" + (i + 2), mz, intensity, 1));
+        }
+        return fragments;
+    }
+
+    private String sequence(int length) {
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length - 1; i++) {
+            builder.append(AMINO_ACIDS.charAt(random.nextInt(AMINO_ACIDS.length())));
+        }
+        //模拟胰酶酶切,C端为K或者R
+        builder.append(random.nextBoolean() ? 'K' : 'R');
+        return builder.toString();
+    }
+}
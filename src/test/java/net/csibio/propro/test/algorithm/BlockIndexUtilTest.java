@@ -0,0 +1,95 @@
+package net.csibio.propro.test.algorithm;
+
+import net.csibio.propro.domain.db.BlockIndexDO;
+import net.csibio.propro.utils.BlockIndexUtil;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 光谱块索引二进制压缩格式的往返一致性,以及无法压缩的列保持列表格式
+ */
+public class BlockIndexUtilTest {
+
+    @Test
+    void testRoundTrip() {
+        Random random = new Random(20210803L);
+        for (int spectra : new int[]{0, 1, 31, 32, 33, 1000, 6000}) {
+            BlockIndexDO expected = block(random, spectra);
+            BlockIndexDO block = copy(expected);
+            BlockIndexUtil.compress(block);
+            assertNull(block.getNums());
+            assertNull(block.getRts());
+            assertNull(block.getMzs());
+            assertNull(block.getInts());
+            assertFalse(BlockIndexUtil.needCompress(block));
+
+            BlockIndexUtil.decompress(block);
+            assertEquals(expected.getNums(), block.getNums());
+            assertEquals(expected.getRts(), block.getRts());
+            assertEquals(expected.getMzs(), block.getMzs());
+            assertEquals(expected.getInts(), block.getInts());
+            assertNull(block.getRtsBytes());
+        }
+    }
+
+    @Test
+    void testFallback() {
+        BlockIndexDO expected = block(new Random(1L), 100);
+        //乱序的rt与超过int范围的光谱块大小不进行压缩
+        expected.getRts().set(50, 0f);
+        expected.getInts().set(10, (long) Integer.MAX_VALUE);
+        BlockIndexDO block = copy(expected);
+        BlockIndexUtil.compress(block);
+        assertNull(block.getNums());
+        assertNull(block.getMzs());
+        assertEquals(expected.getRts(), block.getRts());
+        assertEquals(expected.getInts(), block.getInts());
+        assertNull(block.getRtsBytes());
+        assertNull(block.getIntsBytes());
+
+        BlockIndexUtil.decompress(block);
+        assertEquals(expected.getNums(), block.getNums());
+        assertEquals(expected.getRts(), block.getRts());
+        assertEquals(expected.getMzs(), block.getMzs());
+        assertEquals(expected.getInts(), block.getInts());
+    }
+
+    @Test
+    void testCompressedSize() {
+        BlockIndexDO block = block(new Random(7L), 6000);
+        BlockIndexUtil.compress(block);
+        long bytes = block.getNumsBytes().length + block.getRtsBytes().length + block.getMzsBytes().length + block.getIntsBytes().length;
+        //原始数据为4+4+8+8字节每个光谱
+        assertTrue(bytes < 6000 * 24 / 2, "bytes:" + bytes);
+    }
+
+    static BlockIndexDO block(Random random, int spectra) {
+        BlockIndexDO block = new BlockIndexDO();
+        block.init();
+        float rt = random.nextFloat() * 10;
+        int num = random.nextInt(100);
+        for (int i = 0; i < spectra; i++) {
+            block.getNums().add(num);
+            block.getRts().add(rt);
+            block.getMzs().add(20000L + random.nextInt(20000));
+            block.getInts().add(10000L + random.nextInt(30000));
+            num += 1 + random.nextInt(40);
+            rt += 3.2f + random.nextFloat() * 0.1f;
+        }
+        return block;
+    }
+
+    static BlockIndexDO copy(BlockIndexDO block) {
+        BlockIndexDO copy = new BlockIndexDO();
+        copy.setNums(new ArrayList<>(block.getNums()));
+        copy.setRts(new ArrayList<>(block.getRts()));
+        copy.setMzs(new ArrayList<>(block.getMzs()));
+        copy.setInts(new ArrayList<>(block.getInts()));
+        return copy;
+    }
+}
@@ -0,0 +1,198 @@
+package net.csibio.propro.test.algorithm;
+
+import net.csibio.propro.algorithm.codec.BaseCodec;
+import net.csibio.propro.algorithm.codec.ShuffleCodec;
+import net.csibio.propro.algorithm.codec.ZlibCodec;
+import net.csibio.propro.constants.enums.DataCodec;
+import net.csibio.propro.domain.db.DataDO;
+import net.csibio.propro.utils.DataUtil;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 两种编码格式的往返一致性,以及旧数据(codec为空)的解码兼容性
+ */
+public class DataCodecTest {
+
+    @Test
+    void testRoundTrip() {
+        Random random = new Random(20210803L);
+        for (BaseCodec codec : new BaseCodec[]{new ZlibCodec(), new ShuffleCodec()}) {
+            for (int i = 0; i < 200; i++) {
+                DataDO expected = xic(random, 1 + random.nextInt(300), random.nextInt(12));
+                DataDO data = copy(expected);
+                codec.encode(data);
+                DataDO decoded = compressedCopy(data);
+                codec.decode(decoded);
+                assertXicEquals(expected, decoded);
+            }
+        }
+    }
+
+    @Test
+    void testNullArrays() {
+        DataDO expected = xic(new Random(1L), 50, 3);
+        expected.setMs1Ints(null);
+        expected.setIonsHigh(null);
+        expected.getIntMap().put("b3", null);
+        expected.getIntMap().put("y4", new float[0]);
+        DataDO data = copy(expected);
+        ShuffleCodec codec = new ShuffleCodec();
+        codec.encode(data);
+        DataDO decoded = compressedCopy(data);
+        codec.decode(decoded);
+        assertXicEquals(expected, decoded);
+        assertNull(decoded.getMs1Ints());
+        assertNull(decoded.getIonsHigh());
+        assertTrue(decoded.getIntMap().containsKey("b3"));
+    }
+
+    @Test
+    void testDecompressByTag() {
+        DataCodec origin = DataUtil.codec;
+        try {
+            Random random = new Random(7L);
+            for (DataCodec type : DataCodec.values()) {
+                DataUtil.codec = type;
+                DataDO expected = xic(random, 120, 6);
+                DataDO data = copy(expected);
+                DataUtil.compress(data);
+                assertEquals(type.getCode(), data.getCodec());
+                assertNull(data.getRtArray());
+                DataUtil.decompress(data);
+                assertXicEquals(expected, data);
+                assertNull(data.getXicBytes());
+                assertNull(data.getRtBytes());
+            }
+
+            //旧版本的数据没有codec字段
+            DataDO expected = xic(random, 120, 6);
+            DataDO legacy = copy(expected);
+            new ZlibCodec().encode(legacy);
+            legacy.setCodec(null);
+            DataUtil.decompress(legacy);
+            assertXicEquals(expected, legacy);
+        } finally {
+            DataUtil.codec = origin;
+        }
+    }
+
+    @Test
+    void testCompressionRatio() {
+        Random random = new Random(11L);
+        long zlib = 0, shuffle = 0;
+        for (int i = 0; i < 100; i++) {
+            DataDO expected = xic(random, 200, 6);
+            DataDO zlibData = copy(expected);
+            new ZlibCodec().encode(zlibData);
+            zlib += size(zlibData);
+            DataDO shuffleData = copy(expected);
+            new ShuffleCodec().encode(shuffleData);
+            shuffle += size(shuffleData);
+        }
+        assertTrue(shuffle < zlib, "shuffle:" + shuffle + ",zlib:" + zlib);
+    }
+
+    /**
+     * 模拟一个XIC结果: 等间隔的RT,高斯峰叠加噪音,约三成的点没有信号
+     */
+    static DataDO xic(Random random, int points, int fragments) {
+        DataDO data = new DataDO();
+        float[] rtArray = new float[points];
+        float rt = 300f + random.nextFloat() * 3000f;
+        for (int i = 0; i < points; i++) {
+            rtArray[i] = rt;
+            rt += 3.4f + random.nextFloat() * 0.01f;
+        }
+        data.setRtArray(rtArray);
+        double apex = points * random.nextDouble();
+        data.setMs1Ints(trace(random, points, apex, 1e6));
+        data.setSelfInts(trace(random, points, apex, 1e4));
+        int[] ionsLow = new int[points];
+        int[] ionsHigh = new int[points];
+        for (int i = 0; i < points; i++) {
+            ionsLow[i] = random.nextInt(fragments + 1);
+            ionsHigh[i] = random.nextInt(ionsLow[i] + 1);
+        }
+        data.setIonsLow(ionsLow);
+        data.setIonsHigh(ionsHigh);
+        HashMap<String, float[]> intMap = new HashMap<>();
+        for (int f = 0; f < fragments; f++) {
+            intMap.put("y" + (f + 3) + (f % 3 == 0 ? "^2" : ""), trace(random, points, apex, 1e5 / (f + 1)));
+        }
+        data.setIntMap(intMap);
+        return data;
+    }
+
+    static float[] trace(Random random, int points, double apex, double height) {
+        float[] ints = new float[points];
+        for (int i = 0; i < points; i++) {
+            if (random.nextDouble() < 0.3) {
+                continue;
+            }
+            double delta = (i - apex) / 3;
+            ints[i] = (float) (height * Math.exp(-delta * delta / 2) + random.nextDouble() * 500);
+        }
+        return ints;
+    }
+
+    static DataDO copy(DataDO data) {
+        DataDO copy = new DataDO();
+        copy.setRtArray(data.getRtArray());
+        copy.setMs1Ints(data.getMs1Ints());
+        copy.setSelfInts(data.getSelfInts());
+        copy.setIonsLow(data.getIonsLow());
+        copy.setIonsHigh(data.getIonsHigh());
+        copy.setIntMap(new HashMap<>(data.getIntMap()));
+        return copy;
+    }
+
+    /**
+     * 只保留压缩字段,模拟从数据库中读取的文档
+     */
+    static DataDO compressedCopy(DataDO data) {
+        DataDO copy = new DataDO();
+        copy.setCodec(data.getCodec());
+        copy.setRtBytes(data.getRtBytes());
+        copy.setMs1IntsBytes(data.getMs1IntsBytes());
+        copy.setSelfIntsBytes(data.getSelfIntsBytes());
+        copy.setIonsLowBytes(data.getIonsLowBytes());
+        copy.setIonsHighBytes(data.getIonsHighBytes());
+        copy.setIntMapBytes(data.getIntMapBytes());
+        copy.setXicBytes(data.getXicBytes());
+        copy.setIntMap(new HashMap<>());
+        return copy;
+    }
+
+    static long size(DataDO data) {
+        long size = length(data.getRtBytes()) + length(data.getMs1IntsBytes()) + length(data.getSelfIntsBytes())
+                + length(data.getIonsLowBytes()) + length(data.getIonsHighBytes()) + length(data.getXicBytes());
+        if (data.getIntMapBytes() != null) {
+            for (Map.Entry<String, byte[]> entry : data.getIntMapBytes().entrySet()) {
+                size += entry.getKey().length() + length(entry.getValue());
+            }
+        }
+        return size;
+    }
+
+    static long length(byte[] array) {
+        return array == null ? 0 : array.length;
+    }
+
+    static void assertXicEquals(DataDO expected, DataDO actual) {
+        assertArrayEquals(expected.getRtArray(), actual.getRtArray());
+        assertArrayEquals(expected.getMs1Ints(), actual.getMs1Ints());
+        assertArrayEquals(expected.getSelfInts(), actual.getSelfInts());
+        assertArrayEquals(expected.getIonsLow(), actual.getIonsLow());
+        assertArrayEquals(expected.getIonsHigh(), actual.getIonsHigh());
+        assertEquals(expected.getIntMap().keySet(), actual.getIntMap().keySet());
+        for (String cutInfo : expected.getIntMap().keySet()) {
+            assertArrayEquals(expected.getIntMap().get(cutInfo), actual.getIntMap().get(cutInfo), cutInfo);
+        }
+    }
+}
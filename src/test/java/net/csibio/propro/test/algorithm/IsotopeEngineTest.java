@@ -0,0 +1,106 @@
+package net.csibio.propro.test.algorithm;
+
+import net.csibio.propro.algorithm.score.features.IsotopeEngine;
+import net.csibio.propro.algorithm.score.features.IsotopeFormula;
+import net.csibio.propro.constants.constant.Constants;
+import net.csibio.propro.constants.constant.IsotopeConstants;
+import org.apache.commons.math3.util.FastMath;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 对比IsotopeEngine与DIAScorer中原有的基于HashMap与Double[]的逐次卷积实现
+ */
+public class IsotopeEngineTest {
+
+    @Test
+    void testDistributionEquivalence() {
+        for (int charge = 1; charge <= 4; charge++) {
+            for (float mz = 150f; mz < 2000f; mz += 0.173f) {
+                double massWeight = mz * charge;
+                Double[] expected = legacyDistribution(massWeight);
+                double[] actual = IsotopeEngine.distribution(IsotopeEngine.averagine(massWeight));
+                assertEquals(IsotopeEngine.MAX_ISOTOPE, actual.length);
+                for (int i = 0; i < IsotopeEngine.MAX_ISOTOPE; i++) {
+                    double value = i < expected.length ? expected[i] : 0d;
+                    assertEquals(value, actual[i], 0d, "mass:" + massWeight + ",isotope:" + i);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testFormulaKey() {
+        IsotopeFormula formula = IsotopeEngine.averagine(1000d);
+        assertEquals(formula, IsotopeEngine.averagine(1000d));
+        assertEquals(formula.hashCode(), IsotopeEngine.averagine(1000d).hashCode());
+    }
+
+    /**
+     * DIAScorer.calculateIsotopeScores中原有的理论同位素分布计算过程
+     */
+    private Double[] legacyDistribution(double massWeight) {
+        int maxIsotope = Constants.DIA_NR_ISOTOPES + 1;
+        double factor = massWeight / Constants.AVG_TOTAL;
+        HashMap<String, Integer> formula = new HashMap<>();
+        formula.put("C", (int) Math.round(Constants.C * factor));
+        formula.put("N", (int) Math.round(Constants.N * factor));
+        formula.put("O", (int) Math.round(Constants.O * factor));
+        formula.put("S", (int) Math.round(Constants.S * factor));
+
+        double theroyWeight = Constants.AVG_WEIGHT_C * formula.get("C") +
+                Constants.AVG_WEIGHT_N * formula.get("N") +
+                Constants.AVG_WEIGHT_O * formula.get("O") +
+                Constants.AVG_WEIGHT_S * formula.get("S");
+        double remainingMass = massWeight - theroyWeight;
+        formula.put("H", (int) Math.round(remainingMass / Constants.AVG_WEIGHT_H));
+
+        Double[] theroyDistribution;
+        theroyDistribution = convolve(convolvePow(IsotopeConstants.C, formula.get("C")), convolvePow(IsotopeConstants.H, formula.get("H")), maxIsotope);
+        theroyDistribution = convolve(theroyDistribution, convolvePow(IsotopeConstants.N, formula.get("N")), maxIsotope);
+        theroyDistribution = convolve(theroyDistribution, convolvePow(IsotopeConstants.O, formula.get("O")), maxIsotope);
+        theroyDistribution = convolve(theroyDistribution, convolvePow(IsotopeConstants.S, formula.get("S")), maxIsotope);
+        return theroyDistribution;
+    }
+
+    private Double[] convolvePow(List<Double[]> distribution, int factor) {
+        if (factor == 1) {
+            return distribution.get(0);
+        }
+        int log2n = (int) Math.ceil(FastMath.log(2, factor));
+
+        Double[] distributionResult;
+        if ((factor & 1) == 1) {
+            distributionResult = distribution.get(0);
+        } else {
+            distributionResult = new Double[]{1d};
+        }
+        for (int i = 1; i <= log2n; i++) {
+            if ((factor & (1 << i)) == 1 << i) {
+                distributionResult = convolve(distributionResult, distribution.get(i), Constants.DIA_NR_ISOTOPES + 1);
+            }
+        }
+        return distributionResult;
+    }
+
+    private Double[] convolve(Double[] leftDistribution, Double[] rightFormerResult, int maxIsotope) {
+        int rMax = leftDistribution.length + rightFormerResult.length - 1;
+        if (maxIsotope != 0 && rMax > maxIsotope) {
+            rMax = maxIsotope;
+        }
+        Double[] result = new Double[rMax];
+        for (int i = 0; i < rMax; i++) {
+            result[i] = 0d;
+        }
+        for (int i = leftDistribution.length - 1; i >= 0; i--) {
+            for (int j = Math.min(rMax - i, rightFormerResult.length) - 1; j >= 0; j--) {
+                result[i + j] += leftDistribution[i] * rightFormerResult[j];
+            }
+        }
+        return result;
+    }
+}
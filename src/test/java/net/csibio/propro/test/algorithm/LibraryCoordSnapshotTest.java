@@ -0,0 +1,152 @@
+package net.csibio.propro.test.algorithm;
+
+import net.csibio.propro.domain.bean.peptide.FragmentInfo;
+import net.csibio.propro.domain.bean.peptide.LibraryCoordSnapshot;
+import net.csibio.propro.domain.bean.peptide.PeptideCoord;
+import net.csibio.propro.domain.db.PeptideDO;
+import net.csibio.propro.utils.CompressUtil;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 标准库坐标快照写入文件后再映射读取,所有列以及生成的坐标都与内存中构建的快照一致
+ */
+public class LibraryCoordSnapshotTest {
+
+    @Test
+    void testSaveAndLoad() throws IOException {
+        LibraryCoordSnapshot expected = LibraryCoordSnapshot.build("lib", 3L, peptides(new Random(20210803L), 500));
+        expected.setModified(1627948800123L);
+        File file = Files.createTempFile("propro", ".coord").toFile();
+        try {
+            expected.save(file);
+            LibraryCoordSnapshot actual = LibraryCoordSnapshot.load(file, 7L);
+            assertEquals("lib", actual.getLibraryId());
+            assertEquals(7L, actual.getVersion());
+            assertEquals(1627948800123L, actual.getModified());
+            assertEquals(expected.getSize(), actual.getSize());
+            assertArrayEquals(expected.getMzs(), actual.getMzs());
+            assertArrayEquals(expected.getRts(), actual.getRts());
+            assertArrayEquals(expected.getCharges(), actual.getCharges());
+            assertArrayEquals(expected.getUniques(), actual.getUniques());
+            assertArrayEquals(expected.getIds(), actual.getIds());
+            assertArrayEquals(expected.getPeptideRefs(), actual.getPeptideRefs());
+            assertArrayEquals(expected.getSequences(), actual.getSequences());
+            assertArrayEquals(expected.getDecoySequences(), actual.getDecoySequences());
+            assertEquals(expected.getProteins(), actual.getProteins());
+            assertEquals(expected.getUnimodMaps(), actual.getUnimodMaps());
+            assertEquals(expected.getDecoyUnimodMaps(), actual.getDecoyUnimodMaps());
+            assertArrayEquals(expected.getFragmentOffsets(), actual.getFragmentOffsets());
+            assertArrayEquals(expected.getDecoyFragmentOffsets(), actual.getDecoyFragmentOffsets());
+            assertArrayEquals(expected.getCutInfos(), actual.getCutInfos());
+            assertArrayEquals(expected.getFragmentMzs(), actual.getFragmentMzs());
+            assertArrayEquals(expected.getFragmentInts(), actual.getFragmentInts());
+            assertArrayEquals(expected.getFragmentCharges(), actual.getFragmentCharges());
+            assertArrayEquals(expected.getFragmentPredicts(), actual.getFragmentPredicts());
+            assertArrayEquals(expected.getAnnotations(), actual.getAnnotations());
+            assertArrayEquals(expected.getFingerPrintOffsets(), actual.getFingerPrintOffsets());
+            assertArrayEquals(expected.getFingerPrints(), actual.getFingerPrints());
+
+            for (int i = 0; i < expected.getSize(); i++) {
+                PeptideCoord expectedCoord = expected.toCoord(i, 6);
+                PeptideCoord actualCoord = actual.toCoord(i, 6);
+                assertEquals(expectedCoord.getPeptideRef(), actualCoord.getPeptideRef());
+                assertEquals(expectedCoord.getRt(), actualCoord.getRt());
+                assertEquals(expectedCoord.getFragments(), actualCoord.getFragments());
+                assertEquals(expectedCoord.getDecoyFragments(), actualCoord.getDecoyFragments());
+                for (int f = 0; f < expectedCoord.getFragments().size(); f++) {
+                    assertEquals(expectedCoord.getFragments().get(f).getPredict(), actualCoord.getFragments().get(f).getPredict());
+                    assertEquals(expectedCoord.getFragments().get(f).getAnnotations(), actualCoord.getFragments().get(f).getAnnotations());
+                }
+                assertEquals(expected.similar(i, (i + 1) % expected.getSize(), 3), actual.similar(i, (i + 1) % actual.getSize(), 3));
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    void testTruncatedFile() throws IOException {
+        LibraryCoordSnapshot snapshot = LibraryCoordSnapshot.build("lib", 0L, peptides(new Random(1L), 50));
+        File file = Files.createTempFile("propro", ".coord").toFile();
+        try {
+            snapshot.save(file);
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(raf.length() / 2);
+            }
+            assertThrows(IOException.class, () -> LibraryCoordSnapshot.load(file, 0L));
+        } finally {
+            file.delete();
+        }
+    }
+
+    static List<PeptideDO> peptides(Random random, int size) {
+        List<PeptideDO> peptides = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            PeptideDO peptide = new PeptideDO();
+            peptide.setId("id" + i);
+            peptide.setPeptideRef("PEPTIDE" + i + "K_2");
+            peptide.setSequence("PEPTIDE" + i + "K");
+            peptide.setMz(400 + random.nextDouble() * 800);
+            peptide.setCharge(i % 7 == 0 ? null : 2 + random.nextInt(2));
+            peptide.setRt(i % 5 == 0 ? null : random.nextDouble() * 100);
+            peptide.setIsUnique(random.nextBoolean());
+            peptide.setProteins(i % 11 == 0 ? null : new HashSet<>(Arrays.asList("PROT" + i / 3, "PROT" + i / 4)));
+            HashMap<Integer, String> unimodMap = new HashMap<>();
+            if (i % 3 == 0) {
+                unimodMap.put(random.nextInt(8), "35");
+            }
+            peptide.setUnimodMap(i % 13 == 0 ? null : unimodMap);
+            peptide.setDecoySequence(i % 9 == 0 ? null : "KEDITPEP" + i);
+            peptide.setDecoyUnimodMap(i % 9 == 0 ? null : new HashMap<>(Map.of(1, "4")));
+            peptide.setFragments(fragments(random, 3 + random.nextInt(8)));
+            peptide.setDecoyFragments(i % 9 == 0 ? null : fragments(random, 3 + random.nextInt(8)));
+            float[] fingerPrints = new float[random.nextInt(10)];
+            for (int f = 0; f < fingerPrints.length; f++) {
+                fingerPrints[f] = random.nextInt(20) * 0.5f;
+            }
+            peptide.setFingerPrintsByte(i % 17 == 0 ? null : CompressUtil.compressedToBytes(fingerPrints));
+            peptides.add(peptide);
+        }
+        return peptides;
+    }
+
+    @Test
+    void testFragmentFields() {
+        List<PeptideDO> peptides = peptides(new Random(3L), 20);
+        LibraryCoordSnapshot snapshot = LibraryCoordSnapshot.build("lib", 0L, new ArrayList<>(peptides));
+        for (int i = 0; i < snapshot.getSize(); i++) {
+            PeptideCoord coord = snapshot.toCoord(i, 0);
+            PeptideDO peptide = peptides.stream().filter(p -> p.getId().equals(coord.getId())).findFirst().orElseThrow();
+            for (int f = 0; f < peptide.getFragments().size(); f++) {
+                FragmentInfo expected = peptide.getFragments().get(f);
+                FragmentInfo actual = coord.getFragments().get(f);
+                assertEquals(expected.getCutInfo(), actual.getCutInfo());
+                assertEquals(expected.getMz(), actual.getMz());
+                assertEquals(expected.getIntensity(), actual.getIntensity());
+                assertEquals(expected.getCharge(), actual.getCharge());
+                assertEquals(expected.getPredict(), actual.getPredict());
+                assertEquals(expected.getAnnotations(), actual.getAnnotations());
+            }
+        }
+    }
+
+    static List<FragmentInfo> fragments(Random random, int size) {
+        List<FragmentInfo> fragments = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Double intensity = i == 1 ? null : random.nextDouble() * 1e4;
+            FragmentInfo fragment = new FragmentInfo((random.nextBoolean() ? "y" : "b") + (i + 2) + (i % 4 == 0 ? "^2" : ""), 200 + random.nextDouble() * 1000, intensity, i == 2 ? null : 1);
+            fragment.setPredict(i % 3 == 0 ? null : random.nextBoolean());
+            fragment.setAnnotations(i % 2 == 0 ? null : fragment.getCutInfo() + "/0.01");
+            fragments.add(fragment);
+        }
+        return fragments;
+    }
+}
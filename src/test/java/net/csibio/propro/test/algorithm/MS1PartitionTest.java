@@ -0,0 +1,104 @@
+package net.csibio.propro.test.algorithm;
+
+import net.csibio.propro.domain.bean.data.MS1Partition;
+import net.csibio.propro.domain.bean.data.SpectrumBlock;
+import net.csibio.propro.utils.ConvolutionUtil;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 按SWATH窗口分批切分的MS1分区,在窗口内任意前体mz上的累加结果与完整的MS1光谱一致
+ */
+public class MS1PartitionTest {
+
+    @Test
+    void testPartition() {
+        Random random = new Random(20210803L);
+        SpectrumBlock ms1 = SpectrumBlockTrimTest.block(random, 500, 2000);
+        //普通的SWATH窗口,相邻窗口有1Da的重叠
+        List<double[]> windows = new ArrayList<>();
+        for (double start = 400; start < 1200; start += 25) {
+            windows.add(new double[]{start, start + 26});
+        }
+        MS1Partition partition = split(ms1, windows, 64);
+        assertEquals(windows.size(), partition.size());
+        assertTrue(partition.getBytes() < ms1.bytes() * 1.2);
+
+        for (int w = 0; w < windows.size(); w++) {
+            SpectrumBlock block = partition.take(w);
+            assertEquals(ms1.size(), block.size());
+            assertArrayEquals(ms1.getRts(), block.getRts());
+            for (int round = 0; round < 20; round++) {
+                float mz = (float) (windows.get(w)[0] + random.nextDouble() * 26);
+                float window = mz * 20 * 1e-6f;
+                for (int i = 0; i < ms1.size(); i++) {
+                    assertEquals(ConvolutionUtil.accumulation(ms1, i, mz - window, mz + window), ConvolutionUtil.accumulation(block, i, mz - window, mz + window));
+                }
+            }
+            //取走以后分区即被释放
+            assertNull(partition.getBlocks()[w]);
+        }
+    }
+
+    @Test
+    void testOverlap() {
+        Random random = new Random(7L);
+        SpectrumBlock ms1 = SpectrumBlockTrimTest.block(random, 50, 500);
+        //ScanningSwath式的大量重叠窗口共享同一个分区
+        List<double[]> windows = new ArrayList<>();
+        for (double start = 400; start < 1200; start += 2) {
+            windows.add(new double[]{start, start + 20});
+        }
+        MS1Partition partition = split(ms1, windows, 7);
+        assertEquals(1, partition.size());
+        SpectrumBlock first = partition.take(0);
+        for (int w = 1; w < windows.size() - 1; w++) {
+            assertSame(first, partition.take(w));
+        }
+        assertNotNull(partition.getBlocks()[0]);
+        assertSame(first, partition.take(windows.size() - 1));
+        assertNull(partition.getBlocks()[0]);
+    }
+
+    @Test
+    void testConcat() {
+        SpectrumBlock block = SpectrumBlockTrimTest.block(new Random(1L), 100, 300);
+        List<SpectrumBlock> parts = new ArrayList<>();
+        parts.add(block.slice(0, 100));
+        parts.add(block.slice(100.1, 200));
+        parts.add(block.slice(1000, 999));
+        parts.add(block.slice(200.1, 1000));
+        SpectrumBlock concat = SpectrumBlock.concat(parts);
+        assertArrayEquals(block.getRts(), concat.getRts());
+        assertArrayEquals(block.getOffsets(), concat.getOffsets());
+        for (int p = 0; p < block.to(block.size() - 1); p++) {
+            assertEquals(block.mz(p), concat.mz(p));
+            assertEquals(block.intensity(p), concat.intensity(p));
+        }
+    }
+
+    static MS1Partition split(SpectrumBlock ms1, List<double[]> windows, int chunk) {
+        double[] starts = new double[windows.size()];
+        double[] ends = new double[windows.size()];
+        for (int i = 0; i < windows.size(); i++) {
+            starts[i] = windows.get(i)[0] * (1 - 40e-6);
+            ends[i] = windows.get(i)[1] * (1 + 40e-6);
+        }
+        MS1Partition partition = MS1Partition.plan(starts, ends);
+        List<List<SpectrumBlock>> parts = new ArrayList<>();
+        for (int p = 0; p < partition.size(); p++) {
+            parts.add(new ArrayList<>());
+        }
+        for (int from = 0; from < ms1.size(); from += chunk) {
+            int to = Math.min(from + chunk, ms1.size());
+            partition.split(ms1.slice(ms1.getRt(from), ms1.getRt(to - 1)), parts);
+        }
+        partition.build(parts);
+        return partition;
+    }
+}
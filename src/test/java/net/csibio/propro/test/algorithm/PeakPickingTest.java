@@ -0,0 +1,712 @@
+package net.csibio.propro.test.algorithm;
+
+import net.csibio.propro.algorithm.peak.GaussFilter;
+import net.csibio.propro.algorithm.peak.NoiseEstimator;
+import net.csibio.propro.algorithm.peak.PeakPicker;
+import net.csibio.propro.algorithm.peak.PeakSpline;
+import net.csibio.propro.constants.constant.Constants;
+import net.csibio.propro.domain.bean.data.RtIntensityPairsDouble;
+import net.csibio.propro.domain.bean.score.IonPeak;
+import net.csibio.propro.domain.options.SigmaSpacing;
+import net.csibio.propro.utils.MathUtil;
+import net.csibio.propro.utils.PeakUtil;
+import org.apache.commons.lang3.ArrayUtils;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 对比高斯平滑,信噪比与选峰的原始类型实现与原有的装箱实现,在固定的XIC上结果逐位一致
+ */
+public class PeakPickingTest {
+
+    GaussFilter gaussFilter = new GaussFilter();
+    NoiseEstimator noiseEstimator = new NoiseEstimator();
+    PeakPicker peakPicker = new PeakPicker();
+    Legacy legacy = new Legacy();
+
+    @Test
+    void testMultiIonSmoothing() {
+        for (int seed = 0; seed < 10; seed++) {
+            Random random = new Random(seed);
+            double[] rts = rts(random, 300);
+            double[][] ints = new double[6][];
+            HashMap<String, Double[]> intsMap = new HashMap<>();
+            for (int k = 0; k < ints.length; k++) {
+                ints[k] = xic(random, rts);
+                intsMap.put("y" + k, ArrayUtils.toObject(ints[k]));
+            }
+            for (SigmaSpacing ss : new SigmaSpacing[]{SigmaSpacing.create(), new SigmaSpacing(3.75f, 0.01f)}) {
+                HashMap<String, Double[]> expected = legacy.filter(ArrayUtils.toObject(rts), intsMap, ss);
+                double[][] actual = gaussFilter.filter(rts, ints, ss);
+                for (int k = 0; k < ints.length; k++) {
+                    assertArrayEquals(ArrayUtils.toPrimitive(expected.get("y" + k)), actual[k]);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testSingleCurveSmoothing() {
+        for (int seed = 0; seed < 10; seed++) {
+            Random random = new Random(seed);
+            double[] rts = rts(random, 300);
+            double[] ints = ions(random, rts);
+            SigmaSpacing ss = SigmaSpacing.create();
+            //单条曲线的累加值为float,结果与多碎片版本不同,需要单独对比
+            assertArrayEquals(ArrayUtils.toPrimitive(legacy.filter(ArrayUtils.toObject(rts), ArrayUtils.toObject(ints), ss)), gaussFilter.filter(rts, ints, ss));
+        }
+    }
+
+    @Test
+    void testSignalToNoise() {
+        for (int seed = 0; seed < 10; seed++) {
+            Random random = new Random(seed);
+            double[] rts = rts(random, 300);
+            double[] ints = xic(random, rts);
+            //直方图在线程内复用,不同窗口与不同bin数目交替计算
+            for (int binCount : new int[]{30, 10, 50}) {
+                for (double window : new double[]{200, 1000}) {
+                    assertArrayEquals(legacy.computeSTN(ArrayUtils.toObject(rts), ArrayUtils.toObject(ints), window, binCount), noiseEstimator.computeSTN(rts, ints, window, binCount));
+                }
+            }
+        }
+    }
+
+    @Test
+    void testPeakPicking() {
+        SigmaSpacing ss = SigmaSpacing.create();
+        int peaks = 0;
+        for (int seed = 0; seed < 10; seed++) {
+            Random random = new Random(seed);
+            double[] rts = rts(random, 300);
+            Double[] rtArray = ArrayUtils.toObject(rts);
+
+            double[] ionsHighSmooth = gaussFilter.filter(rts, ions(random, rts), ss);
+            assertPairsEquals(legacy.pickMaxPeak(rtArray, ArrayUtils.toObject(ionsHighSmooth)), peakPicker.pickMaxPeak(rts, ionsHighSmooth));
+
+            double[] ints = xic(random, rts);
+            double[] smooth = gaussFilter.filter(rts, new double[][]{ints}, ss)[0];
+            double[] noises200 = noiseEstimator.computeSTN(rts, smooth, 200, 30);
+            double[] noisesOri1000 = noiseEstimator.computeSTN(rts, ints, 1000, 30);
+            RtIntensityPairsDouble expected = legacy.pickMaxPeak(rtArray, ArrayUtils.toObject(smooth), noises200);
+            RtIntensityPairsDouble actual = peakPicker.pickMaxPeak(rts, smooth, noises200);
+            assertPairsEquals(expected, actual);
+            peaks += actual.getRtArray().length;
+
+            List<IonPeak> expectedPeaks = legacy.pickChromatogram(rtArray, ArrayUtils.toObject(ints), ArrayUtils.toObject(smooth), noisesOri1000, expected);
+            List<IonPeak> actualPeaks = peakPicker.pickChromatogram(rts, ints, smooth, noisesOri1000, actual);
+            assertEquals(expectedPeaks, actualPeaks);
+        }
+        assertTrue(peaks > 0);
+    }
+
+    private void assertPairsEquals(RtIntensityPairsDouble expected, RtIntensityPairsDouble actual) {
+        assertArrayEquals(expected.getRtArray(), actual.getRtArray());
+        assertArrayEquals(expected.getIntensityArray(), actual.getIntensityArray());
+    }
+
+    /**
+     * 间隔在3.4s附近抖动的rt数组,数值与从float转换而来的rt一致
+     */
+    private double[] rts(Random random, int size) {
+        double[] rts = new double[size];
+        float rt = 100f;
+        for (int i = 0; i < size; i++) {
+            rts[i] = rt;
+            rt += 3.2f + random.nextFloat() * 0.4f;
+        }
+        return rts;
+    }
+
+    /**
+     * 若干个宽度与高度不同的高斯峰叠加随机噪音,其中一段强度为0
+     */
+    private double[] xic(Random random, double[] rts) {
+        double[] ints = new double[rts.length];
+        int peakCount = 1 + random.nextInt(4);
+        for (int p = 0; p < peakCount; p++) {
+            double apex = rts[random.nextInt(rts.length)];
+            double width = 5 + random.nextDouble() * 20;
+            double height = 1e3 + random.nextDouble() * 1e5;
+            for (int i = 0; i < rts.length; i++) {
+                ints[i] += height * Math.exp(-Math.pow(rts[i] - apex, 2) / (2 * width * width));
+            }
+        }
+        for (int i = 0; i < rts.length; i++) {
+            ints[i] = (float) (ints[i] + random.nextDouble() * 300);
+        }
+        int zeroFrom = random.nextInt(rts.length - 20);
+        for (int i = zeroFrom; i < zeroFrom + 20; i++) {
+            ints[i] = 0;
+        }
+        return ints;
+    }
+
+    /**
+     * 离子数目形式的曲线,数值均为整数
+     */
+    private double[] ions(Random random, double[] rts) {
+        double[] ions = xic(random, rts);
+        for (int i = 0; i < ions.length; i++) {
+            ions[i] = Math.floor(ions[i] / 1000);
+        }
+        return ions;
+    }
+
+    /**
+     * 原有装箱实现的副本
+     */
+    static class Legacy {
+
+        public HashMap<String, Double[]> filter(Double[] rtArray, HashMap<String, Double[]> intensitiesMap, SigmaSpacing sigmaSpacing) {
+            Double spacing = sigmaSpacing.getSpacingDouble();
+            double[] coeffs = sigmaSpacing.getCoeffs();
+            int middle = sigmaSpacing.getRightNum();
+            double middleSpacing = sigmaSpacing.getRightNumSpacing();
+
+            int rtLength = rtArray.length;
+            double startPosition, endPosition;
+            double minRt = rtArray[0];
+            double maxRt = rtArray[rtLength - 1];
+
+            HashMap<String, Double[]> newIntensitiesMap = new HashMap<String, Double[]>();
+            for (String cutInfo : intensitiesMap.keySet()) {
+                newIntensitiesMap.put(cutInfo, new Double[rtArray.length]);
+            }
+
+            Double distanceInGaussian;
+            int leftPosition;
+            int rightPosition;
+            double residualPercent;
+            double coeffRight;
+            double coeffLeft;
+            double norm = 0;
+
+            for (int i = 0; i < rtLength; i++) {
+                HashMap<String, Double> vMap = new HashMap<>();
+                for (String cutInfo : intensitiesMap.keySet()) {
+                    vMap.put(cutInfo, 0d);
+                }
+                norm = 0;
+                if ((rtArray[i] - middleSpacing) > minRt) {
+                    startPosition = MathUtil.keepLength(rtArray[i] - middleSpacing, Constants.PRECISION);
+                } else {
+                    startPosition = minRt;
+                }
+
+                if ((rtArray[i] + middleSpacing) < maxRt) {
+                    endPosition = MathUtil.keepLength(rtArray[i] + middleSpacing, Constants.PRECISION);
+                } else {
+                    endPosition = maxRt;
+                }
+
+                int j = i;
+
+                while (j > 0 && rtArray[j - 1] > startPosition) {
+                    distanceInGaussian = MathUtil.keepLength(rtArray[i] - rtArray[j], Constants.PRECISION);
+                    leftPosition = (int) MathUtil.keepLength(distanceInGaussian / spacing, Constants.PRECISION);
+                    rightPosition = leftPosition + 1;
+                    residualPercent = (Math.abs(leftPosition * spacing) - distanceInGaussian) / spacing;
+                    if (rightPosition < middle) {
+                        coeffRight = (1 - residualPercent) * coeffs[leftPosition] + residualPercent * coeffs[rightPosition];
+                    } else {
+                        coeffRight = coeffs[leftPosition];
+                    }
+
+                    distanceInGaussian = MathUtil.keepLength(rtArray[i] - rtArray[j - 1], Constants.PRECISION);
+                    leftPosition = (int) MathUtil.keepLength((distanceInGaussian / spacing), Constants.PRECISION);
+                    rightPosition = leftPosition + 1;
+                    residualPercent = (Math.abs(leftPosition * spacing - distanceInGaussian)) / spacing;
+                    if (rightPosition < middle) {
+                        coeffLeft = (1 - residualPercent) * coeffs[leftPosition] + residualPercent * coeffs[rightPosition];
+                    } else {
+                        coeffLeft = coeffs[leftPosition];
+                    }
+
+                    norm += Math.abs(rtArray[j - 1] - rtArray[j]) * (coeffRight + coeffLeft) / 2.0;
+
+                    for (String cutInfo : vMap.keySet()) {
+                        double t = vMap.get(cutInfo);
+                        t += Math.abs(rtArray[j - 1] - rtArray[j]) * (intensitiesMap.get(cutInfo)[j - 1] * coeffLeft + intensitiesMap.get(cutInfo)[j] * coeffRight) / 2.0;
+                        vMap.put(cutInfo, t);
+                    }
+
+                    j--;
+                }
+
+                j = i;
+                while (j < rtLength - 1 && rtArray[j + 1] < endPosition) {
+                    distanceInGaussian = MathUtil.keepLength(rtArray[j] - rtArray[i], Constants.PRECISION);
+                    leftPosition = (int) MathUtil.keepLength(distanceInGaussian / spacing, Constants.PRECISION);
+                    rightPosition = leftPosition + 1;
+                    residualPercent = (Math.abs(leftPosition * spacing) - distanceInGaussian) / spacing;
+                    if (rightPosition < middle) {
+                        coeffLeft = (1 - residualPercent) * coeffs[leftPosition] + residualPercent * coeffs[rightPosition];
+                    } else {
+                        coeffLeft = coeffs[leftPosition];
+                    }
+
+                    distanceInGaussian = MathUtil.keepLength(rtArray[j + 1] - rtArray[i], Constants.PRECISION);
+                    leftPosition = (int) MathUtil.keepLength(distanceInGaussian / spacing, Constants.PRECISION);
+                    rightPosition = leftPosition + 1;
+
+                    residualPercent = (Math.abs(leftPosition * spacing - distanceInGaussian)) / spacing;
+                    if (rightPosition < middle) {
+                        coeffRight = (1 - residualPercent) * coeffs[leftPosition] + residualPercent * coeffs[rightPosition];
+                    } else {
+                        coeffRight = coeffs[leftPosition];
+                    }
+
+                    norm += Math.abs(rtArray[j + 1] - rtArray[j]) * (coeffLeft + coeffRight) / 2.0;
+                    for (String cutInfo : vMap.keySet()) {
+                        double t = vMap.get(cutInfo);
+                        t += Math.abs(rtArray[j + 1] - rtArray[j]) * (intensitiesMap.get(cutInfo)[j] * coeffLeft + intensitiesMap.get(cutInfo)[j + 1] * coeffRight) / 2.0;
+                        vMap.put(cutInfo, t);
+                    }
+                    j++;
+                }
+
+                for (String cutInfo : vMap.keySet()) {
+                    if (vMap.get(cutInfo) > 0) {
+                        newIntensitiesMap.get(cutInfo)[i] = vMap.get(cutInfo) / norm;
+                    } else {
+                        newIntensitiesMap.get(cutInfo)[i] = 0d;
+                    }
+                }
+            }
+            return newIntensitiesMap;
+        }
+
+        public Double[] filter(Double[] rtArray, Double[] intensityArray, SigmaSpacing sigmaSpacing) {
+            Double spacing = sigmaSpacing.getSpacingDouble();
+            double[] coeffs = sigmaSpacing.getCoeffs();
+            int middle = sigmaSpacing.getRightNum();
+            double middleSpacing = sigmaSpacing.getRightNumSpacing();
+
+            int rtLength = rtArray.length;
+            double startPosition, endPosition;
+            double minRt = rtArray[0];
+            double maxRt = rtArray[rtLength - 1];
+
+            Double distanceInGaussian;
+            int leftPosition;
+            int rightPosition;
+            double residualPercent;
+            double coeffRight;
+            double coeffLeft;
+            double norm = 0;
+
+            Double[] newIntensityArray = new Double[rtLength];
+
+            for (int i = 0; i < rtLength; i++) {
+                float t = 0f;
+                norm = 0;
+                if ((rtArray[i] - middleSpacing) > minRt) {
+                    startPosition = MathUtil.keepLength(rtArray[i] - middleSpacing, Constants.PRECISION);
+                } else {
+                    startPosition = minRt;
+                }
+
+                if ((rtArray[i] + middleSpacing) < maxRt) {
+                    endPosition = MathUtil.keepLength(rtArray[i] + middleSpacing, Constants.PRECISION);
+                } else {
+                    endPosition = maxRt;
+                }
+
+                int j = i;
+
+                while (j > 0 && rtArray[j - 1] > startPosition) {
+                    distanceInGaussian = MathUtil.keepLength(rtArray[i] - rtArray[j], Constants.PRECISION);
+                    leftPosition = (int) MathUtil.keepLength(distanceInGaussian / spacing, Constants.PRECISION);
+                    rightPosition = leftPosition + 1;
+                    residualPercent = (Math.abs(leftPosition * spacing) - distanceInGaussian) / spacing;
+                    if (rightPosition < middle) {
+                        coeffRight = (1 - residualPercent) * coeffs[leftPosition] + residualPercent * coeffs[rightPosition];
+                    } else {
+                        coeffRight = coeffs[leftPosition];
+                    }
+
+                    distanceInGaussian = MathUtil.keepLength(rtArray[i] - rtArray[j - 1], Constants.PRECISION);
+                    leftPosition = (int) MathUtil.keepLength((distanceInGaussian / spacing), Constants.PRECISION);
+                    rightPosition = leftPosition + 1;
+                    residualPercent = (Math.abs(leftPosition * spacing - distanceInGaussian)) / spacing;
+                    if (rightPosition < middle) {
+                        coeffLeft = (1 - residualPercent) * coeffs[leftPosition] + residualPercent * coeffs[rightPosition];
+                    } else {
+                        coeffLeft = coeffs[leftPosition];
+                    }
+
+                    norm += Math.abs(rtArray[j - 1] - rtArray[j]) * (coeffRight + coeffLeft) / 2.0;
+                    t += Math.abs(rtArray[j - 1] - rtArray[j]) * (intensityArray[j - 1] * coeffLeft + intensityArray[j] * coeffRight) / 2.0;
+                    j--;
+                }
+
+                j = i;
+                while (j < rtLength - 1 && rtArray[j + 1] < endPosition) {
+                    distanceInGaussian = MathUtil.keepLength(rtArray[j] - rtArray[i], Constants.PRECISION);
+                    leftPosition = (int) MathUtil.keepLength(distanceInGaussian / spacing, Constants.PRECISION);
+                    rightPosition = leftPosition + 1;
+                    residualPercent = (Math.abs(leftPosition * spacing) - distanceInGaussian) / spacing;
+                    if (rightPosition < middle) {
+                        coeffLeft = (1 - residualPercent) * coeffs[leftPosition] + residualPercent * coeffs[rightPosition];
+                    } else {
+                        coeffLeft = coeffs[leftPosition];
+                    }
+
+                    distanceInGaussian = MathUtil.keepLength(rtArray[j + 1] - rtArray[i], Constants.PRECISION);
+                    leftPosition = (int) MathUtil.keepLength(distanceInGaussian / spacing, Constants.PRECISION);
+                    rightPosition = leftPosition + 1;
+
+                    residualPercent = (Math.abs(leftPosition * spacing - distanceInGaussian)) / spacing;
+                    if (rightPosition < middle) {
+                        coeffRight = (1 - residualPercent) * coeffs[leftPosition] + residualPercent * coeffs[rightPosition];
+                    } else {
+                        coeffRight = coeffs[leftPosition];
+                    }
+
+                    norm += Math.abs(rtArray[j + 1] - rtArray[j]) * (coeffLeft + coeffRight) / 2.0;
+                    t += Math.abs(rtArray[j + 1] - rtArray[j]) * (intensityArray[j] * coeffLeft + intensityArray[j + 1] * coeffRight) / 2.0;
+                    j++;
+                }
+
+                if (t > 0) {
+                    newIntensityArray[i] = t / norm;
+                } else {
+                    newIntensityArray[i] = 0d;
+                }
+            }
+            return newIntensityArray;
+        }
+
+        public double[] computeSTN(Double[] rtArray, Double[] rtIntensity, double windowLength, int binCount) {
+            double[] stnResults = new double[rtArray.length];
+
+            double[] meanVariance = MathUtil.getMeanVariance(rtIntensity);
+
+            double maxIntensity = meanVariance[0] + Math.sqrt(meanVariance[1]) * Constants.AUTO_MAX_STDEV_FACTOR;
+
+            double windowHalfSize = windowLength / 2.0d;
+            double binSize = Math.max(1.0d, maxIntensity / binCount);
+            double[] binValue = new double[binCount];
+            for (int bin = 0; bin < binCount; bin++) {
+                binValue[bin] = (bin + 0.5d) * binSize;
+            }
+
+            int[] histogram = new int[binCount];
+            int toBin;// bin in which a datapoint would fall
+            int medianBin;// index of bin where the median is located
+            int elementIncCount;// additive number of elements from left to x in histogram
+            int elementsInWindow = 0;// tracks elements in current window, which may vary because of unevenly spaced data
+            int elementsInWindowHalf;// number of elements where we find the median
+            double noise;// noise value of a data point
+            int windowsOverall = rtArray.length;// determine how many elements we need to estimate (for progress estimation)
+
+            int left = 0;
+            int right = 0;
+            for (int positionCenter = 0; positionCenter < windowsOverall; positionCenter++) {
+                while (rtArray[left] < rtArray[positionCenter] - windowHalfSize) {
+                    toBin = Math.min((int) (rtIntensity[left] / binSize), binCount - 1);
+                    histogram[toBin]--;
+                    elementsInWindow--;
+                    left++;
+                }
+                while (right < windowsOverall && rtArray[right] <= rtArray[positionCenter] + windowHalfSize) {
+                    toBin = Math.min((int) (rtIntensity[right] / binSize), binCount - 1);
+                    histogram[toBin]++;
+                    elementsInWindow++;
+                    right++;
+                }
+
+                if (elementsInWindow < Constants.MIN_REQUIRED_ELEMENTS) {
+                    noise = Constants.NOISE_FOR_EMPTY_WINDOW;
+                } else {
+                    medianBin = -1;
+                    elementIncCount = 0;
+                    elementsInWindowHalf = (elementsInWindow + 1) / 2;
+                    while (medianBin < binCount - 1 && elementIncCount < elementsInWindowHalf) {
+                        ++medianBin;
+                        elementIncCount += histogram[medianBin];
+                    }
+                    noise = Math.max(1.0d, binValue[medianBin]);
+                }
+                stnResults[positionCenter] = rtIntensity[positionCenter] / noise;
+            }
+
+            return stnResults;
+        }
+
+        public RtIntensityPairsDouble pickMaxPeak(Double[] rtArray, Double[] intensityArray, double[] signalToNoise) {
+            if (rtArray.length < 5) {
+                return null;
+            }
+            List<Double> maxPeakRtList = new ArrayList<>();
+            List<Double> maxPeakIntList = new ArrayList<>();
+            double centralPeakRt, leftNeighborRt, rightNeighborRt;
+            double centralPeakInt, leftBoundaryInt, rightBoundaryInt;
+            double stnLeft, stnMiddle, stnRight;
+            int leftBoundary, rightBoundary;
+            int missing;
+            double maxPeakRt;
+            double maxPeakInt;
+            double leftHand, rightHand;
+            double mid;
+            double midDerivVal;
+
+            for (int i = 2; i < rtArray.length - 2; i++) {
+                leftNeighborRt = rtArray[i - 1];
+                centralPeakRt = rtArray[i];
+                rightNeighborRt = rtArray[i + 1];
+
+                leftBoundaryInt = intensityArray[i - 1];
+                centralPeakInt = intensityArray[i];
+                rightBoundaryInt = intensityArray[i + 1];
+
+                if (rightBoundaryInt < 0.000001) continue;
+                if (leftBoundaryInt < 0.000001) continue;
+
+                double leftToCentral, centralToRight, minSpacing = 0d;
+                if (Constants.CHECK_SPACINGS) {
+                    leftToCentral = centralPeakRt - leftNeighborRt;
+                    centralToRight = rightNeighborRt - centralPeakRt;
+                    minSpacing = Math.min(leftToCentral, centralToRight);
+                }
+
+                stnLeft = signalToNoise[i - 1];
+                stnMiddle = signalToNoise[i];
+                stnRight = signalToNoise[i + 1];
+
+                if (centralPeakInt > leftBoundaryInt &&
+                        centralPeakInt > rightBoundaryInt &&
+                        stnLeft >= Constants.SIGNAL_TO_NOISE_LIMIT &&
+                        stnMiddle >= Constants.SIGNAL_TO_NOISE_LIMIT &&
+                        stnRight >= Constants.SIGNAL_TO_NOISE_LIMIT) {
+                    missing = 0;
+                    leftBoundary = i - 1;
+                    for (int left = 2; left < i + 1; left++) {
+                        stnLeft = signalToNoise[i - left];
+                        if (intensityArray[i - left] < leftBoundaryInt &&
+                                (!Constants.CHECK_SPACINGS || (rtArray[leftBoundary] - rtArray[i - left] < Constants.SPACING_DIFFERENCE_GAP * minSpacing))) {
+                            if (stnLeft >= Constants.SIGNAL_TO_NOISE_LIMIT &&
+                                    (!Constants.CHECK_SPACINGS || rtArray[leftBoundary] - rtArray[i - left] < Constants.SPACING_DIFFERENCE * minSpacing)) {
+                                leftBoundaryInt = intensityArray[i - left];
+                                leftBoundary = i - left;
+                            } else {
+                                missing++;
+                                if (missing <= Constants.MISSING_LIMIT) {
+                                    leftBoundaryInt = intensityArray[i - left];
+                                    leftBoundary = i - left;
+                                } else {
+                                    leftBoundary = i - left + 1;
+                                    break;
+                                }
+                            }
+                        } else {
+                            break;
+                        }
+                        if (intensityArray[i - left] == 0) {
+                            break;
+                        }
+                    }
+
+                    missing = 0;
+                    rightBoundary = i + 1;
+                    for (int right = 2; right < rtArray.length - i; right++) {
+                        stnRight = signalToNoise[i + right];
+
+                        if (intensityArray[i + right] < rightBoundaryInt &&
+                                (!Constants.CHECK_SPACINGS || (rtArray[i + right] - rtArray[rightBoundary] < Constants.SPACING_DIFFERENCE_GAP * minSpacing))) {
+                            if (stnRight >= Constants.SIGNAL_TO_NOISE_LIMIT &&
+                                    (!Constants.CHECK_SPACINGS || rtArray[i + right] - rtArray[rightBoundary] < Constants.SPACING_DIFFERENCE * minSpacing)) {
+                                rightBoundaryInt = intensityArray[i + right];
+                                rightBoundary = i + right;
+                            } else {
+                                missing++;
+                                if (missing <= Constants.MISSING_LIMIT) {
+                                    rightBoundaryInt = intensityArray[i + right];
+                                    rightBoundary = i + right;
+                                } else {
+                                    rightBoundary = i + right - 1;
+                                    break;
+                                }
+                            }
+                        } else {
+                            break;
+                        }
+
+                        if (intensityArray[i + right] == 0) {
+                            break;
+                        }
+                    }
+
+                    PeakSpline peakSpline = new PeakSpline();
+                    peakSpline.init(rtArray, intensityArray, leftBoundary, rightBoundary);
+                    leftHand = leftNeighborRt;
+                    rightHand = rightNeighborRt;
+
+                    while (rightHand - leftHand > Constants.THRESHOLD) {
+                        mid = (leftHand + rightHand) / 2.0d;
+                        midDerivVal = peakSpline.derivatives(mid);
+                        if (Math.abs(midDerivVal) < 0.001) {
+                            break;
+                        }
+                        if (midDerivVal < 0.0d) {
+                            rightHand = mid;
+                        } else {
+                            leftHand = mid;
+                        }
+                    }
+
+                    maxPeakRt = (leftHand + rightHand) / 2.0d;
+                    maxPeakInt = peakSpline.eval(maxPeakRt);
+                    maxPeakRtList.add(maxPeakRt);
+                    maxPeakIntList.add(maxPeakInt);
+                    i = rightBoundary;
+                }
+            }
+            Double[] rt = maxPeakRtList.toArray(new Double[0]);
+            Double[] intensity = maxPeakIntList.toArray(new Double[0]);
+            return new RtIntensityPairsDouble(rt, intensity);
+        }
+
+        public RtIntensityPairsDouble pickMaxPeak(Double[] rtArray, Double[] intensityArray) {
+            if (rtArray.length < 5) {
+                return null;
+            }
+            List<Double> maxPeakRtList = new ArrayList<>();
+            List<Double> maxPeakIntList = new ArrayList<>();
+            double leftNeighborRt, rightNeighborRt;
+            double centralPeakInt, leftBoundaryInt, rightBoundaryInt;
+            int leftBoundary, rightBoundary;
+            double maxPeakRt;
+            double maxPeakInt;
+            double leftHand, rightHand;
+            double mid;
+            double midDerivVal;
+
+            for (int i = 2; i < rtArray.length - 2; i++) {
+                leftNeighborRt = rtArray[i - 1];
+                rightNeighborRt = rtArray[i + 1];
+
+                leftBoundaryInt = intensityArray[i - 1];
+                centralPeakInt = intensityArray[i];
+                rightBoundaryInt = intensityArray[i + 1];
+
+                if (rightBoundaryInt < 0.000001) continue;
+                if (leftBoundaryInt < 0.000001) continue;
+
+                if (centralPeakInt > leftBoundaryInt && centralPeakInt > rightBoundaryInt) {
+                    leftBoundary = i - 1;
+                    for (int left = 2; left < i + 1; left++) {
+                        if (intensityArray[i - left] < leftBoundaryInt) {
+                            leftBoundaryInt = intensityArray[i - left];
+                            leftBoundary = i - left;
+                        } else {
+                            break;
+                        }
+                        if (intensityArray[i - left] == 0) {
+                            break;
+                        }
+                    }
+
+                    rightBoundary = i + 1;
+                    for (int right = 2; right < rtArray.length - i; right++) {
+                        if (intensityArray[i + right] < rightBoundaryInt) {
+                            rightBoundaryInt = intensityArray[i + right];
+                            rightBoundary = i + right;
+                        } else {
+                            break;
+                        }
+
+                        if (intensityArray[i + right] == 0) {
+                            break;
+                        }
+                    }
+
+                    PeakSpline peakSpline = new PeakSpline();
+                    peakSpline.init(rtArray, intensityArray, leftBoundary, rightBoundary);
+                    leftHand = leftNeighborRt;
+                    rightHand = rightNeighborRt;
+
+                    while (rightHand - leftHand > Constants.THRESHOLD) {
+                        mid = (leftHand + rightHand) / 2.0d;
+                        midDerivVal = peakSpline.derivatives(mid);
+                        if (Math.abs(midDerivVal) < 0.001) {
+                            break;
+                        }
+                        if (midDerivVal < 0.0d) {
+                            rightHand = mid;
+                        } else {
+                            leftHand = mid;
+                        }
+                    }
+
+                    maxPeakRt = (leftHand + rightHand) / 2.0d;
+                    maxPeakInt = peakSpline.eval(maxPeakRt);
+                    maxPeakRtList.add(maxPeakRt);
+                    maxPeakIntList.add(maxPeakInt);
+                    i = rightBoundary;
+                }
+            }
+            Double[] rt = maxPeakRtList.toArray(new Double[0]);
+            Double[] intensity = maxPeakIntList.toArray(new Double[0]);
+            return new RtIntensityPairsDouble(rt, intensity);
+        }
+
+        public List<IonPeak> pickChromatogram(Double[] rtArray, Double[] intensityArray, Double[] smoothIntensityArray, double[] signalToNoise, RtIntensityPairsDouble maxPeakPairs) {
+            int maxPeakSize = maxPeakPairs.getRtArray().length;
+            int leftIndex, rightIndex;
+
+            Double[] chromatogram;
+            if (Constants.CHROMATOGRAM_PICKER_METHOD.equals("legacy")) {
+                chromatogram = intensityArray;
+            } else {
+                chromatogram = smoothIntensityArray;
+            }
+
+            int closestPeakIndex;
+            List<IonPeak> ionPeakList = new ArrayList<>();
+            for (int i = 0; i < maxPeakSize; i++) {
+                double centralPeakRt = maxPeakPairs.getRtArray()[i];
+                closestPeakIndex = PeakUtil.findNearestIndex(rtArray, centralPeakRt);
+                leftIndex = closestPeakIndex - 1;
+                while (leftIndex > 0 &&
+                        (chromatogram[leftIndex - 1] < chromatogram[leftIndex] || (
+                                Constants.PEAK_WIDTH > 0 && centralPeakRt - rtArray[leftIndex - 1] < Constants.PEAK_WIDTH))) {
+                    if (signalToNoise[leftIndex - 1] >= Constants.SIGNAL_TO_NOISE_LIMIT) {
+                        leftIndex--;
+                    } else {
+                        leftIndex--;
+                        break;
+                    }
+                }
+
+                rightIndex = closestPeakIndex + 1;
+                while (rightIndex < chromatogram.length - 1 &&
+                        (chromatogram[rightIndex + 1] < chromatogram[rightIndex] || (
+                                Constants.PEAK_WIDTH > 0 && rtArray[rightIndex + 1] - centralPeakRt < Constants.PEAK_WIDTH)) &&
+                        signalToNoise[rightIndex + 1] >= Constants.SIGNAL_TO_NOISE_LIMIT) {
+                    rightIndex++;
+                }
+
+                double intensity = integratePeaks(intensityArray, leftIndex, rightIndex);
+                ionPeakList.add(new IonPeak(intensity, leftIndex, rightIndex, closestPeakIndex, i));
+            }
+
+            return ionPeakList;
+        }
+
+        private double integratePeaks(Double[] intensityArray, int leftIndex, int rightIndex) {
+            double intensity = 0d;
+            for (int i = leftIndex; i <= rightIndex; i++) {
+                intensity += intensityArray[i];
+            }
+            return intensity;
+        }
+    }
+}
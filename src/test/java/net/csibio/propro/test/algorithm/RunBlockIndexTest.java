@@ -0,0 +1,91 @@
+package net.csibio.propro.test.algorithm;
+
+import net.csibio.aird.bean.WindowRange;
+import net.csibio.propro.domain.bean.data.RunBlockIndex;
+import net.csibio.propro.domain.db.BlockIndexDO;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 光谱块索引快照的窗口定位结果与按数据库条件(range.start<=mz<=range.end)逐个比较的结果一致
+ */
+public class RunBlockIndexTest {
+
+    @Test
+    void testGetMS2() {
+        Random random = new Random(20210803L);
+        //普通的SWATH窗口(相邻窗口有1Da的重叠)以及ScanningSwath的大量重叠窗口
+        for (double step : new double[]{25, 2}) {
+            List<BlockIndexDO> blocks = new ArrayList<>();
+            blocks.add(block(1, null, 0));
+            for (double start = 400; start < 1200; start += step) {
+                blocks.add(block(2, range(start, start + (step == 2 ? 20 : step + 1)), 10));
+            }
+            List<BlockIndexDO> expected = new ArrayList<>(blocks.subList(1, blocks.size()));
+            Collections.shuffle(blocks, random);
+            RunBlockIndex index = RunBlockIndex.build("run", 0L, blocks);
+
+            assertNotNull(index.getMs1());
+            assertEquals(expected.size(), index.getMs2List().size());
+            for (int i = 0; i < 5000; i++) {
+                double mz = 350 + random.nextDouble() * 900;
+                assertSame(linear(expected, mz), index.getMS2(mz), "mz:" + mz);
+            }
+            for (BlockIndexDO block : expected) {
+                assertSame(linear(expected, block.getRange().getEnd()), index.getMS2(block.getRange().getEnd()));
+            }
+        }
+    }
+
+    @Test
+    void testCompact() {
+        BlockIndexDO block = block(2, range(400, 425), 100);
+        List<Float> rts = new ArrayList<>(block.getRts());
+        List<Long> mzs = new ArrayList<>(block.getMzs());
+        List<Integer> nums = new ArrayList<>(block.getNums());
+        RunBlockIndex index = RunBlockIndex.build("run", 0L, new ArrayList<>(List.of(block)));
+        assertEquals(rts, index.getMS2(410).getRts());
+        assertEquals(mzs, index.getMS2(410).getMzs());
+        assertEquals(nums, index.getMS2(410).getNums());
+        assertThrows(UnsupportedOperationException.class, () -> index.getMS2(410).getRts().add(1f));
+        assertNull(index.getMS2(399.9));
+        assertNull(index.getMs1());
+    }
+
+    static BlockIndexDO linear(List<BlockIndexDO> blocks, double mz) {
+        for (BlockIndexDO block : blocks) {
+            if (block.getRange().getStart() <= mz && block.getRange().getEnd() >= mz) {
+                return block;
+            }
+        }
+        return null;
+    }
+
+    static WindowRange range(double start, double end) {
+        WindowRange range = new WindowRange();
+        range.setStart(start);
+        range.setEnd(end);
+        range.setMz((start + end) / 2);
+        return range;
+    }
+
+    static BlockIndexDO block(int level, WindowRange range, int spectra) {
+        BlockIndexDO block = new BlockIndexDO();
+        block.init();
+        block.setLevel(level);
+        block.setRange(range);
+        for (int i = 0; i < spectra; i++) {
+            block.getNums().add(i * 3);
+            block.getRts().add(i * 3.4f);
+            block.getMzs().add(1000L + i);
+            block.getInts().add(2000L + i);
+        }
+        return block;
+    }
+}
@@ -0,0 +1,84 @@
+package net.csibio.propro.test.algorithm;
+
+import net.csibio.propro.domain.bean.data.SpectrumBlock;
+import net.csibio.propro.utils.ConvolutionUtil;
+import org.junit.jupiter.api.Test;
+
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 按mz范围裁剪后的光谱块,在该范围内任意窗口上的累加结果与原光谱块完全一致
+ */
+public class SpectrumBlockTrimTest {
+
+    @Test
+    void testAccumulation() {
+        Random random = new Random(20210803L);
+        SpectrumBlock block = block(random, 300, 400);
+        for (int round = 0; round < 200; round++) {
+            double mzStart = 400 + random.nextDouble() * 800;
+            double mzEnd = mzStart + random.nextDouble() * 2;
+            SpectrumBlock trimmed = block.trim(mzStart, mzEnd);
+            assertEquals(block.size(), trimmed.size());
+            assertTrue(trimmed.bytes() < block.bytes());
+            for (int w = 0; w < 20; w++) {
+                //窗口的边界有时恰好落在数据点上
+                float start = w % 5 == 0 ? randomMz(random, block, mzStart, mzEnd) : (float) (mzStart + random.nextDouble() * (mzEnd - mzStart));
+                float end = w % 7 == 0 ? randomMz(random, block, start, mzEnd) : (float) (start + random.nextDouble() * (mzEnd - start));
+                if (start < mzStart || end > mzEnd || end < start) {
+                    continue;
+                }
+                for (int i = 0; i < block.size(); i++) {
+                    assertEquals(ConvolutionUtil.accumulation(block, i, start, end), ConvolutionUtil.accumulation(trimmed, i, start, end));
+                }
+            }
+        }
+    }
+
+    @Test
+    void testEdge() {
+        //空光谱,以及所有数据点都在范围之外的光谱
+        SpectrumBlock block = new SpectrumBlock(new float[]{1f, 2f, 3f}, new int[]{0, 0, 2, 4},
+                FloatBuffer.wrap(new float[]{100f, 101f, 500f, 600f}), FloatBuffer.wrap(new float[]{1f, 2f, 3f, 4f}), false);
+        SpectrumBlock trimmed = block.trim(300, 400);
+        assertArrayEquals(new int[]{0, 0, 1, 2}, trimmed.getOffsets());
+        assertEquals(101f, trimmed.mz(0));
+        assertEquals(500f, trimmed.mz(1));
+        for (int i = 0; i < block.size(); i++) {
+            assertEquals(ConvolutionUtil.accumulation(block, i, 300f, 400f), ConvolutionUtil.accumulation(trimmed, i, 300f, 400f));
+        }
+    }
+
+    static float randomMz(Random random, SpectrumBlock block, double mzStart, double mzEnd) {
+        int index = random.nextInt(block.size());
+        for (int p = block.from(index); p < block.to(index); p++) {
+            if (block.mz(p) >= mzStart && block.mz(p) <= mzEnd) {
+                return block.mz(p);
+            }
+        }
+        return (float) mzStart;
+    }
+
+    static SpectrumBlock block(Random random, int spectra, int points) {
+        float[] rts = new float[spectra];
+        int[] offsets = new int[spectra + 1];
+        for (int i = 0; i < spectra; i++) {
+            rts[i] = i * 3.4f;
+            offsets[i + 1] = offsets[i] + random.nextInt(points);
+        }
+        float[] mzs = new float[offsets[spectra]];
+        float[] ints = new float[offsets[spectra]];
+        for (int i = 0; i < spectra; i++) {
+            float mz = 400f;
+            for (int p = offsets[i]; p < offsets[i + 1]; p++) {
+                mz += random.nextFloat() * 1600f / points;
+                mzs[p] = mz;
+                ints[p] = random.nextFloat() * 1e4f;
+            }
+        }
+        return new SpectrumBlock(rts, offsets, FloatBuffer.wrap(mzs), FloatBuffer.wrap(ints), false);
+    }
+}
@@ -0,0 +1,198 @@
+package net.csibio.propro.test.algorithm;
+
+import net.csibio.aird.bean.MzIntensityPairs;
+import net.csibio.propro.algorithm.extract.SpectrumCache;
+import net.csibio.propro.config.VMProperties;
+import net.csibio.propro.domain.bean.data.MS1Partition;
+import net.csibio.propro.domain.bean.data.SpectrumBlock;
+import net.csibio.propro.domain.db.BlockIndexDO;
+import net.csibio.propro.domain.db.RunDO;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 光谱块缓存按rt范围只解码部分光谱时,结果与解码整个光谱块以后再截取一致
+ * 使用内存中的光谱模拟Aird文件,每一张光谱在文件中的大小随机生成,读取时校验请求的文件位置与光谱一一对应
+ */
+public class SpectrumCacheTest {
+
+    @Test
+    void testPartialDecode() throws Exception {
+        Random random = new Random(20210803L);
+        SpectrumBlock block = SpectrumBlockTrimTest.block(random, 300, 200);
+        BlockIndexDO index = index(random, block);
+        LocalCache cache = cache(block, index);
+        RunDO run = new RunDO();
+        run.setId("run");
+
+        float maxRt = block.getRt(block.size() - 1);
+        List<double[]> ranges = new ArrayList<>();
+        List<SpectrumBlock> partials = new ArrayList<>();
+        for (int round = 0; round < 100; round++) {
+            //rtStart大于第一张光谱的rt,不会覆盖整个光谱块
+            double rtStart = 1 + random.nextDouble() * maxRt;
+            double rtEnd = round % 10 == 0 ? rtStart + 0.5 : rtStart + random.nextDouble() * 200;
+            ranges.add(new double[]{rtStart, rtEnd});
+            partials.add(cache.get(run, index, rtStart, rtEnd));
+        }
+        assertEquals(0, cache.stat().get("blocks"));
+        assertEquals(100L, cache.stat().get("partialLoads"));
+        assertEquals(index.getEndPtr(), index.fetchPointers()[block.size()]);
+
+        SpectrumBlock full = cache.get(run, index);
+        assertEquals(1, cache.stat().get("blocks"));
+        assertBlockEquals(block, full);
+        for (int i = 0; i < ranges.size(); i++) {
+            assertBlockEquals(full.slice(ranges.get(i)[0], ranges.get(i)[1]), partials.get(i));
+        }
+    }
+
+    @Test
+    void testScanNotCached() throws Exception {
+        Random random = new Random(7L);
+        SpectrumBlock block = SpectrumBlockTrimTest.block(random, 150, 400);
+        BlockIndexDO index = index(random, block);
+        LocalCache cache = cache(block, index);
+        RunDO run = new RunDO();
+        run.setId("run");
+        List<double[]> windows = new ArrayList<>();
+        for (double start = 400; start < 1200; start += 25) {
+            windows.add(new double[]{start, start + 26});
+        }
+
+        //光谱数目少于一批时同样逐批解码,不会把完整的MS1写入缓存
+        MS1Partition expected = MS1PartitionTest.split(block, windows, 64);
+        MS1Partition actual = partition(cache, run, index, windows, 64);
+        assertEquals(0, cache.stat().get("blocks"));
+        assertEquals(0L, cache.stat().get("bytes"));
+        assertEquals(1, cache.opens);
+        assertEquals(3, cache.reads);
+        for (int w = 0; w < windows.size(); w++) {
+            assertBlockEquals(expected.take(w), actual.take(w));
+        }
+
+        expected = MS1PartitionTest.split(block, windows, 200);
+        actual = partition(cache, run, index, windows, 200);
+        assertEquals(0, cache.stat().get("blocks"));
+        assertEquals(4, cache.reads);
+        for (int w = 0; w < windows.size(); w++) {
+            assertBlockEquals(expected.take(w), actual.take(w));
+        }
+
+        //光谱块已经在缓存中时直接截取,不再读取文件
+        cache.get(run, index);
+        int reads = cache.reads;
+        expected = MS1PartitionTest.split(block, windows, 64);
+        actual = partition(cache, run, index, windows, 64);
+        assertEquals(reads, cache.reads);
+        for (int w = 0; w < windows.size(); w++) {
+            assertBlockEquals(expected.take(w), actual.take(w));
+        }
+    }
+
+    static MS1Partition partition(SpectrumCache cache, RunDO run, BlockIndexDO index, List<double[]> windows, int chunk) throws Exception {
+        double[] starts = new double[windows.size()];
+        double[] ends = new double[windows.size()];
+        for (int i = 0; i < windows.size(); i++) {
+            starts[i] = windows.get(i)[0] * (1 - 40e-6);
+            ends[i] = windows.get(i)[1] * (1 + 40e-6);
+        }
+        MS1Partition partition = MS1Partition.plan(starts, ends);
+        List<List<SpectrumBlock>> parts = new ArrayList<>();
+        for (int p = 0; p < partition.size(); p++) {
+            parts.add(new ArrayList<>());
+        }
+        cache.scan(run, index, chunk, spectra -> partition.split(spectra, parts));
+        partition.build(parts);
+        return partition;
+    }
+
+    static void assertBlockEquals(SpectrumBlock expected, SpectrumBlock actual) {
+        assertArrayEquals(expected.getRts(), actual.getRts());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.getPairs(i).getMzArray(), actual.getPairs(i).getMzArray());
+            assertArrayEquals(expected.getPairs(i).getIntensityArray(), actual.getPairs(i).getIntensityArray());
+        }
+    }
+
+    /**
+     * 光谱块的索引,每一张光谱mz与intensity压缩后的大小随机生成
+     */
+    static BlockIndexDO index(Random random, SpectrumBlock block) {
+        BlockIndexDO index = new BlockIndexDO();
+        index.init();
+        index.setStartPtr(4096L);
+        long endPtr = index.getStartPtr();
+        for (int i = 0; i < block.size(); i++) {
+            index.getRts().add(block.getRt(i));
+            index.getMzs().add(1L + random.nextInt(500));
+            index.getInts().add(1L + random.nextInt(500));
+            endPtr += index.getMzs().get(i) + index.getInts().get(i);
+        }
+        index.setEndPtr(endPtr);
+        return index;
+    }
+
+    static LocalCache cache(SpectrumBlock block, BlockIndexDO index) {
+        LocalCache cache = new LocalCache(block, index);
+        VMProperties vmProperties = new VMProperties();
+        vmProperties.setSpectrumCacheMb(64);
+        ReflectionTestUtils.setField(cache, "vmProperties", vmProperties);
+        return cache;
+    }
+
+    /**
+     * 从内存中的光谱块读取光谱,按照索引中每一张光谱的大小将文件位置还原为光谱编号
+     */
+    static class LocalCache extends SpectrumCache {
+
+        final SpectrumBlock block;
+        final BlockIndexDO index;
+        int opens = 0;
+        int reads = 0;
+
+        LocalCache(SpectrumBlock block, BlockIndexDO index) {
+            this.block = block;
+            this.index = index;
+        }
+
+        @Override
+        protected Reader open(RunDO run) {
+            opens++;
+            return new Reader() {
+                @Override
+                public TreeMap<Float, MzIntensityPairs> read(long startPtr, long endPtr, List<Float> rts, List<Long> mzs, List<Long> ints) {
+                    reads++;
+                    long ptr = index.getStartPtr();
+                    int from = 0;
+                    while (ptr < startPtr) {
+                        ptr += index.getMzs().get(from) + index.getInts().get(from);
+                        from++;
+                    }
+                    assertEquals(startPtr, ptr);
+                    TreeMap<Float, MzIntensityPairs> spectra = new TreeMap<>();
+                    for (int i = 0; i < rts.size(); i++) {
+                        assertEquals(index.getRts().get(from + i), rts.get(i));
+                        assertEquals(index.getMzs().get(from + i), mzs.get(i));
+                        assertEquals(index.getInts().get(from + i), ints.get(i));
+                        ptr += mzs.get(i) + ints.get(i);
+                        spectra.put(rts.get(i), block.getPairs(from + i));
+                    }
+                    assertEquals(endPtr, ptr);
+                    return spectra;
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+    }
+}
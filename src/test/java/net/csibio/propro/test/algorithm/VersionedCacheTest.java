@@ -0,0 +1,83 @@
+package net.csibio.propro.test.algorithm;
+
+import net.csibio.propro.algorithm.extract.VersionedCache;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 按版本号失效的LRU缓存:命中,失效,构建期间失效的快照不进入缓存,按数目淘汰
+ */
+public class VersionedCacheTest {
+
+    static class Value {
+        final String key;
+        final long version;
+
+        Value(String key, long version) {
+            this.key = key;
+            this.version = version;
+        }
+    }
+
+    @Test
+    void testGetAndInvalidate() {
+        VersionedCache<Value> cache = new VersionedCache<>("keys", () -> 2, v -> v.version, v -> 10L);
+        AtomicInteger loads = new AtomicInteger();
+        VersionedCache.Loader<Value> loader = (key, version) -> {
+            loads.incrementAndGet();
+            return new Value(key, version);
+        };
+        Value first = cache.get("a", loader);
+        assertSame(first, cache.get("a", loader));
+        assertEquals(1, loads.get());
+
+        cache.invalidate("a");
+        Value second = cache.get("a", loader);
+        assertNotSame(first, second);
+        assertEquals(1L, second.version);
+        assertEquals(2, loads.get());
+
+        cache.get("b", loader);
+        cache.get("a", loader);
+        cache.get("c", loader);
+        //b最久未被访问,被淘汰
+        Map<String, Object> stat = cache.stat();
+        assertEquals(List.of("a", "c"), stat.get("keys"));
+        assertEquals(20L, stat.get("bytes"));
+        assertEquals(1L, stat.get("evictions"));
+        assertEquals(2L, stat.get("hits"));
+        assertEquals(4L, stat.get("misses"));
+
+        cache.clear();
+        assertEquals(0, cache.stat().get("size"));
+    }
+
+    @Test
+    void testInvalidateDuringLoad() {
+        VersionedCache<Value> cache = new VersionedCache<>("keys", () -> 8, v -> v.version, v -> 0L);
+        //构建期间标准库被修改,构建出的快照只返回给本次调用方
+        Value stale = cache.get("a", (key, version) -> {
+            cache.invalidate(key);
+            return new Value(key, version);
+        });
+        assertEquals(0L, stale.version);
+        assertEquals(0, cache.stat().get("size"));
+        Value fresh = cache.get("a", Value::new);
+        assertEquals(1L, fresh.version);
+        assertSame(fresh, cache.get("a", Value::new));
+    }
+
+    @Test
+    void testLockStripes() {
+        VersionedCache<Value> cache = new VersionedCache<>("keys", () -> 8, v -> v.version, v -> 0L);
+        assertSame(cache.lock("a"), cache.lock(new String("a")));
+        long distinct = IntStream.range(0, 10000).mapToObj(i -> cache.lock("run" + i)).distinct().count();
+        assertTrue(distinct <= 64);
+    }
+}
@@ -0,0 +1,213 @@
+package net.csibio.propro.test.algorithm;
+
+import net.csibio.propro.algorithm.extract.Extractor;
+import net.csibio.propro.config.ScoringPool;
+import net.csibio.propro.config.VMProperties;
+import net.csibio.propro.constants.constant.Constants;
+import net.csibio.propro.domain.bean.data.SpectrumBlock;
+import net.csibio.propro.domain.bean.data.XicBatch;
+import net.csibio.propro.domain.bean.method.Method;
+import net.csibio.propro.domain.bean.peptide.FragmentInfo;
+import net.csibio.propro.domain.bean.peptide.PeptideCoord;
+import net.csibio.propro.domain.db.DataDO;
+import net.csibio.propro.domain.options.AnalyzeParams;
+import net.csibio.propro.domain.options.EicOptions;
+import net.csibio.propro.utils.ConvolutionUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 批量提取XIC的结果与逐个碎片调用ConvolutionUtil.accumulation的结果逐位一致
+ * 覆盖同一个坐标内及不同坐标间的重复碎片mz,光谱中恰好落在窗口边界上的重复mz,以及超出光谱块rt范围的坐标
+ */
+public class XicBatchTest {
+
+    static final float PPM = 15f;
+
+    Extractor extractor;
+    ScoringPool scoringPool;
+
+    @BeforeEach
+    void setUp() {
+        VMProperties vmProperties = new VMProperties();
+        vmProperties.setScoringThreads(4);
+        scoringPool = new ScoringPool();
+        ReflectionTestUtils.setField(scoringPool, "vmProperties", vmProperties);
+        scoringPool.init();
+        extractor = new Extractor();
+        ReflectionTestUtils.setField(extractor, "vmProperties", vmProperties);
+        ReflectionTestUtils.setField(extractor, "scoringPool", scoringPool);
+    }
+
+    @AfterEach
+    void tearDown() {
+        scoringPool.destroy();
+    }
+
+    @Test
+    void testBatchMatchesAccumulation() {
+        for (double rtWindow : new double[]{300d, -1d}) {
+            Random random = new Random(20211017L);
+            List<PeptideCoord> coords = coords(random, 80);
+            SpectrumBlock block = block(random, 150, 200, coords);
+            AnalyzeParams params = params(rtWindow);
+            for (boolean withDecoy : new boolean[]{true, false}) {
+                XicBatch batch = extractor.extractBatch(coords, block, params, withDecoy);
+                for (int c = 0; c < coords.size(); c++) {
+                    PeptideCoord coord = coords.get(c);
+                    int from = batch.getRtFrom()[c];
+                    int to = batch.getRtTo()[c];
+                    for (int f = 0; f < coord.getFragments().size(); f++) {
+                        assertArrayEquals(accumulation(block, from, to, coord.getFragments().get(f).getMz()), batch.getFragmentInts(c, f, false));
+                    }
+                    assertEquals(withDecoy ? coord.getDecoyFragments().size() : 0, batch.getDecoySize()[c]);
+                    for (int f = 0; f < batch.getDecoySize()[c]; f++) {
+                        assertArrayEquals(accumulation(block, from, to, coord.getDecoyFragments().get(f).getMz()), batch.getFragmentInts(c, f, true));
+                    }
+                    assertArrayEquals(accumulation(block, from, to, coord.getMz()), batch.getSelfInts(c));
+                }
+
+                //从批量结果构建的DataDO与逐个提取的DataDO一致,未批量提取的伪肽段退回到逐个提取
+                for (int c = 0; c < coords.size(); c++) {
+                    PeptideCoord coord = coords.get(c);
+                    for (boolean decoy : new boolean[]{false, true}) {
+                        coord.setDecoy(decoy);
+                        assertDataEquals(extractor.extract(coord, null, block, params, false, null), extractor.extract(coord, batch, c, null, block, params, false, null));
+                    }
+                    coord.setDecoy(false);
+                }
+            }
+        }
+    }
+
+    /**
+     * 逐个碎片的提取方式,mz窗口的计算方式与Extractor中保持一致
+     */
+    static float[] accumulation(SpectrumBlock block, int from, int to, double mz) {
+        float mzf = (float) mz;
+        float window = mzf * PPM * Constants.PPM_F;
+        float[] ints = new float[to - from];
+        for (int s = from; s < to; s++) {
+            ints[s - from] = ConvolutionUtil.accumulation(block, s, mzf - window, mzf + window);
+        }
+        return ints;
+    }
+
+    static void assertDataEquals(DataDO expected, DataDO actual) {
+        if (expected == null) {
+            assertNull(actual);
+            return;
+        }
+        assertNotNull(actual);
+        assertArrayEquals(expected.getRtArray(), actual.getRtArray());
+        assertArrayEquals(expected.getSelfInts(), actual.getSelfInts());
+        assertEquals(expected.getIntMap().keySet(), actual.getIntMap().keySet());
+        for (String cutInfo : expected.getIntMap().keySet()) {
+            assertArrayEquals(expected.getIntMap().get(cutInfo), actual.getIntMap().get(cutInfo));
+        }
+    }
+
+    static AnalyzeParams params(double rtWindow) {
+        EicOptions eic = new EicOptions();
+        eic.setMzWindow((double) PPM);
+        eic.setRtWindow(rtWindow);
+        Method method = new Method();
+        method.setEic(eic);
+        AnalyzeParams params = new AnalyzeParams();
+        params.setMethod(method);
+        return params;
+    }
+
+    /**
+     * 随机生成肽段坐标,部分碎片的mz与同一个坐标或者前一个坐标的碎片重复,部分坐标的rt范围超出光谱块或者为空
+     */
+    static List<PeptideCoord> coords(Random random, int size) {
+        List<PeptideCoord> coords = new ArrayList<>();
+        for (int c = 0; c < size; c++) {
+            PeptideCoord coord = new PeptideCoord();
+            coord.setPeptideRef("PEPTIDE" + c);
+            coord.setMz(400 + random.nextDouble() * 1600);
+            coord.setFragments(fragments(random, coords.isEmpty() ? null : coords.get(c - 1).getFragments()));
+            coord.setDecoyFragments(fragments(random, coord.getFragments()));
+            double rtStart = -100 + random.nextDouble() * 600;
+            double rtEnd = switch (c % 10) {
+                case 0 -> rtStart;
+                case 1 -> rtStart + 1000;
+                default -> rtStart + random.nextDouble() * 200;
+            };
+            coord.setRtStart(rtStart);
+            coord.setRtEnd(rtEnd);
+            coords.add(coord);
+        }
+        return coords;
+    }
+
+    static List<FragmentInfo> fragments(Random random, List<FragmentInfo> previous) {
+        List<FragmentInfo> fragments = new ArrayList<>();
+        for (int f = 0; f < 6; f++) {
+            double mz;
+            if (f == 1) {
+                mz = fragments.get(0).getMz();
+            } else if (f == 2 && previous != null) {
+                mz = previous.get(random.nextInt(previous.size())).getMz();
+            } else {
+                mz = 400 + random.nextDouble() * 1600;
+            }
+            fragments.add(new FragmentInfo("y" + f, mz, 1d, 1));
+        }
+        return fragments;
+    }
+
+    /**
+     * 随机生成光谱块,并在每一张光谱中加入恰好落在部分碎片mz窗口边界上的点,左边界上的点重复出现
+     */
+    static SpectrumBlock block(Random random, int spectra, int points, List<PeptideCoord> coords) {
+        float[] rts = new float[spectra];
+        int[] offsets = new int[spectra + 1];
+        List<float[]> mzList = new ArrayList<>();
+        List<float[]> intList = new ArrayList<>();
+        for (int i = 0; i < spectra; i++) {
+            rts[i] = i * 3.4f;
+            List<Float> mzs = new ArrayList<>();
+            int count = random.nextInt(points);
+            for (int p = 0; p < count; p++) {
+                mzs.add(400 + random.nextFloat() * 1600);
+            }
+            for (int e = 0; e < 5; e++) {
+                PeptideCoord coord = coords.get(random.nextInt(coords.size()));
+                float mz = coord.getFragments().get(random.nextInt(coord.getFragments().size())).getMz().floatValue();
+                float window = mz * PPM * Constants.PPM_F;
+                mzs.add(mz - window);
+                mzs.add(mz - window);
+                mzs.add(mz + window);
+            }
+            float[] mzArray = new float[mzs.size()];
+            float[] intArray = new float[mzs.size()];
+            for (int p = 0; p < mzArray.length; p++) {
+                mzArray[p] = mzs.get(p);
+                intArray[p] = random.nextFloat() * 1e4f;
+            }
+            Arrays.sort(mzArray);
+            mzList.add(mzArray);
+            intList.add(intArray);
+            offsets[i + 1] = offsets[i] + mzArray.length;
+        }
+        float[] mzs = new float[offsets[spectra]];
+        float[] ints = new float[offsets[spectra]];
+        for (int i = 0; i < spectra; i++) {
+            System.arraycopy(mzList.get(i), 0, mzs, offsets[i], mzList.get(i).length);
+            System.arraycopy(intList.get(i), 0, ints, offsets[i], intList.get(i).length);
+        }
+        return new SpectrumBlock(rts, offsets, FloatBuffer.wrap(mzs), FloatBuffer.wrap(ints), false);
+    }
+}